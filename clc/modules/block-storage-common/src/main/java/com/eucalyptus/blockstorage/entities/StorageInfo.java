@@ -110,6 +110,7 @@ public class StorageInfo extends AbstractPersistent {
   private static final Boolean DEFAULT_SHOULD_TRANSFER_SNAPSHOTS = Boolean.valueOf( DEFAULT_SHOULD_TRANSFER_SNAPSHOTS_TXT );
   private static final Integer DEFAULT_SNAPSHOT_PART_SIZE_IN_MB = 100;
   private static final Integer DEFAULT_MAX_SNAPSHOT_PARTS_QUEUE_SIZE = 5;
+  private static final Integer DEFAULT_MAX_SNAPSHOT_TRANSFER_MEMORY_IN_MB = 512;
   private static final Integer DEFAULT_MAX_SNAPSHOT_CONCURRENT_TRANSFERS = 3;
   private static final Integer DEFAULT_SNAPSHOT_TRANSFER_TIMEOUT = 48;
   private static final Integer DEFAULT_READ_BUFFER_SIZE_IN_MB = 1;
@@ -166,6 +167,11 @@ public class StorageInfo extends AbstractPersistent {
   @Column(name = "max_snapshot_parts_queue_size")
   private Integer maxSnapshotPartsQueueSize;
 
+  @ConfigurableField(description = "Maximum memory in MB used for buffering snapshot parts across all snapshot uploads and downloads",
+      displayName = "Maximum Snapshot Transfer Memory", initial = "512", changeListener = PositiveIntegerChangeListener.class)
+  @Column(name = "max_snapshot_transfer_memory_mb")
+  private Integer maxSnapshotTransferMemoryInMB;
+
   @ConfigurableField(description = "Maximum number of snapshots that can be uploaded to or downloaded from objectstorage gateway at a given time",
       displayName = "Maximum Concurrent Snapshot Transfers", initial = "3", changeListener = PositiveIntegerChangeListener.class)
   @Column(name = "max_concurrent_snapshot_transfers")
@@ -274,6 +280,14 @@ public class StorageInfo extends AbstractPersistent {
     this.maxSnapshotPartsQueueSize = maxSnapshotPartsQueueSize;
   }
 
+  public Integer getMaxSnapshotTransferMemoryInMB() {
+    return maxSnapshotTransferMemoryInMB;
+  }
+
+  public void setMaxSnapshotTransferMemoryInMB(Integer maxSnapshotTransferMemoryInMB) {
+    this.maxSnapshotTransferMemoryInMB = maxSnapshotTransferMemoryInMB;
+  }
+
   public Integer getMaxConcurrentSnapshotTransfers() {
     return maxConcurrentSnapshotTransfers;
   }
@@ -384,6 +398,9 @@ public class StorageInfo extends AbstractPersistent {
     if (maxSnapshotPartsQueueSize == null) {
       maxSnapshotPartsQueueSize = DEFAULT_MAX_SNAPSHOT_PARTS_QUEUE_SIZE;
     }
+    if (maxSnapshotTransferMemoryInMB == null) {
+      maxSnapshotTransferMemoryInMB = DEFAULT_MAX_SNAPSHOT_TRANSFER_MEMORY_IN_MB;
+    }
     if (maxConcurrentSnapshotTransfers == null) {
       maxConcurrentSnapshotTransfers = DEFAULT_MAX_SNAPSHOT_CONCURRENT_TRANSFERS;
     }
@@ -276,6 +276,7 @@ public class BlockStorageController implements BlockStorageService {
     SnapshotThreadPool.initialize(info.getMaxConcurrentSnapshots());
     SnapshotTransferThreadPool.initialize(info.getMaxConcurrentSnapshotTransfers());
     CheckerThreadPool.initialize();
+    SnapshotDownloadMetrics.register();
 
     // Add checkers for volume and snapshot maintenance
     CheckerThreadPool.add(new VolumeDeleter(blockManager));
@@ -65,6 +65,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.List;
@@ -706,6 +709,7 @@ public class DASManager implements LogicalStorageManager {
             throw new EucalyptusCloudException("Unable to delete: " + snapFile.getAbsolutePath());
           }
         }
+        new File(snapFile.getPath() + SnapshotBlockManifest.MANIFEST_SUFFIX).delete();
       } else {
         throw new EucalyptusCloudException("Unable to find snapshot: " + snapshotId);
       }
@@ -1323,16 +1327,56 @@ public class DASManager implements LogicalStorageManager {
     volumeOps.remove(key);
   }
 
+  /**
+   * Snapshots are files so deltas are generated by comparing block manifests, see {@link SnapshotBlockManifest}
+   */
   @Override
   public boolean supportsIncrementalSnapshots() throws EucalyptusCloudException {
-    return false;
+    return true;
   }
 
   @Override
   public StorageResourceWithCallback prepIncrementalSnapshotForUpload(String volumeId, String snapshotId, String snapPointId, String prevSnapshotId,
       String prevSnapPointId) throws EucalyptusCloudException {
-    // TODO may be throw unsupported exception?
-    return null;
+    File snapshotFile = new File(getSnapshotPath(snapshotId));
+    SnapshotBlockManifest prevManifest = null;
+    try {
+      File prevSnapshotFile = new File(getSnapshotPath(prevSnapshotId));
+      if (prevSnapshotFile.isFile()) {
+        prevManifest = SnapshotBlockManifest.forSnapshotFile(prevSnapshotFile, SnapshotBlockManifest.DEFAULT_BLOCK_SIZE);
+      }
+    } catch (EntityNotFoundException | IOException e) {
+      LOG.debug("Unable to load block manifest for previous snapshot " + prevSnapshotId, e);
+    }
+    if (prevManifest == null) {
+      // a delta of every block is larger than the compressed snapshot upload
+      LOG.warn("Previous snapshot " + prevSnapshotId + " not available, uploading entire snapshot " + snapshotId);
+      return null;
+    }
+
+    Path deltaPath = null;
+    try {
+      deltaPath = Files.createTempFile(Paths.get("/var/tmp"), snapshotId + "_" + prevSnapshotId + "_", ".diff");
+      SnapshotBlockManifest manifest =
+          SnapshotBlockManifest.writeDelta(snapshotFile, prevManifest, deltaPath.toFile(), SnapshotBlockManifest.DEFAULT_BLOCK_SIZE);
+      // keep the manifest with the snapshot so the next delta does not have to read this snapshot again
+      manifest.write(new File(snapshotFile.getPath() + SnapshotBlockManifest.MANIFEST_SUFFIX));
+      LOG.info("Generated delta of " + Files.size(deltaPath) + " bytes for " + snapshotId + " from " + prevSnapshotId);
+    } catch (IOException e) {
+      deleteTempFile(deltaPath);
+      LOG.warn("Failed to generate delta between " + prevSnapshotId + " and " + snapshotId, e);
+      throw new EucalyptusCloudException("Failed to generate delta between " + prevSnapshotId + " and " + snapshotId, e);
+    }
+
+    final Path deltaFilePath = deltaPath;
+    return new StorageResourceWithCallback(new FileResource(snapshotId, deltaPath.toString()), new Function<StorageResource, String>() {
+
+      @Override
+      public String apply(StorageResource arg0) {
+        deleteTempFile(deltaFilePath);
+        return null;
+      }
+    });
   }
 
   @Override
@@ -1348,9 +1392,33 @@ public class DASManager implements LogicalStorageManager {
   }
 
   @Override
-  public StorageResourceWithCallback prepSnapshotBaseForRestore(String snapshotId, int size, String snapshotPointId) throws EucalyptusCloudException {
-    // TODO Auto-generated method stub
-    return null;
+  public StorageResourceWithCallback prepSnapshotBaseForRestore(final String snapshotId, int size, String snapshotPointId)
+      throws EucalyptusCloudException {
+    String snapshotFileName = DirectStorageInfo.getStorageInfo().getVolumesDir() + File.separator + snapshotId;
+    try (VolumeMetadataManager volumeManager = new VolumeMetadataManager()) {
+      LVMVolumeInfo foundSnapshotInfo = volumeManager.getVolumeInfo(snapshotId);
+      if (null == foundSnapshotInfo) {
+        LVMVolumeInfo snapshotInfo = volumeManager.getVolumeInfo();
+        snapshotInfo.setStatus(StorageProperties.Status.pending.toString());
+        snapshotInfo.setVolumeId(snapshotId);
+        snapshotInfo.setSize(size);
+        snapshotInfo.setLoFileName(snapshotFileName);
+        volumeManager.add(snapshotInfo);
+      } else {
+        snapshotFileName = foundSnapshotInfo.getLoFileName();
+      }
+      volumeManager.finish();
+    }
+
+    // snapshot is made available once all deltas are restored
+    return new StorageResourceWithCallback(new FileResource(snapshotId, snapshotFileName), new Function<StorageResource, String>() {
+
+      @Override
+      public String apply(StorageResource arg0) {
+        LOG.debug("Restored base for " + snapshotId + " at " + arg0.getPath());
+        return null;
+      }
+    });
   }
 
   @Override
@@ -1364,11 +1432,31 @@ public class DASManager implements LogicalStorageManager {
 
   @Override
   public void restoreSnapshotDelta(String currentSnapId, String prevSnapId, String baseId, StorageResource sr) throws EucalyptusCloudException {
-    // TODO Auto-generated method stub
+    Path deltaPath = Paths.get(sr.getPath());
+    try {
+      File baseFile = new File(getSnapshotPath(baseId));
+      LOG.info("Restoring delta " + currentSnapId + " (from " + prevSnapId + ") on " + baseId);
+      SnapshotBlockManifest.applyDelta(deltaPath.toFile(), baseFile);
+    } catch (IOException e) {
+      LOG.warn("Failed to restore delta " + currentSnapId + " on " + baseId, e);
+      throw new EucalyptusCloudException("Failed to restore delta " + currentSnapId + " on " + baseId, e);
+    } finally {
+      deleteTempFile(deltaPath);
+    }
   }
 
   @Override
   public void completeSnapshotRestorationFromDeltas(String snapshotId) throws EucalyptusCloudException {
-    // TODO Auto-generated method stub
+    finishVolume(snapshotId);
+  }
+
+  private static void deleteTempFile(Path path) {
+    if (path != null) {
+      try {
+        Files.deleteIfExists(path);
+      } catch (IOException e) {
+        LOG.warn("Unable to delete temporary file " + path, e);
+      }
+    }
   }
 }
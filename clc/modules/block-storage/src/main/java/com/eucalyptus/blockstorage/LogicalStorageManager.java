@@ -220,6 +220,12 @@ public interface LogicalStorageManager {
    */
   public boolean supportsIncrementalSnapshots() throws EucalyptusCloudException;
 
+  /**
+   * Prepare a delta between the previous snapshot and this snapshot for upload.
+   *
+   * @return The delta, or null if no delta can be generated and the entire snapshot should be uploaded
+   * @throws EucalyptusCloudException
+   */
   public StorageResourceWithCallback prepIncrementalSnapshotForUpload(String volumeId, String snapshotId, String snapPointId, String prevSnapshotId,
       String prevSnapPointId) throws EucalyptusCloudException;
 
@@ -854,6 +854,7 @@ public class OverlayManager extends DASManager {
             throw new EucalyptusCloudException("Unable to delete: " + snapFile.getAbsolutePath());
           }
         }
+        new File(snapFile.getPath() + SnapshotBlockManifest.MANIFEST_SUFFIX).delete();
       } else {
         throw new EucalyptusCloudException("Unable to find snapshot: " + snapshotId);
       }
@@ -63,17 +63,23 @@
 package com.eucalyptus.blockstorage;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -83,8 +89,12 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
 import javax.annotation.Nullable;
 
@@ -168,6 +178,13 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   // Constants
   private static final Integer REFRESH_TOKEN_RETRIES = 1;
   private static final String UNCOMPRESSED_SIZE_KEY = "uncompressedsize";
+  private static final String PART_INDEX_SUFFIX = ".parts";
+
+  // gzip member header with an extra field (FEXTRA) holding the compressed length of the member, other gzip readers skip the field
+  private static final byte[] BLOCK_HEADER = {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 8, 0, 'E', 'L', 4, 0};
+  static final int BLOCK_HEADER_LENGTH = BLOCK_HEADER.length + 4;
+  private static final int BLOCK_TRAILER_LENGTH = 8; // crc32 and uncompressed size
+  private static final int MAX_BLOCK_SIZE = 256 * 1024 * 1024;
 
   public S3SnapshotTransfer() throws SnapshotTransferException {
     initializeEucaS3Client();
@@ -241,6 +258,10 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
    * {@link StorageInfo}. Bucket name should be configured before invoking this method. It can be looked up and initialized by
    * {@link #prepareForUpload()} or explicitly set using {@link #setBucketName(String)}
    * 
+   * The snapshot is read in blocks of the read buffer size and the blocks are compressed in parallel, each block as a separate gzip member.
+   * Compressed blocks are collected in order into in memory parts which are uploaded concurrently. Each part reserves its memory from the
+   * {@link SnapshotTransferMemory} budget shared by all transfers before it is filled, so part creation waits while the budget is in use.
+   * 
    * @param sourceFileName absolute path to the snapshot on the file system
    */
   @Override
@@ -249,17 +270,19 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     loadTransferConfig(); // Load the transfer configuration parameters from database
 
     Boolean error = Boolean.FALSE;
-    ArrayBlockingQueue<SnapshotPart> partQueue = null;
     SnapshotPart part = null;
     SnapshotUploadInfo snapUploadInfo = null;
-    Future<List<PartETag>> uploadPartsFuture = null;
+    Deque<Future<byte[]>> compressBlockFutures = new ArrayDeque<Future<byte[]>>();
+    Deque<Integer> blockLengths = new ArrayDeque<Integer>();
+    List<PartUpload> partUploads = new ArrayList<PartUpload>();
     Future<String> completeUploadFuture = null;
+    PartBuffer partBuffer = null;
+    PartIndex partIndex = new PartIndex();
+    int compressWindow = 2 * Runtime.getRuntime().availableProcessors();
 
-    byte[] buffer = new byte[readBufferSize];
+    InputStream inputStream = null;
     Long readOffset = 0L;
     Long bytesRead = 0L;
-    Long bytesWritten = 0L;
-    int len;
     int partNumber = 1;
 
     try {
@@ -267,128 +290,82 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       Long uncompressedSize = storageResource.getSize();
       LOG.debug("Uncompressed size of content to be uploaded for " + snapshotId + ": " + uncompressedSize + " bytes");
 
-      // Setup the snapshot and part entities.
+      // Setup the snapshot and part entities. Parts are buffered in memory so there is no file for the part
       snapUploadInfo = SnapshotUploadInfo.create(snapshotId, bucketName, keyName);
-      Path zipFilePath = Files.createTempFile(Paths.get("/var/tmp"), keyName + '-', '-' + String.valueOf(partNumber));
-      part = SnapshotPart.createPart(snapUploadInfo, zipFilePath.toString(), partNumber, readOffset);
-
-      InputStream inputStream = storageResource.getInputStream();
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      GZIPOutputStream gzipStream = new GZIPOutputStream(baos);
-      FileOutputStream outputStream = new FileOutputStream(zipFilePath.toString());
-
-      try {
-        LOG.debug("Reading snapshot " + snapshotId + " and compressing it to disk in chunks of size " + partSize + " bytes or greater");
-        while ((len = inputStream.read(buffer)) > 0) {
-          bytesRead += len;
-          gzipStream.write(buffer, 0, len);
-
-          if ((bytesWritten + baos.size()) < partSize) {
-            baos.writeTo(outputStream);
-            bytesWritten += baos.size();
-            baos.reset();
-          } else {
-            gzipStream.close();
-            baos.writeTo(outputStream); // Order is important. Closing the gzip stream flushes stuff
-            bytesWritten += baos.size();
-            baos.reset();
-            outputStream.close();
-
-            if (partNumber > 1) {// Update the part status
-              part = part.updateStateCreated(bytesWritten, bytesRead, Boolean.FALSE);
-            } else {// Initialize multipart upload only once after the first part is created
-              LOG.info("Uploading snapshot " + snapshotId + " to objectstorage using multipart upload");
-              progressCallback.setUploadSize(uncompressedSize);
-              uploadId = initiateMulitpartUpload(uncompressedSize);
-              snapUploadInfo = snapUploadInfo.updateUploadId(uploadId); // update uploadId so its available for future parts
-              part = part.updateStateCreated(uploadId, bytesWritten, bytesRead, Boolean.FALSE);
-              partQueue = new ArrayBlockingQueue<SnapshotPart>(queueSize);
-              uploadPartsFuture = SnapshotTransferThreadPool.add(new UploadPartTask(partQueue, progressCallback));
-            }
-
-            // Check for the future task before adding part to the queue.
-            if (uploadPartsFuture != null && uploadPartsFuture.isDone()) {
-              // This task shouldn't be done until the last part is added. If it is done at this point, then something might have gone wrong
-              throw new SnapshotUploadPartException(
-                  "Error uploading parts, aborting part creation process. Check previous log messages for the exact error");
-            }
-
-            // Add part to the queue
-            partQueue.put(part);
-
-            // Prep the metadata for the next part
-            readOffset += bytesRead;
-            bytesRead = 0L;
-            bytesWritten = 0L;
-
-            // Setup the part entity for next part
-            zipFilePath = Files.createTempFile(Paths.get("/var/tmp"), keyName + '-', '-' + String.valueOf((++partNumber)));
-            part = SnapshotPart.createPart(snapUploadInfo, zipFilePath.toString(), partNumber, readOffset);
-
-            gzipStream = new GZIPOutputStream(baos);
-            outputStream = new FileOutputStream(zipFilePath.toString());
+      part = SnapshotPart.createPart(snapUploadInfo, null, partNumber, readOffset);
+      partBuffer = new PartBuffer(SnapshotTransferMemory.reserve(partSize + readBufferSize));
+
+      inputStream = storageResource.getInputStream();
+      LOG.debug("Reading snapshot " + snapshotId + " and compressing it in parts of size " + partSize + " bytes or greater");
+      boolean endOfInput = false;
+      int blockCount = 0;
+      while (!endOfInput || !compressBlockFutures.isEmpty()) {
+        // Keep the compression threads busy while parts are assembled and uploaded
+        while (!endOfInput && compressBlockFutures.size() < compressWindow) {
+          byte[] block = new byte[readBufferSize];
+          int len = readFully(inputStream, block);
+          if (len > 0) {
+            compressBlockFutures.add(SnapshotTransferThreadPool.add(new CompressBlockTask(block, len)));
+            blockLengths.add(len);
+            blockCount++;
           }
+          endOfInput = len < block.length;
         }
-
-        gzipStream.close();
-        baos.writeTo(outputStream);
-        bytesWritten += baos.size();
-        baos.reset();
-        outputStream.close();
-        inputStream.close();
-
-        // Update the part status
-        part = part.updateStateCreated(bytesWritten, bytesRead, Boolean.TRUE);
-
-        // Update the snapshot upload info status
-        snapUploadInfo = snapUploadInfo.updateStateCreatedParts(partNumber);
-      } catch (Exception e) {
-        LOG.error("Failed to upload " + snapshotId + " due to: ", e);
-        error = Boolean.TRUE;
-        throw new SnapshotTransferException("Failed to upload " + snapshotId + " due to: ", e);
-      } finally {
-        if (inputStream != null) {
-          try {
-            inputStream.close();
-          } catch (Exception e) {
-
-          }
+        if (compressBlockFutures.isEmpty()) {
+          break;
         }
-        if (gzipStream != null) {
-          try {
-            gzipStream.close();
-          } catch (Exception e) {
 
+        byte[] compressedBlock = compressBlockFutures.remove().get();
+        if (partBuffer.size() >= partSize) {
+          // The part is only handed off once more data follows so that the last part is never empty
+          if (partNumber == 1) { // Initialize multipart upload only once after the first part is created
+            LOG.info("Uploading snapshot " + snapshotId + " to objectstorage using multipart upload");
+            progressCallback.setUploadSize(uncompressedSize);
+            uploadId = initiateMulitpartUpload(uncompressedSize);
+            snapUploadInfo = snapUploadInfo.updateUploadId(uploadId); // update uploadId so its available for future parts
+            part = part.updateStateCreated(uploadId, (long) partBuffer.size(), bytesRead, Boolean.FALSE);
+          } else {
+            part = part.updateStateCreated((long) partBuffer.size(), bytesRead, Boolean.FALSE);
           }
+          partIndex.add(partBuffer.size(), bytesRead);
+          addUploadPartTask(part, partBuffer, progressCallback, partUploads);
+          partBuffer = null;
+
+          // Setup the part entity for next part
+          readOffset += bytesRead;
+          bytesRead = 0L;
+          part = SnapshotPart.createPart(snapUploadInfo, null, ++partNumber, readOffset);
+          partBuffer = new PartBuffer(SnapshotTransferMemory.reserve(partSize + readBufferSize));
         }
-        if (outputStream != null) {
-          try {
-            outputStream.close();
-          } catch (Exception e) {
+        partBuffer.write(compressedBlock);
+        bytesRead += blockLengths.remove();
+      }
+      inputStream.close();
 
-          }
-        }
-        baos.reset();
+      if (blockCount == 0) { // Empty snapshot, upload an empty gzip stream
+        partBuffer.write(compress(new byte[0], 0));
       }
 
+      // Update the part status
+      part = part.updateStateCreated((long) partBuffer.size(), bytesRead, Boolean.TRUE);
+
+      // Update the snapshot upload info status
+      snapUploadInfo = snapUploadInfo.updateStateCreatedParts(partNumber);
+
       if (partNumber > 1) {
-        // Check for the future task before adding the last part to the queue.
-        if (uploadPartsFuture != null && uploadPartsFuture.isDone()) {
-          // This task shouldn't be done until the last part is added. If it is done at this point, then something might have gone wrong
-          throw new SnapshotUploadPartException(
-              "Error uploading parts, aborting part upload process. Check previous log messages for the exact error");
-        }
-        // Add the last part to the queue
-        partQueue.put(part);
-        // Kick off the completion task
-        completeUploadFuture = SnapshotTransferThreadPool.add(new CompleteMpuTask(uploadPartsFuture, snapUploadInfo, partNumber));
+        // Add the last part and kick off the completion task
+        partIndex.add(partBuffer.size(), bytesRead);
+        addUploadPartTask(part, partBuffer, progressCallback, partUploads);
+        partBuffer = null;
+        completeUploadFuture = SnapshotTransferThreadPool.add(new CompleteMpuTask(partUploads, snapUploadInfo, partNumber, partIndex));
       } else {
         try {
-          LOG.info("Uploading snapshot " + snapshotId + " to objectstorage as a single object. Compressed size of snapshot (" + bytesWritten
+          LOG.info("Uploading snapshot " + snapshotId + " to objectstorage as a single object. Compressed size of snapshot (" + partBuffer.size()
               + " bytes) is less than minimum part size (" + partSize + " bytes) for multipart upload");
+          partBuffer.trim();
           completeUploadFuture =
-              SnapshotTransferThreadPool.add(new UploadObjectTask(part, snapUploadInfo, zipFilePath.toString(), bytesWritten, uncompressedSize,
-                  progressCallback));
+              SnapshotTransferThreadPool.add(new UploadObjectTask(part, snapUploadInfo, partBuffer, uncompressedSize, progressCallback));
+          partBuffer = null;
         } catch (Exception e) {
           error = Boolean.TRUE;
           LOG.error("Failed to add async task for uploading " + snapshotId + " due to: ", e);
@@ -404,13 +381,23 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       LOG.error("Failed to upload snapshot " + snapshotId + " due to: ", e);
       throw new SnapshotTransferException("Failed to upload snapshot " + snapshotId + " due to: ", e);
     } finally {
+      if (inputStream != null) {
+        try {
+          inputStream.close();
+        } catch (Exception e) {
+
+        }
+      }
+      if (partBuffer != null) { // not handed off to an upload task
+        partBuffer.release();
+      }
       if (error) {
         abortUpload(snapUploadInfo);
-        if (partQueue != null) {
-          partQueue.clear();
+        for (Future<byte[]> compressBlockFuture : compressBlockFutures) {
+          compressBlockFuture.cancel(true);
         }
-        if (uploadPartsFuture != null && !uploadPartsFuture.isDone()) {
-          uploadPartsFuture.cancel(true);
+        for (PartUpload partUpload : partUploads) {
+          partUpload.cancel();
         }
         if (completeUploadFuture != null && !completeUploadFuture.isDone()) {
           completeUploadFuture.cancel(true);
@@ -419,6 +406,146 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     }
   }
 
+  private void addUploadPartTask(SnapshotPart part, PartBuffer partBuffer, SnapshotProgressCallback progressCallback, List<PartUpload> partUploads)
+      throws Exception {
+    // Check for failed part uploads before adding another part
+    for (PartUpload partUpload : partUploads) {
+      if (partUpload.future.isDone() && partUpload.future.get() == null) {
+        throw new SnapshotUploadPartException("Error uploading parts, aborting part creation process. Check previous log messages for the exact error");
+      }
+    }
+    partBuffer.trim(); // return the unused part of the reservation
+    partUploads.add(new PartUpload(SnapshotTransferThreadPool.add(new UploadPartTask(part, partBuffer, progressCallback)), partBuffer));
+  }
+
+  private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+    return readFully(inputStream, buffer, 0);
+  }
+
+  private static int readFully(InputStream inputStream, byte[] buffer, int offset) throws IOException {
+    int len;
+    while (offset < buffer.length && (len = inputStream.read(buffer, offset, buffer.length - offset)) >= 0) {
+      offset += len;
+    }
+    return offset;
+  }
+
+  /**
+   * Compress the block as a gzip member that records its own compressed length so that blocks can be split from a stream and decompressed in
+   * parallel. Concatenated blocks remain a valid gzip stream.
+   */
+  static byte[] compress(byte[] block, int length) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(64, length / 4));
+    baos.write(new byte[BLOCK_HEADER_LENGTH]); // filled in once the compressed length is known
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(baos, deflater, 64 * 1024)) {
+      deflaterStream.write(block, 0, length);
+    } finally {
+      deflater.end();
+    }
+    CRC32 crc = new CRC32();
+    crc.update(block, 0, length);
+    writeInt(baos, (int) crc.getValue());
+    writeInt(baos, length);
+
+    byte[] compressed = baos.toByteArray();
+    System.arraycopy(BLOCK_HEADER, 0, compressed, 0, BLOCK_HEADER.length);
+    putInt(compressed, BLOCK_HEADER.length, compressed.length);
+    return compressed;
+  }
+
+  /**
+   * Length of the compressed block starting at the offset as recorded in its header, -1 if the data does not start with a block header
+   */
+  static int blockLength(byte[] data, int offset) {
+    if (data.length - offset < BLOCK_HEADER_LENGTH) {
+      return -1;
+    }
+    for (int i = 0; i < BLOCK_HEADER.length; i++) {
+      if ((i < 4 || i > 9) && data[offset + i] != BLOCK_HEADER[i]) { // mtime, xfl and os may vary
+        return -1;
+      }
+    }
+    int length = getInt(data, offset + BLOCK_HEADER.length);
+    return length >= BLOCK_HEADER_LENGTH + BLOCK_TRAILER_LENGTH ? length : -1;
+  }
+
+  /**
+   * Read the next compressed block from the stream, null at the end of the stream
+   */
+  static byte[] readBlock(InputStream inputStream) throws IOException {
+    byte[] header = new byte[BLOCK_HEADER_LENGTH];
+    int len = readFully(inputStream, header);
+    if (len == 0) {
+      return null;
+    }
+    int blockLength = blockLength(header, 0);
+    if (len < header.length || blockLength < 0 || blockLength > MAX_BLOCK_SIZE) {
+      throw new IOException("Invalid compressed block header");
+    }
+    byte[] block = Arrays.copyOf(header, blockLength);
+    if (readFully(inputStream, block, header.length) != blockLength) {
+      throw new IOException("Truncated compressed block, expected " + blockLength + " bytes");
+    }
+    return block;
+  }
+
+  static byte[] decompress(byte[] block) throws IOException {
+    int dataLength = block.length - BLOCK_HEADER_LENGTH - BLOCK_TRAILER_LENGTH;
+    int size = getInt(block, block.length - 4);
+    if (blockLength(block, 0) != block.length || dataLength < 0 || size < 0 || size > MAX_BLOCK_SIZE) {
+      throw new IOException("Invalid compressed block");
+    }
+    byte[] data = new byte[size];
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(block, BLOCK_HEADER_LENGTH, dataLength);
+      int offset = 0;
+      byte[] overflow = new byte[1];
+      while (!inflater.finished()) {
+        if (offset < size) {
+          offset += inflater.inflate(data, offset, size - offset);
+        } else if (inflater.inflate(overflow) > 0) {
+          throw new IOException("Compressed block is larger than its recorded size " + size);
+        }
+        if (!inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Truncated compressed block");
+        }
+      }
+      if (offset != size || inflater.getRemaining() != 0) {
+        throw new IOException("Compressed block does not match its recorded size " + size);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid compressed block", e);
+    } finally {
+      inflater.end();
+    }
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    if ((int) crc.getValue() != getInt(block, block.length - BLOCK_TRAILER_LENGTH)) {
+      throw new IOException("Checksum mismatch for compressed block");
+    }
+    return data;
+  }
+
+  private static void writeInt(OutputStream out, int value) throws IOException {
+    out.write(value);
+    out.write(value >>> 8);
+    out.write(value >>> 16);
+    out.write(value >>> 24);
+  }
+
+  private static void putInt(byte[] data, int offset, int value) {
+    data[offset] = (byte) value;
+    data[offset + 1] = (byte) (value >>> 8);
+    data[offset + 2] = (byte) (value >>> 16);
+    data[offset + 3] = (byte) (value >>> 24);
+  }
+
+  private static int getInt(byte[] data, int offset) {
+    return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+  }
+
   /**
    * Cancel the snapshot upload. Checks if a multipart upload is in progress and aborts the upload. Marks the upload as aborted for
    * {@link SnapshotTransferCleaner} to clean up on its duty cycles
@@ -449,12 +576,31 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   }
 
   /**
-   * Downloads the compressed snapshot from objectstorage gateway to the filesystem
+   * Downloads the compressed snapshot from objectstorage gateway to the storage resource.
+   * 
+   * Snapshots uploaded in multiple parts are downloaded using concurrent ranged requests for the parts recorded in the part index. Compressed
+   * blocks are decompressed in parallel and written to the storage resource in order. Snapshots uploaded before block lengths were recorded are
+   * decompressed as a single stream.
    */
   public void download(StorageResource storageResource) throws SnapshotTransferException {
     validateInput();
     loadTransferConfig();
 
+    SnapshotDownloadMetrics.downloadStarted();
+    try {
+      PartIndex partIndex = downloadPartIndex();
+      if (partIndex != null) {
+        LOG.info("Downloading snapshot " + snapshotId + " in " + partIndex.getPartCount() + " parts using concurrent requests");
+        writeBlocks(new PartBlockSource(partIndex), storageResource, partIndex.getUncompressedSize());
+      } else {
+        downloadObject(storageResource);
+      }
+    } finally {
+      SnapshotDownloadMetrics.downloadFinished();
+    }
+  }
+
+  private void downloadObject(StorageResource storageResource) throws SnapshotTransferException {
     S3Object snapObj = download();
 
     if (snapObj != null && snapObj.getObjectContent() != null) {
@@ -463,7 +609,12 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       GZIPInputStream gzipInputStream = null;
 
       try {
-        gzipInputStream = new GZIPInputStream(new BufferedInputStream(snapObj.getObjectContent(), buffer.length * 3), buffer.length * 2);
+        BufferedInputStream inputStream = new BufferedInputStream(snapObj.getObjectContent(), buffer.length * 3);
+        if (hasBlockLength(inputStream)) { // Split the stream into blocks for parallel decompression
+          writeBlocks(new StreamBlockSource(inputStream), storageResource, null);
+          return;
+        }
+        gzipInputStream = new GZIPInputStream(inputStream, buffer.length * 2);
 
         if (storageResource.isDownloadSynchronous()) { // Download and unzip snapshot to the storage device directly
           OutputStream outputStream = null;
@@ -472,6 +623,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             while ((len = gzipInputStream.read(buffer)) > 0) {
               // Write to the output stream
               outputStream.write(buffer, 0, len);
+              SnapshotDownloadMetrics.written(len);
             }
 
             // Close the streams and free the resources
@@ -503,6 +655,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             part.setIsLast(Boolean.FALSE);
 
             while ((len = gzipInputStream.read(buffer)) > 0) {
+              SnapshotDownloadMetrics.written(len);
               if ((bytesWritten + len) < writeBufferSize) {
                 fileOutputStream.write(buffer, 0, len);
                 bytesWritten += len;
@@ -594,6 +747,117 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     }
   }
 
+  private static boolean hasBlockLength(InputStream inputStream) throws IOException {
+    byte[] header = new byte[BLOCK_HEADER_LENGTH];
+    inputStream.mark(header.length);
+    int len = readFully(inputStream, header);
+    inputStream.reset();
+    return len == header.length && blockLength(header, 0) > 0;
+  }
+
+  /**
+   * Decompress blocks from the source in parallel and write them to the storage resource in order
+   */
+  private void writeBlocks(BlockSource source, StorageResource storageResource, Long expectedSize) throws SnapshotTransferException {
+    Deque<Future<byte[]>> decompressBlockFutures = new ArrayDeque<Future<byte[]>>();
+    int decompressWindow = 2 * Runtime.getRuntime().availableProcessors();
+    OutputStream outputStream = null;
+    long bytesWritten = 0;
+
+    try {
+      outputStream = storageResource.getOutputStream();
+      boolean endOfInput = false;
+      while (!endOfInput || !decompressBlockFutures.isEmpty()) {
+        // Keep the decompression threads busy while blocks are written
+        while (!endOfInput && decompressBlockFutures.size() < decompressWindow) {
+          byte[] block = source.next();
+          if (block != null) {
+            decompressBlockFutures.add(SnapshotTransferThreadPool.add(new DecompressBlockTask(block)));
+          } else {
+            endOfInput = true;
+          }
+        }
+        if (decompressBlockFutures.isEmpty()) {
+          break;
+        }
+
+        byte[] data = decompressBlockFutures.remove().get();
+        outputStream.write(data);
+        bytesWritten += data.length;
+        SnapshotDownloadMetrics.written(data.length);
+      }
+      outputStream.close();
+
+      if (expectedSize != null && expectedSize != bytesWritten) {
+        throw new SnapshotTransferException("Downloaded " + bytesWritten + " bytes for snapshot " + snapshotId + ", expected " + expectedSize);
+      }
+      LOG.info("Downloaded snapshot " + snapshotId + " to storage backend");
+    } catch (SnapshotTransferException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new SnapshotTransferException("Failed to download snapshot " + snapshotId + " to storage backend", e);
+    } finally {
+      source.close();
+      for (Future<byte[]> decompressBlockFuture : decompressBlockFutures) {
+        decompressBlockFuture.cancel(true);
+      }
+      if (outputStream != null) {
+        try {
+          outputStream.close();
+        } catch (Exception e) {
+
+        }
+      }
+    }
+  }
+
+  /**
+   * Part index for the snapshot, null if the snapshot was not uploaded in parts or the index is not available
+   */
+  private PartIndex downloadPartIndex() {
+    try {
+      S3Object indexObj = retryAfterRefresh(new Function<GetObjectRequest, S3Object>() {
+
+        @Override
+        @Nullable
+        public S3Object apply(@Nullable GetObjectRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          return eucaS3Client.getObject(arg0);
+        }
+
+      }, new GetObjectRequest(bucketName, keyName + PART_INDEX_SUFFIX), REFRESH_TOKEN_RETRIES);
+      try (InputStream inputStream = indexObj.getObjectContent()) {
+        return PartIndex.parse(inputStream);
+      }
+    } catch (Exception e) {
+      LOG.debug("Part index not available for snapshot " + snapshotId + ", downloading as a single object: " + e.getMessage());
+      return null;
+    }
+  }
+
+  private void uploadPartIndex(PartIndex partIndex) {
+    final byte[] content = partIndex.toBytes();
+    ObjectMetadata objectMetadata = new ObjectMetadata();
+    objectMetadata.setContentLength(content.length);
+    objectMetadata.setContentType("text/plain");
+
+    try {
+      retryAfterRefresh(new Function<PutObjectRequest, PutObjectResult>() {
+
+        @Override
+        @Nullable
+        public PutObjectResult apply(@Nullable PutObjectRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          arg0.setInputStream(new ByteArrayInputStream(content));
+          return eucaS3Client.putObject(arg0);
+        }
+
+      }, new PutObjectRequest(bucketName, keyName + PART_INDEX_SUFFIX, null, objectMetadata), REFRESH_TOKEN_RETRIES);
+    } catch (Exception e) {
+      LOG.warn("Failed to upload part index for snapshot " + snapshotId + ", it will be downloaded using a single request", e);
+    }
+  }
+
   /**
    * Delete the snapshot from objectstorage gateway
    */
@@ -617,6 +881,21 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       throw new SnapshotTransferException("Failed to delete snapshot from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName
           + ", key=" + keyName, e);
     }
+
+    try {
+      retryAfterRefresh(new Function<DeleteObjectRequest, String>() {
+
+        @Override
+        @Nullable
+        public String apply(@Nullable DeleteObjectRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          eucaS3Client.deleteObject(arg0);
+          return null;
+        }
+      }, new DeleteObjectRequest(bucketName, keyName + PART_INDEX_SUFFIX), REFRESH_TOKEN_RETRIES);
+    } catch (Exception e) {
+      LOG.debug("Failed to delete part index for snapshot " + snapshotId + " from objectstorage", e);
+    }
   }
 
   @Override
@@ -681,6 +960,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     this.transferTimeout = info.getSnapshotTransferTimeoutInHours();
     this.readBufferSize = info.getReadBufferSizeInMB() * 1024 * 1024;
     this.writeBufferSize = info.getWriteBufferSizeInMB() * 1024 * 1024;
+    SnapshotTransferMemory.setLimit(info.getMaxSnapshotTransferMemoryInMB() * 1024L * 1024L);
   }
 
   private void validateInput() throws SnapshotTransferException {
@@ -757,8 +1037,13 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   }
 
   private S3Object download() throws SnapshotTransferException {
+    return download(new GetObjectRequest(bucketName, keyName));
+  }
+
+  private S3Object download(GetObjectRequest request) throws SnapshotTransferException {
     try {
-      LOG.debug("Downloading snapshot from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName);
+      LOG.debug("Downloading snapshot from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName
+          + (request.getRange() != null ? ", range=" + request.getRange()[0] + "-" + request.getRange()[1] : ""));
       return retryAfterRefresh(new Function<GetObjectRequest, S3Object>() {
 
         @Override
@@ -768,7 +1053,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
           return eucaS3Client.getObject(arg0);
         }
 
-      }, new GetObjectRequest(bucketName, keyName), REFRESH_TOKEN_RETRIES);
+      }, request, REFRESH_TOKEN_RETRIES);
     } catch (Exception e) {
       LOG.warn("Failed to download snapshot from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName);
       throw new SnapshotTransferException("Failed to download snapshot from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName
@@ -776,8 +1061,9 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     }
   }
 
-  private String uploadSnapshotAsSingleObject(final String compressedSnapFileName, Long actualSize, Long uncompressedSize,
-      final SnapshotProgressCallback callback) throws SnapshotUploadObjectException {
+  private String uploadSnapshotAsSingleObject(final PartBuffer data, Long uncompressedSize, final SnapshotProgressCallback callback)
+      throws SnapshotUploadObjectException {
+    Long actualSize = (long) data.size();
     callback.setUploadSize(actualSize);
     ObjectMetadata objectMetadata = new ObjectMetadata();
     Map<String, String> userMetadataMap = new HashMap<String, String>();
@@ -786,7 +1072,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     objectMetadata.setContentLength(actualSize);
 
     try {
-      LOG.debug("Uploading " + compressedSnapFileName);
+      LOG.debug("Uploading " + snapshotId + " as a single object of " + actualSize + " bytes");
       PutObjectResult putResult = retryAfterRefresh(new Function<PutObjectRequest, PutObjectResult>() {
 
         @Override
@@ -794,13 +1080,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
         public PutObjectResult apply(@Nullable PutObjectRequest arg0) {
           eucaS3Client.refreshEndpoint();
           // EUCA-10311 Set the input stream in put request. Doing it here to ensure that input stream is set before every attempt to put object
-          try {
-            arg0.setInputStream(new FileInputStreamWithCallback(new File(compressedSnapFileName), callback));
-          } catch (Exception e) {
-            LOG.warn("Failed to upload snapshot to objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName
-                + ", reason: unable to initialize FileInputStreamWithCallback for file " + compressedSnapFileName, e);
-            Exceptions.toUndeclared(e);
-          }
+          arg0.setInputStream(data.getInputStream(callback));
           return eucaS3Client.putObject(arg0);
         }
 
@@ -808,10 +1088,8 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
       return putResult.getETag();
     } catch (Exception e) {
-      LOG.warn("Failed to upload object " + compressedSnapFileName, e);
-      throw new SnapshotUploadObjectException("Failed to upload object " + compressedSnapFileName, e);
-    } finally {
-      deleteFile(compressedSnapFileName);
+      LOG.warn("Failed to upload object for snapshot " + snapshotId, e);
+      throw new SnapshotUploadObjectException("Failed to upload object for snapshot " + snapshotId, e);
     }
   }
 
@@ -848,7 +1126,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     return initResponse.getUploadId();
   }
 
-  private PartETag uploadPart(SnapshotPart part) throws SnapshotUploadPartException {
+  private PartETag uploadPart(SnapshotPart part, final PartBuffer data) throws SnapshotUploadPartException {
     try {
       part = part.updateStateUploading();
     } catch (Exception e) {
@@ -864,18 +1142,18 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             @Nullable
             public UploadPartResult apply(@Nullable UploadPartRequest arg0) {
               eucaS3Client.refreshEndpoint();
+              // Set the input stream for every attempt as a previous attempt may have consumed it
+              arg0.setInputStream(data.getInputStream(null));
               return eucaS3Client.uploadPart(arg0);
             }
           },
               new UploadPartRequest().withBucketName(part.getBucketName()).withKey(part.getKeyName()).withUploadId(part.getUploadId())
-                  .withPartNumber(part.getPartNumber()).withPartSize(part.getSize()).withFile(new File(part.getFileName())), REFRESH_TOKEN_RETRIES);
+                  .withPartNumber(part.getPartNumber()).withPartSize(part.getSize()), REFRESH_TOKEN_RETRIES);
 
       return uploadPartResult.getPartETag();
     } catch (Exception e) {
       LOG.warn("Failed to upload part " + part, e);
       throw new SnapshotUploadPartException("Failed to upload part " + part, e);
-    } finally {
-      deleteFile(part.getFileName());
     }
   }
 
@@ -974,87 +1252,446 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     return output;
   }
 
-  public static abstract class UploadPart implements Callable<List<PartETag>> {
+  public static abstract class CompressBlock implements Callable<byte[]> {
   }
 
-  class UploadPartTask extends UploadPart {
+  static class CompressBlockTask extends CompressBlock {
 
-    private ArrayBlockingQueue<SnapshotPart> partQueue;
-    private SnapshotProgressCallback progressCallback;
-    private List<PartETag> partETags;
+    private byte[] block;
+    private int length;
 
-    public UploadPartTask(ArrayBlockingQueue<SnapshotPart> partQueue, SnapshotProgressCallback progressCallback) throws EucalyptusCloudException {
-      if (partQueue == null || progressCallback == null) {
-        throw new EucalyptusCloudException("Invalid constructor parameters. Cannot proceed without part queue and or snapshot progress callback");
-      }
-      this.partQueue = partQueue;
-      this.progressCallback = progressCallback;
-      this.partETags = new ArrayList<PartETag>();
+    public CompressBlockTask(byte[] block, int length) {
+      this.block = block;
+      this.length = length;
     }
 
     @Override
-    public List<PartETag> call() throws Exception {
-      Boolean error = Boolean.FALSE;
-      Boolean isLast = Boolean.FALSE;
+    public byte[] call() throws Exception {
+      return compress(block, length);
+    }
+  }
 
+  public static abstract class DecompressBlock implements Callable<byte[]> {
+  }
+
+  static class DecompressBlockTask extends DecompressBlock {
+
+    private byte[] block;
+
+    public DecompressBlockTask(byte[] block) {
+      this.block = block;
+    }
+
+    @Override
+    public byte[] call() throws Exception {
       try {
-        do {
-          SnapshotPart part = null;
+        return decompress(block);
+      } finally {
+        block = null;
+      }
+    }
+  }
 
-          try {
-            part = partQueue.take();
-          } catch (InterruptedException ex) { // Should rarely happen
-            error = Boolean.TRUE;
-            LOG.error("Failed to upload snapshot " + snapshotId + " due to an retrieving parts from queue", ex);
-            return null;
+  /**
+   * Compressed and uncompressed sizes of the parts of a multipart snapshot upload. Parts always end on a block boundary so each part can be
+   * downloaded and decompressed independently.
+   */
+  static class PartIndex {
+
+    private final List<Long> offsets = new ArrayList<Long>();
+    private final List<Long> compressedSizes = new ArrayList<Long>();
+    private long compressedSize = 0;
+    private long uncompressedSize = 0;
+    private final StringBuilder content = new StringBuilder();
+
+    public void add(long partCompressedSize, long partUncompressedSize) {
+      offsets.add(compressedSize);
+      compressedSizes.add(partCompressedSize);
+      compressedSize += partCompressedSize;
+      uncompressedSize += partUncompressedSize;
+      content.append(partCompressedSize).append(' ').append(partUncompressedSize).append('\n');
+    }
+
+    public int getPartCount() {
+      return offsets.size();
+    }
+
+    public long getOffset(int part) {
+      return offsets.get(part);
+    }
+
+    public long getCompressedSize(int part) {
+      return compressedSizes.get(part);
+    }
+
+    public long getUncompressedSize() {
+      return uncompressedSize;
+    }
+
+    public byte[] toBytes() {
+      return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static PartIndex parse(InputStream inputStream) throws IOException {
+      PartIndex partIndex = new PartIndex();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (StringUtils.isBlank(line)) {
+          continue;
+        }
+        String[] sizes = line.trim().split(" ");
+        try {
+          long partCompressedSize = Long.parseLong(sizes[0]);
+          long partUncompressedSize = Long.parseLong(sizes[1]);
+          if (sizes.length != 2 || partCompressedSize <= 0 || partUncompressedSize < 0) {
+            throw new IOException("Invalid part index entry: " + line);
           }
+          partIndex.add(partCompressedSize, partUncompressedSize);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+          throw new IOException("Invalid part index entry: " + line, e);
+        }
+      }
+      if (partIndex.getPartCount() == 0) {
+        throw new IOException("Empty part index");
+      }
+      return partIndex;
+    }
+  }
 
-          if (part != null) {
-            if (part.getState().equals(SnapshotPartState.created) || part.getState().equals(SnapshotPartState.uploading)
-                || part.getState().equals(SnapshotPartState.failed)) {
-              isLast = part.getIsLast();
-              try {
-                PartETag partEtag = uploadPart(part);
-                partETags.add(partEtag);
-
-                progressCallback.updateUploadProgress(part.getInputFileBytesRead());
-                try {
-                  part = part.updateStateUploaded(partEtag.getETag());
-                } catch (Exception e) {
-                  LOG.debug("Failed to update part status in DB. Moving on. " + part);
-                }
+  interface BlockSource {
 
-                LOG.debug("Uploaded " + part);
-              } catch (Exception e) {
-                error = Boolean.TRUE;
-                // update part status in database
-                try {
-                  part = part.updateStateFailed();
-                } catch (Throwable t) {
-                  LOG.debug("Failed to update part status in DB for " + part, t);
-                }
-                return null;
-              }
-            } else {
-              LOG.warn("Not sure what to do with part in state " + part.getState() + ". Ignoring " + part);
-            }
-          } else {
-            error = Boolean.TRUE;
-            LOG.warn("Null reference snapshot part found in queue for " + snapshotId + ". Aborting snapshot upload");
-            return null;
+    /**
+     * Next compressed block, null when there are no more blocks
+     */
+    byte[] next() throws Exception;
+
+    void close();
+  }
+
+  static class StreamBlockSource implements BlockSource {
+
+    private InputStream inputStream;
+
+    public StreamBlockSource(InputStream inputStream) {
+      this.inputStream = inputStream;
+    }
+
+    @Override
+    public byte[] next() throws Exception {
+      byte[] block = readBlock(inputStream);
+      if (block != null) {
+        SnapshotDownloadMetrics.received(block.length);
+      }
+      return block;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /**
+   * Blocks from the snapshot parts in order. Parts are downloaded ahead using concurrent ranged requests, each part reserves its compressed size
+   * from the {@link SnapshotTransferMemory} budget shared with other transfers and returns it once its blocks have been handed out. Parts are only
+   * downloaded ahead while the budget is available, the source waits for the budget only when it holds no other parts.
+   */
+  class PartBlockSource implements BlockSource {
+
+    private PartIndex partIndex;
+    private Deque<Future<List<byte[]>>> downloadPartFutures = new ArrayDeque<Future<List<byte[]>>>();
+    private Deque<SnapshotTransferMemory.Reservation> reservations = new ArrayDeque<SnapshotTransferMemory.Reservation>();
+    private SnapshotTransferMemory.Reservation blocksReservation = null;
+    private Deque<byte[]> blocks = new ArrayDeque<byte[]>();
+    private int nextPart = 0;
+
+    public PartBlockSource(PartIndex partIndex) {
+      this.partIndex = partIndex;
+    }
+
+    @Override
+    public byte[] next() throws Exception {
+      while (blocks.isEmpty()) {
+        if (blocksReservation != null) { // blocks of the previous part have been handed out
+          blocksReservation.release();
+          blocksReservation = null;
+        }
+        while (nextPart < partIndex.getPartCount()) {
+          long length = partIndex.getCompressedSize(nextPart);
+          SnapshotTransferMemory.Reservation reservation =
+              downloadPartFutures.isEmpty() ? SnapshotTransferMemory.reserve(length) : SnapshotTransferMemory.tryReserve(length);
+          if (reservation == null) {
+            break;
           }
-        } while (!isLast);
+          try {
+            downloadPartFutures.add(SnapshotTransferThreadPool.add(new DownloadPartTask(nextPart + 1, partIndex.getOffset(nextPart), length)));
+          } catch (Exception e) {
+            reservation.release();
+            throw e;
+          }
+          reservations.add(reservation);
+          nextPart++;
+        }
+        if (downloadPartFutures.isEmpty()) {
+          return null;
+        }
+        blocksReservation = reservations.remove();
+        blocks = new ArrayDeque<byte[]>(downloadPartFutures.remove().get(transferTimeout, TimeUnit.HOURS));
+      }
+      return blocks.remove();
+    }
+
+    @Override
+    public void close() {
+      for (Future<List<byte[]>> downloadPartFuture : downloadPartFutures) {
+        downloadPartFuture.cancel(true);
+      }
+      for (SnapshotTransferMemory.Reservation reservation : reservations) {
+        reservation.release();
+      }
+      if (blocksReservation != null) {
+        blocksReservation.release();
+      }
+      blocks.clear();
+    }
+  }
+
+  public static abstract class DownloadPart implements Callable<List<byte[]>> {
+  }
+
+  class DownloadPartTask extends DownloadPart {
+
+    private int partNumber;
+    private long offset;
+    private long length;
+
+    public DownloadPartTask(int partNumber, long offset, long length) {
+      this.partNumber = partNumber;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public List<byte[]> call() throws Exception {
+      GetObjectRequest request = new GetObjectRequest(bucketName, keyName);
+      request.setRange(offset, offset + length - 1);
+      S3Object partObj = download(request);
+      if (partObj.getObjectMetadata().getContentLength() != length) {
+        partObj.getObjectContent().close();
+        throw new SnapshotTransferException("Unexpected content length " + partObj.getObjectMetadata().getContentLength() + " for part " + partNumber
+            + " of snapshot " + snapshotId + ", expected " + length);
+      }
 
-        return partETags;
+      List<byte[]> blocks = new ArrayList<byte[]>();
+      long bytesRead = 0;
+      try (InputStream inputStream = new BufferedInputStream(partObj.getObjectContent(), 64 * 1024)) {
+        byte[] block;
+        while (bytesRead < length && (block = readBlock(inputStream)) != null) {
+          blocks.add(block);
+          bytesRead += block.length;
+          SnapshotDownloadMetrics.received(block.length);
+        }
+      }
+      if (bytesRead != length) {
+        throw new SnapshotTransferException("Downloaded " + bytesRead + " bytes for part " + partNumber + " of snapshot " + snapshotId + ", expected "
+            + length);
+      }
+      LOG.debug("Downloaded part " + partNumber + " of snapshot " + snapshotId + " (" + blocks.size() + " blocks)");
+      return blocks;
+    }
+  }
+
+  /**
+   * In memory buffer for a compressed part. The part is held as the compressed blocks written to it so memory is only allocated as the part is
+   * filled, and it can be read for each upload attempt without copying. The memory for the part is reserved from the budget up front and returned
+   * when the buffer is released.
+   */
+  static class PartBuffer {
+
+    private final SnapshotTransferMemory.Reservation reservation;
+    private final List<byte[]> blocks = new ArrayList<byte[]>();
+    private int size = 0;
+
+    public PartBuffer(SnapshotTransferMemory.Reservation reservation) {
+      this.reservation = reservation;
+    }
+
+    public synchronized void write(byte[] block) {
+      blocks.add(block);
+      size += block.length;
+    }
+
+    public synchronized int size() {
+      return size;
+    }
+
+    /**
+     * Return the reserved memory beyond the current size of the part, invoke once the part is complete
+     */
+    public void trim() {
+      reservation.trim(size());
+    }
+
+    public synchronized void release() {
+      blocks.clear();
+      size = 0;
+      reservation.release();
+    }
+
+    /**
+     * Stream for an upload attempt, reports each block read to the callback if there is one
+     */
+    public synchronized InputStream getInputStream(SnapshotProgressCallback callback) {
+      return new PartInputStream(new ArrayList<byte[]>(blocks), callback);
+    }
+  }
+
+  /**
+   * Reads the blocks of a part in order. Supports mark and reset so that the client can retry a request without buffering the part again.
+   */
+  static class PartInputStream extends InputStream {
+
+    private final List<byte[]> blocks;
+    private final SnapshotProgressCallback callback;
+    private int block = 0;
+    private int position = 0;
+    private int markBlock = 0;
+    private int markPosition = 0;
+
+    PartInputStream(List<byte[]> blocks, SnapshotProgressCallback callback) {
+      this.blocks = blocks;
+      this.callback = callback;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (block < blocks.size() && position == blocks.get(block).length) {
+        block++;
+        position = 0;
+      }
+      if (block == blocks.size()) {
+        return -1;
+      }
+      int count = Math.min(len, blocks.get(block).length - position);
+      System.arraycopy(blocks.get(block), position, b, off, count);
+      position += count;
+      if (callback != null) {
+        callback.updateUploadProgress(count);
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = 0;
+      while (skipped < n && block < blocks.size()) {
+        int count = (int) Math.min(n - skipped, blocks.get(block).length - position);
+        position += count;
+        skipped += count;
+        if (position == blocks.get(block).length) {
+          block++;
+          position = 0;
+        }
+      }
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      long available = 0;
+      for (int i = block; i < blocks.size(); i++) {
+        available += blocks.get(i).length;
+      }
+      return (int) Math.min(Integer.MAX_VALUE, available - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+      markBlock = block;
+      markPosition = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+      block = markBlock;
+      position = markPosition;
+    }
+  }
+
+  /**
+   * Upload task for a part together with the buffer it holds so that the buffer memory is returned even if the task is cancelled before it runs
+   */
+  static class PartUpload {
+
+    private final Future<PartETag> future;
+    private final PartBuffer data;
+
+    PartUpload(Future<PartETag> future, PartBuffer data) {
+      this.future = future;
+      this.data = data;
+    }
+
+    void cancel() {
+      future.cancel(true);
+      data.release();
+    }
+  }
+
+  public static abstract class UploadPart implements Callable<PartETag> {
+  }
+
+  class UploadPartTask extends UploadPart {
+
+    private SnapshotPart part;
+    private PartBuffer data;
+    private SnapshotProgressCallback progressCallback;
+
+    public UploadPartTask(SnapshotPart part, PartBuffer data, SnapshotProgressCallback progressCallback) throws EucalyptusCloudException {
+      if (part == null || data == null || progressCallback == null) {
+        throw new EucalyptusCloudException("Invalid constructor parameters. Cannot proceed without part, data and or snapshot progress callback");
+      }
+      this.part = part;
+      this.data = data;
+      this.progressCallback = progressCallback;
+    }
+
+    @Override
+    public PartETag call() throws Exception {
+      try {
+        PartETag partEtag = uploadPart(part, data);
+        progressCallback.updateUploadProgress(part.getInputFileBytesRead());
+        try {
+          part = part.updateStateUploaded(partEtag.getETag());
+        } catch (Exception e) {
+          LOG.debug("Failed to update part status in DB. Moving on. " + part);
+        }
+
+        LOG.debug("Uploaded " + part);
+        return partEtag;
       } catch (Throwable t) {
-        error = Boolean.TRUE;
-        LOG.warn("Failed to process snapshot uplodad for " + snapshotId, t);
+        LOG.warn("Failed to process snapshot upload for " + snapshotId, t);
+        // update part status in database
+        try {
+          part = part.updateStateFailed();
+        } catch (Throwable t2) {
+          LOG.debug("Failed to update part status in DB for " + part, t2);
+        }
         return null;
       } finally {
-        if (error && partQueue != null) { // drain the queue so the upload process does not hang
-          LOG.debug("Clearing part queue for " + snapshotId + " due to a previous error uploading");
-          partQueue.clear();
-        }
+        data.release(); // release the part memory as soon as possible
       }
     }
   }
@@ -1064,14 +1701,16 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
   class CompleteMpuTask extends CompleteUpload {
 
-    private Future<List<PartETag>> uploadTaskFuture;
+    private List<PartUpload> partUploads;
     private SnapshotUploadInfo snapUploadInfo;
     private Integer totalParts;
+    private PartIndex partIndex;
 
-    public CompleteMpuTask(Future<List<PartETag>> uploadTaskFuture, SnapshotUploadInfo snapUploadInfo, Integer totalParts) {
-      this.uploadTaskFuture = uploadTaskFuture;
+    public CompleteMpuTask(List<PartUpload> partUploads, SnapshotUploadInfo snapUploadInfo, Integer totalParts, PartIndex partIndex) {
+      this.partUploads = partUploads;
       this.snapUploadInfo = snapUploadInfo;
       this.totalParts = totalParts;
+      this.partIndex = partIndex;
     }
 
     @Override
@@ -1079,10 +1718,18 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       Boolean error = Boolean.FALSE;
       String etag = null;
       try {
-        List<PartETag> partETags = uploadTaskFuture.get(transferTimeout, TimeUnit.HOURS);
-        if (partETags != null && partETags.size() == totalParts) {
+        long deadline = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(transferTimeout);
+        List<PartETag> partETags = new ArrayList<PartETag>();
+        for (PartUpload partUpload : partUploads) {
+          PartETag partETag = partUpload.future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+          if (partETag != null) {
+            partETags.add(partETag);
+          }
+        }
+        if (partETags.size() == totalParts) {
           try {
             etag = finalizeMultipartUpload(partETags);
+            uploadPartIndex(partIndex);
             // markSnapshotAvailable();
             try {
               snapUploadInfo = snapUploadInfo.updateStateUploaded(etag);
@@ -1100,13 +1747,16 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
         }
       } catch (TimeoutException tex) {
         error = Boolean.TRUE;
-        LOG.error("Failed to upload " + snapshotId + ". Complete upload task timed out waiting on upload part task after " + transferTimeout
+        LOG.error("Failed to upload " + snapshotId + ". Complete upload task timed out waiting on upload part tasks after " + transferTimeout
             + " hours");
       } catch (Exception ex) {
         error = Boolean.TRUE;
         LOG.error("Failed to upload " + snapshotId, ex);
       } finally {
         if (error) {
+          for (PartUpload partUpload : partUploads) {
+            partUpload.cancel();
+          }
           abortUpload(snapUploadInfo);
           etag = null;
         }
@@ -1119,17 +1769,15 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
     private SnapshotPart part;
     private SnapshotUploadInfo snapUploadInfo;
-    private String pathToFile;
-    private Long actualSize;
+    private PartBuffer data;
     private Long uncompressedSize;
     private SnapshotProgressCallback callback;
 
-    public UploadObjectTask(SnapshotPart part, SnapshotUploadInfo snapUploadInfo, String pathToFile, Long actualSize, Long uncompressedSize,
+    public UploadObjectTask(SnapshotPart part, SnapshotUploadInfo snapUploadInfo, PartBuffer data, Long uncompressedSize,
         SnapshotProgressCallback callback) {
       this.part = part;
       this.snapUploadInfo = snapUploadInfo;
-      this.pathToFile = pathToFile;
-      this.actualSize = actualSize;
+      this.data = data;
       this.uncompressedSize = uncompressedSize;
       this.callback = callback;
     }
@@ -1138,17 +1786,19 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     public String call() throws Exception {
       String etag = null;
       try {
-        etag = uploadSnapshotAsSingleObject(pathToFile, actualSize, uncompressedSize, callback);
+        etag = uploadSnapshotAsSingleObject(data, uncompressedSize, callback);
         try {
           part = part.updateStateUploaded(etag);
           snapUploadInfo = snapUploadInfo.updateStateUploaded(etag);
         } catch (Exception e) {
           LOG.debug("Failed to update status in DB for " + snapUploadInfo);
         }
-        LOG.debug("Uploaded " + pathToFile + " to objectstorage");
+        LOG.debug("Uploaded " + snapshotId + " to objectstorage");
       } catch (Exception e) {
         LOG.warn("Failed to upload " + snapshotId, e);
         abortUpload(snapUploadInfo);
+      } finally {
+        data.release();
       }
       return etag;
     }
@@ -0,0 +1,317 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixed size block hashes for a snapshot and the changed block delta format built from them.
+ * 
+ * A delta contains the manifest of the new snapshot followed by records for each block that differs from the parent manifest. Blocks of zeros
+ * and blocks identical to an earlier block in the same delta are stored as references rather than data. Applying a delta to a copy of the
+ * parent snapshot reproduces the new snapshot, so a chain of deltas is restored by applying each in turn to the base full snapshot.
+ */
+public class SnapshotBlockManifest {
+
+  public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+  public static final String MANIFEST_SUFFIX = ".manifest";
+
+  private static final int MANIFEST_MAGIC = 0x45424d46; // EBMF
+  private static final int DELTA_MAGIC = 0x45424d44; // EBMD
+  private static final int VERSION = 1;
+  private static final String HASH_ALGORITHM = "SHA-256";
+  private static final int HASH_LENGTH = 32;
+  private static final int HEADER_LENGTH = 4 + 4 + 4 + 8 + 4; // magic, version, block size, size, block count
+
+  private static final byte RECORD_DATA = 0;
+  private static final byte RECORD_ZERO = 1;
+  private static final byte RECORD_COPY = 2;
+  private static final int RECORD_END = -1;
+
+  private final int blockSize;
+  private final long size;
+  private final byte[] hashes;
+
+  private SnapshotBlockManifest(int blockSize, long size, byte[] hashes) {
+    this.blockSize = blockSize;
+    this.size = size;
+    this.hashes = hashes;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public int getBlockCount() {
+    return hashes.length / HASH_LENGTH;
+  }
+
+  /**
+   * Manifest for the given snapshot file.
+   */
+  public static SnapshotBlockManifest compute(File file, int blockSize) throws IOException {
+    MessageDigest digest = newDigest();
+    long size = file.length();
+    byte[] hashes = new byte[blockCount(size, blockSize) * HASH_LENGTH];
+    byte[] block = new byte[blockSize];
+    try (InputStream in = new FileInputStream(file)) {
+      for (int index = 0; index < hashes.length / HASH_LENGTH; index++) {
+        int len = readBlock(in, block, blockLength(size, blockSize, index));
+        digest.update(block, 0, len);
+        System.arraycopy(digest.digest(), 0, hashes, index * HASH_LENGTH, HASH_LENGTH);
+      }
+    }
+    return new SnapshotBlockManifest(blockSize, size, hashes);
+  }
+
+  /**
+   * Manifest cached alongside the given snapshot file, computed and cached if not present or unreadable.
+   */
+  public static SnapshotBlockManifest forSnapshotFile(File file, int blockSize) throws IOException {
+    File manifestFile = new File(file.getPath() + MANIFEST_SUFFIX);
+    if (manifestFile.isFile() && manifestFile.lastModified() >= file.lastModified()) {
+      try {
+        SnapshotBlockManifest manifest = read(manifestFile);
+        if (manifest.getBlockSize() == blockSize && manifest.getSize() == file.length()) {
+          return manifest;
+        }
+      } catch (IOException e) {
+        // recompute below
+      }
+    }
+    SnapshotBlockManifest manifest = compute(file, blockSize);
+    manifest.write(manifestFile);
+    return manifest;
+  }
+
+  public static SnapshotBlockManifest read(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MANIFEST_MAGIC) {
+        throw new IOException("Invalid block manifest " + file);
+      }
+      return readBody(in);
+    }
+  }
+
+  public void write(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MANIFEST_MAGIC);
+      writeBody(out);
+    }
+  }
+
+  /**
+   * Write a delta of the source snapshot file against the parent manifest.
+   * 
+   * @param parent manifest of the parent snapshot, all blocks are included if null
+   * @return the manifest of the source snapshot
+   */
+  public static SnapshotBlockManifest writeDelta(File source, SnapshotBlockManifest parent, File delta, int blockSize) throws IOException {
+    MessageDigest digest = newDigest();
+    long size = source.length();
+    int blockCount = blockCount(size, blockSize);
+    byte[] hashes = new byte[blockCount * HASH_LENGTH];
+    byte[] block = new byte[blockSize];
+    boolean comparable = parent != null && parent.getBlockSize() == blockSize;
+
+    // The manifest heads the delta but is only known once the source has been read, so reserve space and fill it in afterwards
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(delta), 256 * 1024));
+        InputStream in = new FileInputStream(source)) {
+      out.write(new byte[HEADER_LENGTH]);
+      out.write(hashes);
+      Map<ByteBuffer, Integer> writtenBlocks = new HashMap<ByteBuffer, Integer>();
+      for (int index = 0; index < blockCount; index++) {
+        int len = readBlock(in, block, blockLength(size, blockSize, index));
+        digest.update(block, 0, len);
+        byte[] hash = digest.digest();
+        System.arraycopy(hash, 0, hashes, index * HASH_LENGTH, HASH_LENGTH);
+        if (comparable && index < parent.getBlockCount() && blockLength(parent.getSize(), blockSize, index) == len
+            && parent.hashEquals(index, hash)) {
+          continue; // unchanged
+        }
+        out.writeInt(index);
+        Integer copyIndex = writtenBlocks.get(ByteBuffer.wrap(hash));
+        if (isZero(block, len)) {
+          out.writeByte(RECORD_ZERO);
+        } else if (copyIndex != null) {
+          out.writeByte(RECORD_COPY);
+          out.writeInt(copyIndex);
+        } else {
+          out.writeByte(RECORD_DATA);
+          out.write(block, 0, len);
+          writtenBlocks.put(ByteBuffer.wrap(hash), index);
+        }
+      }
+      out.writeInt(RECORD_END);
+    }
+
+    SnapshotBlockManifest manifest = new SnapshotBlockManifest(blockSize, size, hashes);
+    try (RandomAccessFile out = new RandomAccessFile(delta, "rw")) {
+      out.writeInt(DELTA_MAGIC);
+      manifest.writeBody(out);
+    }
+    return manifest;
+  }
+
+  /**
+   * Apply a delta to the target file, which must contain the parent snapshot of the delta.
+   * 
+   * @return the manifest of the restored snapshot
+   */
+  public static SnapshotBlockManifest applyDelta(File delta, File target) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(delta), 256 * 1024));
+        RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+      if (in.readInt() != DELTA_MAGIC) {
+        throw new IOException("Invalid snapshot delta " + delta);
+      }
+      SnapshotBlockManifest manifest = readBody(in);
+      int blockSize = manifest.getBlockSize();
+      MessageDigest digest = newDigest();
+      byte[] block = new byte[blockSize];
+      out.setLength(manifest.getSize());
+      int index;
+      while ((index = in.readInt()) != RECORD_END) {
+        if (index < 0 || index >= manifest.getBlockCount()) {
+          throw new IOException("Invalid block " + index + " in snapshot delta " + delta);
+        }
+        int len = blockLength(manifest.getSize(), blockSize, index);
+        byte type = in.readByte();
+        switch (type) {
+          case RECORD_DATA:
+            in.readFully(block, 0, len);
+            break;
+          case RECORD_ZERO:
+            Arrays.fill(block, 0, len, (byte) 0);
+            break;
+          case RECORD_COPY:
+            int copyIndex = in.readInt();
+            if (copyIndex < 0 || copyIndex >= index || blockLength(manifest.getSize(), blockSize, copyIndex) != len) {
+              throw new IOException("Invalid copy of block " + copyIndex + " to " + index + " in snapshot delta " + delta);
+            }
+            out.seek((long) copyIndex * blockSize);
+            out.readFully(block, 0, len);
+            break;
+          default:
+            throw new IOException("Invalid record type " + type + " for block " + index + " in snapshot delta " + delta);
+        }
+        digest.update(block, 0, len);
+        if (!manifest.hashEquals(index, digest.digest())) {
+          throw new IOException("Checksum mismatch for block " + index + " in snapshot delta " + delta);
+        }
+        out.seek((long) index * blockSize);
+        out.write(block, 0, len);
+      }
+      return manifest;
+    } catch (EOFException e) {
+      throw new IOException("Truncated snapshot delta " + delta, e);
+    }
+  }
+
+  private boolean hashEquals(int index, byte[] hash) {
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      if (hashes[index * HASH_LENGTH + i] != hash[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeBody(DataOutput out) throws IOException {
+    out.writeInt(VERSION);
+    out.writeInt(blockSize);
+    out.writeLong(size);
+    out.writeInt(getBlockCount());
+    out.write(hashes);
+  }
+
+  private static SnapshotBlockManifest readBody(DataInputStream in) throws IOException {
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported block manifest version " + version);
+    }
+    int blockSize = in.readInt();
+    long size = in.readLong();
+    int blockCount = in.readInt();
+    if (blockSize <= 0 || size < 0 || blockCount != blockCount(size, blockSize)) {
+      throw new IOException("Invalid block manifest, block size " + blockSize + ", size " + size + ", blocks " + blockCount);
+    }
+    byte[] hashes = new byte[blockCount * HASH_LENGTH];
+    in.readFully(hashes);
+    return new SnapshotBlockManifest(blockSize, size, hashes);
+  }
+
+  private static int blockCount(long size, int blockSize) {
+    return (int) ((size + blockSize - 1) / blockSize);
+  }
+
+  private static int blockLength(long size, int blockSize, int index) {
+    return (int) Math.min(blockSize, size - (long) index * blockSize);
+  }
+
+  private static int readBlock(InputStream in, byte[] block, int length) throws IOException {
+    int offset = 0;
+    int len;
+    while (offset < length && (len = in.read(block, offset, length - offset)) >= 0) {
+      offset += len;
+    }
+    if (offset < length) {
+      throw new EOFException("Snapshot file truncated while reading");
+    }
+    return offset;
+  }
+
+  private static boolean isZero(byte[] block, int length) {
+    for (int i = 0; i < length; i++) {
+      if (block[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static MessageDigest newDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Digest not available: " + HASH_ALGORITHM, e);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.eucalyptus.util.Mbeans;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Counters for snapshot downloads from objectstorage to the storage backend on this storage controller. The counters are published as the
+ * com.eucalyptus.blockstorage:type=SnapshotDownloads mbean.
+ */
+public class SnapshotDownloadMetrics {
+  private static final AtomicInteger activeDownloads = new AtomicInteger();
+  private static final AtomicLong bytesReceived = new AtomicLong();
+  private static final AtomicLong bytesWritten = new AtomicLong();
+
+  private static long lastSampleNanos = System.nanoTime();
+  private static long lastBytesReceived = 0;
+  private static long lastBytesWritten = 0;
+
+  private static final AtomicBoolean registered = new AtomicBoolean();
+
+  private SnapshotDownloadMetrics() {}
+
+  static void register() {
+    if (registered.compareAndSet(false, true)) {
+      Mbeans.register("com.eucalyptus.blockstorage", ImmutableMap.of("type", "SnapshotDownloads"), new Statistics());
+    }
+  }
+
+  static void downloadStarted() {
+    activeDownloads.incrementAndGet();
+  }
+
+  static void downloadFinished() {
+    activeDownloads.decrementAndGet();
+  }
+
+  /**
+   * Compressed bytes received from objectstorage
+   */
+  static void received(long bytes) {
+    bytesReceived.addAndGet(bytes);
+  }
+
+  /**
+   * Uncompressed bytes written to the storage backend
+   */
+  static void written(long bytes) {
+    bytesWritten.addAndGet(bytes);
+  }
+
+  /**
+   * Download rates since the previous sample. Intended for a single periodic caller such as the volume state checker.
+   */
+  public static synchronized Sample sample() {
+    long now = System.nanoTime();
+    long received = bytesReceived.get();
+    long written = bytesWritten.get();
+    double seconds = Math.max(1, now - lastSampleNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    Sample sample = new Sample(activeDownloads.get(), (received - lastBytesReceived) / seconds, (written - lastBytesWritten) / seconds);
+    lastSampleNanos = now;
+    lastBytesReceived = received;
+    lastBytesWritten = written;
+    return sample;
+  }
+
+  public static class Sample {
+    private final int activeDownloads;
+    private final double receivedBytesPerSecond;
+    private final double writtenBytesPerSecond;
+
+    Sample(int activeDownloads, double receivedBytesPerSecond, double writtenBytesPerSecond) {
+      this.activeDownloads = activeDownloads;
+      this.receivedBytesPerSecond = receivedBytesPerSecond;
+      this.writtenBytesPerSecond = writtenBytesPerSecond;
+    }
+
+    public int getActiveDownloads() {
+      return activeDownloads;
+    }
+
+    public double getReceivedBytesPerSecond() {
+      return receivedBytesPerSecond;
+    }
+
+    public double getWrittenBytesPerSecond() {
+      return writtenBytesPerSecond;
+    }
+  }
+
+  private static class Statistics implements SnapshotDownloadMetricsMXBean {
+
+    @Override
+    public int getActiveDownloads() {
+      return activeDownloads.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+      return bytesReceived.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+      return bytesWritten.get();
+    }
+
+    @Override
+    public long getTransferMemoryAvailableBytes() {
+      return SnapshotTransferMemory.getAvailableBytes();
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memory budget shared by all snapshot uploads and downloads on this storage controller. Parts buffered in memory reserve their size from the
+ * budget before they are filled and return it once they are uploaded or consumed, so the memory held for snapshot parts is bounded regardless of
+ * the number of concurrent transfers.
+ * 
+ * The budget is counted in kilobytes so that it is not limited by the range of the underlying semaphore. A single reservation is limited to the
+ * size of the budget so that a transfer can always make progress once other transfers release their memory.
+ */
+public class SnapshotTransferMemory {
+
+  private static final long UNIT = 1024;
+
+  private static final Budget budget = new Budget();
+  private static int limit = 0;
+
+  private SnapshotTransferMemory() {}
+
+  /**
+   * Set the size of the budget, reservations in use are not affected
+   */
+  static synchronized void setLimit(long bytes) {
+    int newLimit = units(bytes);
+    if (newLimit > limit) {
+      budget.release(newLimit - limit);
+    } else if (newLimit < limit) {
+      budget.reducePermits(limit - newLimit);
+    }
+    limit = newLimit;
+  }
+
+  static synchronized int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Bytes of the budget currently available
+   */
+  public static long getAvailableBytes() {
+    return Math.max(0, budget.availablePermits()) * UNIT;
+  }
+
+  /**
+   * Reserve memory from the budget, waiting for other transfers to release memory if necessary. The caller must not hold other reservations that
+   * are only released by the calling thread as that could deadlock transfers waiting on each other.
+   */
+  static Reservation reserve(long bytes) throws InterruptedException {
+    while (true) {
+      int units = Math.min(units(bytes), getLimit());
+      if (budget.tryAcquire(units, 1, TimeUnit.SECONDS)) { // limit may change while waiting
+        return new Reservation(units);
+      }
+    }
+  }
+
+  /**
+   * Reserve memory from the budget if it is available without waiting, null otherwise
+   */
+  static Reservation tryReserve(long bytes) {
+    int units = Math.min(units(bytes), getLimit());
+    return budget.tryAcquire(units) ? new Reservation(units) : null;
+  }
+
+  private static int units(long bytes) {
+    return (int) Math.min(Integer.MAX_VALUE, (Math.max(0, bytes) + UNIT - 1) / UNIT);
+  }
+
+  static class Reservation {
+
+    private final AtomicInteger units;
+
+    private Reservation(int units) {
+      this.units = new AtomicInteger(units);
+    }
+
+    /**
+     * Return the memory reserved beyond the given size to the budget
+     */
+    void trim(long bytes) {
+      int keep = units(bytes);
+      int current;
+      while ((current = units.get()) > keep) {
+        if (units.compareAndSet(current, keep)) {
+          budget.release(current - keep);
+          return;
+        }
+      }
+    }
+
+    /**
+     * Return the reserved memory to the budget, subsequent calls have no effect
+     */
+    void release() {
+      int released = units.getAndSet(0);
+      if (released > 0) {
+        budget.release(released);
+      }
+    }
+
+    long getBytes() {
+      return units.get() * UNIT;
+    }
+  }
+
+  private static class Budget extends Semaphore {
+    private static final long serialVersionUID = 1L;
+
+    Budget() {
+      super(0, true);
+    }
+
+    @Override
+    protected void reducePermits(int reduction) {
+      super.reducePermits(reduction);
+    }
+  }
+}
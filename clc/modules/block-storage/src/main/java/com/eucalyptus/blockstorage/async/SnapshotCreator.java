@@ -258,7 +258,16 @@ public class SnapshotCreator implements Runnable {
             LOG.info("Generate delta between penultimate snapshot " + prevSnap.getSnapshotId() + " and latest snapshot " + this.snapshotId);
             srwc =
                 blockManager.prepIncrementalSnapshotForUpload(this.volumeId, this.snapshotId, this.snapPointId, prevSnap.getSnapshotId(), prevSnap.getSnapPointId());
-            snapshotResource = srwc.getSr();
+            if (srwc == null) {
+              LOG.info("Delta from " + prevSnap.getSnapshotId() + " not available, upload entire content of snapshot " + this.snapshotId);
+              if (updateSnapshotInfo(snapshotLocation) == null) {
+                throw new EucalyptusCloudException("Failed to update metadata for snapshot " + this.snapshotId);
+              }
+              prevSnap = null;
+              snapshotResource = blockManager.prepSnapshotForUpload(this.volumeId, this.snapshotId, this.snapPointId);
+            } else {
+              snapshotResource = srwc.getSr();
+            }
           } else {
             LOG.info("Upload entire content of snapshot " + this.snapshotId);
             snapshotResource = blockManager.prepSnapshotForUpload(this.volumeId, this.snapshotId, this.snapPointId);
@@ -600,6 +609,7 @@ public class SnapshotCreator implements Runnable {
         try {
           currSnap = Entities.uniqueResult(new SnapshotInfo(snapshotId));
           currSnap.setSnapshotLocation(snapshotLocation);
+          currSnap.setPreviousSnapshotId(null);
           return currSnap;
         } catch (TransactionException | NoSuchElementException e) {
           LOG.warn("Failed to update snapshot upload location for snapshot " + snapshotId, e);
@@ -67,6 +67,7 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import com.eucalyptus.blockstorage.LogicalStorageManager;
+import com.eucalyptus.blockstorage.SnapshotDownloadMetrics;
 import com.eucalyptus.blockstorage.entities.VolumeInfo;
 import com.eucalyptus.blockstorage.util.StorageProperties;
 import com.eucalyptus.entities.Entities;
@@ -86,6 +87,7 @@ public class VolumeStateChecker extends CheckerTask {
 
   @Override
   public void run() {
+    logSnapshotDownloads();
     try (TransactionResource tran = Entities.transactionFor(VolumeInfo.class)) {
       VolumeInfo volumeInfo = new VolumeInfo();
       volumeInfo.setStatus(StorageProperties.Status.available.toString());
@@ -103,4 +105,12 @@ public class VolumeStateChecker extends CheckerTask {
       LOG.warn("Unable to run VolumeStateChecker", ex);
     }
   }
+
+  private void logSnapshotDownloads() {
+    SnapshotDownloadMetrics.Sample downloads = SnapshotDownloadMetrics.sample();
+    if (downloads.getActiveDownloads() > 0) {
+      LOG.info(String.format("Snapshot downloads in progress: %d, receiving %.1f MB/s from objectstorage, writing %.1f MB/s to storage backend",
+          downloads.getActiveDownloads(), downloads.getReceivedBytesPerSecond() / (1024 * 1024), downloads.getWrittenBytesPerSecond() / (1024 * 1024)));
+    }
+  }
 }
@@ -73,6 +73,9 @@ import org.apache.log4j.Logger;
 
 import com.amazonaws.services.s3.model.PartETag;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.CompleteUpload;
+import com.eucalyptus.blockstorage.S3SnapshotTransfer.CompressBlock;
+import com.eucalyptus.blockstorage.S3SnapshotTransfer.DecompressBlock;
+import com.eucalyptus.blockstorage.S3SnapshotTransfer.DownloadPart;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.StorageWriter;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.UploadPart;
 import com.eucalyptus.blockstorage.Storage;
@@ -84,6 +87,8 @@ public class SnapshotTransferThreadPool {
   private static ThreadPoolExecutor uploadPartPool;
   private static ThreadPoolExecutor completeMpuPool;
   private static ThreadPoolExecutor backendWriterPool;
+  private static ThreadPoolExecutor downloadPartPool;
+  private static ThreadPoolExecutor compressionPool;
 
   private static final ReentrantLock RLOCK = new ReentrantLock();
 
@@ -104,12 +109,20 @@ public class SnapshotTransferThreadPool {
       backendWriterPool =
           new ThreadPoolExecutor(poolSize, poolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Threads.lookup(Storage.class,
               StorageWriter.class), new ThreadPoolExecutor.AbortPolicy());
+      downloadPartPool =
+          new ThreadPoolExecutor(poolSize, poolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Threads.lookup(Storage.class,
+              DownloadPart.class), new ThreadPoolExecutor.AbortPolicy());
+      // compression is cpu bound so the pool is sized by the processor count rather than the transfer count
+      int compressionPoolSize = Runtime.getRuntime().availableProcessors();
+      compressionPool =
+          new ThreadPoolExecutor(compressionPoolSize, compressionPoolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+              Threads.lookup(Storage.class, CompressBlock.class), new ThreadPoolExecutor.AbortPolicy());
     } finally {
       RLOCK.unlock();
     }
   }
 
-  public static Future<List<PartETag>> add(UploadPart task) throws ThreadPoolNotInitializedException {
+  public static Future<PartETag> add(UploadPart task) throws ThreadPoolNotInitializedException {
     if (uploadPartPool != null && !uploadPartPool.isShutdown()) {
       return uploadPartPool.submit(task);
     } else {
@@ -139,6 +152,36 @@ public class SnapshotTransferThreadPool {
     }
   }
 
+  public static Future<List<byte[]>> add(DownloadPart task) throws ThreadPoolNotInitializedException {
+    if (downloadPartPool != null && !downloadPartPool.isShutdown()) {
+      return downloadPartPool.submit(task);
+    } else {
+      LOG.warn("SC thread pool catering to snapshot transfers (download part pool) is either not initalized or shut down");
+      throw new ThreadPoolNotInitializedException(
+          "SC thread pool catering to snapshot transfers (download part pool) is either not initalized or shut down");
+    }
+  }
+
+  public static Future<byte[]> add(CompressBlock task) throws ThreadPoolNotInitializedException {
+    if (compressionPool != null && !compressionPool.isShutdown()) {
+      return compressionPool.submit(task);
+    } else {
+      LOG.warn("SC thread pool catering to snapshot transfers (compression pool) is either not initalized or shut down");
+      throw new ThreadPoolNotInitializedException(
+          "SC thread pool catering to snapshot transfers (compression pool) is either not initalized or shut down");
+    }
+  }
+
+  public static Future<byte[]> add(DecompressBlock task) throws ThreadPoolNotInitializedException {
+    if (compressionPool != null && !compressionPool.isShutdown()) {
+      return compressionPool.submit(task);
+    } else {
+      LOG.warn("SC thread pool catering to snapshot transfers (compression pool) is either not initalized or shut down");
+      throw new ThreadPoolNotInitializedException(
+          "SC thread pool catering to snapshot transfers (compression pool) is either not initalized or shut down");
+    }
+  }
+
   public static Integer getPoolSize() {
     if (uploadPartPool != null && !uploadPartPool.isShutdown() && completeMpuPool != null && !completeMpuPool.isShutdown()
         && backendWriterPool != null && !backendWriterPool.isShutdown()) {
@@ -157,6 +200,10 @@ public class SnapshotTransferThreadPool {
       completeMpuPool.setMaximumPoolSize(newSize);
       backendWriterPool.setCorePoolSize(newSize);
       backendWriterPool.setMaximumPoolSize(newSize);
+      if (downloadPartPool != null && !downloadPartPool.isShutdown()) {
+        downloadPartPool.setCorePoolSize(newSize);
+        downloadPartPool.setMaximumPoolSize(newSize);
+      }
     }
   }
 
@@ -184,6 +231,18 @@ public class SnapshotTransferThreadPool {
         LOG.debug("Number of queued snapshots for download: " + awaitingExecution.size());
         backendWriterPool = null;
       }
+      if (downloadPartPool != null) {
+        LOG.info("Shutting down SC thread pool catering to snapshot transfers (download part pool)");
+        List<Runnable> awaitingExecution = downloadPartPool.shutdownNow();
+        LOG.debug("Number of queued parts for download: " + awaitingExecution.size());
+        downloadPartPool = null;
+      }
+      if (compressionPool != null) {
+        LOG.info("Shutting down SC thread pool catering to snapshot transfers (compression pool)");
+        List<Runnable> awaitingExecution = compressionPool.shutdownNow();
+        LOG.debug("Number of queued blocks for compression: " + awaitingExecution.size());
+        compressionPool = null;
+      }
     } finally {
       RLOCK.unlock();
     }
@@ -0,0 +1,244 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.blockstorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests for the block compression and in memory parts used for snapshot uploads and the block decompression and part index used for downloads.
+ */
+public class S3SnapshotTransferTest {
+
+  @Test
+  public void testCompressedBlocksFormSingleGzipStream() throws Exception {
+    byte[] data = new byte[3 * 1024 * 1024 + 17];
+    new Random(7).nextBytes(data);
+    for (int i = 0; i < data.length / 2; i++) {
+      data[i] = 0; // compressible half
+    }
+
+    int blockSize = 1024 * 1024;
+    S3SnapshotTransfer.PartBuffer partBuffer = newPartBuffer();
+    for (int offset = 0; offset < data.length; offset += blockSize) {
+      int length = Math.min(blockSize, data.length - offset);
+      byte[] block = new byte[length];
+      System.arraycopy(data, offset, block, 0, length);
+      partBuffer.write(S3SnapshotTransfer.compress(block, length));
+    }
+
+    assertArrayEquals("Decompressed data", data, decompress(partBuffer.getInputStream(null)));
+  }
+
+  @Test
+  public void testEmptyBlock() throws Exception {
+    S3SnapshotTransfer.PartBuffer partBuffer = newPartBuffer();
+    partBuffer.write(S3SnapshotTransfer.compress(new byte[0], 0));
+    assertEquals("Decompressed length", 0, decompress(partBuffer.getInputStream(null)).length);
+  }
+
+  @Test
+  public void testPartBufferReadableForEachAttempt() throws Exception {
+    S3SnapshotTransfer.PartBuffer partBuffer = newPartBuffer();
+    partBuffer.write(new byte[] {1, 2, 3});
+    for (int attempt = 0; attempt < 2; attempt++) {
+      InputStream in = partBuffer.getInputStream(null);
+      assertEquals("Available bytes", 3, in.available());
+      in.skip(3);
+    }
+  }
+
+  @Test
+  public void testPartInputStreamResetAndProgress() throws Exception {
+    S3SnapshotTransfer.PartBuffer partBuffer = newPartBuffer();
+    partBuffer.write(new byte[] {1, 2, 3});
+    partBuffer.write(new byte[] {4, 5});
+    final AtomicLong progress = new AtomicLong();
+    MockSnapshotProgressCallback callback = new MockSnapshotProgressCallback() {
+      @Override
+      public void updateUploadProgress(long bytesTransferred) {
+        progress.addAndGet(bytesTransferred);
+      }
+    };
+    InputStream in = partBuffer.getInputStream(callback);
+    assertEquals("First byte", 1, in.read());
+    in.mark(5);
+    byte[] rest = new byte[8];
+    assertEquals("Bytes read across blocks", 2, in.read(rest, 0, rest.length));
+    assertEquals("Bytes read across blocks", 2, in.read(rest, 2, rest.length - 2));
+    assertEquals("End of part", -1, in.read(rest, 4, 1));
+    in.reset();
+    assertEquals("Available after reset", 4, in.available());
+    assertEquals("Byte after reset", 2, in.read());
+    assertEquals("Progress", 6, progress.get());
+  }
+
+  @Test
+  public void testMemoryReservations() throws Exception {
+    SnapshotTransferMemory.setLimit(10 * 1024);
+    try {
+      SnapshotTransferMemory.Reservation first = SnapshotTransferMemory.reserve(6 * 1024);
+      assertNull("Reservation beyond the budget", SnapshotTransferMemory.tryReserve(6 * 1024));
+      first.trim(1000);
+      assertEquals("Available after trim", 9 * 1024, SnapshotTransferMemory.getAvailableBytes());
+      first.release();
+      first.release();
+      SnapshotTransferMemory.Reservation second = SnapshotTransferMemory.tryReserve(100 * 1024);
+      assertNotNull("Reservation limited to the budget", second);
+      assertEquals("Reserved bytes", 10 * 1024, second.getBytes());
+      second.release();
+      assertEquals("Available after release", 10 * 1024, SnapshotTransferMemory.getAvailableBytes());
+    } finally {
+      SnapshotTransferMemory.setLimit(0);
+    }
+  }
+
+  @Test
+  public void testBlocksSplitFromStreamAndDecompressed() throws Exception {
+    byte[] data = new byte[2 * 1024 * 1024 + 5];
+    new Random(11).nextBytes(data);
+    for (int i = 1024 * 1024; i < data.length; i++) {
+      data[i] = (byte) (i % 7); // compressible block
+    }
+
+    int blockSize = 1024 * 1024;
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    for (int offset = 0; offset < data.length; offset += blockSize) {
+      int length = Math.min(blockSize, data.length - offset);
+      byte[] block = new byte[length];
+      System.arraycopy(data, offset, block, 0, length);
+      byte[] compressedBlock = S3SnapshotTransfer.compress(block, length);
+      assertEquals("Recorded block length", compressedBlock.length, S3SnapshotTransfer.blockLength(compressedBlock, 0));
+      compressed.write(compressedBlock);
+    }
+
+    InputStream in = new ByteArrayInputStream(compressed.toByteArray());
+    ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+    byte[] block;
+    int blocks = 0;
+    while ((block = S3SnapshotTransfer.readBlock(in)) != null) {
+      decompressed.write(S3SnapshotTransfer.decompress(block));
+      blocks++;
+    }
+    assertEquals("Blocks", 3, blocks);
+    assertArrayEquals("Decompressed data", data, decompressed.toByteArray());
+  }
+
+  @Test
+  public void testEmptyBlockDecompressed() throws Exception {
+    assertEquals("Decompressed length", 0, S3SnapshotTransfer.decompress(S3SnapshotTransfer.compress(new byte[0], 0)).length);
+  }
+
+  @Test
+  public void testCorruptBlockRejected() throws Exception {
+    byte[] data = new byte[64 * 1024];
+    new Random(13).nextBytes(data);
+    byte[] block = S3SnapshotTransfer.compress(data, data.length);
+
+    byte[] corrupt = block.clone();
+    corrupt[block.length / 2] ^= 1;
+    assertDecompressFails(corrupt);
+
+    byte[] truncated = block.clone();
+    System.arraycopy(block, block.length - 20, truncated, block.length - 30, 20);
+    assertDecompressFails(truncated);
+
+    try {
+      S3SnapshotTransfer.readBlock(new ByteArrayInputStream(block, 0, block.length - 1));
+      fail("Expected truncated block to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testGzipWithoutBlockLength() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzipStream = new GZIPOutputStream(out)) {
+      gzipStream.write(new byte[1024]);
+    }
+    assertEquals("Block length", -1, S3SnapshotTransfer.blockLength(out.toByteArray(), 0));
+  }
+
+  @Test
+  public void testPartIndex() throws Exception {
+    S3SnapshotTransfer.PartIndex partIndex = new S3SnapshotTransfer.PartIndex();
+    partIndex.add(100, 1000);
+    partIndex.add(250, 3000);
+    partIndex.add(7, 10);
+
+    S3SnapshotTransfer.PartIndex parsed = S3SnapshotTransfer.PartIndex.parse(new ByteArrayInputStream(partIndex.toBytes()));
+    assertEquals("Part count", 3, parsed.getPartCount());
+    assertEquals("Offset", 0, parsed.getOffset(0));
+    assertEquals("Offset", 350, parsed.getOffset(2));
+    assertEquals("Compressed size", 250, parsed.getCompressedSize(1));
+    assertEquals("Uncompressed size", 4010, parsed.getUncompressedSize());
+
+    for (String invalid : new String[] {"", "100", "100 x", "-1 10"}) {
+      try {
+        S3SnapshotTransfer.PartIndex.parse(new ByteArrayInputStream(invalid.getBytes(StandardCharsets.UTF_8)));
+        fail("Expected invalid part index to be rejected: " + invalid);
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  private static S3SnapshotTransfer.PartBuffer newPartBuffer() {
+    return new S3SnapshotTransfer.PartBuffer(SnapshotTransferMemory.tryReserve(0));
+  }
+
+  private static void assertDecompressFails(byte[] block) {
+    try {
+      S3SnapshotTransfer.decompress(block);
+      fail("Expected corrupt block to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private static byte[] decompress(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPInputStream gzipInputStream = new GZIPInputStream(in)) {
+      byte[] buffer = new byte[8192];
+      int len;
+      while ((len = gzipInputStream.read(buffer)) > 0) {
+        out.write(buffer, 0, len);
+      }
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,180 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.blockstorage;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for snapshot block manifests and the changed block delta format.
+ */
+public class SnapshotBlockManifestTest {
+
+  private static final int BLOCK_SIZE = 4096;
+
+  private File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("snapshot-manifest-test").toFile();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testDeltaContainsOnlyChangedBlocks() throws Exception {
+    byte[] base = randomBytes(64 * BLOCK_SIZE + 100, 1);
+    byte[] current = Arrays.copyOf(base, base.length);
+    current[5 * BLOCK_SIZE + 3] ^= 1;
+    current[40 * BLOCK_SIZE] ^= 1;
+
+    File baseFile = write("base", base);
+    File currentFile = write("current", current);
+    File delta = new File(dir, "delta");
+    SnapshotBlockManifest parent = SnapshotBlockManifest.compute(baseFile, BLOCK_SIZE);
+    SnapshotBlockManifest manifest = SnapshotBlockManifest.writeDelta(currentFile, parent, delta, BLOCK_SIZE);
+
+    assertEquals("Block count", 65, manifest.getBlockCount());
+    assertTrue("Delta size " + delta.length(), delta.length() < 3 * BLOCK_SIZE + manifest.getBlockCount() * 64);
+
+    SnapshotBlockManifest restored = SnapshotBlockManifest.applyDelta(delta, baseFile);
+    assertEquals("Restored size", current.length, restored.getSize());
+    assertArrayEquals("Restored data", current, Files.readAllBytes(baseFile.toPath()));
+  }
+
+  @Test
+  public void testZeroAndRepeatedBlocksStoredAsReferences() throws Exception {
+    byte[] repeated = randomBytes(BLOCK_SIZE, 2);
+    byte[] current = new byte[32 * BLOCK_SIZE];
+    for (int index = 0; index < 32; index += 2) {
+      System.arraycopy(repeated, 0, current, index * BLOCK_SIZE, BLOCK_SIZE);
+    }
+
+    File currentFile = write("current", current);
+    File delta = new File(dir, "delta");
+    SnapshotBlockManifest.writeDelta(currentFile, null, delta, BLOCK_SIZE);
+    assertTrue("Delta size " + delta.length(), delta.length() < 2 * BLOCK_SIZE);
+
+    File target = write("target", new byte[0]);
+    SnapshotBlockManifest.applyDelta(delta, target);
+    assertArrayEquals("Restored data", current, Files.readAllBytes(target.toPath()));
+  }
+
+  @Test
+  public void testResizedSnapshot() throws Exception {
+    byte[] base = randomBytes(10 * BLOCK_SIZE, 3);
+    byte[] grown = Arrays.copyOf(base, 16 * BLOCK_SIZE + 7);
+    System.arraycopy(randomBytes(BLOCK_SIZE, 4), 0, grown, 12 * BLOCK_SIZE, BLOCK_SIZE);
+    byte[] shrunk = Arrays.copyOf(base, 4 * BLOCK_SIZE + 1);
+
+    for (byte[] current : new byte[][] {grown, shrunk}) {
+      File baseFile = write("base", base);
+      File delta = new File(dir, "delta");
+      SnapshotBlockManifest.writeDelta(write("current", current), SnapshotBlockManifest.compute(baseFile, BLOCK_SIZE), delta, BLOCK_SIZE);
+      SnapshotBlockManifest.applyDelta(delta, baseFile);
+      assertArrayEquals("Restored data", current, Files.readAllBytes(baseFile.toPath()));
+    }
+  }
+
+  @Test
+  public void testCorruptDeltaRejected() throws Exception {
+    byte[] base = randomBytes(8 * BLOCK_SIZE, 5);
+    byte[] current = Arrays.copyOf(base, base.length);
+    current[2 * BLOCK_SIZE] ^= 1;
+    File baseFile = write("base", base);
+    File delta = new File(dir, "delta");
+    SnapshotBlockManifest.writeDelta(write("current", current), SnapshotBlockManifest.compute(baseFile, BLOCK_SIZE), delta, BLOCK_SIZE);
+
+    try (RandomAccessFile raf = new RandomAccessFile(delta, "rw")) {
+      long offset = raf.length() - 100;
+      raf.seek(offset);
+      int value = raf.read();
+      raf.seek(offset);
+      raf.write(value ^ 1);
+    }
+    assertApplyFails(delta, baseFile);
+
+    SnapshotBlockManifest.writeDelta(write("current", current), SnapshotBlockManifest.compute(baseFile, BLOCK_SIZE), delta, BLOCK_SIZE);
+    try (RandomAccessFile raf = new RandomAccessFile(delta, "rw")) {
+      raf.setLength(raf.length() - 10);
+    }
+    assertApplyFails(delta, baseFile);
+  }
+
+  @Test
+  public void testManifestCachedWithSnapshot() throws Exception {
+    File snapshotFile = write("snapshot", randomBytes(3 * BLOCK_SIZE, 6));
+    SnapshotBlockManifest manifest = SnapshotBlockManifest.forSnapshotFile(snapshotFile, BLOCK_SIZE);
+    File manifestFile = new File(snapshotFile.getPath() + SnapshotBlockManifest.MANIFEST_SUFFIX);
+    assertTrue("Manifest cached", manifestFile.isFile());
+
+    SnapshotBlockManifest cached = SnapshotBlockManifest.read(manifestFile);
+    assertEquals("Block size", manifest.getBlockSize(), cached.getBlockSize());
+    assertEquals("Size", manifest.getSize(), cached.getSize());
+    assertEquals("Block count", manifest.getBlockCount(), cached.getBlockCount());
+
+    SnapshotBlockManifest recomputed = SnapshotBlockManifest.forSnapshotFile(snapshotFile, 2 * BLOCK_SIZE);
+    assertEquals("Block size", 2 * BLOCK_SIZE, recomputed.getBlockSize());
+    assertEquals("Block count", 2, recomputed.getBlockCount());
+  }
+
+  private void assertApplyFails(File delta, File target) {
+    try {
+      SnapshotBlockManifest.applyDelta(delta, target);
+      fail("Expected corrupt delta to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private File write(String name, byte[] data) throws IOException {
+    File file = new File(dir, name);
+    Files.write(file.toPath(), data);
+    return file;
+  }
+
+  private static byte[] randomBytes(int length, long seed) {
+    byte[] data = new byte[length];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+}
@@ -410,4 +410,106 @@ public class SnapshotCreatorTest {
       }
     }
   }
+
+  /**
+   * <li>snapshot transfer enabled</li>
+   * <li>snapshot deltas enabled</li>
+   * <li>backend deltas enabled</li>
+   * <li>non-first snapshot on volume</li>
+   * <li>delta not available from backend</li>
+   * 
+   * @throws Exception
+   */
+  @Test
+  public void create_snapshot_test_5() throws Exception {
+    StorageInfo storageInfo = new StorageInfo();
+    storageInfo.setDefaults();
+    storageInfo.setMaxSnapshotDeltas(10);
+    try (TransactionResource tran = Entities.transactionFor(StorageInfo.class)) {
+      Entities.persist(storageInfo);
+      tran.commit();
+    }
+
+    VolumeInfo vol = new VolumeInfo("vol-0000005");
+    vol.setCreateTime(new Date(System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert(1, TimeUnit.HOURS)));
+    vol.setSize(2);
+    vol.setStatus(StorageProperties.Status.available.toString());
+
+    try (TransactionResource tran = Entities.transactionFor(VolumeInfo.class)) {
+      Entities.persist(vol);
+      tran.commit();
+    }
+
+    SnapshotInfo snapa = new SnapshotInfo("snap-000005a");
+    snapa.setIsOrigin(Boolean.TRUE);
+    snapa.setProgress("100");
+    snapa.setSizeGb(vol.getSize());
+    snapa.setSnapPointId("snap-point-id-5a");
+    snapa.setStartTime(new Date(System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert(10, TimeUnit.MINUTES)));
+    snapa.setStatus(StorageProperties.Status.available.toString());
+    snapa.setVolumeId(vol.getVolumeId());
+    snapa.setSnapshotLocation("snapshots://objectstoragegateway/bucket-for-upload/snap-000005a");
+
+    SnapshotInfo snapb = new SnapshotInfo("snap-000005b");
+    snapb.setIsOrigin(Boolean.TRUE);
+    snapb.setProgress("0");
+    snapb.setSizeGb(vol.getSize());
+    snapb.setSnapPointId("snap-point-id-5b");
+    snapb.setStartTime(new Date());
+    snapb.setStatus(StorageProperties.Status.creating.toString());
+    snapb.setVolumeId(vol.getVolumeId());
+
+    try (TransactionResource tran = Entities.transactionFor(SnapshotInfo.class)) {
+      Entities.persist(snapa);
+      Entities.persist(snapb);
+      tran.commit();
+    }
+
+    final BlockDeviceResource bdr = new BlockDeviceResource(snapb.getSnapshotId(), "path-to-snap");
+
+    final LogicalStorageManager storageManager = context.mock(LogicalStorageManager.class);
+    context.checking(new Expectations() {
+      {
+        oneOf(storageManager).createSnapshot(vol.getVolumeId(), snapb.getSnapshotId(), snapb.getSnapPointId());
+
+        oneOf(storageManager).supportsIncrementalSnapshots();
+        will(returnValue(true));
+
+        oneOf(storageManager).prepIncrementalSnapshotForUpload(vol.getVolumeId(), snapb.getSnapshotId(), snapb.getSnapPointId(),
+            snapa.getSnapshotId(), snapa.getSnapPointId());
+        will(returnValue(null));
+
+        oneOf(storageManager).prepSnapshotForUpload(vol.getVolumeId(), snapb.getSnapshotId(), snapb.getSnapPointId());
+        will(returnValue(bdr));
+
+        oneOf(storageManager).finishVolume(snapb.getSnapshotId());
+      }
+    });
+
+    new SnapshotCreator(vol.getVolumeId(), snapb.getSnapshotId(), snapb.getSnapPointId(), storageManager,
+        BlockStorageUnitTestSupport.createMockS3SnapshotTransfer(), BlockStorageUnitTestSupport.createMockSnapshotProgressCallback()).run();
+
+    context.assertIsSatisfied();
+
+    List<SnapshotInfo> snaps;
+    try (TransactionResource tran = Entities.transactionFor(SnapshotInfo.class)) {
+      snaps = Entities.query(new SnapshotInfo());
+      tran.commit();
+    }
+
+    assertTrue("expected to have a result set querying the snapshots table in eucalyptus_storage persistence context", snaps != null);
+    assertTrue("expected 2 SnapshotInfo entities to exist, but found " + snaps.size(), snaps.size() == 2);
+    for (SnapshotInfo snap : snaps) {
+      assertTrue("expected SnapshotInfo entity for " + snapa.getSnapshotId() + " or " + snapb.getSnapshotId() + " but found entity for "
+          + snap.getSnapshotId(), (snapa.getSnapshotId().equals(snap.getSnapshotId()) || snapb.getSnapshotId().equals(snap.getSnapshotId())));
+      assertTrue(
+          "expected SnapshotInfo entity status to be " + StorageProperties.Status.available.toString() + " but found it to be " + snap.getStatus(),
+          StorageProperties.Status.available.toString().equals(snap.getStatus()));
+      assertTrue("expected SnapshotInfo entity progress to be 100% but found it to be " + snap.getProgress(), "100".equals(snap.getProgress()));
+      assertTrue("expected SnapshotInfo entity to contain a valid reference for snapshotLocation but found " + snap.getSnapshotLocation(),
+          !Strings.isNullOrEmpty(snap.getSnapshotLocation()));
+      assertTrue("expected SnapshotInfo entity to contain null reference for previousSnapshotID but found " + snap.getPreviousSnapshotId(),
+          null == snap.getPreviousSnapshotId());
+    }
+  }
 }
@@ -28,6 +28,7 @@ import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetricManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricRollupManager;
 import com.eucalyptus.component.Topology;
 
 public class DBCleanupService implements Runnable {
@@ -51,6 +52,15 @@ public class DBCleanupService implements Runnable {
       LOG.error(ex);
       LOG.error(ex, ex);
     }
+    for (MetricRollupManager.Tier tier : MetricRollupManager.Tier.values()) {
+      Date retentionStart = new Date(System.currentTimeMillis() - tier.getRetentionDays() * 24 * 60 * 60 * 1000L);
+      try {
+        MetricRollupManager.deleteRollups(tier, retentionStart);
+      } catch (Exception ex) {
+        LOG.error(ex);
+        LOG.error(ex, ex);
+      }
+    }
     try {
       ListMetricManager.deleteMetrics(twoWeeksAgo);
     } catch (Exception ex) {
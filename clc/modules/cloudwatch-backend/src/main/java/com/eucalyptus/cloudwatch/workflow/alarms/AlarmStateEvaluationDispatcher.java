@@ -39,6 +39,7 @@ package com.eucalyptus.cloudwatch.workflow.alarms;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -48,22 +49,24 @@ import java.util.concurrent.Future;
 
 
 import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmDefinitionCache;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricDataCache;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntityFactory;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
-import com.eucalyptus.entities.TransactionResource;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.apache.log4j.Logger;
-import org.hibernate.Criteria;
 
 import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.cloudwatch.common.CloudWatch;
 import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
+import com.eucalyptus.component.ServiceConfiguration;
 import com.eucalyptus.component.Topology;
-import com.eucalyptus.entities.Entities;
 
 public class AlarmStateEvaluationDispatcher implements Runnable {
   private static final Logger LOG = Logger.getLogger(AlarmStateEvaluationDispatcher.class);
@@ -82,13 +85,11 @@ public class AlarmStateEvaluationDispatcher implements Runnable {
       int size = 0;
       long before = 0;
       List<List<AlarmEntity>> resultsList = null;
-      try (final TransactionResource db = Entities.transactionFor(AlarmEntity.class)) {
-        Criteria criteria = Entities.createCriteria(AlarmEntity.class);
-        List<AlarmEntity> results = (List<AlarmEntity>) criteria.list();
-        resultsList = makeResultsList(results);
-        before = System.currentTimeMillis();
-        size = results.size();
-      }
+      List<AlarmEntity> results = AlarmDefinitionCache.list();
+      resultsList = makeResultsList(results);
+      retainMetricData(results);
+      before = System.currentTimeMillis();
+      size = results.size();
       try {
         if (resultsList != null) {
           ExecutorCompletionService executorCompletionService = new ExecutorCompletionService(executorService);
@@ -116,6 +117,33 @@ public class AlarmStateEvaluationDispatcher implements Runnable {
     }
   }
 
+  /**
+   * Keep metric data in memory for each metric that has an alarm, long enough
+   * to cover the evaluation and buffer periods for the alarm.
+   */
+  private void retainMetricData(List<AlarmEntity> results) {
+    Map<MetricDataCache.SeriesKey, Integer> minutesBySeries = Maps.newHashMap();
+    if (CloudWatchConfigProperties.ENABLE_IN_MEMORY_ALARM_EVALUATION) {
+      for (AlarmEntity alarmEntity: results) {
+        MetricDataCache.SeriesKey key = new MetricDataCache.SeriesKey(alarmEntity.getAccountId(), alarmEntity.getNamespace(),
+          alarmEntity.getMetricName(), alarmEntity.getMetricType(), MetricManager.hash(alarmEntity.getDimensionMap()));
+        // an extra minute either side in case evaluation starts as the minute changes
+        int minutes = alarmEntity.getPeriod() / 60 *
+          (alarmEntity.getEvaluationPeriods() + AlarmStateEvaluationWorker.numBufferPeriods(alarmEntity.getPeriod())) + 2;
+        minutesBySeries.merge(key, minutes, Math::max);
+      }
+    }
+    MetricDataCache.setComplete(CloudWatchConfigProperties.ENABLE_IN_MEMORY_ALARM_EVALUATION && allMetricDataLocal());
+    MetricDataCache.retain(minutesBySeries);
+  }
+
+  /**
+   * The metric data cache only sees data put by services in this JVM.
+   */
+  private static boolean allMetricDataLocal() {
+    return Iterables.all(Topology.enabledServices(CloudWatch.class), ServiceConfiguration::isVmLocal);
+  }
+
   private List<List<AlarmEntity>> makeResultsList(List<AlarmEntity> results) {
     Multimap<Class, AlarmEntity> classMultiMap = LinkedListMultimap.create();
     for (AlarmEntity alarmEntity: results) {
@@ -51,6 +51,7 @@ import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmHistory;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmState;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricDataCache;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -114,7 +115,7 @@ public class AlarmStateEvaluationWorker implements Runnable {
       Date bufferStartDate = new Date(startDate.getTime() - 1000L * alarmEntity.getPeriod() * numBufferPeriods(alarmEntity.getPeriod()));
       getMetricStatisticsParamses.add(new MetricManager.GetMetricStatisticsParams(alarmEntity.getAccountId(), alarmEntity.getMetricName(), alarmEntity.getNamespace(), alarmEntity.getDimensionMap(), alarmEntity.getMetricType(), alarmEntity.getUnit(), bufferStartDate, endDate, alarmEntity.getPeriod()));
     }
-    List<Collection<MetricStatistics>> manyMetricsStatisticsList = MetricManager.getManyMetricStatistics(getMetricStatisticsParamses);
+    List<Collection<MetricStatistics>> manyMetricsStatisticsList = getManyMetricStatistics(getMetricStatisticsParamses);
     int count = 0;
     for (AlarmEntity alarmEntity: alarmEntities) {
       Date startDate = new Date(endDate.getTime() - 1000L * alarmEntity.getPeriod() * alarmEntity.getEvaluationPeriods());
@@ -227,7 +228,34 @@ public class AlarmStateEvaluationWorker implements Runnable {
       return metricValue;
     }
   }
-  private Integer numBufferPeriods(Integer period) {
+  /**
+   * Get statistics from the metric data cache where possible, falling back to the database.
+   */
+  private List<Collection<MetricStatistics>> getManyMetricStatistics(List<MetricManager.GetMetricStatisticsParams> getMetricStatisticsParamses) {
+    if (!CloudWatchConfigProperties.ENABLE_IN_MEMORY_ALARM_EVALUATION) {
+      return MetricManager.getManyMetricStatistics(getMetricStatisticsParamses);
+    }
+    List<Collection<MetricStatistics>> manyMetricsStatisticsList = Lists.newArrayList();
+    List<Integer> uncachedIndexes = Lists.newArrayList();
+    List<MetricManager.GetMetricStatisticsParams> uncachedParamses = Lists.newArrayList();
+    for (MetricManager.GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
+      Collection<MetricStatistics> metricStatistics = MetricDataCache.getMetricStatistics(getMetricStatisticsParams);
+      if (metricStatistics == null) {
+        uncachedIndexes.add(manyMetricsStatisticsList.size());
+        uncachedParamses.add(getMetricStatisticsParams);
+      }
+      manyMetricsStatisticsList.add(metricStatistics);
+    }
+    if (!uncachedParamses.isEmpty()) {
+      List<Collection<MetricStatistics>> uncachedStatisticsList = MetricManager.getManyMetricStatistics(uncachedParamses);
+      for (int i = 0; i < uncachedIndexes.size(); i++) {
+        manyMetricsStatisticsList.set(uncachedIndexes.get(i), uncachedStatisticsList.get(i));
+      }
+    }
+    return manyMetricsStatisticsList;
+  }
+
+  static Integer numBufferPeriods(Integer period) {
     // it is the greater of 5 minutes or two periods, but it should be a whole number of periods.
     Integer periodMinutes = period / 60;
     if (periodMinutes == 1) return 5;
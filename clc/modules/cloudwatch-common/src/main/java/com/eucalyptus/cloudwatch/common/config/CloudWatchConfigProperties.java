@@ -31,6 +31,24 @@ public class CloudWatchConfigProperties {
   @ConfigurableField(initial = "1000", description = "Size of the reporting data set that stores cloud watch queues performance info (debug only prop)")
   public static volatile int CLOUDWATCH_MONITORING_HISTORY_SIZE = 1000;
 
+  @ConfigurableField(initial = "30", description = "Maximum time in seconds that aggregated metric data is held in memory before it is written to the database", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int METRIC_DATA_FLUSH_INTERVAL_SECONDS = 30;
+
+  @ConfigurableField(initial = "1000", description = "Number of aggregated metric data points held by a metric data shard that triggers a write to the database", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int METRIC_DATA_FLUSH_THRESHOLD = 1000;
+
+  @ConfigurableField(initial = "10000", description = "Maximum number of aggregated metric data points held in memory by a metric data shard, put metric data requests are throttled when exceeded", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int METRIC_DATA_MAX_PENDING = 10000;
+
+  @ConfigurableField(initial = "true", description = "Set this to false to always evaluate alarms using metric data from the database", changeListener = PropertyChangeListeners.IsBoolean.class)
+  public static volatile Boolean ENABLE_IN_MEMORY_ALARM_EVALUATION = true;
+
+  @ConfigurableField(initial = "63", description = "Number of days to retain five minute metric data rollups", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int METRIC_ROLLUP_FIVE_MINUTE_RETENTION_DAYS = 63;
+
+  @ConfigurableField(initial = "455", description = "Number of days to retain one hour metric data rollups", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int METRIC_ROLLUP_ONE_HOUR_RETENTION_DAYS = 455;
+
   public static Boolean isDisabledCloudWatchService() {
     return !ENABLE_CLOUDWATCH_SERVICE;
   }
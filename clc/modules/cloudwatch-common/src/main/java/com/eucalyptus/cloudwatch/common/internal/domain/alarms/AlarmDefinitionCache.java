@@ -0,0 +1,83 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.alarms;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Criteria;
+
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Cache of alarm definitions for alarm evaluation.
+ *
+ * <p>The cache is invalidated when alarms are modified locally, it is also
+ * reloaded periodically to pick up changes from other hosts. Cached entities
+ * are detached and must not be modified.</p>
+ */
+public class AlarmDefinitionCache {
+
+  private static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+  private static final AtomicLong version = new AtomicLong( );
+  private static volatile CachedAlarms cached = null;
+
+  /**
+   * List all alarms, loading from the database if the cache is stale.
+   */
+  public static List<AlarmEntity> list( ) {
+    final long now = System.currentTimeMillis( );
+    final CachedAlarms current = cached;
+    if ( current != null && current.version == version.get( ) && now - current.loaded < MAX_AGE_MILLIS ) {
+      return current.alarms;
+    }
+    final long loadVersion = version.get( );
+    final List<AlarmEntity> alarms;
+    try ( final TransactionResource db = Entities.transactionFor( AlarmEntity.class ) ) {
+      final Criteria criteria = Entities.createCriteria( AlarmEntity.class );
+      alarms = ImmutableList.copyOf( (List<AlarmEntity>) criteria.list( ) );
+    }
+    // a concurrent invalidation leaves the cache stale so the next caller reloads
+    cached = new CachedAlarms( loadVersion, now, alarms );
+    return alarms;
+  }
+
+  /**
+   * Invalidate cached alarms, must be called after alarm changes are committed.
+   */
+  public static void invalidate( ) {
+    version.incrementAndGet( );
+  }
+
+  private static final class CachedAlarms {
+    private final long version;
+    private final long loaded;
+    private final List<AlarmEntity> alarms;
+
+    private CachedAlarms( final long version, final long loaded, final List<AlarmEntity> alarms ) {
+      this.version = version;
+      this.loaded = loaded;
+      this.alarms = alarms;
+    }
+  }
+}
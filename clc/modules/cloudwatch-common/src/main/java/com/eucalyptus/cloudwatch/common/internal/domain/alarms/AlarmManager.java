@@ -184,6 +184,7 @@ public class AlarmManager {
           HistoryItemType.ConfigurationUpdate, "Alarm \"" + alarmName + "\" updated", now);
       }
       db.commit();
+      AlarmDefinitionCache.invalidate();
     }
   }
 
@@ -352,6 +353,7 @@ public class AlarmManager {
       }
       CollectionUtils.each( alarmEntities, update );
       db.commit();
+      AlarmDefinitionCache.invalidate();
       return true;
     }
   }
@@ -410,6 +412,7 @@ public class AlarmManager {
         AlarmManager.executeActions(alarmEntity, newState, true, evaluationDate);
       }
       db.commit();
+      AlarmDefinitionCache.invalidate();
     }
   }
 
@@ -756,6 +759,7 @@ public class AlarmManager {
         }
       }
       db.commit();
+      AlarmDefinitionCache.invalidate();
     }
   }
 
@@ -0,0 +1,293 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * In-memory per minute statistics for metric series that are watched by alarms.
+ *
+ * <p>The cache is fed as metric data is written and can answer statistics
+ * queries for a series once it has observed all data for the query window. A
+ * null result means the query must be answered from the database.</p>
+ */
+public class MetricDataCache {
+
+  private static final long MINUTE_MILLIS = 60_000L;
+  private static final ConcurrentMap<SeriesKey, Series> series = new ConcurrentHashMap<>( );
+  private static final Comparator<MetricStatistics> STATISTICS_ORDER =
+      Comparator.comparing( MetricStatistics::getTimestamp )
+          .thenComparing( MetricStatistics::getUnits, Comparator.nullsFirst( Comparator.<Units>naturalOrder( ) ) );
+  private static final AtomicLong hits = new AtomicLong( );
+  private static final AtomicLong misses = new AtomicLong( );
+  private static volatile long completeSince = Long.MAX_VALUE;
+
+  /**
+   * Set whether all metric data is written through this cache.
+   *
+   * <p>The cache is only used for queries starting after the most recent
+   * transition to complete.</p>
+   */
+  public static void setComplete( final boolean complete ) {
+    if ( !complete ) {
+      completeSince = Long.MAX_VALUE;
+    } else if ( completeSince == Long.MAX_VALUE ) {
+      completeSince = nextMinute( System.currentTimeMillis( ) );
+    }
+  }
+
+  /**
+   * Set the series to retain and the number of minutes of data to retain for each.
+   */
+  public static void retain( final Map<SeriesKey, Integer> minutesBySeries ) {
+    final long coverageStart = nextMinute( System.currentTimeMillis( ) );
+    series.keySet( ).retainAll( minutesBySeries.keySet( ) );
+    for ( final Map.Entry<SeriesKey, Integer> entry : minutesBySeries.entrySet( ) ) {
+      final Series existing = series.get( entry.getKey( ) );
+      if ( existing == null ) {
+        series.putIfAbsent( entry.getKey( ), new Series( entry.getValue( ), coverageStart ) );
+      } else {
+        existing.ensureCapacity( entry.getValue( ), coverageStart );
+      }
+    }
+  }
+
+  /**
+   * Record aggregated metric data, data for series that are not retained is ignored.
+   */
+  public static void record( final String dimensionHash, final SimpleMetricEntity item ) {
+    if ( series.isEmpty( ) ) {
+      return;
+    }
+    final Series target = series.get( new SeriesKey(
+        item.getAccountId( ), item.getNamespace( ), item.getMetricName( ), item.getMetricType( ), dimensionHash ) );
+    if ( target != null ) {
+      target.record(
+          item.getTimestamp( ).getTime( ) / MINUTE_MILLIS,
+          System.currentTimeMillis( ) / MINUTE_MILLIS,
+          item.getUnits( ),
+          item.getSampleSize( ),
+          item.getSampleSum( ),
+          item.getSampleMin( ),
+          item.getSampleMax( ) );
+    }
+  }
+
+  /**
+   * Get statistics for the given parameters.
+   *
+   * @return The statistics or null if not cached
+   */
+  public static Collection<MetricStatistics> getMetricStatistics( final MetricManager.GetMetricStatisticsParams params ) {
+    params.validate( new Date( ) );
+    final Series target = series.get( new SeriesKey(
+        params.getAccountId( ), params.getNamespace( ), params.getMetricName( ), params.getMetricType( ), params.getDimensionHash( ) ) );
+    final Collection<MetricStatistics> statistics = target == null || params.getStartTime( ).getTime( ) < completeSince ?
+        null :
+        target.statistics( params, System.currentTimeMillis( ) / MINUTE_MILLIS );
+    ( statistics == null ? misses : hits ).incrementAndGet( );
+    return statistics;
+  }
+
+  public static int getSeriesCount( ) {
+    return series.size( );
+  }
+
+  public static long getHits( ) {
+    return hits.get( );
+  }
+
+  public static long getMisses( ) {
+    return misses.get( );
+  }
+
+  public static void clear( ) {
+    series.clear( );
+  }
+
+  private static long nextMinute( final long time ) {
+    return ( time / MINUTE_MILLIS + 1 ) * MINUTE_MILLIS;
+  }
+
+  public static final class SeriesKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final String dimensionHash;
+
+    public SeriesKey( final String accountId,
+                      final String namespace,
+                      final String metricName,
+                      final MetricType metricType,
+                      final String dimensionHash ) {
+      this.accountId = accountId;
+      this.namespace = namespace;
+      this.metricName = metricName;
+      this.metricType = metricType;
+      this.dimensionHash = dimensionHash;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final SeriesKey that = (SeriesKey) o;
+      return Objects.equals( accountId, that.accountId ) &&
+          Objects.equals( namespace, that.namespace ) &&
+          Objects.equals( metricName, that.metricName ) &&
+          metricType == that.metricType &&
+          Objects.equals( dimensionHash, that.dimensionHash );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( accountId, namespace, metricName, metricType, dimensionHash );
+    }
+  }
+
+  /**
+   * Ring of one minute buckets for a series.
+   *
+   * <p>A bucket holds data for a single unit, a bucket with data for multiple
+   * units cannot be used and queries including it are answered from the
+   * database.</p>
+   */
+  static final class Series {
+    private long coverageStart;
+    private long[] minutes;
+    private Units[] units;
+    private boolean[] mixed;
+    private double[] size;
+    private double[] sum;
+    private double[] min;
+    private double[] max;
+
+    Series( final int capacity, final long coverageStart ) {
+      this.coverageStart = coverageStart;
+      allocate( capacity );
+    }
+
+    private void allocate( final int capacity ) {
+      minutes = new long[ capacity ];
+      units = new Units[ capacity ];
+      mixed = new boolean[ capacity ];
+      size = new double[ capacity ];
+      sum = new double[ capacity ];
+      min = new double[ capacity ];
+      max = new double[ capacity ];
+      Arrays.fill( minutes, -1 );
+    }
+
+    /**
+     * Grow the ring if necessary, data does not carry over so coverage restarts.
+     */
+    synchronized void ensureCapacity( final int capacity, final long coverageStart ) {
+      if ( capacity > minutes.length ) {
+        allocate( capacity );
+        this.coverageStart = coverageStart;
+      }
+    }
+
+    synchronized void record( final long minute,
+                              final long currentMinute,
+                              final Units unit,
+                              final double sampleSize,
+                              final double sampleSum,
+                              final double sampleMin,
+                              final double sampleMax ) {
+      if ( minute > currentMinute || minute <= currentMinute - minutes.length ) {
+        return; // outside of window, the database is still authoritative for this data
+      }
+      final int slot = (int) ( minute % minutes.length );
+      if ( minutes[ slot ] != minute ) {
+        minutes[ slot ] = minute;
+        units[ slot ] = unit;
+        mixed[ slot ] = false;
+        size[ slot ] = sampleSize;
+        sum[ slot ] = sampleSum;
+        min[ slot ] = sampleMin;
+        max[ slot ] = sampleMax;
+      } else if ( units[ slot ] != unit ) {
+        mixed[ slot ] = true;
+      } else {
+        size[ slot ] += sampleSize;
+        sum[ slot ] += sampleSum;
+        min[ slot ] = Math.min( min[ slot ], sampleMin );
+        max[ slot ] = Math.max( max[ slot ], sampleMax );
+      }
+    }
+
+    synchronized Collection<MetricStatistics> statistics( final MetricManager.GetMetricStatisticsParams params,
+                                                          final long currentMinute ) {
+      final long startMillis = params.getStartTime( ).getTime( );
+      final long startMinute = startMillis / MINUTE_MILLIS;
+      final long endMinute = params.getEndTime( ).getTime( ) / MINUTE_MILLIS;
+      if ( startMillis < coverageStart ||
+          startMinute <= currentMinute - minutes.length ||
+          endMinute > currentMinute + 1 ) {
+        return null;
+      }
+      final Map<String, MetricStatistics> aggregated = Maps.newLinkedHashMap( );
+      for ( long minute = startMinute; minute < endMinute; minute++ ) {
+        final int slot = (int) ( minute % minutes.length );
+        if ( minutes[ slot ] != minute ) {
+          continue;
+        }
+        if ( mixed[ slot ] ) {
+          return null;
+        }
+        if ( params.getUnits( ) != null && params.getUnits( ) != units[ slot ] ) {
+          continue;
+        }
+        final Date periodStart = MetricUtils.getPeriodStart( new Date( minute * MINUTE_MILLIS ), params.getStartTime( ), params.getPeriod( ) );
+        final String key = periodStart.getTime( ) + "|" + units[ slot ];
+        final MetricStatistics totalSoFar = aggregated.get( key );
+        if ( totalSoFar == null ) {
+          aggregated.put( key, new MetricStatistics(
+              params.getAccountId( ), params.getNamespace( ), params.getMetricName( ), units[ slot ],
+              params.getMetricType( ), periodStart, size[ slot ], max[ slot ], min[ slot ], sum[ slot ],
+              params.getDimensions( ) ) );
+        } else {
+          totalSoFar.setSampleMax( Math.max( max[ slot ], totalSoFar.getSampleMax( ) ) );
+          totalSoFar.setSampleMin( Math.min( min[ slot ], totalSoFar.getSampleMin( ) ) );
+          totalSoFar.setSampleSize( totalSoFar.getSampleSize( ) + size[ slot ] );
+          totalSoFar.setSampleSum( totalSoFar.getSampleSum( ) + sum[ slot ] );
+        }
+      }
+      final List<MetricStatistics> statistics = Lists.newArrayList( aggregated.values( ) );
+      statistics.sort( STATISTICS_ORDER );
+      return statistics;
+    }
+  }
+}
@@ -119,6 +119,7 @@ public class MetricManager {
   }
 
   private static void addManyMetrics(Multimap<Class, MetricEntity> metricMap) {
+    Date now = new Date();
     for (Class c : metricMap.keySet()) {
       for (List<MetricEntity> dataBatchPartial : Iterables.partition(metricMap.get(c), METRIC_DATA_NUM_DB_OPERATIONS_PER_TRANSACTION)) {
         try (final TransactionResource db = Entities.transactionFor(c)) {
@@ -131,6 +132,8 @@ public class MetricManager {
             }
             Entities.persist(me);
           }
+          // recorded with the data so the rollup rebuild sees the data if it sees the marker
+          MetricRollupManager.markStale(dataBatchPartial, now);
           db.commit();
         }
       }
@@ -328,88 +331,45 @@ public class MetricManager {
     if (getMetricStatisticsParamses == null) throw new IllegalArgumentException("getMetricStatisticsParamses can not be null");
     Date now = new Date();
     Map<GetMetricStatisticsParams, Collection<MetricStatistics>> resultMap = Maps.newHashMap();
+    Map<GetMetricStatisticsParams, TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>> multiAggregationMap = Maps.newHashMap();
+    Map<GetMetricStatisticsParams, Date> rollupStartTimeMap = Maps.newHashMap();
+    Map<GetMetricStatisticsParams, Date> rollupEndTimeMap = Maps.newHashMap();
+    Multimap<Class, GetMetricStatisticsParams> rollupGroupMap = LinkedListMultimap.create();
+    Map<GetMetricStatisticsParams, Date> rawStartTimeMap = Maps.newHashMap();
+    Map<GetMetricStatisticsParams, Date> rawEndTimeMap = Maps.newHashMap();
     Multimap<Class, GetMetricStatisticsParams> hashGroupMap = LinkedListMultimap.create();
     for (GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
       if (getMetricStatisticsParams == null) throw new IllegalArgumentException("getMetricStatisticsParams can not be null");
       getMetricStatisticsParams.validate(now);
-      Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash());
-      hashGroupMap.put(metricEntityClass, getMetricStatisticsParams);
-    }
-    for (Class metricEntityClass: hashGroupMap.keySet()) {
-      try (final TransactionResource db = Entities.transactionFor(metricEntityClass)) {
-        // set some global criteria to start (for narrowing?)
-        Date minDate = null;
-        Date maxDate = null;
-        Junction disjunction = Restrictions.disjunction();
-        Map<GetMetricStatisticsParams, TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>> multiAggregationMap = Maps.newHashMap();
-        for (GetMetricStatisticsParams getMetricStatisticsParams : hashGroupMap.get(metricEntityClass)) {
-          multiAggregationMap.put(getMetricStatisticsParams, new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE));
-          Junction conjunction = Restrictions.conjunction();
-          conjunction = conjunction.add(Restrictions.lt("timestamp", getMetricStatisticsParams.getEndTime()));
-          conjunction = conjunction.add(Restrictions.ge("timestamp", getMetricStatisticsParams.getStartTime()));
-          conjunction = conjunction.add(Restrictions.eq("accountId", getMetricStatisticsParams.getAccountId()));
-          conjunction = conjunction.add(Restrictions.eq("metricName", getMetricStatisticsParams.getMetricName()));
-          conjunction = conjunction.add(Restrictions.eq("namespace", getMetricStatisticsParams.getNamespace()));
-          conjunction = conjunction.add(Restrictions.eq("dimensionHash", hash(getMetricStatisticsParams.getDimensionMap())));
-          if (getMetricStatisticsParams.getUnits() != null) {
-            conjunction = conjunction.add(Restrictions.eq("units", getMetricStatisticsParams.getUnits()));
-          }
-          disjunction = disjunction.add(conjunction);
-          if (minDate == null || getMetricStatisticsParams.getStartTime().before(minDate)) {
-            minDate = getMetricStatisticsParams.getStartTime();
-          }
-          if (maxDate == null || getMetricStatisticsParams.getEndTime().after(maxDate)) {
-            maxDate = getMetricStatisticsParams.getEndTime();
-          }
-        }
-        Criteria criteria = Entities.createCriteria(metricEntityClass);
-        criteria = criteria.add(Restrictions.lt("timestamp", maxDate));
-        criteria = criteria.add(Restrictions.ge("timestamp", minDate));
-        criteria = criteria.add(disjunction);
-
-        ProjectionList projectionList = Projections.projectionList();
-        projectionList.add(Projections.max("sampleMax"));
-        projectionList.add(Projections.min("sampleMin"));
-        projectionList.add(Projections.sum("sampleSize"));
-        projectionList.add(Projections.sum("sampleSum"));
-        projectionList.add(Projections.groupProperty("units"));
-        projectionList.add(Projections.groupProperty("timestamp"));
-        projectionList.add(Projections.groupProperty("accountId"));
-        projectionList.add(Projections.groupProperty("metricName"));
-        projectionList.add(Projections.groupProperty("metricType"));
-        projectionList.add(Projections.groupProperty("namespace"));
-        projectionList.add(Projections.groupProperty("dimensionHash"));
-        criteria.setProjection(projectionList);
-        criteria.addOrder(Order.asc("timestamp"));
-
-        final ScrollableResults results = criteria.setCacheMode(CacheMode.IGNORE).scroll(ScrollMode.FORWARD_ONLY);
-        try {
-          while ( results.next( ) ) {
-            MetricEntity me = getMetricEntity( results );
-            for ( GetMetricStatisticsParams getMetricStatisticsParams : hashGroupMap.get( metricEntityClass ) ) {
-              if ( metricDataMatches( getMetricStatisticsParams, me ) ) {
-                Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = multiAggregationMap.get( getMetricStatisticsParams );
-                GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey( me, getMetricStatisticsParams.getStartTime( ), getMetricStatisticsParams.getPeriod( ), getMetricStatisticsParams.getDimensionHash( ) );
-                MetricStatistics item = new MetricStatistics( me, getMetricStatisticsParams.getStartTime( ), getMetricStatisticsParams.getPeriod( ), getMetricStatisticsParams.getDimensions( ) );
-                if ( !aggregationMap.containsKey( key ) ) {
-                  aggregationMap.put( key, item );
-                } else {
-                  MetricStatistics totalSoFar = aggregationMap.get( key );
-                  totalSoFar.setSampleMax( Math.max( item.getSampleMax( ), totalSoFar.getSampleMax( ) ) );
-                  totalSoFar.setSampleMin( Math.min( item.getSampleMin( ), totalSoFar.getSampleMin( ) ) );
-                  totalSoFar.setSampleSize( totalSoFar.getSampleSize( ) + item.getSampleSize( ) );
-                  totalSoFar.setSampleSum( totalSoFar.getSampleSum( ) + item.getSampleSum( ) );
-                }
-              }
-            }
-          }
-        } finally {
-          results.close( );
-        }
-        for (GetMetricStatisticsParams getMetricStatisticsParams : multiAggregationMap.keySet()) {
-          resultMap.put(getMetricStatisticsParams, multiAggregationMap.get(getMetricStatisticsParams).values());
+      TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE);
+      multiAggregationMap.put(getMetricStatisticsParams, aggregationMap);
+      // the covered part of the range is read from the coarsest usable rollup tier, grouped by tier
+      Date rawStartTime = getMetricStatisticsParams.getStartTime();
+      MetricRollupManager.Tier tier = MetricRollupManager.getTier(getMetricStatisticsParams);
+      if (tier != null) {
+        Date coveredEndTime = MetricRollupManager.getCoveredEndTime(tier, getMetricStatisticsParams);
+        if (coveredEndTime.after(getMetricStatisticsParams.getStartTime())) {
+          rollupStartTimeMap.put(getMetricStatisticsParams, getMetricStatisticsParams.getStartTime());
+          rollupEndTimeMap.put(getMetricStatisticsParams, coveredEndTime);
+          rollupGroupMap.put(tier.getEntityClass(), getMetricStatisticsParams);
+          rawStartTime = coveredEndTime;
         }
       }
+      if (rawStartTime.before(getMetricStatisticsParams.getEndTime())) {
+        rawStartTimeMap.put(getMetricStatisticsParams, rawStartTime);
+        rawEndTimeMap.put(getMetricStatisticsParams, getMetricStatisticsParams.getEndTime());
+        Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash());
+        hashGroupMap.put(metricEntityClass, getMetricStatisticsParams);
+      }
+    }
+    for (Class rollupEntityClass: rollupGroupMap.keySet()) {
+      aggregateManyMetricStatistics(rollupEntityClass, rollupGroupMap.get(rollupEntityClass), rollupStartTimeMap, rollupEndTimeMap, multiAggregationMap);
+    }
+    for (Class metricEntityClass: hashGroupMap.keySet()) {
+      aggregateManyMetricStatistics(metricEntityClass, hashGroupMap.get(metricEntityClass), rawStartTimeMap, rawEndTimeMap, multiAggregationMap);
+    }
+    for (GetMetricStatisticsParams getMetricStatisticsParams : multiAggregationMap.keySet()) {
+      resultMap.put(getMetricStatisticsParams, multiAggregationMap.get(getMetricStatisticsParams).values());
     }
     List<Collection<MetricStatistics>> resultList = Lists.newArrayList();
     for (GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
@@ -422,15 +382,96 @@ public class MetricManager {
     return resultList;
   }
 
-  private static boolean metricDataMatches(GetMetricStatisticsParams getMetricStatisticsParams, MetricEntity metricEntity) {
+  /**
+   * Aggregate statistics for many queries against one entity class using a single query.
+   */
+  private static void aggregateManyMetricStatistics(Class metricEntityClass, Collection<GetMetricStatisticsParams> getMetricStatisticsParamses,
+                                                    Map<GetMetricStatisticsParams, Date> startTimeMap, Map<GetMetricStatisticsParams, Date> endTimeMap,
+                                                    Map<GetMetricStatisticsParams, TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>> multiAggregationMap) {
+    try (final TransactionResource db = Entities.transactionFor(metricEntityClass)) {
+      // set some global criteria to start (for narrowing?)
+      Date minDate = null;
+      Date maxDate = null;
+      Junction disjunction = Restrictions.disjunction();
+      for (GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
+        Date startTime = startTimeMap.get(getMetricStatisticsParams);
+        Date endTime = endTimeMap.get(getMetricStatisticsParams);
+        Junction conjunction = Restrictions.conjunction();
+        conjunction = conjunction.add(Restrictions.lt("timestamp", endTime));
+        conjunction = conjunction.add(Restrictions.ge("timestamp", startTime));
+        conjunction = conjunction.add(Restrictions.eq("accountId", getMetricStatisticsParams.getAccountId()));
+        conjunction = conjunction.add(Restrictions.eq("metricName", getMetricStatisticsParams.getMetricName()));
+        conjunction = conjunction.add(Restrictions.eq("namespace", getMetricStatisticsParams.getNamespace()));
+        conjunction = conjunction.add(Restrictions.eq("dimensionHash", getMetricStatisticsParams.getDimensionHash()));
+        conjunction = conjunction.add(Restrictions.eq("metricType", getMetricStatisticsParams.getMetricType()));
+        if (getMetricStatisticsParams.getUnits() != null) {
+          conjunction = conjunction.add(Restrictions.eq("units", getMetricStatisticsParams.getUnits()));
+        }
+        disjunction = disjunction.add(conjunction);
+        if (minDate == null || startTime.before(minDate)) {
+          minDate = startTime;
+        }
+        if (maxDate == null || endTime.after(maxDate)) {
+          maxDate = endTime;
+        }
+      }
+      Criteria criteria = Entities.createCriteria(metricEntityClass);
+      criteria = criteria.add(Restrictions.lt("timestamp", maxDate));
+      criteria = criteria.add(Restrictions.ge("timestamp", minDate));
+      criteria = criteria.add(disjunction);
+
+      ProjectionList projectionList = Projections.projectionList();
+      projectionList.add(Projections.max("sampleMax"));
+      projectionList.add(Projections.min("sampleMin"));
+      projectionList.add(Projections.sum("sampleSize"));
+      projectionList.add(Projections.sum("sampleSum"));
+      projectionList.add(Projections.groupProperty("units"));
+      projectionList.add(Projections.groupProperty("timestamp"));
+      projectionList.add(Projections.groupProperty("accountId"));
+      projectionList.add(Projections.groupProperty("metricName"));
+      projectionList.add(Projections.groupProperty("metricType"));
+      projectionList.add(Projections.groupProperty("namespace"));
+      projectionList.add(Projections.groupProperty("dimensionHash"));
+      criteria.setProjection(projectionList);
+      criteria.addOrder(Order.asc("timestamp"));
+
+      final ScrollableResults results = criteria.setCacheMode(CacheMode.IGNORE).scroll(ScrollMode.FORWARD_ONLY);
+      try {
+        while ( results.next( ) ) {
+          MetricEntity me = getMetricEntity( results );
+          for ( GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses ) {
+            if ( metricDataMatches( getMetricStatisticsParams, startTimeMap.get( getMetricStatisticsParams ), endTimeMap.get( getMetricStatisticsParams ), me ) ) {
+              Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = multiAggregationMap.get( getMetricStatisticsParams );
+              GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey( me, getMetricStatisticsParams.getStartTime( ), getMetricStatisticsParams.getPeriod( ), getMetricStatisticsParams.getDimensionHash( ) );
+              MetricStatistics item = new MetricStatistics( me, getMetricStatisticsParams.getStartTime( ), getMetricStatisticsParams.getPeriod( ), getMetricStatisticsParams.getDimensions( ) );
+              if ( !aggregationMap.containsKey( key ) ) {
+                aggregationMap.put( key, item );
+              } else {
+                MetricStatistics totalSoFar = aggregationMap.get( key );
+                totalSoFar.setSampleMax( Math.max( item.getSampleMax( ), totalSoFar.getSampleMax( ) ) );
+                totalSoFar.setSampleMin( Math.min( item.getSampleMin( ), totalSoFar.getSampleMin( ) ) );
+                totalSoFar.setSampleSize( totalSoFar.getSampleSize( ) + item.getSampleSize( ) );
+                totalSoFar.setSampleSum( totalSoFar.getSampleSum( ) + item.getSampleSum( ) );
+              }
+            }
+          }
+        }
+      } finally {
+        results.close( );
+      }
+    }
+  }
+
+  private static boolean metricDataMatches(GetMetricStatisticsParams getMetricStatisticsParams, Date startTime, Date endTime, MetricEntity metricEntity) {
     if (getMetricStatisticsParams == null || metricEntity == null) return false;
-    if (getMetricStatisticsParams.getStartTime() == null || getMetricStatisticsParams.getStartTime().after(metricEntity.getTimestamp())) return false;
-    if (metricEntity.getTimestamp() == null || !metricEntity.getTimestamp().before(getMetricStatisticsParams.getEndTime())) return false;
+    if (startTime == null || startTime.after(metricEntity.getTimestamp())) return false;
+    if (endTime == null || metricEntity.getTimestamp() == null || !metricEntity.getTimestamp().before(endTime)) return false;
     if (getMetricStatisticsParams.getAccountId() == null || !getMetricStatisticsParams.getAccountId().equals(metricEntity.getAccountId())) return false;
     if (getMetricStatisticsParams.getMetricName() == null || !getMetricStatisticsParams.getMetricName().equals(metricEntity.getMetricName())) return false;
     if (getMetricStatisticsParams.getNamespace() == null || !getMetricStatisticsParams.getNamespace().equals(metricEntity.getNamespace())) return false;
     if (getMetricStatisticsParams.getMetricType() == null || !getMetricStatisticsParams.getMetricType().equals(metricEntity.getMetricType())) return false;
     if (getMetricStatisticsParams.getDimensionHash() == null || !getMetricStatisticsParams.getDimensionHash().equals(metricEntity.getDimensionHash())) return false;
+    if (getMetricStatisticsParams.getUnits() != null && !getMetricStatisticsParams.getUnits().equals(metricEntity.getUnits())) return false;
     return true;
   }
 
@@ -440,14 +481,40 @@ public class MetricManager {
     getMetricStatisticsParams.validate(now);
     Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash());
     Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE);
+    Date rawStartTime = aggregateRollupStatistics(getMetricStatisticsParams, aggregationMap);
+    if (rawStartTime.before(getMetricStatisticsParams.getEndTime())) {
+      aggregateMetricStatistics(metricEntityClass, getMetricStatisticsParams, rawStartTime, getMetricStatisticsParams.getEndTime(), aggregationMap);
+    }
+    return Lists.newArrayList(aggregationMap.values());
+  }
+
+  /**
+   * Aggregate statistics from the coarsest usable rollup tier for the covered part of the query range.
+   *
+   * @return The start of the part of the query range that was not covered by rollups
+   */
+  private static Date aggregateRollupStatistics(GetMetricStatisticsParams getMetricStatisticsParams, Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap) {
+    MetricRollupManager.Tier tier = MetricRollupManager.getTier(getMetricStatisticsParams);
+    if (tier == null) {
+      return getMetricStatisticsParams.getStartTime();
+    }
+    Date coveredEndTime = MetricRollupManager.getCoveredEndTime(tier, getMetricStatisticsParams);
+    if (coveredEndTime.after(getMetricStatisticsParams.getStartTime())) {
+      aggregateMetricStatistics(tier.getEntityClass(), getMetricStatisticsParams, getMetricStatisticsParams.getStartTime(), coveredEndTime, aggregationMap);
+    }
+    return coveredEndTime;
+  }
+
+  private static void aggregateMetricStatistics(Class metricEntityClass, GetMetricStatisticsParams getMetricStatisticsParams, Date startTime, Date endTime, Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap) {
     try (final TransactionResource db = Entities.transactionFor(metricEntityClass)) {
       Criteria criteria = Entities.createCriteria(metricEntityClass);
       criteria = criteria.add(Restrictions.eq("accountId", getMetricStatisticsParams.getAccountId()));
       criteria = criteria.add(Restrictions.eq("metricName", getMetricStatisticsParams.getMetricName()));
       criteria = criteria.add(Restrictions.eq("namespace", getMetricStatisticsParams.getNamespace()));
-      criteria = criteria.add(Restrictions.lt("timestamp", getMetricStatisticsParams.getEndTime()));
-      criteria = criteria.add(Restrictions.ge("timestamp", getMetricStatisticsParams.getStartTime()));
+      criteria = criteria.add(Restrictions.lt("timestamp", endTime));
+      criteria = criteria.add(Restrictions.ge("timestamp", startTime));
       criteria = criteria.add(Restrictions.eq("dimensionHash", getMetricStatisticsParams.getDimensionHash()));
+      criteria = criteria.add(Restrictions.eq("metricType", getMetricStatisticsParams.getMetricType()));
       if (getMetricStatisticsParams.getUnits() != null) {
         criteria = criteria.add(Restrictions.eq("units", getMetricStatisticsParams.getUnits()));
       }
@@ -481,10 +548,9 @@ public class MetricManager {
         results.close( );
       }
     }
-    return Lists.newArrayList(aggregationMap.values());
   }
 
-  private static MetricEntity getMetricEntity(ScrollableResults results) {
+  static MetricEntity getMetricEntity(ScrollableResults results) {
     Double sampleMax = (Double) results.get(0);
     Double sampleMin = (Double) results.get(1);
     Double sampleSize = (Double) results.get(2);
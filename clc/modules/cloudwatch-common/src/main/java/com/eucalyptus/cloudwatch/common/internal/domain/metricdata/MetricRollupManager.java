@@ -0,0 +1,593 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Table;
+
+import org.apache.log4j.Logger;
+import org.hibernate.CacheMode;
+import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.component.annotation.RemotablePersistence;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Pre-aggregated metric data at five minute and one hour granularity.
+ *
+ * <p>Rollups are built in time order once data is old enough that it is
+ * unlikely to change. Each tier is built from the next finer tier and covers
+ * a contiguous range of time, statistics queries use the coarsest tier that
+ * matches the requested period for the covered part of the query range.</p>
+ *
+ * <p>Metric data can be put up to two weeks late. Late data is recorded
+ * against its five minute period when it is stored and the affected
+ * periods are rebuilt in every tier on the next rollup run.</p>
+ */
+public class MetricRollupManager {
+
+  private static final Logger LOG = Logger.getLogger( MetricRollupManager.class );
+  private static final long ROLLUP_DELAY_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+  private static final long COVERAGE_CACHE_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+  private static final long LATE_DATA_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+  private static final int MAX_CHUNKS_PER_RUN = 48;
+  private static final int MAX_STALE_PER_RUN = 1000;
+  private static final Map<Tier, Long> rolledUpToByTier = Maps.newConcurrentMap( );
+  private static volatile Map<Tier, Coverage> coverageCache = Collections.emptyMap( );
+  private static volatile long coverageCacheTimestamp = 0;
+
+  public enum Tier {
+    FiveMinute( 300, TimeUnit.HOURS.toMillis( 1 ), MetricRollupEntityFiveMinute.class ) {
+      @Override
+      public int getRetentionDays( ) {
+        return CloudWatchConfigProperties.METRIC_ROLLUP_FIVE_MINUTE_RETENTION_DAYS;
+      }
+    },
+    OneHour( 3600, TimeUnit.DAYS.toMillis( 1 ), MetricRollupEntityOneHour.class ) {
+      @Override
+      public int getRetentionDays( ) {
+        return CloudWatchConfigProperties.METRIC_ROLLUP_ONE_HOUR_RETENTION_DAYS;
+      }
+    },
+    ;
+
+    private final int period;
+    private final long chunkMillis;
+    private final Class<? extends MetricEntity> entityClass;
+
+    Tier( final int period, final long chunkMillis, final Class<? extends MetricEntity> entityClass ) {
+      this.period = period;
+      this.chunkMillis = chunkMillis;
+      this.entityClass = entityClass;
+    }
+
+    /**
+     * The period for the tier in seconds.
+     */
+    public int getPeriod( ) {
+      return period;
+    }
+
+    public Class<? extends MetricEntity> getEntityClass( ) {
+      return entityClass;
+    }
+
+    public abstract int getRetentionDays( );
+
+    long getPeriodMillis( ) {
+      return 1000L * period;
+    }
+
+    long floor( final long time ) {
+      return time - ( time % getPeriodMillis( ) );
+    }
+
+    @Nullable
+    Tier getSource( ) {
+      return ordinal( ) == 0 ? null : values( )[ ordinal( ) - 1 ];
+    }
+
+    Collection<Class> getSourceClasses( ) {
+      final Tier source = getSource( );
+      return source == null ?
+          MetricEntityFactory.getAllClassesForEntitiesGet( ) :
+          Collections.<Class>singleton( source.getEntityClass( ) );
+    }
+  }
+
+  /**
+   * Time range for which a tier holds rollups, end exclusive.
+   */
+  public static final class Coverage {
+    private final Date start;
+    private final Date end;
+
+    Coverage( final Date start, final Date end ) {
+      this.start = start;
+      this.end = end;
+    }
+
+    public Date getStart( ) {
+      return start;
+    }
+
+    public Date getEnd( ) {
+      return end;
+    }
+  }
+
+  @Entity
+  @PersistenceContext( name = "eucalyptus_cloudwatch_backend" )
+  @RemotablePersistence
+  @Table( name = "metric_data_rollup_5m", indexes = {
+      @Index( name = "metric_data_rollup_5m_series_idx", columnList = "dimension_hash, timestamp" ),
+      @Index( name = "metric_data_rollup_5m_timestamp_idx", columnList = "timestamp" )
+  } )
+  public static class MetricRollupEntityFiveMinute extends MetricEntity {
+    public MetricRollupEntityFiveMinute( ) {
+      super( );
+    }
+  }
+
+  @Entity
+  @PersistenceContext( name = "eucalyptus_cloudwatch_backend" )
+  @RemotablePersistence
+  @Table( name = "metric_data_rollup_1h", indexes = {
+      @Index( name = "metric_data_rollup_1h_series_idx", columnList = "dimension_hash, timestamp" ),
+      @Index( name = "metric_data_rollup_1h_timestamp_idx", columnList = "timestamp" )
+  } )
+  public static class MetricRollupEntityOneHour extends MetricEntity {
+    public MetricRollupEntityOneHour( ) {
+      super( );
+    }
+  }
+
+  /**
+   * Marker for a five minute period that had metric data put after its rollups may have been built.
+   */
+  @Entity
+  @PersistenceContext( name = "eucalyptus_cloudwatch_backend" )
+  @RemotablePersistence
+  @Table( name = "metric_data_rollup_stale" )
+  public static class MetricRollupStaleEntity {
+    @Id
+    @GeneratedValue( generator = "system-uuid" )
+    @GenericGenerator( name = "system-uuid", strategy = "uuid" )
+    @Column( name = "id" )
+    private String id;
+    @Column( name = "timestamp", nullable = false )
+    private Date timestamp;
+
+    public MetricRollupStaleEntity( ) {
+    }
+
+    MetricRollupStaleEntity( final Date timestamp ) {
+      this.timestamp = timestamp;
+    }
+
+    public String getId( ) {
+      return id;
+    }
+
+    public void setId( final String id ) {
+      this.id = id;
+    }
+
+    public Date getTimestamp( ) {
+      return timestamp;
+    }
+
+    public void setTimestamp( final Date timestamp ) {
+      this.timestamp = timestamp;
+    }
+  }
+
+  /**
+   * Build any rollups that are due, finer tiers first.
+   */
+  public static void rollup( final Date now ) {
+    rollupStale( );
+    for ( final Tier tier : Tier.values( ) ) {
+      rollup( tier, now );
+    }
+    coverageCacheTimestamp = 0;
+  }
+
+  /**
+   * Delete rollups for the tier with timestamps before the given date.
+   */
+  public static void deleteRollups( final Tier tier, final Date before ) {
+    try ( final TransactionResource db = Entities.transactionFor( tier.getEntityClass( ) ) ) {
+      final Map<String, Date> criteria = Maps.newHashMap( );
+      criteria.put( "before", before );
+      Entities.deleteAllMatching( tier.getEntityClass( ), "WHERE timestamp < :before", criteria );
+      db.commit( );
+    }
+    coverageCacheTimestamp = 0;
+  }
+
+  /**
+   * Get the coarsest tier usable for the given validated statistics parameters.
+   *
+   * <p>A tier is usable when its period divides the requested period and the
+   * requested start time is aligned to the tier period.</p>
+   */
+  @Nullable
+  static Tier getTier( final MetricManager.GetMetricStatisticsParams params ) {
+    Tier usable = null;
+    for ( final Tier tier : Tier.values( ) ) {
+      if ( params.getPeriod( ) % tier.getPeriod( ) == 0 &&
+          params.getStartTime( ).getTime( ) % tier.getPeriodMillis( ) == 0 ) {
+        usable = tier;
+      }
+    }
+    return usable;
+  }
+
+  /**
+   * Get the end of the part of the query range that can be answered from the tier.
+   *
+   * @return The end time, or the query start time if no part of the range is covered
+   */
+  static Date getCoveredEndTime( final Tier tier, final MetricManager.GetMetricStatisticsParams params ) {
+    final Coverage coverage = getCoverage( tier );
+    final Date startTime = params.getStartTime( );
+    if ( coverage == null || startTime.before( coverage.getStart( ) ) ) {
+      return startTime;
+    }
+    // only whole requested periods are answered from the rollup
+    final long periodMillis = 1000L * params.getPeriod( );
+    final long coveredMillis = Math.min( coverage.getEnd( ).getTime( ), params.getEndTime( ).getTime( ) ) - startTime.getTime( );
+    return coveredMillis <= 0 ?
+        startTime :
+        new Date( startTime.getTime( ) + ( coveredMillis - coveredMillis % periodMillis ) );
+  }
+
+  /**
+   * Record the five minute periods that the given metric data is late for.
+   *
+   * <p>Must be called in the transaction that stores the data.</p>
+   */
+  static void markStale( final Collection<MetricEntity> data, final Date now ) {
+    for ( final Long period : getLatePeriods( data, now.getTime( ) ) ) {
+      Entities.persist( new MetricRollupStaleEntity( new Date( period ) ) );
+    }
+  }
+
+  /**
+   * Get the five minute periods for data that may have missed its rollup.
+   *
+   * <p>Rollups are built once data is ten minutes old so anything over five
+   * minutes old is treated as late, which allows for clock differences
+   * between hosts.</p>
+   */
+  static SortedSet<Long> getLatePeriods( final Collection<MetricEntity> data, final long now ) {
+    final SortedSet<Long> periods = Sets.newTreeSet( );
+    for ( final MetricEntity me : data ) {
+      if ( me.getTimestamp( ).getTime( ) < now - LATE_DATA_MILLIS ) {
+        periods.add( Tier.FiveMinute.floor( me.getTimestamp( ).getTime( ) ) );
+      }
+    }
+    return periods;
+  }
+
+  /**
+   * Get the periods for the tier to rebuild for the given stale timestamps.
+   *
+   * <p>Periods that are not yet fully rolled up are skipped, the regular
+   * rollup will include the late data when it reaches them.</p>
+   */
+  static SortedSet<Long> getStalePeriods( final Tier tier, final Collection<Date> stale, final long rolledUpTo ) {
+    final SortedSet<Long> periods = Sets.newTreeSet( );
+    for ( final Date timestamp : stale ) {
+      final long period = tier.floor( timestamp.getTime( ) );
+      if ( period + tier.getPeriodMillis( ) <= rolledUpTo ) {
+        periods.add( period );
+      }
+    }
+    return periods;
+  }
+
+  @Nullable
+  public static Coverage getCoverage( final Tier tier ) {
+    if ( System.currentTimeMillis( ) - coverageCacheTimestamp > COVERAGE_CACHE_MILLIS ) {
+      final long timestamp = System.currentTimeMillis( );
+      final Map<Tier, Coverage> coverageMap = new EnumMap<>( Tier.class );
+      for ( final Tier cacheTier : Tier.values( ) ) {
+        final Coverage coverage = loadCoverage( cacheTier );
+        if ( coverage != null ) {
+          coverageMap.put( cacheTier, coverage );
+        }
+      }
+      coverageCache = ImmutableMap.copyOf( coverageMap );
+      coverageCacheTimestamp = timestamp;
+    }
+    return coverageCache.get( tier );
+  }
+
+  @Nullable
+  private static Coverage loadCoverage( final Tier tier ) {
+    final Date[] range = getTimestampRange( tier.getEntityClass( ) );
+    return range == null ?
+        null :
+        new Coverage( range[ 0 ], new Date( range[ 1 ].getTime( ) + tier.getPeriodMillis( ) ) );
+  }
+
+  @Nullable
+  private static Date[] getTimestampRange( final Class entityClass ) {
+    try ( final TransactionResource db = Entities.transactionFor( entityClass ) ) {
+      final Criteria criteria = Entities.createCriteria( entityClass );
+      criteria.setProjection( Projections.projectionList( )
+          .add( Projections.min( "timestamp" ) )
+          .add( Projections.max( "timestamp" ) ) );
+      final Object[] result = (Object[]) criteria.uniqueResult( );
+      return result == null || result[ 0 ] == null ?
+          null :
+          new Date[]{ (Date) result[ 0 ], (Date) result[ 1 ] };
+    }
+  }
+
+  /**
+   * Get the end of the rolled up range for the tier, end exclusive.
+   */
+  @Nullable
+  private static Long getRolledUpTo( final Tier tier ) {
+    final Long rolledUpTo = rolledUpToByTier.get( tier );
+    if ( rolledUpTo != null ) {
+      return rolledUpTo;
+    }
+    final Date[] range = getTimestampRange( tier.getEntityClass( ) );
+    return range == null ? null : range[ 1 ].getTime( ) + tier.getPeriodMillis( );
+  }
+
+  /**
+   * Rebuild rollups for periods that had late metric data, finer tiers first.
+   */
+  private static void rollupStale( ) {
+    try {
+      final List<MetricRollupStaleEntity> staleEntities;
+      try ( final TransactionResource db = Entities.transactionFor( MetricRollupStaleEntity.class ) ) {
+        final Criteria criteria = Entities.createCriteria( MetricRollupStaleEntity.class );
+        criteria.setMaxResults( MAX_STALE_PER_RUN );
+        //noinspection unchecked
+        staleEntities = (List<MetricRollupStaleEntity>) criteria.list( );
+      }
+      if ( staleEntities.isEmpty( ) ) return;
+
+      final List<String> ids = Lists.newArrayList( );
+      final List<Date> stale = Lists.newArrayList( );
+      for ( final MetricRollupStaleEntity staleEntity : staleEntities ) {
+        ids.add( staleEntity.getId( ) );
+        stale.add( staleEntity.getTimestamp( ) );
+      }
+      for ( final Tier tier : Tier.values( ) ) {
+        final Long rolledUpTo = getRolledUpTo( tier );
+        if ( rolledUpTo == null ) continue;
+        for ( final Long period : getStalePeriods( tier, stale, rolledUpTo ) ) {
+          rollup( tier, new Date( period ), new Date( period + tier.getPeriodMillis( ) ) );
+        }
+      }
+
+      // markers added while rebuilding are kept for the next run
+      try ( final TransactionResource db = Entities.transactionFor( MetricRollupStaleEntity.class ) ) {
+        final Map<String, List<String>> criteria = Maps.newHashMap( );
+        criteria.put( "ids", ids );
+        Entities.deleteAllMatching( MetricRollupStaleEntity.class, "WHERE id IN (:ids)", criteria );
+        db.commit( );
+      }
+    } catch ( final Exception e ) {
+      LOG.error( "Error rebuilding stale metric data rollups", e );
+    }
+  }
+
+  private static void rollup( final Tier tier, final Date now ) {
+    try {
+      final long rollupUntil;
+      final Tier source = tier.getSource( );
+      if ( source == null ) {
+        rollupUntil = tier.floor( now.getTime( ) - ROLLUP_DELAY_MILLIS );
+      } else {
+        final Long sourceRolledUpTo = getRolledUpTo( source );
+        if ( sourceRolledUpTo == null ) return;
+        rollupUntil = tier.floor( sourceRolledUpTo );
+      }
+
+      long rollupFrom;
+      final Long rolledUpTo = getRolledUpTo( tier );
+      if ( rolledUpTo != null ) {
+        rollupFrom = rolledUpTo;
+      } else {
+        Long earliest = null;
+        for ( final Class sourceClass : tier.getSourceClasses( ) ) {
+          final Date[] sourceRange = getTimestampRange( sourceClass );
+          if ( sourceRange != null && ( earliest == null || sourceRange[ 0 ].getTime( ) < earliest ) ) {
+            earliest = sourceRange[ 0 ].getTime( );
+          }
+        }
+        if ( earliest == null ) return;
+        rollupFrom = tier.floor( earliest );
+      }
+
+      for ( int chunk = 0; chunk < MAX_CHUNKS_PER_RUN && rollupFrom < rollupUntil; chunk++ ) {
+        final long rollupTo = Math.min( rollupUntil, rollupFrom + tier.chunkMillis );
+        rollup( tier, new Date( rollupFrom ), new Date( rollupTo ) );
+        rolledUpToByTier.put( tier, rollupTo );
+        rollupFrom = rollupTo;
+      }
+    } catch ( final Exception e ) {
+      LOG.error( "Error building " + tier + " metric data rollups", e );
+    }
+  }
+
+  /**
+   * Replace rollups for the tier in the given range, which must be aligned to the tier period.
+   */
+  private static void rollup( final Tier tier, final Date from, final Date to ) {
+    final Class<? extends MetricEntity> rollupClass = tier.getEntityClass( );
+    try ( final TransactionResource db = Entities.transactionFor( rollupClass ) ) {
+      final Map<String, Date> range = Maps.newHashMap( );
+      range.put( "from", from );
+      range.put( "to", to );
+      Entities.deleteAllMatching( rollupClass, "WHERE timestamp >= :from AND timestamp < :to", range );
+
+      final Map<RollupKey, MetricEntity> rollups = Maps.newLinkedHashMap( );
+      for ( final Class sourceClass : tier.getSourceClasses( ) ) {
+        final Criteria criteria = Entities.createCriteria( sourceClass );
+        criteria.add( Restrictions.ge( "timestamp", from ) );
+        criteria.add( Restrictions.lt( "timestamp", to ) );
+        final ProjectionList projectionList = Projections.projectionList( );
+        projectionList.add( Projections.max( "sampleMax" ) );
+        projectionList.add( Projections.min( "sampleMin" ) );
+        projectionList.add( Projections.sum( "sampleSize" ) );
+        projectionList.add( Projections.sum( "sampleSum" ) );
+        projectionList.add( Projections.groupProperty( "units" ) );
+        projectionList.add( Projections.groupProperty( "timestamp" ) );
+        projectionList.add( Projections.groupProperty( "accountId" ) );
+        projectionList.add( Projections.groupProperty( "metricName" ) );
+        projectionList.add( Projections.groupProperty( "metricType" ) );
+        projectionList.add( Projections.groupProperty( "namespace" ) );
+        projectionList.add( Projections.groupProperty( "dimensionHash" ) );
+        criteria.setProjection( projectionList );
+        final ScrollableResults results = criteria.setCacheMode( CacheMode.IGNORE ).scroll( ScrollMode.FORWARD_ONLY );
+        try {
+          while ( results.next( ) ) {
+            final MetricEntity me = MetricManager.getMetricEntity( results );
+            final Date bucket = new Date( tier.floor( me.getTimestamp( ).getTime( ) ) );
+            final RollupKey key = new RollupKey( me, bucket );
+            final MetricEntity totalSoFar = rollups.get( key );
+            if ( totalSoFar == null ) {
+              final MetricEntity rollup = newRollupEntity( tier );
+              rollup.setAccountId( me.getAccountId( ) );
+              rollup.setNamespace( me.getNamespace( ) );
+              rollup.setMetricName( me.getMetricName( ) );
+              rollup.setMetricType( me.getMetricType( ) );
+              rollup.setDimensionHash( me.getDimensionHash( ) );
+              rollup.setUnits( me.getUnits( ) );
+              rollup.setTimestamp( bucket );
+              rollup.setSampleMax( me.getSampleMax( ) );
+              rollup.setSampleMin( me.getSampleMin( ) );
+              rollup.setSampleSize( me.getSampleSize( ) );
+              rollup.setSampleSum( me.getSampleSum( ) );
+              rollups.put( key, rollup );
+            } else {
+              totalSoFar.setSampleMax( Math.max( me.getSampleMax( ), totalSoFar.getSampleMax( ) ) );
+              totalSoFar.setSampleMin( Math.min( me.getSampleMin( ), totalSoFar.getSampleMin( ) ) );
+              totalSoFar.setSampleSize( totalSoFar.getSampleSize( ) + me.getSampleSize( ) );
+              totalSoFar.setSampleSum( totalSoFar.getSampleSum( ) + me.getSampleSum( ) );
+            }
+          }
+        } finally {
+          results.close( );
+        }
+      }
+
+      int numOperations = 0;
+      for ( final MetricEntity rollup : rollups.values( ) ) {
+        numOperations++;
+        if ( numOperations % MetricManager.METRIC_DATA_NUM_DB_OPERATIONS_UNTIL_SESSION_FLUSH == 0 ) {
+          Entities.flushSession( rollupClass );
+          Entities.clearSession( rollupClass );
+        }
+        Entities.persist( rollup );
+      }
+      db.commit( );
+      LOG.debug( "Built " + rollups.size( ) + " " + tier + " metric data rollups for " + from + " to " + to );
+    }
+  }
+
+  private static MetricEntity newRollupEntity( final Tier tier ) {
+    switch ( tier ) {
+      case FiveMinute:
+        return new MetricRollupEntityFiveMinute( );
+      case OneHour:
+        return new MetricRollupEntityOneHour( );
+      default:
+        throw new IllegalArgumentException( "Invalid tier " + tier );
+    }
+  }
+
+  private static final class RollupKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final String dimensionHash;
+    private final Units units;
+    private final Date timestamp;
+
+    RollupKey( final MetricEntity me, final Date timestamp ) {
+      this.accountId = me.getAccountId( );
+      this.namespace = me.getNamespace( );
+      this.metricName = me.getMetricName( );
+      this.metricType = me.getMetricType( );
+      this.dimensionHash = me.getDimensionHash( );
+      this.units = me.getUnits( );
+      this.timestamp = timestamp;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final RollupKey that = (RollupKey) o;
+      return Objects.equals( accountId, that.accountId ) &&
+          Objects.equals( namespace, that.namespace ) &&
+          Objects.equals( metricName, that.metricName ) &&
+          metricType == that.metricType &&
+          Objects.equals( dimensionHash, that.dimensionHash ) &&
+          units == that.units &&
+          Objects.equals( timestamp, that.timestamp );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( accountId, namespace, metricName, metricType, dimensionHash, units, timestamp );
+    }
+  }
+}
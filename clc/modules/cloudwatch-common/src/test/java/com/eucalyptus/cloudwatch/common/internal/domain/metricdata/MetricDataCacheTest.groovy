@@ -0,0 +1,129 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricDataCache.Series
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricDataCache.SeriesKey
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams
+import org.junit.After
+import org.junit.Test
+
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class MetricDataCacheTest {
+
+  private static final long MINUTE = TimeUnit.MINUTES.toMillis( 1 )
+  private static final long BASE_MINUTE = TimeUnit.DAYS.toMinutes( 16000 )
+
+  @After
+  void tearDown( ) {
+    MetricDataCache.clear( )
+  }
+
+  @Test
+  void testStatistics( ) {
+    Series series = series( 10 )
+    List<MetricStatistics> statistics = series.statistics( params( 0, 10, 300 ), BASE_MINUTE + 9 ) as List
+    assertEquals( "Period count", 2, statistics.size( ) )
+    assertStatistics( "First period", statistics[ 0 ], 0, 5, 10, 0, 4 )
+    assertStatistics( "Second period", statistics[ 1 ], 5, 5, 35, 5, 9 )
+  }
+
+  @Test
+  void testPeriodAlignment( ) {
+    Series series = series( 10 )
+    List<MetricStatistics> statistics = series.statistics( params( 2, 10, 300 ), BASE_MINUTE + 9 ) as List
+    assertEquals( "Period count", 2, statistics.size( ) )
+    assertStatistics( "First period", statistics[ 0 ], 2, 5, 20, 2, 6 )
+    assertStatistics( "Partial last period", statistics[ 1 ], 7, 3, 24, 7, 9 )
+    for ( MetricStatistics item : statistics ) {
+      assertEquals( "Period start matches database aggregation",
+          MetricUtils.getPeriodStart( item.getTimestamp( ), new Date( ( BASE_MINUTE + 2 ) * MINUTE ), 300 ),
+          item.getTimestamp( ) )
+    }
+  }
+
+  @Test
+  void testUnits( ) {
+    Series series = series( 10 )
+    assertTrue( "Other units", series.statistics( params( 0, 10, 600, Units.Bytes ), BASE_MINUTE + 9 ).isEmpty( ) )
+    series.record( BASE_MINUTE + 3, BASE_MINUTE + 9, Units.Bytes, 1, 1, 1, 1 )
+    assertNull( "Mixed units", series.statistics( params( 0, 10, 600 ), BASE_MINUTE + 9 ) )
+    assertNotNull( "Mixed units outside range", series.statistics( params( 4, 10, 300 ), BASE_MINUTE + 9 ) )
+  }
+
+  @Test
+  void testEviction( ) {
+    Series series = series( 10 )
+    series.record( BASE_MINUTE + 10, BASE_MINUTE + 10, Units.Percent, 1, 10, 10, 10 )
+    assertNull( "Evicted minute in range", series.statistics( params( 0, 11, 660 ), BASE_MINUTE + 10 ) )
+    List<MetricStatistics> statistics = series.statistics( params( 1, 11, 600 ), BASE_MINUTE + 10 ) as List
+    assertEquals( "Period count", 1, statistics.size( ) )
+    assertStatistics( "Retained minutes", statistics[ 0 ], 1, 10, 55, 1, 10 )
+
+    series.record( BASE_MINUTE, BASE_MINUTE + 10, Units.Percent, 1, 100, 100, 100 )
+    statistics = series.statistics( params( 1, 11, 600 ), BASE_MINUTE + 10 ) as List
+    assertStatistics( "Data outside window ignored", statistics[ 0 ], 1, 10, 55, 1, 10 )
+  }
+
+  @Test
+  void testRetain( ) {
+    SeriesKey key1 = new SeriesKey( '123456789012', 'AWS/EC2', 'CPUUtilization', MetricType.System, 'hash-1' )
+    SeriesKey key2 = new SeriesKey( '123456789012', 'AWS/EC2', 'CPUUtilization', MetricType.System, 'hash-2' )
+    MetricDataCache.retain( [ (key1): 5, (key2): 5 ] )
+    assertEquals( "Series count", 2, MetricDataCache.getSeriesCount( ) )
+    MetricDataCache.retain( [ (key2): 10 ] )
+    assertEquals( "Series count after eviction", 1, MetricDataCache.getSeriesCount( ) )
+    MetricDataCache.retain( [ : ] )
+    assertEquals( "Series count after clear", 0, MetricDataCache.getSeriesCount( ) )
+  }
+
+  private static Series series( int minutes ) {
+    Series series = new Series( minutes, 0 )
+    for ( int i = 0; i < minutes; i++ ) {
+      series.record( BASE_MINUTE + i, BASE_MINUTE + minutes - 1, Units.Percent, 1, i, i, i )
+    }
+    series
+  }
+
+  private static GetMetricStatisticsParams params( int startMinute, int endMinute, int period, Units units = null ) {
+    GetMetricStatisticsParams params = new GetMetricStatisticsParams( '123456789012', 'CPUUtilization', 'AWS/EC2',
+        [ InstanceId: 'i-12345678' ], MetricType.System, units,
+        new Date( ( BASE_MINUTE + startMinute ) * MINUTE ), new Date( ( BASE_MINUTE + endMinute ) * MINUTE ), period )
+    params.validate( new Date( ( BASE_MINUTE + endMinute ) * MINUTE ) )
+    params
+  }
+
+  private static void assertStatistics( String description, MetricStatistics statistics,
+                                        int startMinute, double size, double sum, double min, double max ) {
+    assertEquals( description + " timestamp", new Date( ( BASE_MINUTE + startMinute ) * MINUTE ), statistics.getTimestamp( ) )
+    assertEquals( description + " size", size, statistics.getSampleSize( ), 0.0 )
+    assertEquals( description + " sum", sum, statistics.getSampleSum( ), 0.0 )
+    assertEquals( description + " min", min, statistics.getSampleMin( ), 0.0 )
+    assertEquals( description + " max", max, statistics.getSampleMax( ), 0.0 )
+    assertEquals( description + " units", Units.Percent, statistics.getUnits( ) )
+  }
+}
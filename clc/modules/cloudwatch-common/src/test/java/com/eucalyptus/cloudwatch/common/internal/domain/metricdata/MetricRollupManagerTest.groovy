@@ -0,0 +1,89 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricRollupManager.MetricRollupEntityFiveMinute
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricRollupManager.Tier
+import org.junit.Test
+
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class MetricRollupManagerTest {
+
+  private static final long HOUR = TimeUnit.HOURS.toMillis( 1 )
+  private static final long MINUTE = TimeUnit.MINUTES.toMillis( 1 )
+  private static final long BASE = TimeUnit.DAYS.toMillis( 16000 )
+
+  @Test
+  void testTier( ) {
+    assertEquals( "Five minute period", Tier.FiveMinute, MetricRollupManager.getTier( params( BASE + 5 * MINUTE, 300 ) ) )
+    assertEquals( "Ten minute period", Tier.FiveMinute, MetricRollupManager.getTier( params( BASE + 5 * MINUTE, 600 ) ) )
+    assertEquals( "Hour period", Tier.OneHour, MetricRollupManager.getTier( params( BASE, 3600 ) ) )
+    assertEquals( "Hour period unaligned start", Tier.FiveMinute, MetricRollupManager.getTier( params( BASE + 5 * MINUTE, 3600 ) ) )
+    assertNull( "Minute period", MetricRollupManager.getTier( params( BASE, 60 ) ) )
+    assertNull( "Unaligned start", MetricRollupManager.getTier( params( BASE + MINUTE, 300 ) ) )
+  }
+
+  @Test
+  void testLatePeriods( ) {
+    long now = BASE + 10 * HOUR
+    SortedSet<Long> periods = MetricRollupManager.getLatePeriods( [
+        data( now - 2 * MINUTE ),
+        data( now - 7 * MINUTE ),
+        data( now - 9 * MINUTE ),
+        data( now - 2 * HOUR + 7 * MINUTE ),
+    ], now )
+    assertEquals( "Late periods", [ now - 2 * HOUR + 5 * MINUTE, now - 10 * MINUTE ], periods as List )
+    assertTrue( "Current data", MetricRollupManager.getLatePeriods( [ data( now ) ], now ).isEmpty( ) )
+  }
+
+  @Test
+  void testStalePeriods( ) {
+    List<Date> stale = [ new Date( BASE + 9 * HOUR + 50 * MINUTE ), new Date( BASE + 8 * HOUR + 5 * MINUTE ), new Date( BASE + 8 * HOUR + 10 * MINUTE ) ]
+    assertEquals( "Five minute periods",
+        [ BASE + 8 * HOUR + 5 * MINUTE, BASE + 8 * HOUR + 10 * MINUTE ],
+        MetricRollupManager.getStalePeriods( Tier.FiveMinute, stale, BASE + 9 * HOUR + 50 * MINUTE ) as List )
+    assertEquals( "Hour periods",
+        [ BASE + 8 * HOUR ],
+        MetricRollupManager.getStalePeriods( Tier.OneHour, stale, BASE + 9 * HOUR ) as List )
+    assertTrue( "Nothing rolled up",
+        MetricRollupManager.getStalePeriods( Tier.OneHour, stale, BASE + 8 * HOUR ).isEmpty( ) )
+  }
+
+  private static GetMetricStatisticsParams params( long start, int period ) {
+    GetMetricStatisticsParams params = new GetMetricStatisticsParams( '123456789012', 'CPUUtilization', 'AWS/EC2',
+        [ InstanceId: 'i-12345678' ], MetricType.System, Units.Percent, new Date( start ), new Date( start + HOUR ), period )
+    params.validate( new Date( start + HOUR ) )
+    params
+  }
+
+  private static MetricEntity data( long timestamp ) {
+    MetricEntity me = new MetricRollupEntityFiveMinute( )
+    me.setTimestamp( new Date( timestamp ) )
+    me
+  }
+}
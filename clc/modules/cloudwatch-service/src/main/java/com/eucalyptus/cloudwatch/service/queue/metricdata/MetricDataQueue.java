@@ -19,41 +19,58 @@
  ************************************************************************/
 package com.eucalyptus.cloudwatch.service.queue.metricdata;
 
-import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetricManager;
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricDataCache;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntityFactory;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
 import com.eucalyptus.cloudwatch.common.msgs.Dimension;
 import com.eucalyptus.cloudwatch.common.msgs.MetricDatum;
+import com.eucalyptus.cloudwatch.service.ThrottlingException;
 import com.eucalyptus.cloudwatch.service.queue.listmetrics.ListMetricQueue;
 import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.util.metrics.MonitoredAction;
 import com.eucalyptus.util.metrics.ThruputMetrics;
-import com.google.common.base.Supplier;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
 
 import org.apache.log4j.Logger;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+
+/**
+ * Put metric data ingest, partitioned using the metric entity table sharding.
+ *
+ * <p>Each shard aggregates data as it arrives and is written to the database
+ * when it holds enough data or when the flush interval expires. Requests are
+ * throttled when a shard holds the maximum permitted data.</p>
+ */
 public class MetricDataQueue {
   private static final Logger LOG = Logger.getLogger(MetricDataQueue.class);
-  final static LinkedBlockingQueue<MetricQueueItem> dataQueue = new LinkedBlockingQueue<MetricQueueItem>();
+  private static final ConcurrentMap<Class, MetricDataShard> shards = new ConcurrentHashMap<>();
 
-  private static final ScheduledExecutorService dataFlushTimer = Executors
-      .newSingleThreadScheduledExecutor( Threads.threadFactory( "cloudwatch-metric-data-flush-%d" ) );
+  private static final ScheduledExecutorService dataFlushTimer = Executors.newScheduledThreadPool(
+      Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors())),
+      Threads.threadFactory( "cloudwatch-metric-data-flush-%d" ) );
 
   private static MetricDataQueue singleton = getInstance();
 
@@ -65,44 +82,76 @@ public class MetricDataQueue {
     return singleton;
   }
 
-  private void queue(Supplier<MetricQueueItem> metriMetaDataSupplier) {
-    final MetricQueueItem metricData = metriMetaDataSupplier.get();
-    dataQueue.offer(metricData);
+  private static MetricDataShard shard(PutMetricDataAggregationKey key) {
+    Class shardClass = MetricEntityFactory.getClassForEntitiesGet(key.getMetricType(), key.getDimensionHash());
+    MetricDataShard shard = shards.get(shardClass);
+    if (shard == null) {
+      MetricDataShard newShard = new MetricDataShard(shardClass.getSimpleName());
+      shard = shards.putIfAbsent(shardClass, newShard);
+      if (shard == null) {
+        shard = newShard;
+        Mbeans.register("com.eucalyptus.cloudwatch", ImmutableMap.of("type", "MetricDataShard", "name", shard.getName()), shard);
+      }
+    }
+    return shard;
+  }
+
+  private static void flushIfDue(MetricDataShard shard, long now) {
+    if (shard.isFlushDue(now, CloudWatchConfigProperties.METRIC_DATA_FLUSH_THRESHOLD,
+        TimeUnit.SECONDS.toMillis(CloudWatchConfigProperties.METRIC_DATA_FLUSH_INTERVAL_SECONDS)) &&
+        shard.startFlush()) {
+      dataFlushTimer.execute(() -> flush(shard));
+    }
+  }
+
+  private static void flush(MetricDataShard shard) {
+    long before = System.currentTimeMillis();
+    int count = 0;
+    boolean success = false;
+    try {
+      Map<PutMetricDataAggregationKey, SimpleMetricEntity> drained = shard.drain();
+      List<SimpleMetricEntity> dataBatch = Lists.newArrayList(drained.values());
+      count = dataBatch.size();
+      ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_SIZE, count);
+      if (!dataBatch.isEmpty()) {
+        long t1 = System.currentTimeMillis();
+        MetricManager.addMetricBatch(dataBatch);
+        for (Map.Entry<PutMetricDataAggregationKey, SimpleMetricEntity> entry : drained.entrySet()) {
+          MetricDataCache.record(entry.getKey().getDimensionHash(), entry.getValue());
+        }
+        long t2 = System.currentTimeMillis();
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_ADD_BATCH, t2-t1);
+        ListMetricQueue.getInstance().addAll(dataBatch);
+        long t3 = System.currentTimeMillis();
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_QUEUE_ADDALL, t3-t2);
+      }
+      success = true;
+    } catch (Throwable ex) {
+      LOG.debug("PutMetricDataQueue:error");
+      LOG.error(ex,ex);
+    } finally {
+      long duration = System.currentTimeMillis()-before;
+      shard.endFlush(count, duration, success);
+      ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_TIMING, duration);
+    }
   }
 
   private static Runnable safeRunner = new Runnable() {
     @Override
     public void run() {
-      long before = System.currentTimeMillis();
       try {
-        List<MetricQueueItem> dataBatch = Lists.newArrayList();
-        dataQueue.drainTo(dataBatch);
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_SIZE, dataBatch.size( ));
-        long t1 = System.currentTimeMillis();
-        List<SimpleMetricEntity> simpleDataBatch = convertToSimpleDataBatch(dataBatch);
-        long t2 = System.currentTimeMillis();
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_CONVERT, t2-t1);
-        simpleDataBatch = aggregate(simpleDataBatch);
-        long t3 = System.currentTimeMillis();
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_AGGREGATE, t3-t2);
-        MetricManager.addMetricBatch(simpleDataBatch);
-        long t4 = System.currentTimeMillis();
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_ADD_BATCH, t4-t3);
-        ListMetricQueue.getInstance().addAll(simpleDataBatch);
-        long t5 = System.currentTimeMillis();
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_QUEUE_ADDALL, t5-t4);
+        long now = System.currentTimeMillis();
+        for (MetricDataShard shard : shards.values()) {
+          flushIfDue(shard, now);
+        }
       } catch (Throwable ex) {
-        LOG.debug("PutMetricDataQueue:error");
-        ex.printStackTrace();
         LOG.error(ex,ex);
-      } finally {
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_TIMING, System.currentTimeMillis()-before);
       }
     }
   };
 
   static {
-    dataFlushTimer.scheduleAtFixedRate(safeRunner, 0, 1, TimeUnit.MINUTES);
+    dataFlushTimer.scheduleWithFixedDelay(safeRunner, 1, 1, TimeUnit.SECONDS);
   }
 
   public static List<SimpleMetricEntity> aggregate(List<SimpleMetricEntity> dataBatch) {
@@ -113,74 +162,108 @@ public class MetricDataQueue {
       if (!aggregationMap.containsKey(key)) {
         aggregationMap.put(key, new SimpleMetricEntity(item));
       } else {
-        SimpleMetricEntity totalSoFar = aggregationMap.get(key);
-        totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
-        totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
-        totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
-        totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
+        merge(aggregationMap.get(key), item);
       }
     }
     return Lists.newArrayList(aggregationMap.values());
   }
 
-  protected static List<SimpleMetricEntity> convertToSimpleDataBatch(
-      List<MetricQueueItem> stupidDataBatch) {
-    ArrayList<SimpleMetricEntity> returnValue = new ArrayList<SimpleMetricEntity>();
-    for(MetricQueueItem item: stupidDataBatch) {
-      SimpleMetricEntity metricMetadata = new SimpleMetricEntity();
-      metricMetadata.setAccountId(item.getAccountId());
-      MetricDatum datum = item.getMetricDatum();
-      
-      metricMetadata.setMetricName(datum.getMetricName());
-      metricMetadata.setNamespace(item.getNamespace());
-      final List<Dimension> dimensions = datum.getDimensions( ) == null ?
-          Collections.<Dimension>emptyList( ) :
-          datum.getDimensions( ).getMember( );
-      metricMetadata.setDimensionMap(makeDimensionMap(dimensions));
-      metricMetadata.setMetricType(item.getMetricType());
-      metricMetadata.setUnits(Units.fromValue(datum.getUnit()));
-      metricMetadata.setTimestamp(datum.getTimestamp());
-      if (datum.getValue() != null) { // Either or case taken care of in service
-        metricMetadata.setSampleMax(datum.getValue());
-        metricMetadata.setSampleMin(datum.getValue());
-        metricMetadata.setSampleSum(datum.getValue());
-        metricMetadata.setSampleSize(1.0);
-      } else if ((datum.getStatisticValues() != null) &&
-            (datum.getStatisticValues().getMaximum() != null) &&
-            (datum.getStatisticValues().getMinimum() != null) &&
-            (datum.getStatisticValues().getSum() != null) &&
-            (datum.getStatisticValues().getSampleCount() != null)) {
-          metricMetadata.setSampleMax(datum.getStatisticValues().getMaximum());
-          metricMetadata.setSampleMin(datum.getStatisticValues().getMinimum());
-          metricMetadata.setSampleSum(datum.getStatisticValues().getSum());
-          metricMetadata.setSampleSize(datum.getStatisticValues().getSampleCount());
-      } else {
-        throw new RuntimeException("Statistics set (all values) or Value must be set"); 
-      }
-      returnValue.add(metricMetadata);
+  static SimpleMetricEntity merge(SimpleMetricEntity totalSoFar, SimpleMetricEntity item) {
+    totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
+    totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
+    totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
+    totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
+    return totalSoFar;
+  }
+
+  private static SimpleMetricEntity convertToSimpleMetricEntity(String accountId, String namespace,
+      MetricDatum datum, MetricType metricType) {
+    SimpleMetricEntity metricMetadata = new SimpleMetricEntity();
+    metricMetadata.setAccountId(accountId);
+    metricMetadata.setMetricName(datum.getMetricName());
+    metricMetadata.setNamespace(namespace);
+    final List<Dimension> dimensions = datum.getDimensions( ) == null ?
+        Collections.<Dimension>emptyList( ) :
+        datum.getDimensions( ).getMember( );
+    metricMetadata.setDimensionMap(makeDimensionMap(dimensions));
+    metricMetadata.setMetricType(metricType);
+    metricMetadata.setUnits(Units.fromValue(datum.getUnit()));
+    metricMetadata.setTimestamp(MetricUtils.stripSeconds(datum.getTimestamp()));
+    if (datum.getValue() != null) { // Either or case taken care of in service
+      metricMetadata.setSampleMax(datum.getValue());
+      metricMetadata.setSampleMin(datum.getValue());
+      metricMetadata.setSampleSum(datum.getValue());
+      metricMetadata.setSampleSize(1.0);
+    } else if ((datum.getStatisticValues() != null) &&
+          (datum.getStatisticValues().getMaximum() != null) &&
+          (datum.getStatisticValues().getMinimum() != null) &&
+          (datum.getStatisticValues().getSum() != null) &&
+          (datum.getStatisticValues().getSampleCount() != null)) {
+        metricMetadata.setSampleMax(datum.getStatisticValues().getMaximum());
+        metricMetadata.setSampleMin(datum.getStatisticValues().getMinimum());
+        metricMetadata.setSampleSum(datum.getStatisticValues().getSum());
+        metricMetadata.setSampleSize(datum.getStatisticValues().getSampleCount());
+    } else {
+      throw new RuntimeException("Statistics set (all values) or Value must be set"); 
     }
-    return returnValue;
+    return metricMetadata;
   }
 
+  /**
+   * Add metric data to the shards for the data.
+   *
+   * @throws ThrottlingException If any shard for the data is full, in which case no data is added.
+   */
   public void insertMetricData(final String ownerAccountId, final String nameSpace,
-                               final List<MetricDatum> metricDatum, final MetricType metricType) {
+                               final List<MetricDatum> metricDatum, final MetricType metricType) throws ThrottlingException {
     // Some points do not actually go in.  If a data point represents an absolute value, the first one does not go in.
     // Also, some data points are added while we go through the list (derived metrics)
     Date now = new Date();
 
+    final int maxPending = CloudWatchConfigProperties.METRIC_DATA_MAX_PENDING;
+    final List<SimpleMetricEntity> items = Lists.newArrayListWithCapacity(metricDatum.size());
+    final List<PutMetricDataAggregationKey> keys = Lists.newArrayListWithCapacity(metricDatum.size());
+    final List<MetricDataShard> itemShards = Lists.newArrayListWithCapacity(metricDatum.size());
+    Set<MetricDataShard> fullShards = null;
     for (final MetricDatum datum : metricDatum) {
       scrub(datum, now);
-      queue(new Supplier<MetricQueueItem>() {
-        @Override
-        public MetricQueueItem get() {
-          MetricQueueItem metricMetadata = new MetricQueueItem();
-          metricMetadata.setAccountId(ownerAccountId);
-          metricMetadata.setMetricDatum(datum);
-          metricMetadata.setNamespace(nameSpace);
-          metricMetadata.setMetricType(metricType);
-          return metricMetadata;
-        }
-      });
+      final SimpleMetricEntity item = convertToSimpleMetricEntity(ownerAccountId, nameSpace, datum, metricType);
+      final PutMetricDataAggregationKey key = new PutMetricDataAggregationKey(item);
+      final MetricDataShard shard = shard(key);
+      if (!shard.hasCapacity(maxPending)) {
+        if (fullShards == null) fullShards = Sets.newHashSet();
+        fullShards.add(shard);
+      }
+      items.add(item);
+      keys.add(key);
+      itemShards.add(shard);
+    }
+
+    if (fullShards != null) {
+      rejected(fullShards, itemShards);
+      long nowMillis = System.currentTimeMillis();
+      for (final MetricDataShard shard : fullShards) {
+        flushIfDue(shard, nowMillis);
+      }
+      throw new ThrottlingException("Rate exceeded");
+    }
+
+    for (int i = 0; i < items.size(); i++) {
+      final MetricDataShard shard = itemShards.get(i);
+      shard.add(keys.get(i), items.get(i));
+      if (!shard.hasCapacity(CloudWatchConfigProperties.METRIC_DATA_FLUSH_THRESHOLD)) {
+        flushIfDue(shard, now.getTime());
+      }
+    }
+  }
+
+  /**
+   * Count rejected items for each full shard, a shard only counts the items routed to it.
+   */
+  static void rejected(Set<MetricDataShard> fullShards, List<MetricDataShard> itemShards) {
+    final Multiset<MetricDataShard> shardItems = HashMultiset.create(itemShards);
+    for (final MetricDataShard shard : fullShards) {
+      shard.rejected(shardItems.count(shard));
     }
   }
 
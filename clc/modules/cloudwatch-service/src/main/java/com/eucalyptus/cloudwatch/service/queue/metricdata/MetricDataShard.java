@@ -0,0 +1,150 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.service.queue.metricdata;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.util.LockResource;
+
+/**
+ * Metric data for one metric entity table, aggregated in place as data arrives.
+ *
+ * <p>Writers share the swap lock so that a flush can replace the pending map
+ * without losing data that is being aggregated concurrently.</p>
+ */
+class MetricDataShard implements MetricDataShardMXBean {
+
+  private final String name;
+  private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock( );
+  private final AtomicInteger pendingCount = new AtomicInteger( );
+  private final AtomicBoolean flushing = new AtomicBoolean( );
+  private final AtomicLong accepted = new AtomicLong( );
+  private final AtomicLong rejected = new AtomicLong( );
+  private final AtomicLong flushed = new AtomicLong( );
+  private final AtomicLong flushes = new AtomicLong( );
+  private final AtomicLong flushFailures = new AtomicLong( );
+  private volatile ConcurrentHashMap<PutMetricDataAggregationKey, SimpleMetricEntity> pending = new ConcurrentHashMap<>( );
+  private volatile long lastFlush = System.currentTimeMillis( );
+  private volatile long lastFlushDuration;
+
+  MetricDataShard( final String name ) {
+    this.name = name;
+  }
+
+  void add( final PutMetricDataAggregationKey key, final SimpleMetricEntity item ) {
+    try ( final LockResource lock = LockResource.lock( swapLock.readLock( ) ) ) {
+      final ConcurrentHashMap<PutMetricDataAggregationKey, SimpleMetricEntity> current = pending;
+      if ( current.putIfAbsent( key, item ) == null ) {
+        pendingCount.incrementAndGet( );
+      } else {
+        current.compute( key, ( k, totalSoFar ) -> MetricDataQueue.merge( totalSoFar, item ) );
+      }
+    }
+    accepted.incrementAndGet( );
+  }
+
+  boolean hasCapacity( final int maxPending ) {
+    return pendingCount.get( ) < maxPending;
+  }
+
+  void rejected( final int count ) {
+    rejected.addAndGet( count );
+  }
+
+  boolean isFlushDue( final long now, final int threshold, final long intervalMillis ) {
+    final int count = pendingCount.get( );
+    return count >= threshold || ( count > 0 && now - lastFlush >= intervalMillis );
+  }
+
+  /**
+   * Claim the flush for this shard, at most one flush runs at a time.
+   */
+  boolean startFlush( ) {
+    return flushing.compareAndSet( false, true );
+  }
+
+  void endFlush( final int count, final long duration, final boolean success ) {
+    if ( success ) {
+      flushed.addAndGet( count );
+    } else {
+      flushFailures.incrementAndGet( );
+    }
+    flushes.incrementAndGet( );
+    lastFlushDuration = duration;
+    flushing.set( false );
+  }
+
+  Map<PutMetricDataAggregationKey, SimpleMetricEntity> drain( ) {
+    final ConcurrentHashMap<PutMetricDataAggregationKey, SimpleMetricEntity> drained;
+    try ( final LockResource lock = LockResource.lock( swapLock.writeLock( ) ) ) {
+      drained = pending;
+      pending = new ConcurrentHashMap<>( );
+      pendingCount.set( 0 );
+      lastFlush = System.currentTimeMillis( );
+    }
+    return drained;
+  }
+
+  @Override
+  public String getName( ) {
+    return name;
+  }
+
+  @Override
+  public int getPending( ) {
+    return pendingCount.get( );
+  }
+
+  @Override
+  public long getAccepted( ) {
+    return accepted.get( );
+  }
+
+  @Override
+  public long getRejected( ) {
+    return rejected.get( );
+  }
+
+  @Override
+  public long getFlushed( ) {
+    return flushed.get( );
+  }
+
+  @Override
+  public long getFlushes( ) {
+    return flushes.get( );
+  }
+
+  @Override
+  public long getFlushFailures( ) {
+    return flushFailures.get( );
+  }
+
+  @Override
+  public long getLastFlushDurationMillis( ) {
+    return lastFlushDuration;
+  }
+}
@@ -47,6 +47,14 @@ public class PutMetricDataAggregationKey {
     this.units = item.getUnits();
   }
 
+  public String getDimensionHash() {
+    return dimensionHash;
+  }
+
+  public MetricType getMetricType() {
+    return metricType;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
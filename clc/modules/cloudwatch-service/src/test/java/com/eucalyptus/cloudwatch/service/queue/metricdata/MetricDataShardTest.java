@@ -0,0 +1,133 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.service.queue.metricdata;
+
+import static org.junit.Assert.*;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import org.junit.Test;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Unit tests for metric data shards
+ */
+public class MetricDataShardTest {
+
+  private static final double TOLERANCE = 0.000000001;
+  private final Date timestamp = MetricUtils.stripSeconds( new Date( ) );
+
+  @Test
+  public void testAggregation( ) {
+    final MetricDataShard shard = new MetricDataShard( "test" );
+    shard.add( key( "metric1" ), item( "metric1", 1.0 ) );
+    shard.add( key( "metric1" ), item( "metric1", 3.0 ) );
+    shard.add( key( "metric2" ), item( "metric2", 5.0 ) );
+    assertEquals( "Pending", 2, shard.getPending( ) );
+    assertEquals( "Accepted", 3, shard.getAccepted( ) );
+
+    final Map<PutMetricDataAggregationKey, SimpleMetricEntity> drained = shard.drain( );
+    assertEquals( "Drained", 2, drained.size( ) );
+    final SimpleMetricEntity aggregated = drained.get( key( "metric1" ) );
+    assertEquals( "Sample size", 2.0, aggregated.getSampleSize( ), TOLERANCE );
+    assertEquals( "Sample sum", 4.0, aggregated.getSampleSum( ), TOLERANCE );
+    assertEquals( "Sample min", 1.0, aggregated.getSampleMin( ), TOLERANCE );
+    assertEquals( "Sample max", 3.0, aggregated.getSampleMax( ), TOLERANCE );
+    assertEquals( "Pending after drain", 0, shard.getPending( ) );
+  }
+
+  @Test
+  public void testThrottling( ) {
+    final MetricDataShard shard = new MetricDataShard( "test" );
+    assertTrue( "Capacity when empty", shard.hasCapacity( 2 ) );
+    shard.add( key( "metric1" ), item( "metric1", 1.0 ) );
+    shard.add( key( "metric1" ), item( "metric1", 1.0 ) );
+    assertTrue( "Capacity with aggregated data", shard.hasCapacity( 2 ) );
+    shard.add( key( "metric2" ), item( "metric2", 1.0 ) );
+    assertFalse( "Capacity when full", shard.hasCapacity( 2 ) );
+    shard.drain( );
+    assertTrue( "Capacity after drain", shard.hasCapacity( 2 ) );
+  }
+
+  @Test
+  public void testRejectedPerShard( ) {
+    final MetricDataShard full = new MetricDataShard( "full" );
+    final MetricDataShard other = new MetricDataShard( "other" );
+    final MetricDataShard otherFull = new MetricDataShard( "otherFull" );
+    MetricDataQueue.rejected(
+        ImmutableSet.of( full, otherFull ),
+        ImmutableList.of( full, other, full, otherFull, other, full ) );
+    assertEquals( "Rejected for full shard", 3, full.getRejected( ) );
+    assertEquals( "Rejected for other full shard", 1, otherFull.getRejected( ) );
+    assertEquals( "Rejected for shard with capacity", 0, other.getRejected( ) );
+  }
+
+  @Test
+  public void testFlush( ) {
+    final MetricDataShard shard = new MetricDataShard( "test" );
+    final long now = System.currentTimeMillis( );
+    assertFalse( "Flush due when empty", shard.isFlushDue( now + 60_000, 2, 30_000 ) );
+    shard.add( key( "metric1" ), item( "metric1", 1.0 ) );
+    assertFalse( "Flush due before interval", shard.isFlushDue( now, 2, 30_000 ) );
+    assertTrue( "Flush due after interval", shard.isFlushDue( now + 60_000, 2, 30_000 ) );
+    shard.add( key( "metric2" ), item( "metric2", 1.0 ) );
+    assertTrue( "Flush due at threshold", shard.isFlushDue( now, 2, 30_000 ) );
+
+    assertTrue( "Flush started", shard.startFlush( ) );
+    assertFalse( "Concurrent flush", shard.startFlush( ) );
+    assertEquals( "Drained", 2, shard.drain( ).size( ) );
+    shard.endFlush( 2, 5, true );
+    assertEquals( "Flushed", 2, shard.getFlushed( ) );
+    assertEquals( "Flushes", 1, shard.getFlushes( ) );
+    assertEquals( "Flush duration", 5, shard.getLastFlushDurationMillis( ) );
+    assertFalse( "Flush due after drain", shard.isFlushDue( now + 60_000, 2, 30_000 ) );
+
+    assertTrue( "Flush started after end", shard.startFlush( ) );
+    shard.endFlush( 0, 1, false );
+    assertEquals( "Flushed after failure", 2, shard.getFlushed( ) );
+    assertEquals( "Flush failures", 1, shard.getFlushFailures( ) );
+    assertEquals( "Flushes after failure", 2, shard.getFlushes( ) );
+  }
+
+  private PutMetricDataAggregationKey key( final String metricName ) {
+    return new PutMetricDataAggregationKey( item( metricName, 0.0 ) );
+  }
+
+  private SimpleMetricEntity item( final String metricName, final double value ) {
+    final SimpleMetricEntity item = new SimpleMetricEntity( );
+    item.setAccountId( "000000000000" );
+    item.setNamespace( "namespace1" );
+    item.setMetricName( metricName );
+    item.setMetricType( MetricType.Custom );
+    item.setDimensionMap( Collections.<String,String>emptyMap( ) );
+    item.setUnits( Units.None );
+    item.setTimestamp( timestamp );
+    item.setSampleMax( value );
+    item.setSampleMin( value );
+    item.setSampleSum( value );
+    item.setSampleSize( 1.0 );
+    return item;
+  }
+}
@@ -102,7 +102,7 @@ public class VmStateHandler {
               Restrictions.not( VmInstance.criterion( TORNDOWN.array( ) ) ),
               Sets.newHashSet( "transientVolumeState.attachments"),
               Sets.newHashSet( "bootRecord.machineImage", "bootRecord.vmType", "networkGroups" ),
-              TypeMappers.lookup( VmInstance.class, VmStateView.class )  ),
+              TypeMappers.lookup( VmInstance.class, VmStateView.class )  ).withChangeNotification( ),
           10,
           TimeUnit.SECONDS );
 
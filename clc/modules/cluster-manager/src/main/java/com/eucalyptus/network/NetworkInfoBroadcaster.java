@@ -64,6 +64,7 @@ import com.eucalyptus.util.HasName;
 import com.eucalyptus.util.LockResource;
 import com.eucalyptus.util.SemaphoreResource;
 import com.eucalyptus.util.TypeMappers;
+import com.eucalyptus.vm.VmInstances;
 import com.eucalyptus.compute.common.internal.vm.VmInstance;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
@@ -71,9 +72,12 @@ import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.PrimitiveSink;
@@ -84,6 +88,7 @@ import org.hibernate.criterion.Restrictions;
 
 import javax.annotation.Nullable;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -91,11 +96,12 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static com.eucalyptus.compute.common.internal.vm.VmInstance.VmStateSet.TORNDOWN;
-import static com.google.common.hash.Hashing.goodFastHash;
+import static com.google.common.hash.Hashing.murmur3_128;
 
 /**
  *
@@ -107,30 +113,31 @@ public class NetworkInfoBroadcaster {
   private static final AtomicLong lastBroadcastTime = new AtomicLong( 0L );
   private static final Lock lastBroadcastTimeLock = new ReentrantLock( );
   private static final Semaphore activeBroadcastSemaphore = new Semaphore( 1 );
+  private static final AtomicReference<BroadcastSnapshot> lastBroadcast = new AtomicReference<>( );
   private static final EntityCache<VmInstance,NetworkInfoBroadcasts.VmInstanceNetworkView> instanceCache = new EntityCache<>(
       VmInstance.named(null),
       Restrictions.not( VmInstance.criterion( TORNDOWN.array( ) ) ),
       Sets.newHashSet( "networkGroups" ),
       Sets.newHashSet( "bootRecord.machineImage", "bootRecord.vmType" ),
-      TypeMappers.lookup( VmInstance.class, VmInstanceNetworkView.class )  );
+      TypeMappers.lookup( VmInstance.class, VmInstanceNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<NetworkGroup,NetworkGroupNetworkView> securityGroupCache =
-      new EntityCache<>( NetworkGroup.withNaturalId( null ), TypeMappers.lookup( NetworkGroup.class, NetworkGroupNetworkView.class )  );
+      new EntityCache<>( NetworkGroup.withNaturalId( null ), TypeMappers.lookup( NetworkGroup.class, NetworkGroupNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<Vpc,VpcNetworkView> vpcCache =
-      new EntityCache<>( Vpc.exampleWithOwner( null ), TypeMappers.lookup( Vpc.class, VpcNetworkView.class )  );
+      new EntityCache<>( Vpc.exampleWithOwner( null ), TypeMappers.lookup( Vpc.class, VpcNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<Subnet,SubnetNetworkView> subnetCache =
-      new EntityCache<>( Subnet.exampleWithOwner( null ), TypeMappers.lookup( Subnet.class, SubnetNetworkView.class )  );
+      new EntityCache<>( Subnet.exampleWithOwner( null ), TypeMappers.lookup( Subnet.class, SubnetNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<DhcpOptionSet,DhcpOptionSetNetworkView> dhcpOptionsCache =
-      new EntityCache<>( DhcpOptionSet.exampleWithOwner( null ), TypeMappers.lookup( DhcpOptionSet.class, DhcpOptionSetNetworkView.class )  );
+      new EntityCache<>( DhcpOptionSet.exampleWithOwner( null ), TypeMappers.lookup( DhcpOptionSet.class, DhcpOptionSetNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<NetworkAcl,NetworkAclNetworkView> networkAclCache =
-      new EntityCache<>( NetworkAcl.exampleWithOwner( null ), TypeMappers.lookup( NetworkAcl.class, NetworkAclNetworkView.class )  );
+      new EntityCache<>( NetworkAcl.exampleWithOwner( null ), TypeMappers.lookup( NetworkAcl.class, NetworkAclNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<RouteTable,RouteTableNetworkView> routeTableCache =
-      new EntityCache<>( RouteTable.exampleWithOwner( null ), TypeMappers.lookup( RouteTable.class, RouteTableNetworkView.class )  );
+      new EntityCache<>( RouteTable.exampleWithOwner( null ), TypeMappers.lookup( RouteTable.class, RouteTableNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<InternetGateway,InternetGatewayNetworkView> internetGatewayCache =
-      new EntityCache<>( InternetGateway.exampleWithOwner( null ), TypeMappers.lookup( InternetGateway.class, InternetGatewayNetworkView.class )  );
+      new EntityCache<>( InternetGateway.exampleWithOwner( null ), TypeMappers.lookup( InternetGateway.class, InternetGatewayNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<NetworkInterface,NetworkInterfaceNetworkView> networkInterfaceCache =
-      new EntityCache<>( NetworkInterface.exampleWithOwner( null ), TypeMappers.lookup( NetworkInterface.class, NetworkInterfaceNetworkView.class )  );
+      new EntityCache<>( NetworkInterface.exampleWithOwner( null ), TypeMappers.lookup( NetworkInterface.class, NetworkInterfaceNetworkView.class )  ).withChangeNotification( );
   private static final EntityCache<NatGateway,NatGatewayNetworkView> natGatewayCache =
-      new EntityCache<>( NatGateway.exampleWithOwner( null ), TypeMappers.lookup( NatGateway.class, NatGatewayNetworkView.class )  );
+      new EntityCache<>( NatGateway.exampleWithOwner( null ), TypeMappers.lookup( NatGateway.class, NatGatewayNetworkView.class )  ).withChangeNotification( );
   private static final VpcRouteStateInvalidator vpcRouteStateInvalidator = new EventFiringVpcRouteStateInvalidator( );
 
   private static NetworkInfoSource cacheSource( ) {
@@ -225,19 +232,28 @@ public class NetworkInfoBroadcaster {
 
       final NetworkInfoSource source = cacheSource( );
       final Set<String> dirtyPublicAddresses = PublicAddresses.dirtySnapshot( );
+      final String clcHost = Topology.lookup( Eucalyptus.class ).getInetAddress( ).getHostAddress( );
       final Set<RouteKey> invalidStateRoutes = Sets.newHashSetWithExpectedSize( 50 );
-      final int sourceFingerprint = fingerprint( source, clusters, dirtyPublicAddresses, NetworkGroups.NETWORK_CONFIGURATION );
-      final NetworkInfo info = NetworkInfoBroadcasts.buildNetworkConfiguration(
+      final Map<String,HashCode> viewVersions = viewVersions( source );
+      final HashCode sourceFingerprint = fingerprint(
+          viewVersions,
+          clusters,
+          otherClusters,
+          clcHost,
+          NetworkConfigurations.loadSystemNameservers( Collections.<String>emptyList( ) ),
+          VmInstances.INSTANCE_SUBDOMAIN,
+          VmInstances.MAC_PREFIX,
+          dirtyPublicAddresses,
+          NetworkGroups.NETWORK_CONFIGURATION );
+      final NetworkInfo info = reuseOrBuild( lastBroadcast, sourceFingerprint, viewVersions, invalidStateRoutes, new Function<Set<RouteKey>,NetworkInfo>( ) {
+        @Override
+        public NetworkInfo apply( final Set<RouteKey> routes ) {
+          return NetworkInfoBroadcasts.buildNetworkConfiguration(
               networkConfiguration,
               source,
               Suppliers.ofInstance( clusters ),
               Suppliers.ofInstance( otherClusters ),
-              new Supplier<String>( ) {
-                @Override
-                public String get() {
-                  return Topology.lookup( Eucalyptus.class ).getInetAddress( ).getHostAddress( );
-                }
-              },
+              Suppliers.ofInstance( clcHost ),
               new Function<List<String>, List<String>>( ) {
                 @Nullable
                 @Override
@@ -246,9 +262,10 @@ public class NetworkInfoBroadcaster {
                 }
               },
               dirtyPublicAddresses,
-              invalidStateRoutes
+              routes
           );
-          info.setVersion( BaseEncoding.base16( ).lowerCase( ).encode( Ints.toByteArray( sourceFingerprint ) ) );
+        }
+      } );
 
       if ( !invalidStateRoutes.isEmpty( ) ) {
         vpcRouteStateInvalidator.accept( invalidStateRoutes );
@@ -261,15 +278,41 @@ public class NetworkInfoBroadcaster {
     }
   }
 
-  @SuppressWarnings( "serial" )
-  private static int fingerprint(
-      final NetworkInfoSource source,
-      final List<Cluster> clusters,
-      final Set<String> dirtyPublicAddresses,
-      final String networkConfiguration
+  /**
+   * Reuse the previously built network information if its fingerprint matches, else build and remember it.
+   *
+   * Routes found to be in an invalid state are remembered with the information and
+   * reported on every pass so that invalidation is retried while the information is reused.
+   */
+  static NetworkInfo reuseOrBuild(
+      final AtomicReference<BroadcastSnapshot> lastBroadcast,
+      final HashCode fingerprint,
+      final Map<String,HashCode> viewVersions,
+      final Set<RouteKey> invalidStateRoutes /*out*/,
+      final Function<Set<RouteKey>,NetworkInfo> builder
   ) {
-    final HashFunction hashFunction = goodFastHash( 32 );
-    final Hasher hasher = hashFunction.newHasher( );
+    final BroadcastSnapshot previous = lastBroadcast.get( );
+    if ( previous != null && previous.fingerprint.equals( fingerprint ) ) {
+      // nothing the network information is built from has changed, broadcast it again
+      invalidStateRoutes.addAll( previous.invalidStateRoutes );
+      return previous.info;
+    }
+    if ( previous != null && logger.isDebugEnabled( ) ) {
+      logger.debug( "Building network information for changed views " + previous.changedViews( viewVersions ) );
+    }
+    final NetworkInfo info = builder.apply( invalidStateRoutes );
+    // consumers hold a fixed length version so only the leading 32 bits of the fingerprint are broadcast
+    info.setVersion( BaseEncoding.base16( ).lowerCase( ).encode( Ints.toByteArray( fingerprint.asInt( ) ) ) );
+    lastBroadcast.set( new BroadcastSnapshot( fingerprint, viewVersions, ImmutableSet.copyOf( invalidStateRoutes ), info ) );
+    return info;
+  }
+
+  /**
+   * Version of each view, views are unchanged if their version is unchanged.
+   */
+  @SuppressWarnings( "serial" )
+  static Map<String,HashCode> viewVersions( final NetworkInfoSource source ) {
+    final HashFunction hashFunction = murmur3_128( );
     final Funnel<VersionedNetworkView> versionedItemFunnel = new Funnel<VersionedNetworkView>() {
       @SuppressWarnings( "NullableProblems" )
       @Override
@@ -279,16 +322,94 @@ public class NetworkInfoBroadcaster {
         primitiveSink.putInt( o.getVersion( ) );
       }
     };
+    final ImmutableMap.Builder<String,HashCode> viewVersions = ImmutableMap.builder( );
     for ( final Map.Entry<String,Iterable<? extends VersionedNetworkView>> entry : source.getView( ).entrySet( ) ) {
-      hasher.putString( entry.getKey( ), StandardCharsets.UTF_8 );
+      final Hasher hasher = hashFunction.newHasher( );
       for ( final VersionedNetworkView item : entry.getValue( ) ) {
         hasher.putObject( item, versionedItemFunnel );
       }
+      viewVersions.put( entry.getKey( ), hasher.hash( ) );
+    }
+    return viewVersions.build( );
+  }
+
+  /**
+   * Fingerprint of everything the network information is built from.
+   */
+  static HashCode fingerprint(
+      final Map<String,HashCode> viewVersions,
+      final List<Cluster> clusters,
+      final List<Cluster> otherClusters,
+      final String clcHost,
+      final List<String> systemNameservers,
+      final String instanceSubdomain,
+      final String macPrefix,
+      final Set<String> dirtyPublicAddresses,
+      final String networkConfiguration
+  ) {
+    final HashFunction hashFunction = murmur3_128( );
+    final Hasher hasher = hashFunction.newHasher( );
+    for ( final Map.Entry<String,HashCode> entry : viewVersions.entrySet( ) ) {
+      hasher.putString( entry.getKey( ), StandardCharsets.UTF_8 );
+      hasher.putBytes( entry.getValue( ).asBytes( ) );
+    }
+    putClusters( hasher, clusters );
+    putClusters( hasher, otherClusters );
+    putString( hasher, clcHost );
+    putString( hasher, Joiner.on( ',' ).join( systemNameservers ) );
+    putString( hasher, instanceSubdomain );
+    putString( hasher, macPrefix );
+    putString( hasher, Joiner.on( ',' ).join( Sets.newTreeSet( dirtyPublicAddresses ) ) );
+    putString( hasher, networkConfiguration );
+    return hasher.hash( );
+  }
+
+  private static void putClusters( final Hasher hasher, final List<Cluster> clusters ) {
+    hasher.putInt( clusters.size( ) );
+    for ( final Cluster cluster : Ordering.natural( ).onResultOf( HasName.GET_NAME ).sortedCopy( clusters ) ) {
+      putString( hasher, cluster.getName( ) );
+      putString( hasher, cluster.getPartition( ) );
+      putString( hasher, cluster.getHostName( ) );
+      putString( hasher, Joiner.on( ',' ).join( Sets.newTreeSet( cluster.getNodeMap( ).keySet( ) ) ) );
+    }
+  }
+
+  /**
+   * Length prefixed so that adjacent values cannot run into each other, null is distinct from empty.
+   */
+  private static void putString( final Hasher hasher, @Nullable final String value ) {
+    if ( value == null ) {
+      hasher.putInt( -1 );
+    } else {
+      hasher.putInt( value.length( ) );
+      hasher.putString( value, StandardCharsets.UTF_8 );
+    }
+  }
+
+  /**
+   * The most recently built network information with the versions it was built from.
+   */
+  static final class BroadcastSnapshot {
+    private final HashCode fingerprint;
+    private final Map<String,HashCode> viewVersions;
+    private final Set<RouteKey> invalidStateRoutes;
+    private final NetworkInfo info;
+
+    private BroadcastSnapshot(
+        final HashCode fingerprint,
+        final Map<String,HashCode> viewVersions,
+        final Set<RouteKey> invalidStateRoutes,
+        final NetworkInfo info
+    ) {
+      this.fingerprint = fingerprint;
+      this.viewVersions = viewVersions;
+      this.invalidStateRoutes = invalidStateRoutes;
+      this.info = info;
+    }
+
+    private Set<String> changedViews( final Map<String,HashCode> viewVersions ) {
+      return Maps.difference( this.viewVersions, viewVersions ).entriesDiffering( ).keySet( );
     }
-    hasher.putString( Joiner.on( ',' ).join( Sets.newTreeSet( Iterables.transform( clusters, HasName.GET_NAME ) ) ), StandardCharsets.UTF_8 );
-    hasher.putString( Joiner.on( ',' ).join( Sets.newTreeSet( dirtyPublicAddresses ) ), StandardCharsets.UTF_8 );
-    hasher.putInt( networkConfiguration.hashCode( ) );
-    return hasher.hash( ).asInt( );
   }
 
   @SuppressWarnings( { "WeakerAccess", "unused" } )
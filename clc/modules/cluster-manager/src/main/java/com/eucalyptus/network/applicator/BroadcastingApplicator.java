@@ -26,13 +26,11 @@ import org.apache.log4j.Logger;
 import com.eucalyptus.cluster.common.broadcast.NetworkInfo;
 import com.eucalyptus.cluster.callback.BroadcastNetworkInfoCallback;
 import com.eucalyptus.cluster.common.Cluster;
-import com.eucalyptus.crypto.util.B64;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
 import com.eucalyptus.util.async.AsyncRequests;
 import com.eucalyptus.util.async.UnconditionalCallback;
-import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
 import com.eucalyptus.cluster.common.msgs.BroadcastNetworkInfoResponseType;
 
@@ -48,9 +46,7 @@ public class BroadcastingApplicator implements Applicator {
   @Override
   public void apply( final ApplicatorContext context, final ApplicatorChain chain ) throws ApplicatorException {
     final NetworkInfo netInfo = context.getNetworkInfo( );
-    final String networkInfo = MarshallingApplicatorHelper.getMarshalledNetworkInfo( context );
-    final String encodedNetworkInfo =
-        new String( B64.standard.enc( networkInfo.getBytes( Charsets.UTF_8 ) ), Charsets.UTF_8 );
+    final String encodedNetworkInfo = MarshallingApplicatorHelper.getEncodedNetworkInfo( context );
 
     final BroadcastNetworkInfoCallback callback = new BroadcastNetworkInfoCallback(
         encodedNetworkInfo,
@@ -20,11 +20,15 @@
 package com.eucalyptus.network.applicator;
 
 import java.io.StringWriter;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import org.apache.log4j.Logger;
 import com.eucalyptus.cluster.common.broadcast.NetworkInfo;
+import com.eucalyptus.crypto.util.B64;
 import com.eucalyptus.util.TypedKey;
+import com.google.common.base.Charsets;
 
 /**
  *
@@ -35,27 +39,108 @@ class MarshallingApplicatorHelper {
 
   private static final TypedKey<String> MARSHALLED_INFO_KEY = TypedKey.create( "MarshalledNetworkInfo" );
 
+  /**
+   * JAXB contexts are thread safe and expensive to create so one is shared for all broadcasts
+   */
+  private static final AtomicReference<JAXBContext> jaxbContext = new AtomicReference<>( );
+
+  /**
+   * The most recently marshalled network information, reused while the same unchanged information is broadcast
+   */
+  private static final AtomicReference<MarshalledNetworkInfo> lastMarshalled = new AtomicReference<>( );
+
   static void clearMarshalledNetworkInfoCache( final ApplicatorContext context ) {
     context.removeAttribute( MARSHALLED_INFO_KEY );
   }
 
   static String getMarshalledNetworkInfo( final ApplicatorContext context ) throws ApplicatorException {
     String networkInfo = context.getAttribute( MARSHALLED_INFO_KEY );
-    if ( networkInfo == null ) try {
-      final NetworkInfo info = context.getNetworkInfo( );
-      final JAXBContext jc = JAXBContext.newInstance( NetworkInfo.class.getPackage( ).getName( ) );
+    if ( networkInfo == null ) {
+      networkInfo = marshalled( context.getNetworkInfo( ) ).xml;
+      context.setAttribute( MARSHALLED_INFO_KEY, networkInfo );
+    }
+    return networkInfo;
+  }
+
+  /**
+   * Get the base64 encoded marshalled network information.
+   */
+  static String getEncodedNetworkInfo( final ApplicatorContext context ) throws ApplicatorException {
+    final String networkInfo = getMarshalledNetworkInfo( context );
+    final MarshalledNetworkInfo marshalled = lastMarshalled.get( );
+    if ( marshalled != null && marshalled.xml == networkInfo ) {
+      return marshalled.encoded( );
+    }
+    return new String( B64.standard.enc( networkInfo.getBytes( Charsets.UTF_8 ) ), Charsets.UTF_8 );
+  }
+
+  private static MarshalledNetworkInfo marshalled( final NetworkInfo info ) throws ApplicatorException {
+    final MarshalledNetworkInfo cached = lastMarshalled.get( );
+    if ( cached != null && cached.isFor( info ) ) {
+      return cached;
+    }
+    try {
       final StringWriter writer = new StringWriter( 8192 );
-      jc.createMarshaller().marshal( info, writer );
+      jaxbContext( ).createMarshaller( ).marshal( info, writer );
 
-      networkInfo = writer.toString( );
+      final String networkInfo = writer.toString( );
       if ( logger.isTraceEnabled( ) ) {
-        logger.trace( "Broadcasting network information:\n${networkInfo}" );
+        logger.trace( "Broadcasting network information:\n" + networkInfo );
       }
-      context.setAttribute( MARSHALLED_INFO_KEY, networkInfo );
+      final MarshalledNetworkInfo marshalled = new MarshalledNetworkInfo( info, networkInfo );
+      lastMarshalled.set( marshalled );
+      return marshalled;
     } catch ( final JAXBException e ) {
       throw new ApplicatorException( "Error marshalling network information", e );
     }
-    return networkInfo;
   }
 
+  private static JAXBContext jaxbContext( ) throws JAXBException {
+    JAXBContext context = jaxbContext.get( );
+    if ( context == null ) {
+      context = JAXBContext.newInstance( NetworkInfo.class.getPackage( ).getName( ) );
+      if ( !jaxbContext.compareAndSet( null, context ) ) {
+        context = jaxbContext.get( );
+      }
+    }
+    return context;
+  }
+
+  /**
+   * Marshalled form of a network information instance at a version.
+   *
+   * The broadcaster reuses an instance while its source is unchanged, so a
+   * match on identity and the mutable version fields identifies the content.
+   */
+  private static final class MarshalledNetworkInfo {
+    private final NetworkInfo info;
+    private final String version;
+    private final String appliedVersion;
+    private final String appliedTime;
+    private final String xml;
+    private volatile String encoded;
+
+    MarshalledNetworkInfo( final NetworkInfo info, final String xml ) {
+      this.info = info;
+      this.version = info.getVersion( );
+      this.appliedVersion = info.getAppliedVersion( );
+      this.appliedTime = info.getAppliedTime( );
+      this.xml = xml;
+    }
+
+    boolean isFor( final NetworkInfo info ) {
+      return this.info == info &&
+          Objects.equals( version, info.getVersion( ) ) &&
+          Objects.equals( appliedVersion, info.getAppliedVersion( ) ) &&
+          Objects.equals( appliedTime, info.getAppliedTime( ) );
+    }
+
+    String encoded( ) {
+      String encoded = this.encoded;
+      if ( encoded == null ) {
+        encoded = this.encoded = new String( B64.standard.enc( xml.getBytes( Charsets.UTF_8 ) ), Charsets.UTF_8 );
+      }
+      return encoded;
+    }
+  }
 }
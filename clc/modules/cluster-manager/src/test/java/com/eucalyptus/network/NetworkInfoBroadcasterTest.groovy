@@ -61,10 +61,13 @@ import com.eucalyptus.compute.common.internal.vpc.NetworkInterface
 import com.google.common.base.Function
 import com.google.common.base.Optional
 import com.google.common.base.Supplier
+import com.google.common.hash.HashCode
 import com.eucalyptus.cluster.common.msgs.NodeInfo
 import org.junit.BeforeClass
 import org.junit.Test
 
+import java.util.concurrent.atomic.AtomicReference
+
 import static org.junit.Assert.*
 
 /**
@@ -1146,6 +1149,82 @@ class NetworkInfoBroadcasterTest {
     ), info )
   }
 
+  @Test
+  void testFingerprintCoversInputs( ) {
+    Closure<HashCode> fingerprint = { Map<String,Object> changes ->
+      Map<String,Object> inputs = [
+          viewVersions: [ instance: HashCode.fromInt( 1 ) ],
+          clusters: [ cluster( 'cluster1', '10.111.1.1', [ 'node1' ] ) ],
+          otherClusters: [ ],
+          clcHost: '10.111.1.100',
+          nameservers: [ '10.1.1.254' ],
+          instanceSubdomain: '.eucalyptus',
+          macPrefix: 'd0:0d',
+          dirtyPublicAddresses: [ ] as Set<String>,
+          networkConfiguration: '{ "Mode": "EDGE" }'
+      ] + changes
+      NetworkInfoBroadcaster.fingerprint(
+          (Map<String,HashCode>) inputs.viewVersions,
+          (List<Cluster>) inputs.clusters,
+          (List<Cluster>) inputs.otherClusters,
+          (String) inputs.clcHost,
+          (List<String>) inputs.nameservers,
+          (String) inputs.instanceSubdomain,
+          (String) inputs.macPrefix,
+          (Set<String>) inputs.dirtyPublicAddresses,
+          (String) inputs.networkConfiguration
+      )
+    }
+
+    HashCode base = fingerprint( [:] )
+    assertEquals( 'Fingerprint bits', 128, base.bits( ) )
+    assertEquals( 'Fingerprint for unchanged inputs', base, fingerprint( [:] ) )
+    [
+        [ viewVersions: [ instance: HashCode.fromInt( 2 ) ] ],
+        [ clusters: [ cluster( 'cluster1', '10.111.1.2', [ 'node1' ] ) ] ],
+        [ clusters: [ cluster( 'cluster1', '10.111.1.1', [ 'node1', 'node2' ] ) ] ],
+        [ otherClusters: [ cluster( 'cluster2', '10.111.1.3' ) ] ],
+        [ clcHost: '10.111.1.101' ],
+        [ nameservers: [ '10.1.1.253' ] ],
+        [ instanceSubdomain: '.cloud' ],
+        [ macPrefix: 'd0:0e' ],
+        [ dirtyPublicAddresses: [ '2.0.0.2' ] as Set<String> ],
+        [ networkConfiguration: '{ "Mode": "VPCMIDO" }' ],
+        [ networkConfiguration: null ],
+    ].each { Map<String,Object> changes ->
+      assertTrue( "Fingerprint for changed ${changes.keySet( )}", base != fingerprint( changes ) )
+    }
+  }
+
+  @Test
+  void testReuseReportsInvalidStateRoutes( ) {
+    AtomicReference<NetworkInfoBroadcaster.BroadcastSnapshot> lastBroadcast = new AtomicReference<>( )
+    RouteKey invalidRoute = new RouteKey( 'rtb-00000001', '0.0.0.0/0' )
+    int builds = 0
+    Function<Set<RouteKey>,NetworkInfo> builder = { Set<RouteKey> routes ->
+      builds++
+      routes.add( invalidRoute )
+      new NetworkInfo( )
+    } as Function<Set<RouteKey>,NetworkInfo>
+    HashCode fingerprint = HashCode.fromLong( 1L )
+    Map<String,HashCode> viewVersions = [ 'route-table': HashCode.fromInt( 1 ) ]
+
+    Set<RouteKey> routes = [ ] as Set<RouteKey>
+    NetworkInfo info = NetworkInfoBroadcaster.reuseOrBuild( lastBroadcast, fingerprint, viewVersions, routes, builder )
+    assertEquals( 'Builds', 1, builds )
+    assertEquals( 'Invalid routes', [ invalidRoute ] as Set<RouteKey>, routes )
+    assertEquals( 'Version', '00000001', info.version )
+
+    routes = [ ] as Set<RouteKey>
+    assertSame( 'Reused information', info, NetworkInfoBroadcaster.reuseOrBuild( lastBroadcast, fingerprint, viewVersions, routes, builder ) )
+    assertEquals( 'Builds', 1, builds )
+    assertEquals( 'Invalid routes for reused information', [ invalidRoute ] as Set<RouteKey>, routes )
+
+    routes = [ ] as Set<RouteKey>
+    NetworkInfoBroadcaster.reuseOrBuild( lastBroadcast, HashCode.fromLong( 2L ), viewVersions, routes, builder )
+    assertEquals( 'Builds after change', 2, builds )
+  }
+
   private static Cluster cluster( String partition, String host, List<String> nodes = [ ] ) {
     Cluster cluster = new Cluster( new TestClusterProvider( name: partition, partition: partition, hostName: host ) )
     nodes.each{ String node -> cluster.nodeMap.put( node, new NodeInfo( name: node ) ) }
@@ -543,7 +543,7 @@ public class ClusterServiceImpl implements ClusterService, ClusterEmpyreanServic
       final VmRunType request
   ) {
     final VmRunResponseType response = request.getReply( );
-    final ClusterEucaConf conf = clusterEucaConfLoader.load( );
+    final ClusterEucaConf conf = clusterNodes.conf( );
     try ( final ScheduleResource scheduleResource = Schedulers.context( ) ) {
       final ClusterNode node = schedulerForName.apply( conf.getScheduler( ) )
           .schedule( nodes( ), request.getVmTypeInfo( ) ).getOrElseThrow( ( ) -> new RuntimeException( "resources" ) );
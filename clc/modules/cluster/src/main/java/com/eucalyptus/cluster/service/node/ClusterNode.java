@@ -16,6 +16,8 @@
 package com.eucalyptus.cluster.service.node;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import com.eucalyptus.cluster.service.vm.VmInfo;
 import com.google.common.collect.Lists;
 import javaslang.collection.Stream;
@@ -26,12 +28,12 @@ import javaslang.collection.Stream;
 public final class ClusterNode {
   private final String node;
 
+  private final BiConsumer<ClusterNode,VmInfo> vmListener;
+  private final AtomicReference<Resources> available = new AtomicReference<>( new Resources( 0, 0, 0, 0, 0, 0 ) );
+
   private String iqn;
-  private int coresAvailable;
   private int coresTotal;
-  private int diskAvailable;
   private int diskTotal;
-  private int memoryAvailable;
   private int memoryTotal;
   private String nodeStatus;
   private Boolean migrationCapable;
@@ -49,13 +51,30 @@ public final class ClusterNode {
                       final int cores,
                       final int disk,
                       final int memory
+  ) {
+    this( node, iqn, cores, disk, memory, ( clusterNode, vm ) -> { } );
+  }
+
+  ClusterNode( final String node,
+               final BiConsumer<ClusterNode,VmInfo> vmListener ) {
+    this( node, null, 0, 0, 0, vmListener );
+  }
+
+  private ClusterNode( final String node,
+                       final String iqn,
+                       final int cores,
+                       final int disk,
+                       final int memory,
+                       final BiConsumer<ClusterNode,VmInfo> vmListener
   ) {
     this.node = node;
     this.nodeStatus = "LOADED";
     this.iqn = iqn;
-    this.coresAvailable = this.coresTotal = cores;
-    this.diskAvailable = this.diskTotal = disk;
-    this.memoryAvailable = this.memoryTotal = memory;
+    this.coresTotal = cores;
+    this.diskTotal = disk;
+    this.memoryTotal = memory;
+    this.available.set( new Resources( cores, disk, memory, 0, 0, 0 ) );
+    this.vmListener = vmListener;
   }
 
   public String getIqn( ) {
@@ -67,11 +86,11 @@ public final class ClusterNode {
   }
 
   public int getCoresAvailable( ) {
-    return coresAvailable;
+    return available.get( ).cores;
   }
 
   public void setCoresAvailable( final int coresAvailable ) {
-    this.coresAvailable = coresAvailable;
+    available.updateAndGet( resources -> resources.available( coresAvailable, resources.disk, resources.memory ) );
   }
 
   public int getCoresTotal( ) {
@@ -83,11 +102,11 @@ public final class ClusterNode {
   }
 
   public int getDiskAvailable( ) {
-    return diskAvailable;
+    return available.get( ).disk;
   }
 
   public void setDiskAvailable( final int diskAvailable ) {
-    this.diskAvailable = diskAvailable;
+    available.updateAndGet( resources -> resources.available( resources.cores, diskAvailable, resources.memory ) );
   }
 
   public int getDiskTotal( ) {
@@ -99,11 +118,60 @@ public final class ClusterNode {
   }
 
   public int getMemoryAvailable( ) {
-    return memoryAvailable;
+    return available.get( ).memory;
   }
 
   public void setMemoryAvailable( final int memoryAvailable ) {
-    this.memoryAvailable = memoryAvailable;
+    available.updateAndGet( resources -> resources.available( resources.cores, resources.disk, memoryAvailable ) );
+  }
+
+  /**
+   * Set all available resources at once.
+   */
+  public void setAvailable( final int cores, final int disk, final int memory ) {
+    available.updateAndGet( resources -> resources.available( cores, disk, memory ) );
+  }
+
+  /**
+   * Set available resources as reported by the node.
+   *
+   * Pending reservations are not reflected in the reported values so are
+   * deducted from them, in the same update so a concurrent reservation is
+   * deducted exactly once.
+   */
+  public void setReportedAvailable( final int cores, final int disk, final int memory ) {
+    available.updateAndGet( resources -> resources.available(
+        cores - resources.pendingCores, disk - resources.pendingDisk, memory - resources.pendingMemory ) );
+  }
+
+  /**
+   * Reserve resources if available, the reservation is pending until committed or released.
+   *
+   * @return True if the resources were reserved
+   */
+  public boolean reserve( final int cores, final int disk, final int memory ) {
+    Resources resources;
+    do {
+      resources = available.get( );
+      if ( resources.cores < cores || resources.disk < disk || resources.memory < memory ) {
+        return false;
+      }
+    } while ( !available.compareAndSet( resources, resources.adjust( -cores, -disk, -memory ).pending( cores, disk, memory ) ) );
+    return true;
+  }
+
+  /**
+   * Commit previously reserved resources, they are no longer pending.
+   */
+  public void commit( final int cores, final int disk, final int memory ) {
+    available.updateAndGet( resources -> resources.pending( -cores, -disk, -memory ) );
+  }
+
+  /**
+   * Release previously reserved resources.
+   */
+  public void release( final int cores, final int disk, final int memory ) {
+    available.updateAndGet( resources -> resources.adjust( cores, disk, memory ).pending( -cores, -disk, -memory ) );
   }
 
   public int getMemoryTotal( ) {
@@ -160,6 +228,44 @@ public final class ClusterNode {
 
   public VmInfo vm( final VmInfo vm ) {
     vms.add( vm );
+    vmListener.accept( this, vm );
     return vm;
   }
+
+  private static final class Resources {
+    private final int cores;
+    private final int disk;
+    private final int memory;
+    private final int pendingCores;
+    private final int pendingDisk;
+    private final int pendingMemory;
+
+    private Resources( final int cores,
+                       final int disk,
+                       final int memory,
+                       final int pendingCores,
+                       final int pendingDisk,
+                       final int pendingMemory
+    ) {
+      this.cores = cores;
+      this.disk = disk;
+      this.memory = memory;
+      this.pendingCores = pendingCores;
+      this.pendingDisk = pendingDisk;
+      this.pendingMemory = pendingMemory;
+    }
+
+    private Resources available( final int cores, final int disk, final int memory ) {
+      return new Resources( cores, disk, memory, pendingCores, pendingDisk, pendingMemory );
+    }
+
+    private Resources adjust( final int cores, final int disk, final int memory ) {
+      return available( this.cores + cores, this.disk + disk, this.memory + memory );
+    }
+
+    private Resources pending( final int cores, final int disk, final int memory ) {
+      return new Resources( this.cores, this.disk, this.memory,
+          pendingCores + cores, pendingDisk + disk, pendingMemory + memory );
+    }
+  }
 }
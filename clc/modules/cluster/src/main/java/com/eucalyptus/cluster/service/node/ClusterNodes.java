@@ -20,6 +20,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Inject;
@@ -47,6 +48,7 @@ import com.google.common.collect.Sets;
 import javaslang.Tuple;
 import javaslang.Tuple2;
 import javaslang.collection.Stream;
+import javaslang.collection.Vector;
 import javaslang.control.Option;
 
 /**
@@ -56,8 +58,11 @@ import javaslang.control.Option;
 public class ClusterNodes {
 
   private static final int DEFAULT_PORT = 8775;
+  private static final long CONF_REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis( 5 );
 
   private final ConcurrentMap<String,ClusterNode> nodesByIp = Maps.newConcurrentMap( );
+  private final ConcurrentMap<String,Tuple2<ClusterNode,VmInfo>> nodesByVmId = Maps.newConcurrentMap( );
+  private final AtomicReference<Tuple2<ClusterEucaConf,Vector<ClusterNode>>> confAndNodes = new AtomicReference<>( );
   private final AtomicReference<Integer> nodePort = new AtomicReference<>( DEFAULT_PORT );
   private final AtomicLong lastSensorRefresh = new AtomicLong( );
   private final ClusterEucaConfLoader clusterEucaConfLoader;
@@ -73,7 +78,7 @@ public class ClusterNodes {
   }
 
   public ClusterNode getClusterNode( final String node ) {
-    return nodesByIp.computeIfAbsent( node, ClusterNode::new );
+    return nodesByIp.computeIfAbsent( node, ip -> new ClusterNode( ip, this::vmAdded ) );
   }
 
   public int getNodePort( ) {
@@ -94,19 +99,55 @@ public class ClusterNodes {
   }
 
   public Option<Tuple2<ClusterNode,VmInfo>> nodeWithVm( final String vmId ) {
-    for ( final ClusterNode clusterNode : nodes( ) ) {
-      for ( final VmInfo vmInfo : clusterNode.getVms( ) ) {
-        if ( vmInfo.getId( ).equals( vmId ) ) {
-          return Option.some( Tuple.of( clusterNode, vmInfo ) );
-        }
-      }
-    }
-    return Option.none( );
+    return Option.of( nodesByVmId.get( vmId ) );
   }
 
+  /**
+   * Nodes from the current configuration, sorted by address.
+   *
+   * The configuration is reloaded at most every few seconds and the node list
+   * is only rebuilt when the configured nodes change.
+   */
   public Stream<ClusterNode> nodes( ) {
+    return Stream.ofAll( confAndNodes( )._2( ) );
+  }
+
+  /**
+   * The configuration the current nodes were loaded from.
+   */
+  public ClusterEucaConf conf( ) {
+    return confAndNodes( )._1( );
+  }
+
+  private Tuple2<ClusterEucaConf,Vector<ClusterNode>> confAndNodes( ) {
+    final Tuple2<ClusterEucaConf,Vector<ClusterNode>> current = confAndNodes.get( );
+    if ( current != null &&
+        ( System.currentTimeMillis( ) - current._1( ).getCreationTime( ) ) < CONF_REFRESH_INTERVAL ) {
+      return current;
+    }
     final ClusterEucaConf conf = clusterEucaConfLoader.load( );
-    return Stream.ofAll( conf.getNodes( ) ).sorted( ).map( this::getClusterNode );
+    final Vector<ClusterNode> nodes = current != null && current._1( ).getNodes( ).equals( conf.getNodes( ) ) ?
+        current._2( ) :
+        Vector.ofAll( conf.getNodes( ) ).sorted( ).map( this::getClusterNode );
+    final Tuple2<ClusterEucaConf,Vector<ClusterNode>> updated = Tuple.of( conf, nodes );
+    if ( confAndNodes.compareAndSet( current, updated ) && ( current == null || nodes != current._2( ) ) ) {
+      prune( conf.getNodes( ), nodes );
+    }
+    return updated;
+  }
+
+  /**
+   * Remove nodes that are no longer configured along with their indexed vms.
+   */
+  private void prune( final Set<String> configuredNodes, final Vector<ClusterNode> nodes ) {
+    nodesByIp.keySet( ).retainAll( configuredNodes );
+    final Set<ClusterNode> retainedNodes = Sets.newIdentityHashSet( );
+    retainedNodes.addAll( nodes.toJavaList( ) );
+    nodesByVmId.values( ).removeIf( nodeAndVm -> !retainedNodes.contains( nodeAndVm._1( ) ) );
+  }
+
+  private void vmAdded( final ClusterNode node, final VmInfo vm ) {
+    nodesByVmId.put( vm.getId( ), Tuple.of( node, vm ) );
   }
 
   public void status( final String status, final Stream<String> nodes ) {
@@ -132,16 +173,14 @@ public class ClusterNodes {
       node.setMigrationCapable( reply.getMigrationCapable( ) );
       node.setNodeStatus( reply.getNodeStatus( ) );
       node.setPublicSubnets( reply.getPublicSubnets( ) );
-      Scheduler.withLock( () -> { //TODO accounting not correct here for reserved/pending resources
-        node.setCoresAvailable( MoreObjects.firstNonNull( reply.getNumberOfCoresAvailable( ), 0 ) );
-        node.setCoresTotal( MoreObjects.firstNonNull( reply.getNumberOfCoresMax( ), 0 ) );
-        node.setDiskAvailable( MoreObjects.firstNonNull( reply.getDiskSizeAvailable( ), 0 ) );
-        node.setDiskTotal( MoreObjects.firstNonNull( reply.getDiskSizeMax( ), 0 ) );
-        node.setMemoryAvailable( MoreObjects.firstNonNull( reply.getMemorySizeAvailable( ), 0 ) );
-        node.setMemoryTotal( MoreObjects.firstNonNull( reply.getMemorySizeMax( ), 0 ) );
-        Scheduler.adjust( node );
-        return true;
-      } );
+      node.setCoresTotal( MoreObjects.firstNonNull( reply.getNumberOfCoresMax( ), 0 ) );
+      node.setDiskTotal( MoreObjects.firstNonNull( reply.getDiskSizeMax( ), 0 ) );
+      node.setMemoryTotal( MoreObjects.firstNonNull( reply.getMemorySizeMax( ), 0 ) );
+      Scheduler.available(
+          node,
+          MoreObjects.firstNonNull( reply.getNumberOfCoresAvailable( ), 0 ),
+          MoreObjects.firstNonNull( reply.getDiskSizeAvailable( ), 0 ),
+          MoreObjects.firstNonNull( reply.getMemorySizeAvailable( ), 0 ) );
     }
   }
 
@@ -15,7 +15,6 @@
  ************************************************************************/
 package com.eucalyptus.cluster.service.scheduler;
 
-import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import com.eucalyptus.cluster.common.msgs.VmTypeInfo;
 import com.eucalyptus.cluster.service.node.ClusterNode;
@@ -27,7 +26,7 @@ import javaslang.control.Option;
  */
 public class RoundRobinScheduler implements Scheduler {
 
-  private AtomicReference<String> lastNode = new AtomicReference<>( "" );
+  private final AtomicReference<String> lastNode = new AtomicReference<>( "" );
 
   @Override
   public String name( ) {
@@ -39,14 +38,10 @@ public class RoundRobinScheduler implements Scheduler {
       final Stream<ClusterNode> nodes,
       final VmTypeInfo vmTypeInfo
   ) {
-    return Scheduler.withLock( ( ) -> {
-      final List<ClusterNode> head = nodes.takeWhile( node -> !node.getNode( ).equals( lastNode.get( ) ) ).toJavaList( );
-      if ( !nodes.isEmpty( ) ) {
-        head.add( nodes.get( ) );
-      }
-      Option<ClusterNode> scheduled = nodes.appendAll( head ).find( Scheduler.reserve( vmTypeInfo ) );
-      scheduled.forEach( clusterNode -> lastNode.set( clusterNode.getNode( ) ) );
-      return scheduled;
-    } );
+    final int lastIndex = nodes.map( ClusterNode::getNode ).indexOf( lastNode.get( ) );
+    final Stream<ClusterNode> rotated = nodes.drop( lastIndex + 1 ).appendAll( nodes.take( lastIndex + 1 ) );
+    final Option<ClusterNode> scheduled = rotated.find( Scheduler.reserve( vmTypeInfo ) );
+    scheduled.forEach( clusterNode -> lastNode.set( clusterNode.getNode( ) ) );
+    return scheduled;
   }
 }
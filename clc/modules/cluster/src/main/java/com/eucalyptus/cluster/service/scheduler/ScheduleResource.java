@@ -15,10 +15,8 @@
  ************************************************************************/
 package com.eucalyptus.cluster.service.scheduler;
 
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import com.eucalyptus.cluster.service.node.ClusterNode;
-import com.google.common.collect.Sets;
 import javaslang.control.Option;
 
 /**
@@ -27,41 +25,32 @@ import javaslang.control.Option;
 public class ScheduleResource implements AutoCloseable {
 
   private static final ThreadLocal<ScheduleResource> threadScheduleResource = new ThreadLocal<>( );
-  private static final Set<ScheduleResource> activeScheduleResources = Sets.newConcurrentHashSet( );
 
   private final AtomicBoolean complete = new AtomicBoolean( false );
 
-  private volatile String node;
-  private volatile int cores;
-  private volatile int disk;
-  private volatile int memory;
+  private volatile Runnable commit;
   private volatile Runnable rollback;
 
   static Option<ScheduleResource> active( ) {
     return Option.of( threadScheduleResource.get( ) );
   }
 
-  static void adjustAll( final ClusterNode node ) {
-    activeScheduleResources.forEach( resource -> resource.adjust( node ) );
-  }
-
   ScheduleResource( ) {
     threadScheduleResource.set( this );
-    activeScheduleResources.add( this );
   }
 
   public void commit( ) {
-    complete( );
+    final Runnable commit = this.commit;
+    if ( complete( ) && commit != null ) {
+      commit.run( );
+    }
   }
 
   public void rollback( ) {
     final Runnable rollback = this.rollback;
-    Scheduler.withLock( () -> {
-      if ( complete( ) && rollback != null ) {
-        rollback.run( );
-      }
-      return true;
-    } );
+    if ( complete( ) && rollback != null ) {
+      rollback.run( );
+    }
   }
 
   @Override
@@ -69,35 +58,26 @@ public class ScheduleResource implements AutoCloseable {
     rollback( );
   }
 
-  void resources( final int cores, final int disk, final int memory ) {
-    this.cores = cores;
-    this.disk = disk;
-    this.memory = memory;
-  }
-
-  void apply( final ClusterNode clusterNode ) {
-    this.node = clusterNode.getNode( );
-    adjust( clusterNode );
-    this.rollback = ( ) -> adjustWithFactor( clusterNode, -1 );
-  }
-
-  void adjust( final ClusterNode clusterNode ) {
-    adjustWithFactor( clusterNode, 1 );
-  }
-
-  private void adjustWithFactor( final ClusterNode clusterNode, final int factor ) {
-    if ( clusterNode.getNode( ).equals( this.node ) ) {
-      clusterNode.setCoresAvailable( clusterNode.getCoresAvailable( ) - (cores * factor) );
-      clusterNode.setDiskAvailable( clusterNode.getDiskAvailable( ) - (disk * factor) );
-      clusterNode.setMemoryAvailable( clusterNode.getMemoryAvailable( ) - (memory * factor) );
+  /**
+   * Reserve resources on the given node for this schedule operation.
+   *
+   * The reservation is pending on the node until this operation is committed
+   * or rolled back, so a concurrent refresh of the nodes resources accounts
+   * for it.
+   */
+  boolean reserve( final ClusterNode clusterNode, final int cores, final int disk, final int memory ) {
+    final boolean reserved = clusterNode.reserve( cores, disk, memory );
+    if ( reserved ) {
+      this.commit = ( ) -> clusterNode.commit( cores, disk, memory );
+      this.rollback = ( ) -> clusterNode.release( cores, disk, memory );
     }
+    return reserved;
   }
 
   private boolean complete( ) {
     final boolean completing = complete.compareAndSet( false, true );
     if ( completing ) {
       threadScheduleResource.set( null );
-      activeScheduleResources.remove( this );
     }
     return completing;
   }
@@ -15,14 +15,9 @@
  ************************************************************************/
 package com.eucalyptus.cluster.service.scheduler;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.function.Supplier;
 import com.eucalyptus.cluster.common.msgs.VmTypeInfo;
 import com.eucalyptus.cluster.service.node.ClusterNode;
-import com.eucalyptus.util.LockResource;
 import javaslang.collection.Stream;
 import javaslang.control.Option;
 
@@ -31,20 +26,18 @@ import javaslang.control.Option;
  */
 public interface Scheduler {
 
-  Lock schedulingLock = new ReentrantLock(  );
-
   String name( );
 
   Option<ClusterNode> schedule( Stream<ClusterNode> nodes, VmTypeInfo vmTypeInfo );
 
-  static <R> R withLock( Supplier<R> schedulingAction ) {
-    try ( final LockResource resource = LockResource.lock( schedulingLock ) ) {
-      return schedulingAction.get( );
-    }
-  }
-
-  static void adjust( final ClusterNode node ) {
-    ScheduleResource.adjustAll( node );
+  /**
+   * Update the available resources for a node as reported by the node.
+   *
+   * Resources reserved by schedule operations that are still pending are not
+   * yet reflected in the reported values so are deducted from them.
+   */
+  static void available( final ClusterNode node, final int cores, final int disk, final int memory ) {
+    node.setReportedAvailable( cores, disk, memory );
   }
 
   static Predicate<ClusterNode> resourcesFor( final VmTypeInfo vmTypeInfo ) {
@@ -55,15 +48,12 @@ public interface Scheduler {
   }
 
   static Predicate<ClusterNode> reserve( final VmTypeInfo vmTypeInfo ) {
-    return clusterNode -> withLock( ( ) -> {
+    return clusterNode -> {
       final Option<ScheduleResource> resourceOption = ScheduleResource.active( );
-      boolean reserved = false;
-      if ( resourceOption.isDefined( ) && resourcesFor( vmTypeInfo ).test( clusterNode ) ) {
-        resourceOption.get( ).resources( vmTypeInfo.getCores( ), vmTypeInfo.getDisk( ), vmTypeInfo.getMemory( ) );
-        resourceOption.get( ).apply( clusterNode );
-        reserved = true;
-      }
-      return reserved;
-    } );
+      return resourceOption.isDefined( ) &&
+          resourcesFor( vmTypeInfo ).test( clusterNode ) &&
+          resourceOption.get( ).reserve(
+              clusterNode, vmTypeInfo.getCores( ), vmTypeInfo.getDisk( ), vmTypeInfo.getMemory( ) );
+    };
   }
 }
@@ -0,0 +1,517 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.cluster.service;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.xml.bind.JAXBContext;
+import com.eucalyptus.cluster.common.broadcast.NIInstance;
+import com.eucalyptus.cluster.common.broadcast.NetworkInfo;
+import com.eucalyptus.cluster.common.msgs.BroadcastNetworkInfoType;
+import com.eucalyptus.cluster.common.msgs.DescribeResourcesType;
+import com.eucalyptus.cluster.common.msgs.DescribeSensorsType;
+import com.eucalyptus.cluster.common.msgs.VmDescribeType;
+import com.eucalyptus.cluster.common.msgs.VmKeyInfo;
+import com.eucalyptus.cluster.common.msgs.VmRunType;
+import com.eucalyptus.cluster.common.msgs.VmTypeInfo;
+import com.eucalyptus.cluster.service.conf.ClusterEucaConfLoader;
+import com.eucalyptus.cluster.service.fake.FakeClusterNodeServiceFactory;
+import com.eucalyptus.cluster.service.node.ClusterNodes;
+import com.eucalyptus.compute.common.internal.network.NetworkGroup;
+import com.eucalyptus.crypto.util.B64;
+import com.eucalyptus.util.metrics.Benchmarks;
+import com.eucalyptus.util.metrics.LatencyHistogram;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmark and soak harness for the cluster service using fake nodes.
+ *
+ * <p>Runs a ClusterServiceImpl in process against the configured number of
+ * fake nodes, preloads fake instances and then drives each operation at a
+ * fixed rate. Latency is measured from the time each request was due to be
+ * issued so a stalled service is not hidden by a stalled load generator.</p>
+ *
+ * <p>When the {@code iterations} option is set each enabled operation is
+ * instead issued that many times as fast as the workers allow, for a fixed
+ * amount of work regardless of how quickly the service responds.</p>
+ *
+ * <p>Options are given as {@code --name=value} arguments or as
+ * {@code cluster.benchmark.name} system properties, see {@link Options}.
+ * Results are written as JSON lines, one per report interval and a final
+ * summary, to standard output or the file given by the {@code output}
+ * option.</p>
+ */
+public class ClusterServiceBenchmark {
+
+  private static final String SSH_KEY = "ssh-rsa AAAAB3NzaC1yc2EAAAABIwAAAQEA4dW1AXL6L7fA3HiRH8YfSfRLEFZSYfJLFdKI9z " +
+      "benchmark@localhost";
+
+  public enum Operation {
+    RunVm,
+    DescribeVms,
+    DescribeResources,
+    DescribeSensors,
+    BroadcastNetworkInfo,
+  }
+
+  public static final class Options {
+    private int nodes = 2000;
+    private int vms = 20000;
+    private int threads = 16;
+    private long warmupSeconds = 10;
+    private long durationSeconds = 60;
+    private long reportIntervalSeconds = 10;
+    private int iterations = 0;
+    private int sensorBatchSize = 100;
+    private String output = "-";
+    private final Map<Operation,Double> rates = new EnumMap<>( Operation.class );
+
+    public Options( ) {
+      rates.put( Operation.RunVm, 20d );
+      rates.put( Operation.DescribeVms, 0.2d );
+      rates.put( Operation.DescribeResources, 0.2d );
+      rates.put( Operation.DescribeSensors, 1d );
+      rates.put( Operation.BroadcastNetworkInfo, 0.1d );
+    }
+
+    /**
+     * Options from arguments and system properties, arguments take precedence.
+     *
+     * Rates are per second and set using the operation name, e.g. {@code --RunVm=50}.
+     * A rate of 0 disables the operation.
+     */
+    public static Options parse( final String[] args ) {
+      final Options options = new Options( );
+      for ( final Map.Entry<String,String> entry : Benchmarks.options( "cluster.benchmark.", args ).entrySet( ) ) {
+        options.set( entry.getKey( ), entry.getValue( ) );
+      }
+      return options;
+    }
+
+    public Options set( final String name, final String value ) {
+      switch ( name ) {
+        case "nodes": nodes = Integer.parseInt( value ); break;
+        case "vms": vms = Integer.parseInt( value ); break;
+        case "threads": threads = Integer.parseInt( value ); break;
+        case "warmup": warmupSeconds = Long.parseLong( value ); break;
+        case "duration": durationSeconds = Long.parseLong( value ); break;
+        case "reportInterval": reportIntervalSeconds = Long.parseLong( value ); break;
+        case "iterations": iterations = Integer.parseInt( value ); break;
+        case "sensorBatchSize": sensorBatchSize = Integer.parseInt( value ); break;
+        case "output": output = value; break;
+        default:
+          try {
+            rates.put( Operation.valueOf( name ), Double.parseDouble( value ) );
+          } catch ( final IllegalArgumentException e ) {
+            throw new IllegalArgumentException( "Unknown option: " + name );
+          }
+      }
+      return this;
+    }
+
+    private Map<String,Object> toMap( ) {
+      final Map<String,Object> map = new LinkedHashMap<>( );
+      map.put( "nodes", nodes );
+      map.put( "vms", vms );
+      map.put( "threads", threads );
+      map.put( "warmupSeconds", warmupSeconds );
+      map.put( "durationSeconds", durationSeconds );
+      map.put( "reportIntervalSeconds", reportIntervalSeconds );
+      map.put( "iterations", iterations );
+      map.put( "sensorBatchSize", sensorBatchSize );
+      final Map<String,Object> rateMap = new LinkedHashMap<>( );
+      rates.forEach( ( operation, rate ) -> rateMap.put( operation.name( ), rate ) );
+      map.put( "rates", rateMap );
+      return map;
+    }
+  }
+
+  private final Options options;
+  private final Map<Operation,LatencyHistogram> latencies = new EnumMap<>( Operation.class );
+  private final Map<Operation,LongAdder> errors = new EnumMap<>( Operation.class );
+  private final AtomicInteger instanceCounter = new AtomicInteger( );
+  private final AtomicLong broadcastCounter = new AtomicLong( );
+  private final List<String> instanceIds = new CopyOnWriteArrayList<>( );
+  private final List<Thread> workerThreads = new CopyOnWriteArrayList<>( );
+  private final List<String> networkInfos = Lists.newArrayList( );
+  private ClusterService service;
+
+  public ClusterServiceBenchmark( final Options options ) {
+    this.options = options;
+    for ( final Operation operation : Operation.values( ) ) {
+      latencies.put( operation, new LatencyHistogram( options.threads ) );
+      errors.put( operation, new LongAdder( ) );
+    }
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    final Options options = Options.parse( args );
+    try ( final PrintWriter out = "-".equals( options.output ) ?
+        new PrintWriter( new OutputStreamWriter( System.out, StandardCharsets.UTF_8 ), true ) :
+        new PrintWriter( new OutputStreamWriter( new FileOutputStream( options.output ), StandardCharsets.UTF_8 ), true ) ) {
+      new ClusterServiceBenchmark( options ).run( out::println );
+    }
+    System.exit( 0 );
+  }
+
+  /**
+   * Run the benchmark, passing each JSON result line to the given reporter.
+   *
+   * @return The summary result
+   */
+  public Map<String,Object> run( final Reporter reporter ) throws Exception {
+    final ExecutorService workers = Executors.newFixedThreadPool( options.threads, runnable -> {
+      final Thread thread = new Thread( runnable, "cluster-benchmark-worker-" + workerThreads.size( ) );
+      thread.setDaemon( true );
+      workerThreads.add( thread );
+      return thread;
+    } );
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+      final Thread thread = new Thread( runnable, "cluster-benchmark-scheduler" );
+      thread.setDaemon( true );
+      return thread;
+    } );
+    try {
+      final long setupStart = System.nanoTime( );
+      setup( workers );
+      final long setupNanos = System.nanoTime( ) - setupStart;
+
+      final Map<String,Object> summary = options.iterations > 0 ?
+          runIterations( workers ) :
+          runTimed( workers, scheduler, reporter );
+      final Map<String,Object> setup = new LinkedHashMap<>( );
+      setup.put( "millis", TimeUnit.NANOSECONDS.toMillis( setupNanos ) );
+      setup.put( "vms", options.vms );
+      setup.put( "vmsPerSecond", rate( options.vms, setupNanos ) );
+      summary.put( "setup", setup );
+      summary.put( "options", options.toMap( ) );
+      reporter.report( Benchmarks.toJson( summary ) );
+      return summary;
+    } finally {
+      scheduler.shutdownNow( );
+      workers.shutdownNow( );
+      workers.awaitTermination( 1, TimeUnit.MINUTES );
+    }
+  }
+
+  /**
+   * Issue each enabled operation at its rate for the configured duration.
+   */
+  private Map<String,Object> runTimed(
+      final ExecutorService workers,
+      final ScheduledExecutorService scheduler,
+      final Reporter reporter
+  ) throws InterruptedException {
+    for ( final Operation operation : Operation.values( ) ) {
+      final double rate = options.rates.getOrDefault( operation, 0d );
+      if ( rate > 0 ) {
+        final long periodNanos = Math.max( 1, (long) ( TimeUnit.SECONDS.toNanos( 1 ) / rate ) );
+        final long start = System.nanoTime( );
+        final AtomicLong issued = new AtomicLong( );
+        scheduler.scheduleAtFixedRate( ( ) -> {
+          final long due = start + issued.getAndIncrement( ) * periodNanos;
+          workers.execute( ( ) -> perform( operation, due ) );
+        }, 0, periodNanos, TimeUnit.NANOSECONDS );
+      }
+    }
+
+    TimeUnit.SECONDS.sleep( options.warmupSeconds );
+    final Sample start = sample( );
+    Sample previous = start;
+    final long end = System.nanoTime( ) + TimeUnit.SECONDS.toNanos( options.durationSeconds );
+    final long reportNanos = TimeUnit.SECONDS.toNanos( Math.max( 1, options.reportIntervalSeconds ) );
+    while ( System.nanoTime( ) < end ) {
+      TimeUnit.NANOSECONDS.sleep( Math.min( reportNanos, Math.max( 0, end - System.nanoTime( ) ) ) );
+      final Sample current = sample( );
+      if ( options.reportIntervalSeconds > 0 && System.nanoTime( ) < end ) {
+        reporter.report( Benchmarks.toJson( result( "interval", previous, current ) ) );
+      }
+      previous = current;
+    }
+    return result( "summary", start, previous );
+  }
+
+  /**
+   * Issue each enabled operation the configured number of times and wait for completion.
+   */
+  private Map<String,Object> runIterations( final ExecutorService workers ) throws InterruptedException {
+    final List<Operation> operations = Lists.newArrayList( );
+    for ( final Operation operation : Operation.values( ) ) {
+      if ( options.rates.getOrDefault( operation, 0d ) > 0 ) {
+        operations.add( operation );
+      }
+    }
+    final Sample start = sample( );
+    final CountDownLatch latch = new CountDownLatch( operations.size( ) * options.iterations );
+    for ( int i = 0; i < options.iterations; i++ ) {
+      for ( final Operation operation : operations ) {
+        final long due = System.nanoTime( );
+        workers.execute( ( ) -> {
+          try {
+            perform( operation, due );
+          } finally {
+            latch.countDown( );
+          }
+        } );
+      }
+    }
+    latch.await( );
+    return result( "summary", start, sample( ) );
+  }
+
+  private void setup( final ExecutorService workers ) throws Exception {
+    final List<String> nodes = Lists.newArrayListWithCapacity( options.nodes );
+    for ( int i = 1; i <= options.nodes; i++ ) {
+      nodes.add( "10." + ( ( i >> 16 ) & 255 ) + "." + ( ( i >> 8 ) & 255 ) + "." + ( i & 255 ) );
+    }
+    final ClusterEucaConfLoader loader = new ClusterEucaConfLoader( ( ) -> ImmutableMap.of(
+        "NODES", "\"" + Joiner.on( ' ' ).join( nodes ) + "\""
+    ) );
+    final ClusterNodes clusterNodes = new ClusterNodes( loader, new FakeClusterNodeServiceFactory( false ) );
+    clusterNodes.refreshResources( );
+    service = new ClusterServiceImpl( loader, clusterNodes );
+
+    final CountDownLatch latch = new CountDownLatch( options.vms );
+    for ( int i = 0; i < options.vms; i++ ) {
+      workers.execute( ( ) -> {
+        try {
+          runVm( );
+        } finally {
+          latch.countDown( );
+        }
+      } );
+    }
+    latch.await( );
+
+    final JAXBContext jc = JAXBContext.newInstance( NetworkInfo.class.getPackage( ).getName( ) );
+    for ( int variant = 0; variant < 2; variant++ ) {
+      final NetworkInfo info = new NetworkInfo( );
+      for ( final String instanceId : instanceIds ) {
+        final NIInstance instance = new NIInstance( );
+        instance.setName( instanceId );
+        instance.setPublicIp( "172." + ( 16 + variant ) + "." + ThreadLocalRandom.current( ).nextInt( 256 ) + "." +
+            ThreadLocalRandom.current( ).nextInt( 1, 255 ) );
+        info.getInstances( ).add( instance );
+      }
+      final StringWriter writer = new StringWriter( );
+      jc.createMarshaller( ).marshal( info, writer );
+      networkInfos.add( B64.standard.encString( writer.toString( ).getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+  }
+
+  private void perform( final Operation operation, final long due ) {
+    try {
+      switch ( operation ) {
+        case RunVm:
+          runVm( );
+          break;
+        case DescribeVms:
+          service.describeVms( new VmDescribeType( ) );
+          break;
+        case DescribeResources:
+          final DescribeResourcesType describeResources = new DescribeResourcesType( );
+          describeResources.getInstanceTypes( ).add( vmTypeInfo( ) );
+          service.describeResources( describeResources );
+          break;
+        case DescribeSensors:
+          final DescribeSensorsType describeSensors = new DescribeSensorsType( );
+          describeSensors.setHistorySize( 5 );
+          describeSensors.setCollectionIntervalTimeMs( 150_000 );
+          describeSensors.setInstanceIds( sampleInstanceIds( options.sensorBatchSize ) );
+          service.describeSensors( describeSensors );
+          break;
+        case BroadcastNetworkInfo:
+          final long version = broadcastCounter.incrementAndGet( );
+          final BroadcastNetworkInfoType broadcastNetworkInfo = new BroadcastNetworkInfoType( );
+          broadcastNetworkInfo.setVersion( String.valueOf( version ) );
+          broadcastNetworkInfo.setNetworkInfo( networkInfos.get( (int) ( version % networkInfos.size( ) ) ) );
+          service.broadcastNetworkInfo( broadcastNetworkInfo );
+          break;
+      }
+    } catch ( final Exception e ) {
+      errors.get( operation ).increment( );
+    } finally {
+      latencies.get( operation ).record( TimeUnit.NANOSECONDS.toMicros( System.nanoTime( ) - due ) );
+    }
+  }
+
+  private void runVm( ) {
+    final int index = instanceCounter.incrementAndGet( );
+    final String instanceId = String.format( "i-%08x", index );
+    final NetworkGroup group = new NetworkGroup( );
+    group.setGroupId( "sg-00000001" );
+    group.setDisplayName( "group-1" );
+    final VmKeyInfo keyInfo = new VmKeyInfo( );
+    keyInfo.setValue( SSH_KEY );
+    service.runVm( VmRunType.builder( )
+        .reservationId( String.format( "r-%08x", index ) )
+        .platform( "linux" )
+        .launchIndex( 1 )
+        .instanceId( instanceId )
+        .naturalId( UUID.randomUUID( ).toString( ) )
+        .macAddress( String.format( "d0:0d:%02x:%02x:%02x:%02x",
+            ( index >> 24 ) & 255, ( index >> 16 ) & 255, ( index >> 8 ) & 255, index & 255 ) )
+        .privateAddress( "10.128." + ( ( index >> 8 ) & 255 ) + "." + ( index & 255 ) )
+        .networkNames( Collections.singletonList( group ) )
+        .networkIds( Collections.singletonList( group ) )
+        .keyInfo( keyInfo )
+        .vmTypeInfo( vmTypeInfo( ) )
+        .create( ) );
+    instanceIds.add( instanceId );
+  }
+
+  private static VmTypeInfo vmTypeInfo( ) {
+    return new VmTypeInfo( "m1.small", 512, 5, 1, "sda1" );
+  }
+
+  private ArrayList<String> sampleInstanceIds( final int count ) {
+    final ArrayList<String> sample = Lists.newArrayListWithCapacity( count );
+    final int size = instanceIds.size( );
+    for ( int i = 0; i < count && size > 0; i++ ) {
+      sample.add( instanceIds.get( ThreadLocalRandom.current( ).nextInt( size ) ) );
+    }
+    return sample;
+  }
+
+  private Sample sample( ) {
+    final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean( );
+    if ( threadMXBean.isThreadContentionMonitoringSupported( ) && !threadMXBean.isThreadContentionMonitoringEnabled( ) ) {
+      threadMXBean.setThreadContentionMonitoringEnabled( true );
+    }
+    final long[] threadIds = workerThreads.stream( ).mapToLong( Thread::getId ).toArray( );
+    final Sample sample = new Sample( );
+    sample.nanos = System.nanoTime( );
+    for ( final Operation operation : Operation.values( ) ) {
+      sample.latencies.put( operation, latencies.get( operation ).snapshot( ) );
+      sample.errors.put( operation, errors.get( operation ).sum( ) );
+    }
+    if ( threadMXBean instanceof com.sun.management.ThreadMXBean &&
+        ( (com.sun.management.ThreadMXBean) threadMXBean ).isThreadAllocatedMemorySupported( ) ) {
+      for ( final long allocated : ( (com.sun.management.ThreadMXBean) threadMXBean ).getThreadAllocatedBytes( threadIds ) ) {
+        sample.allocatedBytes += Math.max( 0, allocated );
+      }
+    } else {
+      sample.allocatedBytes = -1;
+    }
+    for ( final ThreadInfo info : threadMXBean.getThreadInfo( threadIds ) ) {
+      if ( info != null ) {
+        sample.blockedCount += info.getBlockedCount( );
+        sample.blockedMillis += Math.max( 0, info.getBlockedTime( ) );
+        sample.waitedCount += info.getWaitedCount( );
+        sample.waitedMillis += Math.max( 0, info.getWaitedTime( ) );
+      }
+    }
+    for ( final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans( ) ) {
+      sample.gcCount += Math.max( 0, gc.getCollectionCount( ) );
+      sample.gcMillis += Math.max( 0, gc.getCollectionTime( ) );
+    }
+    return sample;
+  }
+
+  private Map<String,Object> result( final String type, final Sample from, final Sample to ) {
+    final long nanos = to.nanos - from.nanos;
+    final Map<String,Object> result = new LinkedHashMap<>( );
+    result.put( "type", type );
+    result.put( "timestamp", System.currentTimeMillis( ) );
+    result.put( "millis", TimeUnit.NANOSECONDS.toMillis( nanos ) );
+    result.put( "vms", instanceIds.size( ) );
+
+    final Map<String,Object> operations = new LinkedHashMap<>( );
+    for ( final Operation operation : Operation.values( ) ) {
+      final LatencyHistogram.Snapshot snapshot = to.latencies.get( operation ).since( from.latencies.get( operation ) );
+      final Map<String,Object> operationResult = new LinkedHashMap<>( );
+      operationResult.put( "count", snapshot.getCount( ) );
+      operationResult.put( "errors", to.errors.get( operation ) - from.errors.get( operation ) );
+      operationResult.put( "perSecond", rate( snapshot.getCount( ), nanos ) );
+      final Map<String,Object> latency = new LinkedHashMap<>( );
+      latency.put( "mean", snapshot.getMean( ) );
+      latency.put( "p50", snapshot.getValueAtPercentile( 50 ) );
+      latency.put( "p90", snapshot.getValueAtPercentile( 90 ) );
+      latency.put( "p99", snapshot.getValueAtPercentile( 99 ) );
+      latency.put( "p999", snapshot.getValueAtPercentile( 99.9 ) );
+      latency.put( "max", snapshot.getMax( ) );
+      operationResult.put( "latencyMicros", latency );
+      operations.put( operation.name( ), operationResult );
+    }
+    result.put( "operations", operations );
+
+    final Map<String,Object> allocation = new LinkedHashMap<>( );
+    final long allocatedBytes = from.allocatedBytes < 0 ? -1 : to.allocatedBytes - from.allocatedBytes;
+    allocation.put( "bytes", allocatedBytes );
+    allocation.put( "bytesPerSecond", allocatedBytes < 0 ? -1 : rate( allocatedBytes, nanos ) );
+    result.put( "allocation", allocation );
+
+    final Map<String,Object> gc = new LinkedHashMap<>( );
+    gc.put( "count", to.gcCount - from.gcCount );
+    gc.put( "millis", to.gcMillis - from.gcMillis );
+    result.put( "gc", gc );
+
+    final Map<String,Object> contention = new LinkedHashMap<>( );
+    contention.put( "blockedCount", to.blockedCount - from.blockedCount );
+    contention.put( "blockedMillis", to.blockedMillis - from.blockedMillis );
+    contention.put( "waitedCount", to.waitedCount - from.waitedCount );
+    contention.put( "waitedMillis", to.waitedMillis - from.waitedMillis );
+    result.put( "contention", contention );
+    return result;
+  }
+
+  private static double rate( final long count, final long nanos ) {
+    return nanos <= 0 ? 0d : count * (double) TimeUnit.SECONDS.toNanos( 1 ) / nanos;
+  }
+
+  public interface Reporter {
+    void report( String json );
+  }
+
+  private static final class Sample {
+    private long nanos;
+    private final Map<Operation,LatencyHistogram.Snapshot> latencies = new EnumMap<>( Operation.class );
+    private final Map<Operation,Long> errors = new EnumMap<>( Operation.class );
+    private long allocatedBytes;
+    private long blockedCount;
+    private long blockedMillis;
+    private long waitedCount;
+    private long waitedMillis;
+    private long gcCount;
+    private long gcMillis;
+  }
+}
@@ -0,0 +1,55 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.cluster.service
+
+import groovy.transform.CompileStatic
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ * Smoke test for the benchmark harness with a small configuration.
+ */
+@CompileStatic
+class ClusterServiceBenchmarkTest {
+
+  @Test
+  void testSmallRun( ) {
+    final List<String> lines = [ ]
+    final Map<String,Object> summary = new ClusterServiceBenchmark( ClusterServiceBenchmark.Options.parse( [
+        '--nodes=5',
+        '--vms=20',
+        '--threads=2',
+        '--iterations=10',
+        '--RunVm=20',
+        '--DescribeVms=5',
+        '--DescribeResources=5',
+        '--DescribeSensors=5',
+        '--BroadcastNetworkInfo=5',
+    ] as String[] ) ).run( { String line -> lines.add( line ) } as ClusterServiceBenchmark.Reporter )
+    assertEquals( 'result lines', 1, lines.size( ) )
+    assertTrue( 'summary json', lines[0].startsWith( '{"type":"summary",' ) )
+    assertEquals( 'summary type', 'summary', summary.type )
+    final Map<String,Object> operations = (Map<String,Object>) summary.operations
+    ClusterServiceBenchmark.Operation.values( ).each { ClusterServiceBenchmark.Operation operation ->
+      final Map<String,Object> result = (Map<String,Object>) operations[ operation.name( ) ]
+      assertEquals( "${operation} count", 10L, result.count )
+      assertEquals( "${operation} errors", 0L, result.errors )
+    }
+    assertEquals( 'vms', 30, summary.vms )
+  }
+}
@@ -0,0 +1,165 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.cluster.service.scheduler
+
+import com.eucalyptus.cluster.common.msgs.VmTypeInfo
+import com.eucalyptus.cluster.service.node.ClusterNode
+import groovy.transform.CompileStatic
+import javaslang.collection.Stream
+import org.junit.Test
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+
+/**
+ *
+ */
+@CompileStatic
+class SchedulerTest {
+
+  private static final VmTypeInfo SMALL = new VmTypeInfo( name: 'e1.small', cores: 1, disk: 5, memory: 256 )
+
+  @Test
+  void testGreedyConcurrentReservations( ) {
+    final ClusterNode node = new ClusterNode( '10.20.40.1', null, 8, 1000, 10000 )
+    final Scheduler scheduler = new GreedyScheduler( )
+    final ExecutorService executor = Executors.newFixedThreadPool( 8 )
+    try {
+      final List<Future<Boolean>> results = ( 1..32 ).collect {
+        executor.submit( {
+          final ScheduleResource resource = Schedulers.context( )
+          try {
+            final boolean scheduled = scheduler.schedule( Stream.of( node ), SMALL ).isDefined( )
+            resource.commit( )
+            scheduled
+          } finally {
+            resource.close( )
+          }
+        } as Callable<Boolean> )
+      }
+      assertEquals( 'scheduled count', 8, results.count { Future<Boolean> result -> result.get( ) } )
+      assertEquals( 'cores available', 0, node.coresAvailable )
+      assertEquals( 'disk available', 960, node.diskAvailable )
+      assertEquals( 'memory available', 7952, node.memoryAvailable )
+    } finally {
+      executor.shutdownNow( )
+    }
+  }
+
+  @Test
+  void testRollbackReleasesResources( ) {
+    final ClusterNode node = new ClusterNode( '10.20.40.1', null, 1, 1000, 10000 )
+    final Scheduler scheduler = new GreedyScheduler( )
+    final ScheduleResource resource = Schedulers.context( )
+    try {
+      assertTrue( 'scheduled', scheduler.schedule( Stream.of( node ), SMALL ).isDefined( ) )
+      assertEquals( 'cores available', 0, node.coresAvailable )
+    } finally {
+      resource.close( )
+    }
+    assertEquals( 'cores available after rollback', 1, node.coresAvailable )
+  }
+
+  @Test
+  void testPendingReservationsOnRefresh( ) {
+    final ClusterNode node = new ClusterNode( '10.20.40.1', null, 4, 1000, 10000 )
+    final Scheduler scheduler = new GreedyScheduler( )
+    final ScheduleResource resource = Schedulers.context( )
+    try {
+      assertTrue( 'scheduled', scheduler.schedule( Stream.of( node ), SMALL ).isDefined( ) )
+      Scheduler.available( node, 4, 1000, 10000 )
+      assertEquals( 'cores available with pending', 3, node.coresAvailable )
+      resource.commit( )
+    } finally {
+      resource.close( )
+    }
+    Scheduler.available( node, 3, 995, 9744 )
+    assertEquals( 'cores available after commit', 3, node.coresAvailable )
+  }
+
+  @Test
+  void testConcurrentReservationsOnRefresh( ) {
+    final ClusterNode node = new ClusterNode( '10.20.40.1', null, 8, 1000, 10000 )
+    final Scheduler scheduler = new GreedyScheduler( )
+    final ExecutorService executor = Executors.newFixedThreadPool( 8 )
+    try {
+      final List<Future<Boolean>> results = ( 1..8 ).collect { Integer index ->
+        executor.submit( {
+          ( 1..1000 ).each {
+            if ( index == 1 ) {
+              Scheduler.available( node, 8, 1000, 10000 )
+            } else {
+              final ScheduleResource resource = Schedulers.context( )
+              try {
+                scheduler.schedule( Stream.of( node ), SMALL )
+              } finally {
+                resource.close( )
+              }
+            }
+          }
+          true
+        } as Callable<Boolean> )
+      }
+      results.each { Future<Boolean> result -> result.get( ) }
+      assertEquals( 'cores available', 8, node.coresAvailable )
+      assertEquals( 'disk available', 1000, node.diskAvailable )
+      assertEquals( 'memory available', 10000, node.memoryAvailable )
+    } finally {
+      executor.shutdownNow( )
+    }
+  }
+
+  @Test
+  void testRoundRobinDistributes( ) {
+    final Stream<ClusterNode> nodes = Stream.of(
+        new ClusterNode( '10.20.40.1', null, 4, 1000, 10000 ),
+        new ClusterNode( '10.20.40.2', null, 4, 1000, 10000 ),
+        new ClusterNode( '10.20.40.3', null, 4, 1000, 10000 )
+    )
+    final Scheduler scheduler = new RoundRobinScheduler( )
+    final List<String> scheduledNodes = ( 1..6 ).collect {
+      final ScheduleResource resource = Schedulers.context( )
+      try {
+        final String scheduled = scheduler.schedule( nodes, SMALL ).get( ).node
+        resource.commit( )
+        scheduled
+      } finally {
+        resource.close( )
+      }
+    }
+    assertEquals( 'scheduled nodes',
+        [ '10.20.40.1', '10.20.40.2', '10.20.40.3', '10.20.40.1', '10.20.40.2', '10.20.40.3' ],
+        scheduledNodes )
+    nodes.forEach { ClusterNode node -> assertEquals( 'cores available', 2, node.coresAvailable ) }
+  }
+
+  @Test
+  void testNoCapacity( ) {
+    final ClusterNode node = new ClusterNode( '10.20.40.1', null, 0, 1000, 10000 )
+    final ScheduleResource resource = Schedulers.context( )
+    try {
+      assertFalse( 'scheduled', new RoundRobinScheduler( ).schedule( Stream.of( node ), SMALL ).isDefined( ) )
+    } finally {
+      resource.close( )
+    }
+  }
+}
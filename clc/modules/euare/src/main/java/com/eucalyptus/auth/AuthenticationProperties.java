@@ -136,6 +136,12 @@ public class AuthenticationProperties {
   @ConfigurableField( description = "Default expiry for re-use of cached authorization metadata on failure", initial = "0s", changeListener = AuthenticationIntervalPropertyChangeListener.class )
   public static volatile String AUTHORIZATION_REUSE_EXPIRY = "0s";
 
+  @ConfigurableField( description = "Expiry, after the authorization expiry, for use of cached authorization metadata while it is refreshed", initial = "15s", changeListener = AuthenticationIntervalPropertyChangeListener.class )
+  public static volatile String AUTHORIZATION_STALE_EXPIRY = "15s";
+
+  @ConfigurableField( description = "Expiry for cached authorization metadata lookup failures", initial = "1s", changeListener = AuthenticationIntervalPropertyChangeListener.class )
+  public static volatile String AUTHORIZATION_NEGATIVE_EXPIRY = "1s";
+
   @ConfigurableField( description = "Maximum number of attached managed policies", initial = DEFAULT_MAX_ATTACHMENTS_TEXT )
   public static volatile int MAX_POLICY_ATTACHMENTS = Integer.parseInt( DEFAULT_MAX_ATTACHMENTS_TEXT );
 
@@ -151,6 +157,10 @@ public class AuthenticationProperties {
 
   private static AtomicLong AUTHORIZATION_REUSE_EXPIRY_MILLIS = new AtomicLong( 0 );
 
+  private static AtomicLong AUTHORIZATION_STALE_EXPIRY_MILLIS = new AtomicLong( TimeUnit.SECONDS.toMillis( 15 ) );
+
+  private static AtomicLong AUTHORIZATION_NEGATIVE_EXPIRY_MILLIS = new AtomicLong( TimeUnit.SECONDS.toMillis( 1 ) );
+
   private static volatile CredentialDownloadGenerateCertificateStrategy credentialDownloadGenerateCertificateStrategy =
       Enums.getIfPresent(
           CredentialDownloadGenerateCertificateStrategy.class,
@@ -182,6 +192,14 @@ public class AuthenticationProperties {
     return AUTHORIZATION_REUSE_EXPIRY_MILLIS.get( );
   }
 
+  public static long getAuthorizationStaleExpiry( ) {
+    return AUTHORIZATION_STALE_EXPIRY_MILLIS.get( );
+  }
+
+  public static long getAuthorizationNegativeExpiry( ) {
+    return AUTHORIZATION_NEGATIVE_EXPIRY_MILLIS.get( );
+  }
+
   @Nonnull
   public static CredentialDownloadGenerateCertificateStrategy getCredentialDownloadGenerateCertificateStrategy( ) {
     return com.google.common.base.Objects.firstNonNull(
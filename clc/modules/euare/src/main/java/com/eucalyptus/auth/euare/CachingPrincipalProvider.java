@@ -22,29 +22,73 @@ package com.eucalyptus.auth.euare;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.text.IsEmptyString.isEmptyOrNullString;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
 import com.eucalyptus.auth.AuthException;
 import com.eucalyptus.auth.AuthenticationProperties;
+import com.eucalyptus.auth.euare.common.identity.Identity;
 import com.eucalyptus.auth.principal.UserPrincipal;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.util.Pair;
 import com.eucalyptus.util.Parameters;
 import com.eucalyptus.util.async.AsyncExceptions;
+import com.eucalyptus.util.metrics.LatencyHistogram;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 
 /**
+ * Principal provider caching principals for the configured authorization expiry.
  *
+ * <p>Expired principals are used while they are refreshed in the background,
+ * for up to the configured stale expiry after the authorization expiry.
+ * Refreshes are coalesced per key and lookup failures are cached for the
+ * configured negative expiry. Statistics are available via JMX by key
+ * type.</p>
  */
 public class CachingPrincipalProvider extends RegionDelegatingPrincipalProvider {
 
+  private static final Logger logger = Logger.getLogger( CachingPrincipalProvider.class );
+
+  private static final int REFRESH_THREADS = 8;
+
   private final static AtomicReference<Pair<String,Cache<PrincipalCacheKey,PrincipalCacheValue>>> cacheReference =
       new AtomicReference<>( );
 
+  private final static ConcurrentMap<PrincipalCacheKey,Boolean> refreshing = Maps.newConcurrentMap( );
+
+  private final static Map<String,PrincipalCacheStatistics> statistics = ImmutableMap.<String,PrincipalCacheStatistics>builder( )
+      .put( UserIdPrincipalCacheKey.TYPE, new PrincipalCacheStatistics( ) )
+      .put( RoleIdPrincipalCacheKey.TYPE, new PrincipalCacheStatistics( ) )
+      .put( AccessKeyIdPrincipalCacheKey.TYPE, new PrincipalCacheStatistics( ) )
+      .put( CertificateIdPrincipalCacheKey.TYPE, new PrincipalCacheStatistics( ) )
+      .put( AccountNumberPrincipalCacheKey.TYPE, new PrincipalCacheStatistics( ) )
+      .build( );
+
+  static {
+    for ( final Map.Entry<String,PrincipalCacheStatistics> entry : statistics.entrySet( ) ) {
+      Mbeans.register( "com.eucalyptus.auth", ImmutableMap.of( "type", "PrincipalCache", "name", entry.getKey( ) ), entry.getValue( ) );
+    }
+  }
+
+  /**
+   * Get the cache statistics by key type (e.g. access-key-id)
+   */
+  public static Map<String,PrincipalCacheStatistics> getStatistics( ) {
+    return statistics;
+  }
+
   @Override
   public UserPrincipal lookupCachedPrincipalByUserId( final UserPrincipal cached, final String userId, final String nonce ) throws AuthException {
     return cache( new UserIdPrincipalCacheKey( userId, nonce ), new PrincipalLoader( ) {
@@ -97,31 +141,100 @@ public class CachingPrincipalProvider extends RegionDelegatingPrincipalProvider
   private UserPrincipal cache(
       final PrincipalCacheKey key,
       final PrincipalLoader loader ) throws AuthException {
-    PrincipalCacheValue principalValue = null;
+    final PrincipalCacheStatistics keyStatistics = statistics.get( key.getType( ) );
     final Cache<PrincipalCacheKey,PrincipalCacheValue> cache = cache( );
+    final long now = System.currentTimeMillis( );
+    PrincipalCacheValue principalValue = cache.getIfPresent( key );
+    if ( principalValue != null ) {
+      switch ( principalValue.getState(
+          now,
+          AuthenticationProperties.getAuthorizationExpiry( ),
+          AuthenticationProperties.getAuthorizationStaleExpiry( ),
+          AuthenticationProperties.getAuthorizationNegativeExpiry( ) ) ) {
+        case Valid:
+          keyStatistics.hits.increment( );
+          return principalValue.principal;
+        case Stale:
+          keyStatistics.staleHits.increment( );
+          refresh( cache, key, loader, principalValue, keyStatistics );
+          return principalValue.principal;
+        case Failed:
+          keyStatistics.negativeHits.increment( );
+          throw principalValue.newFailure( );
+        default:
+          cache.asMap( ).remove( key, principalValue ); // invalidate expired and refresh
+          if ( principalValue.isFailure( ) ) {
+            principalValue = null;
+          }
+      }
+    }
+
+    keyStatistics.misses.increment( );
     try {
-      principalValue = cache.get( key, loader.callable( null ) );
-      if ( principalValue.updated + AuthenticationProperties.getAuthorizationExpiry( ) < System.currentTimeMillis( ) ) {
-        cache.invalidate( key ); // invalidate expired and refresh
-        principalValue =  cache.get( key, loader.callable( principalValue.principal ) );
+      final PrincipalCacheValue loadedValue = cache.get( key, loader.callable(
+          principalValue == null ? null : principalValue.principal, keyStatistics ) );
+      if ( loadedValue.isFailure( ) ) {
+        throw loadedValue.newFailure( );
       }
-      return principalValue.principal;
+      return loadedValue.principal;
     } catch ( final ExecutionException e ) {
       // reuse cached value on failure within configured limit, but not for web service error responses
-      if ( !AsyncExceptions.asWebServiceError( e ).isPresent( ) &&
-          principalValue != null &&
-          principalValue.created + AuthenticationProperties.getAuthorizationReuseExpiry( ) > System.currentTimeMillis( ) ) {
+      if ( isReusable( e, principalValue ) ) {
         cache.put( key, new PrincipalCacheValue( principalValue ) );
         return principalValue.principal;
       }
-      if ( e.getCause( ) instanceof AuthException ) {
-        throw (AuthException) e.getCause( );
-      } else {
-        throw new AuthException( e );
+      final AuthException authException = e.getCause( ) instanceof AuthException ?
+          (AuthException) e.getCause( ) :
+          new AuthException( e );
+      if ( AuthenticationProperties.getAuthorizationNegativeExpiry( ) > 0 ) {
+        cache.put( key, new PrincipalCacheValue( authException ) );
       }
+      throw authException;
     }
   }
 
+  /**
+   * Refresh the cached value in the background, at most one refresh per key.
+   */
+  private static void refresh(
+      final Cache<PrincipalCacheKey,PrincipalCacheValue> cache,
+      final PrincipalCacheKey key,
+      final PrincipalLoader loader,
+      final PrincipalCacheValue principalValue,
+      final PrincipalCacheStatistics keyStatistics
+  ) {
+    if ( refreshing.putIfAbsent( key, Boolean.TRUE ) == null ) try {
+      final Callable<PrincipalCacheValue> callable = loader.callable( principalValue.principal, keyStatistics );
+      Threads.enqueue( Identity.class, CachingPrincipalProvider.class, REFRESH_THREADS, new Callable<Void>( ) {
+        @Override
+        public Void call( ) {
+          try {
+            cache.put( key, callable.call( ) );
+          } catch ( final Exception e ) {
+            keyStatistics.refreshFailures.increment( );
+            if ( isReusable( e, principalValue ) ) {
+              cache.put( key, new PrincipalCacheValue( principalValue ) );
+            } else {
+              cache.asMap( ).remove( key, principalValue ); // next use loads and fails
+            }
+          } finally {
+            refreshing.remove( key );
+          }
+          return null;
+        }
+      } );
+    } catch ( final RuntimeException e ) {
+      refreshing.remove( key );
+      logger.error( "Error refreshing cached principal", e );
+    }
+  }
+
+  private static boolean isReusable( final Exception e, final PrincipalCacheValue principalValue ) {
+    return !AsyncExceptions.asWebServiceError( e ).isPresent( ) &&
+        principalValue != null &&
+        principalValue.created + AuthenticationProperties.getAuthorizationReuseExpiry( ) > System.currentTimeMillis( );
+  }
+
   private static Cache<PrincipalCacheKey,PrincipalCacheValue> cache( ) {
     Cache<PrincipalCacheKey,PrincipalCacheValue> cache;
     final Pair<String,Cache<PrincipalCacheKey,PrincipalCacheValue>> cachePair = cacheReference.get( );
@@ -149,26 +262,49 @@ public class CachingPrincipalProvider extends RegionDelegatingPrincipalProvider
   private static abstract class PrincipalLoader {
     abstract UserPrincipal load( UserPrincipal cached ) throws AuthException;
 
-    Callable<PrincipalCacheValue> callable( final UserPrincipal cached ) {
+    Callable<PrincipalCacheValue> callable( final UserPrincipal cached, final PrincipalCacheStatistics statistics ) {
       return new Callable<PrincipalCacheValue>( ) {
         @Override
         public PrincipalCacheValue call( ) throws AuthException {
-          return new PrincipalCacheValue( load( cached ) );
+          final long start = System.nanoTime( );
+          try {
+            return new PrincipalCacheValue( load( cached ) );
+          } finally {
+            statistics.loadLatency.record( TimeUnit.NANOSECONDS.toMicros( System.nanoTime( ) - start ) );
+          }
         }
       };
     }
   }
 
-  private static final class PrincipalCacheValue {
-             private final long created;
-             private final long updated;
-    @Nonnull private final UserPrincipal principal;
+  enum PrincipalCacheValueState {
+    /**
+     * Principal within the authorization expiry
+     */
+    Valid,
+    /**
+     * Principal within the stale expiry that follows the authorization expiry
+     */
+    Stale,
+    /**
+     * Lookup failure within the negative expiry
+     */
+    Failed,
+    Expired,
+  }
+
+  static final class PrincipalCacheValue {
+              private final long created;
+              private final long updated;
+    @Nullable private final UserPrincipal principal;
+    @Nullable private final AuthException failure;
 
     public PrincipalCacheValue( @Nonnull final UserPrincipal principal ) {
       Parameters.checkParam( "principal", principal, notNullValue( ) );
       this.created = System.currentTimeMillis( );
       this.updated = created;
       this.principal = principal;
+      this.failure = null;
     }
 
     public PrincipalCacheValue( @Nonnull final PrincipalCacheValue value ) {
@@ -176,6 +312,112 @@ public class CachingPrincipalProvider extends RegionDelegatingPrincipalProvider
       this.created = value.created;
       this.updated = System.currentTimeMillis( );
       this.principal = value.principal;
+      this.failure = value.failure;
+    }
+
+    public PrincipalCacheValue( @Nonnull final AuthException failure ) {
+      Parameters.checkParam( "failure", failure, notNullValue( ) );
+      this.created = System.currentTimeMillis( );
+      this.updated = created;
+      this.principal = null;
+      this.failure = failure;
+    }
+
+    boolean isFailure( ) {
+      return failure != null;
+    }
+
+    PrincipalCacheValueState getState(
+        final long now,
+        final long expiry,
+        final long staleExpiry,
+        final long negativeExpiry
+    ) {
+      if ( isFailure( ) ) {
+        return updated + negativeExpiry > now ?
+            PrincipalCacheValueState.Failed :
+            PrincipalCacheValueState.Expired;
+      } else if ( updated + expiry >= now ) {
+        return PrincipalCacheValueState.Valid;
+      } else if ( updated + expiry + staleExpiry >= now ) {
+        return PrincipalCacheValueState.Stale;
+      } else {
+        return PrincipalCacheValueState.Expired;
+      }
+    }
+
+    /**
+     * New exception for the cached failure, so callers do not share a throwable.
+     */
+    AuthException newFailure( ) {
+      return new AuthException( failure.getMessage( ), failure );
+    }
+  }
+
+  /**
+   * Statistics for a type of principal cache key.
+   *
+   * <p>Load latencies are in microseconds and include background refreshes.</p>
+   */
+  public static final class PrincipalCacheStatistics implements PrincipalCacheStatisticsMXBean {
+    private final LongAdder hits = new LongAdder( );
+    private final LongAdder staleHits = new LongAdder( );
+    private final LongAdder negativeHits = new LongAdder( );
+    private final LongAdder misses = new LongAdder( );
+    private final LongAdder refreshFailures = new LongAdder( );
+    private final LatencyHistogram loadLatency = new LatencyHistogram( );
+
+    @Override
+    public long getHits( ) {
+      return hits.sum( );
+    }
+
+    @Override
+    public long getStaleHits( ) {
+      return staleHits.sum( );
+    }
+
+    @Override
+    public long getNegativeHits( ) {
+      return negativeHits.sum( );
+    }
+
+    @Override
+    public long getMisses( ) {
+      return misses.sum( );
+    }
+
+    @Override
+    public long getRefreshFailures( ) {
+      return refreshFailures.sum( );
+    }
+
+    public LatencyHistogram.Snapshot getLoadLatency( ) {
+      return loadLatency.snapshot( );
+    }
+
+    @Override
+    public long getLoads( ) {
+      return getLoadLatency( ).getCount( );
+    }
+
+    @Override
+    public long getLoadMedianMicros( ) {
+      return (long) getLoadLatency( ).getMedian( );
+    }
+
+    @Override
+    public long getLoad99Micros( ) {
+      return getLoadLatency( ).getValueAtPercentile( 99 );
+    }
+
+    @Override
+    public String toString( ) {
+      final LatencyHistogram.Snapshot latency = getLoadLatency( );
+      return "hits=" + getHits( ) + " stale=" + getStaleHits( ) + " negative=" + getNegativeHits( ) +
+          " misses=" + getMisses( ) + " refreshFailures=" + getRefreshFailures( ) +
+          " loads=" + latency.getCount( ) + " loadMedianMicros=" + (long) latency.getMedian( ) +
+          " load99Micros=" + latency.getValueAtPercentile( 99 );
     }
   }
 
@@ -183,6 +425,8 @@ public class CachingPrincipalProvider extends RegionDelegatingPrincipalProvider
     @Nonnull  private final String identifier;
     @Nullable private final String nonce;
 
+    abstract String getType( );
+
     protected PrincipalCacheKey(
         @Nonnull  final String identifier,
         @Nullable final String nonce
@@ -215,45 +459,80 @@ public class CachingPrincipalProvider extends RegionDelegatingPrincipalProvider
   }
 
   private static final class UserIdPrincipalCacheKey extends PrincipalCacheKey {
+    private static final String TYPE = "user-id";
+
     protected UserIdPrincipalCacheKey(
         @Nonnull final String identifier,
         @Nullable final String nonce
     ) {
       super( identifier, nonce );
     }
+
+    @Override
+    String getType( ) {
+      return TYPE;
+    }
   }
 
   private static final class RoleIdPrincipalCacheKey extends PrincipalCacheKey {
+    private static final String TYPE = "role-id";
+
     protected RoleIdPrincipalCacheKey(
         @Nonnull final String identifier,
         @Nullable final String nonce
     ) {
       super( identifier, nonce );
     }
+
+    @Override
+    String getType( ) {
+      return TYPE;
+    }
   }
 
   private static final class AccessKeyIdPrincipalCacheKey extends PrincipalCacheKey {
+    private static final String TYPE = "access-key-id";
+
     protected AccessKeyIdPrincipalCacheKey(
         @Nonnull final String identifier,
         @Nullable final String nonce
     ) {
       super( identifier, nonce );
     }
+
+    @Override
+    String getType( ) {
+      return TYPE;
+    }
   }
 
   private static final class CertificateIdPrincipalCacheKey extends PrincipalCacheKey {
+    private static final String TYPE = "certificate-id";
+
     protected CertificateIdPrincipalCacheKey(
         @Nonnull final String identifier
     ) {
       super( identifier, null );
     }
+
+    @Override
+    String getType( ) {
+      return TYPE;
+    }
   }
 
   private static final class AccountNumberPrincipalCacheKey extends PrincipalCacheKey {
+    private static final String TYPE = "account-number";
+
     protected AccountNumberPrincipalCacheKey(
         @Nonnull final String identifier
     ) {
       super( identifier, null );
     }
+
+    @Override
+    String getType( ) {
+      return TYPE;
+    }
   }
 }
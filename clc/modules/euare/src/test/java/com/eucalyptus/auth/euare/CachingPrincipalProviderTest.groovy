@@ -0,0 +1,75 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.euare
+
+import com.eucalyptus.auth.AuthException
+import com.eucalyptus.auth.euare.CachingPrincipalProvider.PrincipalCacheValue
+import com.eucalyptus.auth.principal.UserPrincipal
+import org.junit.Test
+
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
+
+import static com.eucalyptus.auth.euare.CachingPrincipalProvider.PrincipalCacheValueState.*
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class CachingPrincipalProviderTest {
+
+  @Test
+  void testPrincipalState( ) {
+    PrincipalCacheValue value = new PrincipalCacheValue( [:] as UserPrincipal )
+    assertEquals( "Within expiry", Valid, value.getState( value.updated + 1000, 1000, 500, 100 ) )
+    assertEquals( "Within stale expiry", Stale, value.getState( value.updated + 1001, 1000, 500, 100 ) )
+    assertEquals( "End of stale expiry", Stale, value.getState( value.updated + 1500, 1000, 500, 100 ) )
+    assertEquals( "After stale expiry", Expired, value.getState( value.updated + 1501, 1000, 500, 100 ) )
+    assertEquals( "Stale disabled", Expired, value.getState( value.updated + 1001, 1000, 0, 100 ) )
+  }
+
+  @Test
+  void testFailureState( ) {
+    PrincipalCacheValue value = new PrincipalCacheValue( new AuthException( AuthException.NO_SUCH_KEY ) )
+    assertEquals( "Within negative expiry", Failed, value.getState( value.updated + 99, 1000, 500, 100 ) )
+    assertEquals( "After negative expiry", Expired, value.getState( value.updated + 100, 1000, 500, 100 ) )
+    assertEquals( "Negative caching disabled", Expired, value.getState( value.updated, 1000, 500, 0 ) )
+  }
+
+  @Test
+  void testFailureNotShared( ) {
+    AuthException failure = new AuthException( AuthException.NO_SUCH_KEY )
+    PrincipalCacheValue value = new PrincipalCacheValue( failure )
+    AuthException thrown1 = value.newFailure( )
+    AuthException thrown2 = value.newFailure( )
+    assertNotSame( "Distinct exceptions", thrown1, thrown2 )
+    assertNotSame( "Cached exception not thrown", failure, thrown1 )
+    assertEquals( "Message", AuthException.NO_SUCH_KEY, thrown1.getMessage( ) )
+    assertSame( "Cause", failure, thrown1.getCause( ) )
+  }
+
+  @Test
+  void testStatisticsRegistered( ) {
+    for ( String type : CachingPrincipalProvider.getStatistics( ).keySet( ) ) {
+      assertTrue( "Registered " + type, ManagementFactory.getPlatformMBeanServer( ).isRegistered(
+          new ObjectName( "com.eucalyptus.auth:type=PrincipalCache,name=" + type ) ) )
+    }
+  }
+}
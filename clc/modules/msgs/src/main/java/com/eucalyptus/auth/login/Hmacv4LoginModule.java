@@ -32,6 +32,8 @@ import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
 import javax.crypto.spec.SecretKeySpec;
 import org.apache.log4j.Logger;
@@ -47,6 +49,10 @@ import com.eucalyptus.crypto.util.Timestamps;
 import com.eucalyptus.ws.util.HmacUtils;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import com.google.common.io.BaseEncoding;
@@ -55,6 +61,8 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
   private static final Logger LOG = Logger.getLogger( Hmacv4LoginModule.class );
   private static final String V4_TERMINATOR = "aws4_request";
 
+  private static final SigningKeyCache signingKeyCache = new SigningKeyCache( Ticker.systemTicker( ) );
+
   public Hmacv4LoginModule() {
     super(4);
   }
@@ -76,11 +84,12 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
     final UserPrincipal user = accessKey.getPrincipal( );
     final String secretKey = accessKey.getSecretKey( );
     final byte[] signatureKey = getSignatureKey( secretKey, signatureCredential );
-    final CharSequence canonicalString = this.makeSubjectString( credentials, signatureCredential, authorizationParameters, date, false );
+    final String payloadHash = digestUTF8( credentials.getBody( ) );
+    final CharSequence canonicalString = this.makeSubjectString( credentials, signatureCredential, authorizationParameters, date, payloadHash, false );
     final byte[] computedSig = this.getHmacSHA256( signatureKey, canonicalString );
     final byte[] providedSig = BaseEncoding.base16( ).lowerCase( ).decode( sig );
     if ( !MessageDigest.isEqual( computedSig, providedSig ) ) {
-      final CharSequence canonicalStringNoPath = this.makeSubjectString( credentials, signatureCredential, authorizationParameters, date, true );
+      final CharSequence canonicalStringNoPath = this.makeSubjectString( credentials, signatureCredential, authorizationParameters, date, payloadHash, true );
       final byte[] computedSigNoPath = this.getHmacSHA256( signatureKey, canonicalStringNoPath );
       if( !MessageDigest.isEqual( computedSigNoPath, providedSig ) ) {
         throw new InvalidSignatureAuthException( "Signature validation failed" );
@@ -96,21 +105,37 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
                                           @Nonnull final SignatureCredential signatureCredential,
                                           @Nonnull final Map<String,String> authorizationParameters,
                                           @Nonnull final Date date,
+                                          @Nonnull final String payloadHash,
                                           final boolean skipPath ) throws Exception {
     final String timestamp = Timestamps.formatShortIso8601Timestamp( date );
+    final String canonicalRequestHash;
+    if ( signatureLogger.isTraceEnabled( ) ) {
+      final StringBuilder canonicalRequest = new StringBuilder( 512 );
+      appendCanonicalRequest( canonicalRequest, credentials, authorizationParameters, payloadHash, skipPath );
+      signatureLogger.trace( "VERSION4: " + canonicalRequest );
+      canonicalRequestHash = digestUTF8( canonicalRequest );
+    } else {
+      final DigestAppendable canonicalRequest = new DigestAppendable( );
+      appendCanonicalRequest( canonicalRequest, credentials, authorizationParameters, payloadHash, skipPath );
+      canonicalRequestHash = canonicalRequest.digestHex( );
+    }
     final StringBuilder sb = new StringBuilder( 256 );
     sb.append( SecurityHeader.Value.AWS4_HMAC_SHA256.value() ).append( '\n' );
     sb.append( timestamp ).append( '\n' );
     sb.append( signatureCredential.getCredentialScope() ).append( '\n' );
-    sb.append( digestUTF8( makeCanonicalRequest( credentials, authorizationParameters, skipPath ) ) );
+    sb.append( canonicalRequestHash );
     if ( signatureLogger.isTraceEnabled( ) ) signatureLogger.trace( "VERSION4: " + sb.toString( ) );
     return sb;
   }
 
-  private CharSequence makeCanonicalRequest( @Nonnull final HmacCredentials credentials,
-                                             @Nonnull final Map<String,String> authorizationParameters,
-                                             final boolean skipPath ) throws Exception {
-    final StringBuilder sb = new StringBuilder( 512 );
+  /**
+   * Append the canonical request to the given output, which is a digest unless tracing.
+   */
+  private void appendCanonicalRequest( @Nonnull final Appendable sb,
+                                       @Nonnull final HmacCredentials credentials,
+                                       @Nonnull final Map<String,String> authorizationParameters,
+                                       @Nonnull final String payloadHash,
+                                       final boolean skipPath ) throws Exception {
     sb.append( credentials.getVerb( ) );
     sb.append( '\n' );
     sb.append( skipPath ? "/" : canonicalizePath( credentials.getServicePath( ) ) ); // AWS Java SDK always uses "/"
@@ -120,15 +145,15 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
       if ( credentials.getVariant() == HmacUtils.SignatureVariant.SignatureV4Query && SecurityParameter.X_Amz_Signature.parameter().equals( parameter ) ) {
         continue;
       }
+      final String encodedParameter = urlencode( parameter );
       for ( final String value : Ordering.natural().sortedCopy( credentials.getParameters().get( parameter ) ) ) {
-        sb.append( urlencode(parameter) );
+        if ( addedParam ) sb.append( '&' );
+        sb.append( encodedParameter );
         sb.append( '=' );
         sb.append( urlencode(value) );
-        sb.append( '&' );
         addedParam = true;
       }
     }
-    if ( addedParam ) sb.setLength( sb.length()-1 );
     sb.append( '\n' );
     for ( final String header : authorizationParameters.get("SignedHeaders").split(";") ) {
       final List<String> values = Lists.transform( credentials.getHeaders().get( header ), new Function<String, String>() {
@@ -145,17 +170,18 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
     sb.append( '\n' );
     sb.append( authorizationParameters.get("SignedHeaders") );
     sb.append( '\n' );
-    sb.append( digestUTF8( credentials.getBody() ) );
-    if ( signatureLogger.isTraceEnabled( ) ) signatureLogger.trace( "VERSION4: " + sb.toString( ) );
-    return sb;
+    sb.append( payloadHash );
   }
 
   /**
    * Returns a hex encoded SHA256 hash of the {@code text}.
+   *
+   * <p>The text is encoded incrementally so no encoded copy of the text is created.</p>
    */
   public static String digestUTF8( final CharSequence text ) {
-    final ByteBuffer byteBuffer = StandardCharsets.UTF_8.encode( CharBuffer.wrap( text ) );
-    return BaseEncoding.base16( ).lowerCase( ).encode( Digest.SHA256.digestBinary( byteBuffer ) );
+    final DigestAppendable digest = new DigestAppendable( );
+    digest.append( text );
+    return digest.digestHex( );
   }
   
   public static String canonicalizePath( final String servicePath ) throws URISyntaxException {
@@ -174,8 +200,19 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
     }
   }
 
+  /**
+   * Get the signing key for the secret key and credential scope.
+   *
+   * <p>Keys are cached by access key identifier and scope, a cached key is
+   * only used if the secret key is unchanged.</p>
+   */
   public static byte[] getSignatureKey( final String key,
                                   final SignatureCredential credential ) throws Exception {
+    return signingKeyCache.get( key, credential );
+  }
+
+  private static byte[] deriveSignatureKey( final String key,
+                                            final SignatureCredential credential ) throws Exception {
     return getHmacSHA256(
         getHmacSHA256(
             getHmacSHA256(
@@ -184,4 +221,153 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
             credential.getServiceName() ),
         credential.getTerminator() );
   }
+
+  /**
+   * Derived signing keys only change daily per access key, region and service
+   */
+  static final class SigningKeyCache {
+    private final Cache<SigningKeyCacheKey,SigningKeyCacheValue> cache;
+
+    SigningKeyCache( final Ticker ticker ) {
+      cache = CacheBuilder.newBuilder( )
+          .maximumSize( 10_000 )
+          .expireAfterWrite( 2, TimeUnit.DAYS )
+          .ticker( ticker )
+          .recordStats( )
+          .build( );
+    }
+
+    byte[] get( final String key,
+                final SignatureCredential credential ) throws Exception {
+      final SigningKeyCacheKey cacheKey = new SigningKeyCacheKey( credential );
+      final SigningKeyCacheValue cached = cache.getIfPresent( cacheKey );
+      if ( cached != null && cached.secretKey.equals( key ) ) {
+        return cached.signingKey.clone( );
+      }
+      final byte[] signingKey = deriveSignatureKey( key, credential );
+      cache.put( cacheKey, new SigningKeyCacheValue( key, signingKey.clone( ) ) );
+      return signingKey;
+    }
+
+    CacheStats stats( ) {
+      return cache.stats( );
+    }
+  }
+
+  private static final class SigningKeyCacheKey {
+    private final String accessKeyId;
+    private final String date;
+    private final String region;
+    private final String serviceName;
+    private final String terminator;
+
+    SigningKeyCacheKey( final SignatureCredential credential ) {
+      this.accessKeyId = credential.getAccessKeyId( );
+      this.date = credential.getDate( );
+      this.region = credential.getRegion( );
+      this.serviceName = credential.getServiceName( );
+      this.terminator = credential.getTerminator( );
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final SigningKeyCacheKey that = (SigningKeyCacheKey) o;
+      return Objects.equals( accessKeyId, that.accessKeyId ) &&
+          Objects.equals( date, that.date ) &&
+          Objects.equals( region, that.region ) &&
+          Objects.equals( serviceName, that.serviceName ) &&
+          Objects.equals( terminator, that.terminator );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( accessKeyId, date, region, serviceName, terminator );
+    }
+  }
+
+  private static final class SigningKeyCacheValue {
+    private final String secretKey;
+    private final byte[] signingKey;
+
+    SigningKeyCacheValue( final String secretKey, final byte[] signingKey ) {
+      this.secretKey = secretKey;
+      this.signingKey = signingKey;
+    }
+  }
+
+  /**
+   * Appendable that UTF-8 encodes into a SHA256 digest.
+   *
+   * <p>Malformed surrogates are encoded as '?' to match the JDK encoder.</p>
+   */
+  private static final class DigestAppendable implements Appendable {
+    private final MessageDigest digest = Digest.SHA256.get( );
+    private final byte[] buffer = new byte[ 4096 ];
+    private int position = 0;
+    private char highSurrogate = 0;
+
+    @Override
+    public DigestAppendable append( final CharSequence text ) {
+      return append( text, 0, text.length( ) );
+    }
+
+    @Override
+    public DigestAppendable append( final CharSequence text, final int start, final int end ) {
+      for ( int i = start; i < end; i++ ) {
+        append( text.charAt( i ) );
+      }
+      return this;
+    }
+
+    @Override
+    public DigestAppendable append( final char c ) {
+      if ( position > buffer.length - 4 ) {
+        flush( );
+      }
+      if ( highSurrogate != 0 ) {
+        final char high = highSurrogate;
+        highSurrogate = 0;
+        if ( Character.isLowSurrogate( c ) ) {
+          final int codePoint = Character.toCodePoint( high, c );
+          buffer[ position++ ] = (byte) ( 0xF0 | ( codePoint >> 18 ) );
+          buffer[ position++ ] = (byte) ( 0x80 | ( ( codePoint >> 12 ) & 0x3F ) );
+          buffer[ position++ ] = (byte) ( 0x80 | ( ( codePoint >> 6 ) & 0x3F ) );
+          buffer[ position++ ] = (byte) ( 0x80 | ( codePoint & 0x3F ) );
+          return this;
+        }
+        buffer[ position++ ] = '?';
+      }
+      if ( c < 0x80 ) {
+        buffer[ position++ ] = (byte) c;
+      } else if ( c < 0x800 ) {
+        buffer[ position++ ] = (byte) ( 0xC0 | ( c >> 6 ) );
+        buffer[ position++ ] = (byte) ( 0x80 | ( c & 0x3F ) );
+      } else if ( Character.isHighSurrogate( c ) ) {
+        highSurrogate = c;
+      } else if ( Character.isLowSurrogate( c ) ) {
+        buffer[ position++ ] = '?';
+      } else {
+        buffer[ position++ ] = (byte) ( 0xE0 | ( c >> 12 ) );
+        buffer[ position++ ] = (byte) ( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+        buffer[ position++ ] = (byte) ( 0x80 | ( c & 0x3F ) );
+      }
+      return this;
+    }
+
+    String digestHex( ) {
+      if ( highSurrogate != 0 ) {
+        highSurrogate = 0;
+        append( '?' );
+      }
+      flush( );
+      return BaseEncoding.base16( ).lowerCase( ).encode( digest.digest( ) );
+    }
+
+    private void flush( ) {
+      digest.update( buffer, 0, position );
+      position = 0;
+    }
+  }
 }
@@ -0,0 +1,331 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.login;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import org.apache.log4j.Logger;
+import com.google.common.base.Ticker;
+import com.google.common.hash.Hashing;
+
+/**
+ * Replay detection cache for message signatures.
+ *
+ * <p>Signatures are recorded as 64-bit fingerprints in a ring of open
+ * addressed hash tables, each table holding the signatures first seen during
+ * one interval of the detection window. Recording a signature checks at most
+ * one table per interval and tables are discarded as a whole when their
+ * interval leaves the window. Fingerprints are striped so that checking and
+ * recording a signature is atomic without a global lock.</p>
+ *
+ * <p>The number of signatures recorded is bounded. When a stripe is full the
+ * oldest intervals for the stripe are discarded, which shortens the window for
+ * those signatures. If the current interval alone fills the stripe it grows
+ * past the limit until the next interval. A signature is never accepted
+ * without being recorded and signatures are never rejected due to the limit,
+ * evictions and overflows are counted and logged instead.</p>
+ */
+public class ReplayCache implements ReplayCacheMXBean {
+  private static final Logger LOG = Logger.getLogger( ReplayCache.class );
+  private static final int STRIPE_BITS = 4;
+  private static final int STRIPES = 1 << STRIPE_BITS;
+  private static final int INTERVALS = 16;
+  private static final int INITIAL_CAPACITY = 64;
+  private static final long NOT_SEEN = Long.MIN_VALUE;
+
+  public enum Result {
+    /**
+     * Signature not seen within the window (or within the allowed repeat period)
+     */
+    Accepted,
+    /**
+     * Signature seen within the window
+     */
+    Replayed,
+  }
+
+  private final Ticker ticker;
+  private final long windowNanos;
+  private final long intervalNanos;
+  private final IntSupplier maximumEntries;
+  private final Stripe[] stripes = new Stripe[ STRIPES ];
+  private final LongAdder replays = new LongAdder( );
+  private final LongAdder evictions = new LongAdder( );
+  private final LongAdder overflows = new LongAdder( );
+  private final AtomicLong fullLoggedEpoch = new AtomicLong( Long.MIN_VALUE );
+
+  /**
+   * Create a replay cache.
+   *
+   * @param window The period for which signatures are remembered
+   * @param unit The unit for the window
+   * @param maximumEntries Supplier for the maximum number of signatures to remember
+   */
+  public ReplayCache( final long window,
+                      final TimeUnit unit,
+                      final IntSupplier maximumEntries ) {
+    this( window, unit, maximumEntries, Ticker.systemTicker( ) );
+  }
+
+  ReplayCache( final long window,
+               final TimeUnit unit,
+               final IntSupplier maximumEntries,
+               final Ticker ticker ) {
+    this.ticker = ticker;
+    this.windowNanos = Math.max( 1, unit.toNanos( window ) );
+    // intervals cover the window even when the oldest is partially expired
+    this.intervalNanos = Math.max( 1, ( windowNanos + INTERVALS - 2 ) / ( INTERVALS - 1 ) );
+    this.maximumEntries = maximumEntries;
+    for ( int i = 0; i < STRIPES; i++ ) {
+      stripes[ i ] = new Stripe( );
+    }
+  }
+
+  public long getWindowMillis( ) {
+    return TimeUnit.NANOSECONDS.toMillis( windowNanos );
+  }
+
+  /**
+   * Record the signature if it was not seen within the window.
+   *
+   * <p>A signature that was first seen within the allowed repeat period is
+   * accepted but not recorded again. If the allowed repeat period is not
+   * shorter than the window then replay detection is disabled.</p>
+   *
+   * @param signature The signature to record
+   * @param allowedRepeat The period during which a repeated signature is accepted
+   * @param unit The unit for the allowed repeat period
+   * @return The result, the signature must only be used if accepted
+   */
+  public Result add( final String signature,
+                     final long allowedRepeat,
+                     final TimeUnit unit ) {
+    final long allowedRepeatNanos = unit.toNanos( allowedRepeat );
+    if ( allowedRepeatNanos >= windowNanos ) {
+      return Result.Accepted;
+    }
+    final long fingerprint = fingerprint( signature );
+    final long now = ticker.read( );
+    final Result result =
+        stripes[ (int) ( fingerprint >>> ( 64 - STRIPE_BITS ) ) ].putIfAbsent( fingerprint, now, allowedRepeatNanos );
+    if ( result == Result.Replayed ) {
+      replays.increment( );
+    }
+    return result;
+  }
+
+  /**
+   * The number of signatures currently remembered.
+   */
+  @Override
+  public long getSize( ) {
+    final long now = ticker.read( );
+    long size = 0;
+    for ( final Stripe stripe : stripes ) {
+      size += stripe.size( now );
+    }
+    return size;
+  }
+
+  /**
+   * The number of replays detected.
+   */
+  @Override
+  public long getReplays( ) {
+    return replays.sum( );
+  }
+
+  /**
+   * The number of signatures discarded before the end of the window due to the size limit.
+   */
+  @Override
+  public long getEvictions( ) {
+    return evictions.sum( );
+  }
+
+  /**
+   * The number of signatures recorded beyond the size limit.
+   */
+  @Override
+  public long getOverflows( ) {
+    return overflows.sum( );
+  }
+
+  private static long fingerprint( final String signature ) {
+    final long fingerprint = Hashing.murmur3_128( ).hashString( signature, StandardCharsets.UTF_8 ).asLong( );
+    return fingerprint == 0 ? 1 : fingerprint;
+  }
+
+  private int stripeLimit( ) {
+    return Math.max( 1, maximumEntries.getAsInt( ) / STRIPES );
+  }
+
+  private void logFull( final long epoch ) {
+    final long loggedEpoch = fullLoggedEpoch.get( );
+    if ( loggedEpoch != epoch && fullLoggedEpoch.compareAndSet( loggedEpoch, epoch ) ) {
+      LOG.warn( "Replay cache full, discarding oldest signatures "
+          + "(see bootstrap.webservices.replay_cache_max_entries)" );
+    }
+  }
+
+  private final class Stripe {
+    private final Interval[] intervals = new Interval[ INTERVALS ];
+
+    synchronized Result putIfAbsent( final long fingerprint, final long now, final long allowedRepeatNanos ) {
+      final long epoch = Math.floorDiv( now, intervalNanos );
+      long size = 0;
+      for ( final Interval interval : intervals ) {
+        if ( interval != null && interval.isLive( epoch ) ) {
+          size += interval.size;
+          final long seen = interval.get( fingerprint );
+          if ( seen != NOT_SEEN && now - seen < windowNanos ) {
+            return allowedRepeatNanos > 0 && now - seen <= allowedRepeatNanos ? Result.Accepted : Result.Replayed;
+          }
+        }
+      }
+      final int index = (int) Math.floorMod( epoch, (long) INTERVALS );
+      Interval interval = intervals[ index ];
+      if ( interval == null ) {
+        interval = intervals[ index ] = new Interval( epoch );
+      } else if ( interval.epoch != epoch ) {
+        interval.reset( epoch );
+      }
+      final int limit = stripeLimit( );
+      if ( size >= limit ) {
+        logFull( epoch );
+        Interval oldest;
+        while ( size >= limit && ( oldest = oldest( epoch ) ) != null ) {
+          evictions.add( oldest.size );
+          size -= oldest.size;
+          oldest.reset( oldest.epoch );
+        }
+        if ( interval.size >= limit ) {
+          overflows.increment( );
+        }
+      }
+      interval.put( fingerprint, now );
+      return Result.Accepted;
+    }
+
+    /**
+     * The oldest live interval with fingerprints, excluding the current interval.
+     */
+    private Interval oldest( final long epoch ) {
+      Interval oldest = null;
+      for ( final Interval interval : intervals ) {
+        if ( interval != null && interval.epoch != epoch && interval.size > 0 && interval.isLive( epoch ) &&
+            ( oldest == null || interval.epoch < oldest.epoch ) ) {
+          oldest = interval;
+        }
+      }
+      return oldest;
+    }
+
+    synchronized long size( final long now ) {
+      final long epoch = Math.floorDiv( now, intervalNanos );
+      long size = 0;
+      for ( final Interval interval : intervals ) {
+        if ( interval != null && interval.isLive( epoch ) ) {
+          size += interval.size;
+        }
+      }
+      return size;
+    }
+  }
+
+  /**
+   * Open addressed fingerprint table with the time each fingerprint was seen
+   * as milliseconds from the start of the interval.
+   */
+  private final class Interval {
+    private long epoch;
+    private long[] fingerprints = new long[ INITIAL_CAPACITY ];
+    private int[] offsets = new int[ INITIAL_CAPACITY ];
+    private int size;
+
+    Interval( final long epoch ) {
+      this.epoch = epoch;
+    }
+
+    boolean isLive( final long currentEpoch ) {
+      return currentEpoch - epoch < INTERVALS;
+    }
+
+    long get( final long fingerprint ) {
+      final int mask = fingerprints.length - 1;
+      for ( int i = (int) fingerprint & mask; fingerprints[ i ] != 0; i = ( i + 1 ) & mask ) {
+        if ( fingerprints[ i ] == fingerprint ) {
+          return epoch * intervalNanos + TimeUnit.MILLISECONDS.toNanos( offsets[ i ] );
+        }
+      }
+      return NOT_SEEN;
+    }
+
+    void put( final long fingerprint, final long now ) {
+      if ( ( size + 1 ) * 2 > fingerprints.length ) {
+        resize( fingerprints.length * 2 );
+      }
+      final int mask = fingerprints.length - 1;
+      int i = (int) fingerprint & mask;
+      while ( fingerprints[ i ] != 0 ) {
+        i = ( i + 1 ) & mask;
+      }
+      fingerprints[ i ] = fingerprint;
+      offsets[ i ] = (int) TimeUnit.NANOSECONDS.toMillis( now - epoch * intervalNanos );
+      size++;
+    }
+
+    /**
+     * Discard all fingerprints, releasing memory if the table is mostly unused.
+     */
+    void reset( final long epoch ) {
+      this.epoch = epoch;
+      if ( size * 8 < fingerprints.length && fingerprints.length > INITIAL_CAPACITY ) {
+        fingerprints = new long[ INITIAL_CAPACITY ];
+        offsets = new int[ INITIAL_CAPACITY ];
+      } else {
+        Arrays.fill( fingerprints, 0 );
+      }
+      size = 0;
+    }
+
+    private void resize( final int capacity ) {
+      final long[] oldFingerprints = fingerprints;
+      final int[] oldOffsets = offsets;
+      fingerprints = new long[ capacity ];
+      offsets = new int[ capacity ];
+      final int mask = capacity - 1;
+      for ( int j = 0; j < oldFingerprints.length; j++ ) {
+        if ( oldFingerprints[ j ] != 0 ) {
+          int i = (int) oldFingerprints[ j ] & mask;
+          while ( fingerprints[ i ] != 0 ) {
+            i = ( i + 1 ) & mask;
+          }
+          fingerprints[ i ] = oldFingerprints[ j ];
+          offsets[ i ] = oldOffsets[ j ];
+        }
+      }
+    }
+  }
+}
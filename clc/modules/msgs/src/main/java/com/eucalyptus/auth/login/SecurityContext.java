@@ -77,7 +77,8 @@ import javax.security.auth.login.AppConfigurationEntry.LoginModuleControlFlag;
 import javax.security.auth.spi.LoginModule;
 import org.apache.log4j.Logger;
 import com.eucalyptus.bootstrap.ServiceJarDiscovery;
-import com.eucalyptus.util.TimedEvictionSet;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.eucalyptus.ws.StackConfiguration;
 
@@ -86,17 +87,30 @@ public class SecurityContext extends Configuration {
   private static Logger LOG = Logger.getLogger( SecurityContext.class );
   // Note: According WS-Security spec, WS-Security requests need 
   // to be cached for at least 5 min for timestamps to expire
-  private static TimedEvictionSet<String> replayQueue = new TimedEvictionSet<String>(TimeUnit.MILLISECONDS.convert(900 + StackConfiguration.CLOCK_SKEW_SEC, TimeUnit.SECONDS));
+  private static ReplayCache replayCache = new ReplayCache(
+      900 + StackConfiguration.CLOCK_SKEW_SEC,
+      TimeUnit.SECONDS,
+      ( ) -> StackConfiguration.REPLAY_CACHE_MAX_ENTRIES );
+  static {
+    Mbeans.register( "com.eucalyptus.auth", ImmutableMap.of( "type", "ReplayCache" ), replayCache );
+  }
   private List<String> loginModules = Lists.newArrayList( );
   private SecurityContext( ) {}
   
   public static void enqueueSignature( String signature ) throws AuthenticationException {
-    if( !SecurityContext.replayQueue.add( signature ) ) {
+    if( SecurityContext.replayCache.add( signature, StackConfiguration.REPLAY_SKEW_WINDOW_SEC, TimeUnit.SECONDS ) == ReplayCache.Result.Replayed ) {
     	LOG.info("Replay detected for " + signature);
     	throw new AuthenticationException( "Message replay detected.  Same signature was used within the last 15 minutes");
     }
   }
   
+  /**
+   * The replay cache, for size, replay and eviction metrics.
+   */
+  public static ReplayCache getReplayCache( ) {
+    return replayCache;
+  }
+
   public static LoginContext getLoginContext( WrappedCredentials credentials ) throws LoginException {
     return new LoginContext( "eucalyptus" , new Subject( ), credentials, singleton );
   }
@@ -110,10 +124,10 @@ public class SecurityContext extends Configuration {
    * @return
    */
   public static boolean validateTimestampPeriod(Date expires) {
-	 Long nanoLimit = replayQueue.getEvictionNanos();
+	 long millisLimit = replayCache.getWindowMillis();
 	 
 	 Date currentDate = new Date();
-	 if((currentDate.getTime() + (nanoLimit / 1000000)) < expires.getTime())
+	 if((currentDate.getTime() + millisLimit) < expires.getTime())
 		 return false;
 	 
 	  return true;
@@ -0,0 +1,218 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.policy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.eucalyptus.auth.policy.condition.ConditionOp;
+import com.eucalyptus.auth.policy.condition.Conditions;
+import com.eucalyptus.auth.policy.key.Key;
+import com.eucalyptus.auth.policy.key.Keys;
+import com.eucalyptus.auth.principal.Authorization;
+import com.eucalyptus.auth.principal.Condition;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Authorizations for a policy with compiled patterns and conditions.
+ *
+ * <p>Authorizations are indexed by the vendor prefix of their actions (e.g.
+ * "ec2:") so evaluation only visits authorizations that could match the
+ * requested action. Authorizations using NotAction or a wildcard vendor are
+ * included for every action.</p>
+ */
+final class CompiledPolicy {
+
+  private final ImmutableList<CompiledAuthorization> authorizations;
+  private final ImmutableList<CompiledAuthorization> anyVendorAuthorizations;
+  private final ImmutableMap<String,ImmutableList<CompiledAuthorization>> authorizationsByVendor;
+
+  CompiledPolicy( @Nonnull final List<Authorization> authorizations ) {
+    final ImmutableList.Builder<CompiledAuthorization> authorizationsBuilder = ImmutableList.builder( );
+    final ImmutableList.Builder<CompiledAuthorization> anyVendorBuilder = ImmutableList.builder( );
+    final Map<String,ImmutableList.Builder<CompiledAuthorization>> vendorBuilders = Maps.newLinkedHashMap( );
+    final List<CompiledAuthorization> compiledAuthorizations = Lists.newArrayList( );
+    for ( final Authorization authorization : authorizations ) {
+      final CompiledAuthorization compiledAuthorization = new CompiledAuthorization( authorization );
+      compiledAuthorizations.add( compiledAuthorization );
+      for ( final String vendor : compiledAuthorization.vendors ) {
+        vendorBuilders.computeIfAbsent( vendor, key -> ImmutableList.builder( ) );
+      }
+    }
+    for ( final CompiledAuthorization compiledAuthorization : compiledAuthorizations ) {
+      authorizationsBuilder.add( compiledAuthorization );
+      if ( compiledAuthorization.vendors.isEmpty( ) ) {
+        anyVendorBuilder.add( compiledAuthorization );
+        vendorBuilders.values( ).forEach( builder -> builder.add( compiledAuthorization ) );
+      } else {
+        compiledAuthorization.vendors.forEach( vendor -> vendorBuilders.get( vendor ).add( compiledAuthorization ) );
+      }
+    }
+    final ImmutableMap.Builder<String,ImmutableList<CompiledAuthorization>> byVendorBuilder = ImmutableMap.builder( );
+    vendorBuilders.forEach( ( vendor, builder ) -> byVendorBuilder.put( vendor, builder.build( ) ) );
+    this.authorizations = authorizationsBuilder.build( );
+    this.anyVendorAuthorizations = anyVendorBuilder.build( );
+    this.authorizationsByVendor = byVendorBuilder.build( );
+  }
+
+  @Nonnull
+  List<CompiledAuthorization> getAuthorizations( ) {
+    return authorizations;
+  }
+
+  /**
+   * Get the authorizations that could match the given action, in policy order.
+   */
+  @Nonnull
+  List<CompiledAuthorization> forAction( @Nonnull final String action ) {
+    final int vendorEnd = action.indexOf( ':' );
+    if ( vendorEnd < 0 ) {
+      return authorizations;
+    }
+    final List<CompiledAuthorization> vendorAuthorizations =
+        authorizationsByVendor.get( action.substring( 0, vendorEnd + 1 ) );
+    return vendorAuthorizations != null ? vendorAuthorizations : anyVendorAuthorizations;
+  }
+
+  static final class CompiledAuthorization {
+    private final Authorization authorization;
+    private final ImmutableList<PolicyPattern> actions;
+    @Nullable
+    private final PolicyPattern type;
+    @Nullable
+    private final ImmutableList<PolicyPattern> resources;
+    private final ImmutableList<CompiledCondition> conditions;
+    private final ImmutableSet<String> vendors;
+
+    CompiledAuthorization( @Nonnull final Authorization authorization ) {
+      this.authorization = authorization;
+      this.actions = compile( authorization.getActions( ) );
+      this.type = authorization.getType( ) == null ? null : PolicyPattern.compile( authorization.getType( ) );
+      this.resources = authorization.getPolicyVariables( ).isEmpty( ) ?
+          compile( authorization.getResources( ) ) :
+          null;
+      final ImmutableList.Builder<CompiledCondition> conditionsBuilder = ImmutableList.builder( );
+      for ( final Condition condition : authorization.getConditions( ) ) {
+        conditionsBuilder.add( new CompiledCondition( condition ) );
+      }
+      this.conditions = conditionsBuilder.build( );
+      this.vendors = vendors( authorization.isNotAction( ), actions );
+    }
+
+    @Nonnull
+    Authorization getAuthorization( ) {
+      return authorization;
+    }
+
+    /**
+     * True if any action pattern matches, NotAction is not considered.
+     */
+    boolean matchesAction( @Nonnull final String action ) {
+      for ( final PolicyPattern pattern : actions ) {
+        if ( pattern.matches( action ) ) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Compiled type pattern if the authorization has a type.
+     */
+    @Nullable
+    PolicyPattern getType( ) {
+      return type;
+    }
+
+    /**
+     * Compiled resource patterns, null if resources use policy variables.
+     */
+    @Nullable
+    List<PolicyPattern> getResources( ) {
+      return resources;
+    }
+
+    @Nonnull
+    List<CompiledCondition> getConditions( ) {
+      return conditions;
+    }
+
+    private static ImmutableList<PolicyPattern> compile( final Set<String> patterns ) {
+      final ImmutableList.Builder<PolicyPattern> builder = ImmutableList.builder( );
+      for ( final String pattern : patterns ) {
+        builder.add( PolicyPattern.compile( pattern ) );
+      }
+      return builder.build( );
+    }
+
+    private static ImmutableSet<String> vendors( final boolean notAction, final List<PolicyPattern> actions ) {
+      if ( notAction ) {
+        return ImmutableSet.of( );
+      }
+      final ImmutableSet.Builder<String> vendors = ImmutableSet.builder( );
+      for ( final PolicyPattern action : actions ) {
+        final String prefix = action.getLiteralPrefix( );
+        final int vendorEnd = prefix.indexOf( ':' );
+        if ( vendorEnd < 0 ) {
+          return ImmutableSet.of( );
+        }
+        vendors.add( prefix.substring( 0, vendorEnd + 1 ) );
+      }
+      return vendors.build( );
+    }
+  }
+
+  /**
+   * Condition with the operation and key resolved on first use.
+   */
+  static final class CompiledCondition {
+    private final Condition condition;
+    private final Supplier<ConditionOp> op;
+    private final Supplier<Key> key;
+
+    CompiledCondition( @Nonnull final Condition condition ) {
+      this.condition = condition;
+      this.op = Suppliers.memoize( ( ) -> Conditions.getOpInstance( condition.getType( ) ) );
+      this.key = Suppliers.memoize( ( ) -> Keys.getKeyByName( condition.getKey( ) ) );
+    }
+
+    @Nonnull
+    Condition getCondition( ) {
+      return condition;
+    }
+
+    ConditionOp getOp( ) {
+      return op.get( );
+    }
+
+    @Nullable
+    Key getKey( ) {
+      return key.get( );
+    }
+  }
+}
@@ -86,7 +86,8 @@ import com.eucalyptus.auth.AuthException;
 import com.eucalyptus.auth.Contract;
 import com.eucalyptus.auth.api.PolicyEngine;
 import com.eucalyptus.auth.policy.condition.ConditionOp;
-import com.eucalyptus.auth.policy.condition.Conditions;
+import com.eucalyptus.auth.policy.CompiledPolicy.CompiledAuthorization;
+import com.eucalyptus.auth.policy.CompiledPolicy.CompiledCondition;
 import com.eucalyptus.auth.policy.condition.NumericGreaterThan;
 import com.eucalyptus.auth.policy.ern.AddressUtil;
 import com.eucalyptus.auth.policy.key.ContractKey;
@@ -133,6 +134,12 @@ public class PolicyEngineImpl implements PolicyEngine {
       .expireAfterWrite( 1, TimeUnit.HOURS )
       .build( );
 
+  private static final Cache<String,CompiledPolicy> compiledPolicyCache = CacheBuilder
+      .<String,CompiledPolicy>newBuilder()
+      .maximumSize( 10_000 )
+      .expireAfterWrite( 1, TimeUnit.HOURS )
+      .build( );
+
   @Nonnull
   private final Function<String,String> accountResolver;
 
@@ -155,14 +162,16 @@ public class PolicyEngineImpl implements PolicyEngine {
   private static final Matcher PATTERN_MATCHER = new Matcher( ) {
     @Override
     public boolean match( String pattern, String instance ) {
-      pattern = PolicyUtils.toJavaPattern( pattern );
       if ( pattern == null ) {
         return false;
       }
-      return Pattern.matches( pattern, instance );
+      return PolicyPattern.compile( pattern ).matches( instance );
     }
   };
 
+  private static final String SERVER_CERTIFICATE_TYPE =
+      String.format( "%s:%s", PolicySpec.VENDOR_IAM, PolicySpec.IAM_RESOURCE_SERVER_CERTIFICATE );
+
   private static final Matcher ADDRESS_MATCHER = new Matcher( ) {
     @Override
     public boolean match( String pattern, String instance ) {
@@ -278,7 +287,7 @@ public class PolicyEngineImpl implements PolicyEngine {
         // Check resource authorizations, ignore authorizations for own account
         final Decision resourceDecision = resourcePolicy == null ?
                 Decision.DEFAULT :
-                processAuthorizations( AuthEvaluationContextImpl.authorizations( resourcePolicy, true ), AuthorizationMatch.All, action, resourceAccountNumber, evaluationContext.getResourceType( ), resourceName, evaluationContext.getPrincipals( ), isAccountPrincipal( resourceAccountNumber ), keyEval, contractEval );
+                processAuthorizations( AuthEvaluationContextImpl.compiledPolicy( resourcePolicy, true ).forAction( action ), AuthorizationMatch.All, action, resourceAccountNumber, evaluationContext.getResourceType( ), resourceName, evaluationContext.getPrincipals( ), isAccountPrincipal( resourceAccountNumber ), keyEval, contractEval );
         // Denied by explicit or default deny
         if ( ( resourceDecision == Decision.DENY ) ||
             ( !requestAccountDefaultAllow && !sameAccount && sameResourceAccount && resourceDecision != Decision.ALLOW ) ) {
@@ -386,7 +395,7 @@ public class PolicyEngineImpl implements PolicyEngine {
     }
 
     final Decision decision = processAuthorizations(
-        evaluationContext.lookupAuthorizations( ),
+        evaluationContext.lookupCompiledAuthorizations( ),
         authorizationMatch,
         action,
         resourceAccountNumber,
@@ -413,7 +422,7 @@ public class PolicyEngineImpl implements PolicyEngine {
     * @return The final decision: DEFAULT - no matching authorization, DENY - explicit deny, ALLOW = explicit allow
     * @throws AuthException
     */
-  private Decision processAuthorizations( @Nonnull  final List<Authorization> authorizations,
+  private Decision processAuthorizations( @Nonnull  final List<CompiledAuthorization> authorizations,
                                           @Nonnull  AuthorizationMatch authorizationMatch,
                                           @Nonnull  final String action,
                                           @Nullable final String resourceAccountNumber,
@@ -425,11 +434,12 @@ public class PolicyEngineImpl implements PolicyEngine {
                                           @Nonnull  final ContractKeyEvaluator contractEval ) throws AuthException {
     Decision result = Decision.DEFAULT;
     final String region = PolicyEngineImpl.this.region.get( );
-    for ( Authorization auth : authorizations ) {
+    for ( CompiledAuthorization compiledAuth : authorizations ) {
+      final Authorization auth = compiledAuth.getAuthorization( );
       boolean denyOnly = false;
       if ( auth.getEffect( ) == EffectType.Limit ) continue;
 
-      if ( !matchActions( auth, action ) ) {
+      if ( !evaluateElement( compiledAuth.matchesAction( action ), auth.isNotAction( ) ) ) {
         continue;
       }
       if ( !matchPrincipal( auth.getPrincipal(), filter( principals, Predicates.not( denyOnlyPrincipal ) ) ) ) {
@@ -442,10 +452,10 @@ public class PolicyEngineImpl implements PolicyEngine {
       if ( authorizationMatch == AuthorizationMatch.Unconditional && auth.getEffect( ) == EffectType.Allow ) {
         return Decision.ALLOW; // Cannot deny reliably with unconditional matching
       }
-      if ( !matchResources( auth, region, resourceAccountNumber, resourceType, resource ) ) {
+      if ( !matchResources( compiledAuth, region, resourceAccountNumber, resourceType, resource ) ) {
         continue;
       }
-      if ( !evaluateConditions( auth.getPolicyVariables(), auth.getConditions( ), action, keyEval, contractEval ) ) {
+      if ( !evaluateConditions( auth.getPolicyVariables(), compiledAuth.getConditions( ), action, keyEval, contractEval ) ) {
         continue;
       }
       if ( auth.getEffect( ) == EffectType.Deny ) {
@@ -503,13 +513,40 @@ public class PolicyEngineImpl implements PolicyEngine {
       return auth.isNotResource( );
     } else  if ( PolicySpec.EC2_RESOURCE_ADDRESS.equals( auth.getType( ) ) ) {
       return evaluateElement( matchOne( auth.getResources( ), resource, ADDRESS_MATCHER ), auth.isNotResource( ) );
-    } else if ( String.format("%s:%s", PolicySpec.VENDOR_IAM, PolicySpec.IAM_RESOURCE_SERVER_CERTIFICATE).equals ( auth.getType( ))){
+    } else if ( SERVER_CERTIFICATE_TYPE.equals ( auth.getType( ))){
       return evaluateElement( matchOne( auth.getResources( ), resource, SERVER_CERTIFICATE_MATCHER ), auth.isNotResource( ) );
     }else {
       return evaluateElement( matchOneOrEmpty( auth.getPolicyVariables( ), auth.getResources( ), resource, PATTERN_MATCHER ), auth.isNotResource( ) );
     }
   }
 
+  private boolean matchResources( @Nonnull  CompiledAuthorization compiledAuth,
+                                  @Nullable String region,
+                                  @Nullable String resourceAccountNumber,
+                                  @Nullable String resourceType,
+                                  @Nullable String resource ) throws AuthException {
+    final Authorization auth = compiledAuth.getAuthorization( );
+    final List<PolicyPattern> resources = compiledAuth.getResources( );
+    if ( resource == null ||
+        resources == null ||
+        PolicySpec.EC2_RESOURCE_ADDRESS.equals( auth.getType( ) ) ||
+        SERVER_CERTIFICATE_TYPE.equals( auth.getType( ) ) ) {
+      return matchResources( auth, region, resourceAccountNumber, resourceType, resource );
+    } else if ( auth.getRegion() != null && region != null && !auth.getRegion().equals( region ) ) {
+      return auth.isNotResource( );
+    } else if ( auth.getAccount() != null && resourceAccountNumber != null && !resolveAccount(auth.getAccount()).equals( resourceAccountNumber ) ) {
+      return auth.isNotResource( );
+    } else if ( compiledAuth.getType( ) != null && !compiledAuth.getType( ).matches( resourceType ) ) {
+      return auth.isNotResource( );
+    } else {
+      boolean matched = resources.isEmpty( );
+      for ( int i = 0; !matched && i < resources.size( ); i++ ) {
+        matched = resources.get( i ).matches( resource );
+      }
+      return evaluateElement( matched, auth.isNotResource( ) );
+    }
+  }
+
   private static boolean matchOne( Set<String> patterns, String instance, Matcher matcher ) throws AuthException {
     return matchOne( Collections.emptySet( ), patterns, instance, matcher );
   }
@@ -562,14 +599,15 @@ public class PolicyEngineImpl implements PolicyEngine {
    */
   private boolean evaluateConditions(
       final Set<String> policyVariables,
-      final List<? extends Condition> conditions,
+      final List<CompiledCondition> conditions,
       final String action,
       final CachedKeyEvaluator keyEval,
       final ContractKeyEvaluator contractEval
   ) throws AuthException {
-    for ( Condition cond : conditions ) {
-      ConditionOp op = Conditions.getOpInstance( cond.getType( ) );
-      Key key = Keys.getKeyByName( cond.getKey( ) );
+    for ( CompiledCondition compiledCond : conditions ) {
+      Condition cond = compiledCond.getCondition( );
+      ConditionOp op = compiledCond.getOp( );
+      Key key = compiledCond.getKey( );
       final boolean applies = key.canApply( action );
       if ( key instanceof ContractKey ) {
         if ( applies ) contractEval.addContract( ( ContractKey ) key, cond.getValues( ) );
@@ -683,7 +721,7 @@ public class PolicyEngineImpl implements PolicyEngine {
     private Boolean systemAdmin;
     private Boolean systemUser;
     private Map<String,String> evaluatedKeys;
-    private List<Authorization> authorizations;
+    private List<CompiledAuthorization> compiledAuthorizations;
     private List<Pair<PolicyVersion,Authorization>> quotaAuthorizations;
     private final List<PolicyVersion> policies;
 
@@ -778,17 +816,25 @@ public class PolicyEngineImpl implements PolicyEngine {
       return systemUser;
     }
 
-    public List<Authorization> lookupAuthorizations( ) throws AuthException {
-      if ( authorizations == null ) {
-        final List<Pair<PolicyVersion,Authorization>> authorizations = authorizations( policies, false );
-        this.authorizations = ImmutableList.copyOf( Iterables.filter(
-            Iterables.transform( authorizations, Pair.<PolicyVersion,Authorization>right( ) ),
-            resourceType == null ?
-                AuthorizationPredicates.ALLOW_EFFECT :
-                Predicates.not( AuthorizationPredicates.LIMIT_EFFECT )
-        ) );
+    /**
+     * Authorizations from all policies that could match the action, in policy order.
+     */
+    List<CompiledAuthorization> lookupCompiledAuthorizations( ) throws AuthException {
+      if ( compiledAuthorizations == null ) {
+        final Predicate<Authorization> effectPredicate = resourceType == null ?
+            AuthorizationPredicates.ALLOW_EFFECT :
+            Predicates.not( AuthorizationPredicates.LIMIT_EFFECT );
+        final ImmutableList.Builder<CompiledAuthorization> builder = ImmutableList.builder( );
+        for ( final PolicyVersion policy : policies ) {
+          for ( final CompiledAuthorization compiledAuthorization : compiledPolicy( policy, false ).forAction( action ) ) {
+            if ( effectPredicate.apply( compiledAuthorization.getAuthorization( ) ) ) {
+              builder.add( compiledAuthorization );
+            }
+          }
+        }
+        this.compiledAuthorizations = builder.build( );
       }
-      return authorizations;
+      return compiledAuthorizations;
     }
 
     static List<Authorization> authorizations( final PolicyVersion policy, final boolean resourcePolicy ) throws AuthException {
@@ -804,6 +850,17 @@ public class PolicyEngineImpl implements PolicyEngine {
       }
     }
 
+    static CompiledPolicy compiledPolicy( final PolicyVersion policy, final boolean resourcePolicy ) throws AuthException {
+      try {
+        return compiledPolicyCache.get( policy.getPolicyHash( ), ( ) -> new CompiledPolicy( authorizations( policy, resourcePolicy ) ) );
+      } catch ( final ExecutionException e ) {
+        if ( e.getCause( ) instanceof AuthException ) {
+          throw (AuthException) e.getCause( );
+        }
+        throw new AuthException( "Invalid policy", e.getCause( ) );
+      }
+    }
+
     static List<Pair<PolicyVersion,Authorization>> authorizations( final List<PolicyVersion> policies, final boolean resourcePolicy ) throws AuthException {
       final List<Pair<PolicyVersion,Authorization>> authorizations = Lists.newArrayList( );
       for ( final PolicyVersion policy : policies ) {
@@ -0,0 +1,174 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.policy;
+
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+
+/**
+ * Compiled IAM policy pattern (action, resource or principal pattern with * and ?)
+ *
+ * <p>Matching is equivalent to matching the regular expression from
+ * {@link PolicyUtils#toJavaPattern(String)} but common pattern shapes are
+ * matched without a regular expression. Patterns or values with characters that
+ * the regular expression treats specially (line terminators, surrogate pairs)
+ * are matched using the regular expression.</p>
+ */
+final class PolicyPattern {
+
+  private enum Kind {
+    ANY,
+    EXACT,
+    PREFIX,
+    SUFFIX,
+    GLOB,
+    REGEX,
+  }
+
+  private final String pattern;
+  private final Kind kind;
+  private final String literal;
+  private volatile Pattern regex;
+
+  private PolicyPattern( final String pattern, final Kind kind, final String literal ) {
+    this.pattern = pattern;
+    this.kind = kind;
+    this.literal = literal;
+  }
+
+  static PolicyPattern compile( @Nonnull final String pattern ) {
+    int stars = 0;
+    int questions = 0;
+    for ( int i = 0; i < pattern.length( ); i++ ) {
+      final char c = pattern.charAt( i );
+      if ( c == '*' ) {
+        stars++;
+      } else if ( c == '?' ) {
+        questions++;
+      } else if ( c > 0x7f ) {
+        return new PolicyPattern( pattern, Kind.REGEX, null );
+      }
+    }
+    final Kind kind;
+    String literal = null;
+    if ( stars == 0 && questions == 0 ) {
+      kind = Kind.EXACT;
+      literal = pattern;
+    } else if ( questions == 0 && stars == pattern.length( ) ) {
+      kind = Kind.ANY;
+    } else if ( questions == 0 && stars == 1 && pattern.endsWith( "*" ) ) {
+      kind = Kind.PREFIX;
+      literal = pattern.substring( 0, pattern.length( ) - 1 );
+    } else if ( questions == 0 && stars == 1 && pattern.startsWith( "*" ) ) {
+      kind = Kind.SUFFIX;
+      literal = pattern.substring( 1 );
+    } else {
+      kind = Kind.GLOB;
+    }
+    return new PolicyPattern( pattern, kind, literal );
+  }
+
+  String getPattern( ) {
+    return pattern;
+  }
+
+  /**
+   * The literal text that all matching values start with.
+   */
+  String getLiteralPrefix( ) {
+    switch ( kind ) {
+      case EXACT:
+      case PREFIX:
+        return literal;
+      case GLOB:
+        int index = 0;
+        while ( index < pattern.length( ) && pattern.charAt( index ) != '*' && pattern.charAt( index ) != '?' ) index++;
+        return pattern.substring( 0, index );
+      default:
+        return "";
+    }
+  }
+
+  boolean matches( @Nonnull final String value ) {
+    if ( kind == Kind.REGEX || ( kind != Kind.EXACT && requiresRegex( value ) ) ) {
+      return regex( ).matcher( value ).matches( );
+    }
+    switch ( kind ) {
+      case ANY:
+        return true;
+      case EXACT:
+        return literal.equals( value );
+      case PREFIX:
+        return value.startsWith( literal );
+      case SUFFIX:
+        return value.endsWith( literal );
+      default:
+        return globMatches( pattern, value );
+    }
+  }
+
+  private Pattern regex( ) {
+    Pattern compiled = regex;
+    if ( compiled == null ) {
+      regex = compiled = Pattern.compile( PolicyUtils.toJavaPattern( pattern ) );
+    }
+    return compiled;
+  }
+
+  /**
+   * Wildcards in the regular expression do not match line terminators and
+   * match surrogate pairs as a single character.
+   */
+  private static boolean requiresRegex( final String value ) {
+    for ( int i = 0; i < value.length( ); i++ ) {
+      final char c = value.charAt( i );
+      if ( c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029' || Character.isSurrogate( c ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean globMatches( final String pattern, final String value ) {
+    int patternIndex = 0;
+    int valueIndex = 0;
+    int starIndex = -1;
+    int starValueIndex = 0;
+    while ( valueIndex < value.length( ) ) {
+      if ( patternIndex < pattern.length( ) &&
+          ( pattern.charAt( patternIndex ) == '?' || pattern.charAt( patternIndex ) == value.charAt( valueIndex ) ) ) {
+        patternIndex++;
+        valueIndex++;
+      } else if ( patternIndex < pattern.length( ) && pattern.charAt( patternIndex ) == '*' ) {
+        starIndex = patternIndex++;
+        starValueIndex = valueIndex;
+      } else if ( starIndex >= 0 ) {
+        patternIndex = starIndex + 1;
+        valueIndex = ++starValueIndex;
+      } else {
+        return false;
+      }
+    }
+    while ( patternIndex < pattern.length( ) && pattern.charAt( patternIndex ) == '*' ) {
+      patternIndex++;
+    }
+    return patternIndex == pattern.length( );
+  }
+}
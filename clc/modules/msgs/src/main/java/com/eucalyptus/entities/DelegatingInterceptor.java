@@ -68,10 +68,14 @@ import org.hibernate.CallbackException;
 import org.hibernate.EntityMode;
 import org.hibernate.Interceptor;
 import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
 import org.hibernate.type.Type;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
 
 public class DelegatingInterceptor implements Interceptor {
   private final Interceptor interceptor;
+  private Multimap<Class<?>,String> changes; // changes in the current transaction for EntityChanges
   
   public DelegatingInterceptor( ) {
     this.interceptor = Interceptors.get( );
@@ -87,26 +91,32 @@ public class DelegatingInterceptor implements Interceptor {
   }
   
   public boolean onFlushDirty( Object entity, Serializable id, Object[] currentState, Object[] previousState, String[] propertyNames, Type[] types ) throws CallbackException {
+    changed( entity, id );
     return this.interceptor.onFlushDirty( entity, id, currentState, previousState, propertyNames, types );
   }
   
   public boolean onSave( Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types ) throws CallbackException {
+    changed( entity, id );
     return this.interceptor.onSave( entity, id, state, propertyNames, types );
   }
   
   public void onDelete( Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types ) throws CallbackException {
+    changed( entity, id );
     this.interceptor.onDelete( entity, id, state, propertyNames, types );
   }
   
   public void onCollectionRecreate( Object collection, Serializable key ) throws CallbackException {
+    collectionChanged( collection, key );
     this.interceptor.onCollectionRecreate( collection, key );
   }
   
   public void onCollectionRemove( Object collection, Serializable key ) throws CallbackException {
+    collectionChanged( collection, key );
     this.interceptor.onCollectionRemove( collection, key );
   }
   
   public void onCollectionUpdate( Object collection, Serializable key ) throws CallbackException {
+    collectionChanged( collection, key );
     this.interceptor.onCollectionUpdate( collection, key );
   }
   
@@ -139,6 +149,7 @@ public class DelegatingInterceptor implements Interceptor {
   }
   
   public void afterTransactionBegin( Transaction tx ) {
+    this.changes = null;
     this.interceptor.afterTransactionBegin( tx );
   }
   
@@ -147,11 +158,31 @@ public class DelegatingInterceptor implements Interceptor {
   }
   
   public void afterTransactionCompletion( Transaction tx ) {
+    final Multimap<Class<?>,String> committedChanges = this.changes;
+    this.changes = null;
     this.interceptor.afterTransactionCompletion( tx );
+    if ( committedChanges != null && tx.wasCommitted( ) ) {
+      EntityChanges.committed( committedChanges );
+    }
   }
   
   public String onPrepareStatement( String sql ) {
     return this.interceptor.onPrepareStatement( sql );
   }
+
+  private void collectionChanged( final Object collection, final Serializable key ) {
+    if ( collection instanceof PersistentCollection ) {
+      changed( ( (PersistentCollection) collection ).getOwner( ), key );
+    }
+  }
+
+  private void changed( final Object entity, final Serializable id ) {
+    if ( entity != null && id != null && EntityChanges.isTracked( entity.getClass( ) ) ) {
+      if ( this.changes == null ) {
+        this.changes = HashMultimap.create( );
+      }
+      this.changes.put( entity.getClass( ), String.valueOf( id ) );
+    }
+  }
   
 }
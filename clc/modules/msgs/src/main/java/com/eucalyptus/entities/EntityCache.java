@@ -22,9 +22,11 @@ package com.eucalyptus.entities;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import org.hibernate.Criteria;
 import org.hibernate.FetchMode;
 import org.hibernate.criterion.Criterion;
@@ -34,6 +36,8 @@ import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.util.Pair;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -41,17 +45,41 @@ import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
 /**
+ * Cache of immutable views of entities, refreshed on access.
  *
+ * <p>By default each access loads the id and version of all entities to find
+ * changes. With change notification enabled only entities reported as changed
+ * are loaded, with a periodic full refresh to pick up changes that are not
+ * reported (e.g. changes made by other hosts.)</p>
  */
 public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>> implements Supplier<Iterable<TE>> {
 
   private static final int batchSize = 500;
-  private final E example;
-  private final Criterion criterion;
-  private final Set<String> eagerAssociationPaths;
-  private final Set<String> lazyAssociationPaths;
+  private static final long fullRefreshIntervalNanos = TimeUnit.MINUTES.toNanos( 1 );
+  private final Class<?> type;
+  private final Loader<E> loader;
   private final Function<? super E,TE> transformFunction;
+  private final Ticker ticker;
   private final ConcurrentMap<Pair<String,Integer>,TE> cache = Maps.newConcurrentMap( );
+  private final Set<String> changedIds = Sets.newConcurrentHashSet( );
+  private volatile boolean changeNotification = false;
+  private long lastFullRefresh = 0L;
+  private List<TE> snapshot;
+
+  /**
+   * Source for the identifiers, versions and state of cached entities.
+   */
+  interface Loader<E> {
+    /**
+     * Load the identifier and version of all matching entities.
+     */
+    Collection<Pair<String,Integer>> loadVersionMap( );
+
+    /**
+     * Load the matching entities with the given identifiers by identifier and version.
+     */
+    Map<Pair<String,Integer>,E> load( List<String> ids );
+  }
 
   /**
    * Create an entity cache for the given example.
@@ -83,59 +111,164 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
                       final Set<String> eagerAssociationPaths,
                       final Set<String> lazyAssociationPaths,
                       final Function<? super E,TE> transformFunction ) {
-    this.example = example;
-    this.criterion = criterion;
-    this.eagerAssociationPaths = eagerAssociationPaths;
-    this.lazyAssociationPaths = lazyAssociationPaths;
+    this(
+        example.getClass( ),
+        new PersistenceLoader<>( example, criterion, eagerAssociationPaths, lazyAssociationPaths ),
+        transformFunction,
+        Ticker.systemTicker( ) );
+  }
+
+  EntityCache( final Class<?> type,
+               final Loader<E> loader,
+               final Function<? super E,TE> transformFunction,
+               final Ticker ticker ) {
+    this.type = type;
+    this.loader = loader;
     this.transformFunction = transformFunction;
+    this.ticker = ticker;
   }
 
-  @SuppressWarnings( "unchecked" )
-  private Collection<Pair<String,Integer>> loadVersionMap( ) {
-    try ( final TransactionResource db = Entities.readOnlyDistinctTransactionFor( example ) ){
-      final Criteria criteria = Entities.createCriteria( example.getClass( ) )
-          .add( Example.create( example ) )
-          .add( criterion )
-          .setProjection( Projections.projectionList( )
-              .add( Projections.property( "id" ) )
-              .add( Projections.property( "version" ) ) );
-      final List<Object[]> idVersionList = (List<Object[]>) criteria.list( );
-      final Set<Pair<String,Integer>> results = Sets.newLinkedHashSetWithExpectedSize( idVersionList.size( ) );
-      Iterables.addAll( results, Iterables.transform( idVersionList, ObjectArrayToStringIntPair.INSTANCE ) );
-      return results;
+  /**
+   * Enable change notification for this cache.
+   *
+   * @return This cache
+   */
+  public EntityCache<E,TE> withChangeNotification( ) {
+    if ( !changeNotification ) {
+      changeNotification = true;
+      EntityChanges.register( type, new EntityChanges.Listener( ) {
+        @Override
+        public void changed( final Collection<String> ids ) {
+          changedIds.addAll( ids );
+        }
+      } );
     }
+    return this;
   }
 
-  @SuppressWarnings( { "unchecked", "ConstantConditions" } )
-  private void refresh( ) {
-    final Collection<Pair<String,Integer>> currentKeys = loadVersionMap( );
-    cache.keySet( ).retainAll( currentKeys );
+  /**
+   * Refresh all entities.
+   *
+   * @return true if the cache was modified
+   */
+  @SuppressWarnings( "ConstantConditions" )
+  private boolean refresh( ) {
+    final Collection<Pair<String,Integer>> currentKeys = loader.loadVersionMap( );
+    boolean modified = cache.keySet( ).retainAll( currentKeys );
     currentKeys.removeAll( cache.keySet( ) );
     for ( final List<Pair<String,Integer>> keyBatch : Iterables.partition( currentKeys, batchSize ) ) {
+      modified |= load( Lists.newArrayList( Iterables.transform( keyBatch, Pair.<String, Integer>left( ) ) ) );
+    }
+    return modified;
+  }
+
+  /**
+   * Refresh the entities with the given identifiers.
+   *
+   * @return true if the cache was modified
+   */
+  private boolean refresh( final Collection<String> ids ) {
+    boolean modified = false;
+    for ( final Pair<String,Integer> key : cache.keySet( ) ) {
+      if ( ids.contains( key.getLeft( ) ) ) {
+        modified |= cache.remove( key ) != null;
+      }
+    }
+    for ( final List<String> idBatch : Iterables.partition( ids, batchSize ) ) {
+      modified |= load( idBatch );
+    }
+    return modified;
+  }
+
+  private boolean load( final List<String> ids ) {
+    final Map<Pair<String,Integer>,E> entities = loader.load( ids );
+    for ( final Map.Entry<Pair<String,Integer>,E> entry : entities.entrySet( ) ) {
+      cache.put( entry.getKey( ), transformFunction.apply( entry.getValue( ) ) );
+    }
+    return !entities.isEmpty( );
+  }
+
+  /**
+   * Get the current sorted values.
+   *
+   * <p>The returned values are an immutable snapshot that is shared until
+   * the cache is modified.</p>
+   */
+  @Override
+  public synchronized Iterable<TE> get( ) {
+    final boolean modified;
+    final long now = ticker.read( );
+    if ( changeNotification && snapshot != null && ( now - lastFullRefresh ) < fullRefreshIntervalNanos ) {
+      final Set<String> ids = Sets.newHashSet( changedIds );
+      changedIds.removeAll( ids );
+      modified = !ids.isEmpty( ) && refresh( ids );
+    } else {
+      changedIds.clear( );
+      modified = refresh( );
+      lastFullRefresh = now;
+    }
+    if ( modified || snapshot == null ) {
+      snapshot = ImmutableList.copyOf( Ordering.natural( ).sortedCopy( cache.values( ) ) );
+    }
+    return snapshot;
+  }
+
+  private static final class PersistenceLoader<E extends AbstractPersistent> implements Loader<E> {
+    private final E example;
+    private final Criterion criterion;
+    private final Set<String> eagerAssociationPaths;
+    private final Set<String> lazyAssociationPaths;
+
+    PersistenceLoader( final E example,
+                       final Criterion criterion,
+                       final Set<String> eagerAssociationPaths,
+                       final Set<String> lazyAssociationPaths ) {
+      this.example = example;
+      this.criterion = criterion;
+      this.eagerAssociationPaths = eagerAssociationPaths;
+      this.lazyAssociationPaths = lazyAssociationPaths;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    @Override
+    public Collection<Pair<String,Integer>> loadVersionMap( ) {
+      try ( final TransactionResource db = Entities.readOnlyDistinctTransactionFor( example ) ){
+        final Criteria criteria = Entities.createCriteria( example.getClass( ) )
+            .add( Example.create( example ) )
+            .add( criterion )
+            .setProjection( Projections.projectionList( )
+                .add( Projections.property( "id" ) )
+                .add( Projections.property( "version" ) ) );
+        final List<Object[]> idVersionList = (List<Object[]>) criteria.list( );
+        final Set<Pair<String,Integer>> results = Sets.newLinkedHashSetWithExpectedSize( idVersionList.size( ) );
+        Iterables.addAll( results, Iterables.transform( idVersionList, ObjectArrayToStringIntPair.INSTANCE ) );
+        return results;
+      }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    @Override
+    public Map<Pair<String,Integer>,E> load( final List<String> ids ) {
       try ( final TransactionResource db = Entities.readOnlyDistinctTransactionFor( example ) ) {
         final Criteria criteria =  Entities.createCriteria( example.getClass( ) )
             .add( Example.create( example ) )
             .add( criterion )
             .setFetchSize( batchSize )
-            .add( Restrictions.in( "id", Lists.newArrayList( Iterables.transform( keyBatch, Pair.<String, Integer>left( ) ) ) ) );
+            .add( Restrictions.in( "id", ids ) );
         for ( final String path : eagerAssociationPaths ) criteria.setFetchMode( path, FetchMode.JOIN );
         for ( final String path : lazyAssociationPaths ) criteria.setFetchMode( path, FetchMode.SELECT );
         final List<E> entities = (List<E> ) criteria.list( );
+        final Map<Pair<String,Integer>,E> results = Maps.newLinkedHashMap( );
         for ( final E entity : entities ) {
-          cache.put( Pair.pair( getId( entity ), entity.getVersion( ) ), transformFunction.apply( entity ) );
+          results.put( Pair.pair( getId( entity ), entity.getVersion( ) ), entity );
         }
+        return results;
       }
     }
-  }
-
-  @Override
-  public Iterable<TE> get( ) {
-    refresh( );
-    return Ordering.natural( ).sortedCopy( cache.values( ) );
-  }
 
-  private String getId( final E entity ) {
-    return Objects.toString( Entities.resolvePrimaryKey( entity ) );
+    private String getId( final E entity ) {
+      return Objects.toString( Entities.resolvePrimaryKey( entity ) );
+    }
   }
 
   private enum ObjectArrayToStringIntPair implements Function<Object[],Pair<String,Integer>> {
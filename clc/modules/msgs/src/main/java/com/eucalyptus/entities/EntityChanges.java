@@ -0,0 +1,88 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.entities;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.log4j.Logger;
+import com.google.common.collect.Multimap;
+
+/**
+ * Notification of committed entity changes to listeners in this JVM.
+ *
+ * <p>Changes are reported by the session interceptor after a transaction is
+ * committed. Changes made outside this JVM or by bulk updates are not reported
+ * so listeners must not rely on notifications alone.</p>
+ *
+ * @see DelegatingInterceptor
+ */
+final class EntityChanges {
+
+  private static final Logger logger = Logger.getLogger( EntityChanges.class );
+
+  private static final List<Registration> registrations = new CopyOnWriteArrayList<>( );
+
+  interface Listener {
+    /**
+     * Invoked with the identifiers of committed changes to entities of the registered type.
+     */
+    void changed( Collection<String> ids );
+  }
+
+  static void register( final Class<?> type, final Listener listener ) {
+    registrations.add( new Registration( type, listener ) );
+  }
+
+  /**
+   * Is there a listener for changes to entities of the given type.
+   */
+  static boolean isTracked( final Class<?> type ) {
+    for ( final Registration registration : registrations ) {
+      if ( registration.type.isAssignableFrom( type ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static void committed( final Multimap<Class<?>,String> changes ) {
+    for ( final Map.Entry<Class<?>,Collection<String>> entry : changes.asMap( ).entrySet( ) ) {
+      for ( final Registration registration : registrations ) {
+        if ( registration.type.isAssignableFrom( entry.getKey( ) ) ) try {
+          registration.listener.changed( entry.getValue( ) );
+        } catch ( final Exception e ) {
+          logger.error( "Error notifying change for " + entry.getKey( ).getSimpleName( ), e );
+        }
+      }
+    }
+  }
+
+  private static final class Registration {
+    private final Class<?> type;
+    private final Listener listener;
+
+    private Registration( final Class<?> type, final Listener listener ) {
+      this.type = type;
+      this.listener = listener;
+    }
+  }
+}
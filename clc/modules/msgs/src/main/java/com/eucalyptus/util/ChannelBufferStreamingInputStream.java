@@ -68,16 +68,13 @@ public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream
       //maybe this buffer is exhausted
       //get the next buffer and report available
       //we only scan 1 buffer ahead
-      int retries = 0;
-      do {
-        try {
-          b = buffers.poll(QUEUE_TIMEOUT, TimeUnit.SECONDS);
-          currentlyAvailable += b.readableBytes();
-        } catch (InterruptedException e) {
-          LOG.error(e, e);
-          return currentlyAvailable;
+      try {
+        if (nextBuffer()) {
+          currentlyAvailable = b.readableBytes();
         }
-      } while ((b == null) && retries++ < 60);
+      } catch (InterruptedException e) {
+        LOG.error(e, e);
+      }
     }
     return currentlyAvailable;
   }
@@ -116,14 +113,10 @@ public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream
           off += toReadFromThisBuffer;
         } else {
           try {
-            int retries = 0;
-            do {
-              b = buffers.poll(QUEUE_TIMEOUT, TimeUnit.SECONDS);
-            } while ((b == null) && retries++ < 60);
-            if (b == null) {
+            if (!nextBuffer()) {
               LOG.error("No more data in this stream");
               bytesRead += readSoFar;
-              return readSoFar;
+              return readSoFar > 0 ? readSoFar : -1;
             }
           } catch (InterruptedException e) {
             LOG.error(e, e);
@@ -141,8 +134,36 @@ public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream
   }
 
   @Override
-  public int read() throws IOException {
-    return super.read();
+  public synchronized int read() throws IOException {
+    if (b == null) {
+      return -1;
+    }
+    try {
+      while (!b.readable()) {
+        if (!nextBuffer()) {
+          LOG.error("No more data in this stream");
+          return -1;
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.error(e, e);
+      return -1;
+    }
+    bytesRead++;
+    return b.readByte() & 0xff;
+  }
+
+  /**
+   * Take the next buffer from the queue, the stream is at its end if none arrives in time.
+   *
+   * @return true if there is a next buffer
+   */
+  private boolean nextBuffer() throws InterruptedException {
+    int retries = 0;
+    do {
+      b = buffers.poll(QUEUE_TIMEOUT, TimeUnit.SECONDS);
+    } while ((b == null) && retries++ < 60);
+    return b != null;
   }
 
   @Override
@@ -195,6 +195,33 @@ public class Mbeans {
     }
   }
   
+  /**
+   * Register an MBean or MXBean with the platform MBean server.
+   *
+   * <p>Any existing registration with the same name is replaced. Failures are
+   * logged and do not prevent the caller from using the bean.</p>
+   *
+   * @param domain The domain for the object name, e.g. com.eucalyptus.auth
+   * @param props The key properties for the object name, e.g. type=PrincipalCache
+   * @param mbean The bean to register
+   * @return True if the bean was registered
+   */
+  public static boolean register( final String domain, final Map<String,String> props, final Object mbean ) {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+      final ObjectName objectName = ObjectName.getInstance( domain, new Hashtable<>( props ) );
+      if ( server.isRegistered( objectName ) ) {
+        server.unregisterMBean( objectName );
+      }
+      server.registerMBean( mbean, objectName );
+      return true;
+    } catch ( final Exception ex ) {
+      LOG.warn( "Failed to register mbean " + domain + "=" + props + ": " + ex.getMessage( ) );
+      Logs.extreme( ).error( ex, ex );
+      return false;
+    }
+  }
+
   public static void register( final Object obj ) {
     if ( jmxBuilder == null ) {
       //Do internal stuff here.
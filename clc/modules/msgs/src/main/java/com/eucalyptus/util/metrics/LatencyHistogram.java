@@ -0,0 +1,224 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free, log-bucketed (HDR style) histogram of non-negative long values.
+ *
+ * <p>Values below {@code 2^SUB_BUCKET_BITS} are counted exactly, larger values
+ * are counted in buckets with a relative width of {@code 2^-(SUB_BUCKET_BITS-1)}
+ * (about 3%). Memory use is fixed at construction time and recording is a single
+ * atomic increment on a stripe selected by the recording thread, so concurrent
+ * recorders do not contend on a shared counter.</p>
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+  private static final int BUCKET_COUNT = indexFor( Long.MAX_VALUE ) + 1;
+  private static final int MAX_STRIPES = 8;
+
+  private final int stripeMask;
+  private final AtomicLongArray counts;
+  private final LongAdder sum = new LongAdder( );
+  private final LongAccumulator min = new LongAccumulator( Math::min, Long.MAX_VALUE );
+  private final LongAccumulator max = new LongAccumulator( Math::max, Long.MIN_VALUE );
+
+  public LatencyHistogram( ) {
+    this( Runtime.getRuntime( ).availableProcessors( ) );
+  }
+
+  public LatencyHistogram( final int concurrency ) {
+    final int stripes = Math.min( MAX_STRIPES, Integer.highestOneBit( Math.max( 1, concurrency ) - 1 ) << 1 );
+    this.stripeMask = Math.max( 1, stripes ) - 1;
+    this.counts = new AtomicLongArray( ( stripeMask + 1 ) * BUCKET_COUNT );
+  }
+
+  /**
+   * Record the given value, negative values are ignored.
+   */
+  public void record( final long value ) {
+    if ( value < 0 ) {
+      return;
+    }
+    final int stripe = (int) Thread.currentThread( ).getId( ) & stripeMask;
+    sum.add( value );
+    min.accumulate( value );
+    max.accumulate( value );
+    // count last so snapshots never see a count without its min/max
+    counts.incrementAndGet( stripe * BUCKET_COUNT + indexFor( value ) );
+  }
+
+  /**
+   * Point in time copy of the histogram, recording may continue concurrently.
+   */
+  public Snapshot snapshot( ) {
+    final long[] merged = new long[ BUCKET_COUNT ];
+    for ( int stripe = 0; stripe <= stripeMask; stripe++ ) {
+      final int offset = stripe * BUCKET_COUNT;
+      for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+        merged[ i ] += counts.get( offset + i );
+      }
+    }
+    return new Snapshot( merged, sum.sum( ), min.get( ), max.get( ) );
+  }
+
+  static int indexFor( final long value ) {
+    if ( value < SUB_BUCKET_COUNT ) {
+      return (int) value;
+    }
+    final int shift = ( 63 - Long.numberOfLeadingZeros( value ) ) - SUB_BUCKET_BITS + 1;
+    return shift * SUB_BUCKET_HALF_COUNT + (int) ( value >>> shift );
+  }
+
+  static long lowestValueAt( final int index ) {
+    if ( index < SUB_BUCKET_COUNT ) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+    final long mantissa = ( index % SUB_BUCKET_HALF_COUNT ) + SUB_BUCKET_HALF_COUNT;
+    return mantissa << shift;
+  }
+
+  static long highestValueAt( final int index ) {
+    if ( index < SUB_BUCKET_COUNT ) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+    final long lowest = lowestValueAt( index );
+    final long highest = lowest + ( 1L << shift ) - 1;
+    return highest < lowest ? Long.MAX_VALUE : highest;
+  }
+
+  /**
+   * Immutable histogram contents.
+   *
+   * <p>Snapshots can be subtracted to obtain the values recorded in an interval,
+   * for an interval the min and max are bucket bounds rather than exact values.</p>
+   */
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+
+    private Snapshot( final long[] counts, final long sum, final long min, final long max ) {
+      long count = 0;
+      for ( final long bucketCount : counts ) {
+        count += bucketCount;
+      }
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.min = count == 0 ? 0 : min;
+      this.max = count == 0 ? 0 : max;
+    }
+
+    /**
+     * Snapshot of the values recorded since the given (earlier) snapshot.
+     */
+    public Snapshot since( final Snapshot previous ) {
+      final long[] delta = new long[ BUCKET_COUNT ];
+      int lowest = -1;
+      int highest = -1;
+      for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+        delta[ i ] = Math.max( 0, counts[ i ] - previous.counts[ i ] );
+        if ( delta[ i ] > 0 ) {
+          if ( lowest < 0 ) lowest = i;
+          highest = i;
+        }
+      }
+      return new Snapshot(
+          delta,
+          sum - previous.sum,
+          lowest < 0 ? 0 : Math.max( min, lowestValueAt( lowest ) ),
+          highest < 0 ? 0 : Math.min( max, highestValueAt( highest ) ) );
+    }
+
+    public long getCount( ) {
+      return count;
+    }
+
+    /**
+     * Sum of all values, negative if the sum overflowed.
+     */
+    public long getSum( ) {
+      return sum;
+    }
+
+    public long getMin( ) {
+      return min;
+    }
+
+    public long getMax( ) {
+      return max;
+    }
+
+    /**
+     * Mean of the values, NaN if the sum overflowed.
+     */
+    public double getMean( ) {
+      if ( count == 0 ) {
+        return 0.0d;
+      }
+      return sum < 0 ? Double.NaN : sum / 1.0d / count;
+    }
+
+    /**
+     * Value with the given (1 based) rank in ascending order.
+     */
+    public long getValueAtRank( final long rank ) {
+      if ( count == 0 ) {
+        return 0;
+      }
+      final long target = Math.min( count, Math.max( 1, rank ) );
+      long seen = 0;
+      for ( int i = 0; i < counts.length; i++ ) {
+        seen += counts[ i ];
+        if ( seen >= target ) {
+          return Math.max( min, Math.min( max, highestValueAt( i ) ) );
+        }
+      }
+      return max;
+    }
+
+    /**
+     * Value at the given percentile using the nearest rank method.
+     */
+    public long getValueAtPercentile( final double percentile ) {
+      return getValueAtRank( (long) Math.ceil( Math.min( 100.0d, Math.max( 0.0d, percentile ) ) * count / 100.0d ) );
+    }
+
+    public double getMedian( ) {
+      if ( count == 0 ) {
+        return 0.0d;
+      }
+      return ( count & 1 ) == 1 ?
+          getValueAtRank( count / 2 + 1 ) :
+          ( getValueAtRank( count / 2 ) + getValueAtRank( count / 2 + 1 ) ) / 2.0d;
+    }
+  }
+}
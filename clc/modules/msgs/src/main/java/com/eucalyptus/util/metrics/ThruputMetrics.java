@@ -20,27 +20,39 @@
 package com.eucalyptus.util.metrics;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.log4j.Logger;
 
 import com.eucalyptus.component.id.Eucalyptus;
 import com.eucalyptus.system.Threads;
-import com.eucalyptus.util.LockResource;
-import com.google.common.collect.EvictingQueue;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.collect.ImmutableMap;
 
 import org.apache.commons.collections.map.LRUMap;
 
+/**
+ * Latency and size metrics for monitored actions.
+ *
+ * <p>Data points are recorded on the calling thread into a lock-free histogram
+ * per action (used for interval aggregates and management beans) and a fixed
+ * size window of the most recent data points (used for listing and windowed
+ * aggregates). Memory use per action does not depend on the number of
+ * recorded data points.</p>
+ */
 public class ThruputMetrics {
 
   public static class DataPoint {
@@ -48,7 +60,11 @@ public class ThruputMetrics {
     long value;
     
     public DataPoint(long value) {
-      this.collectionTimeMs = System.currentTimeMillis();
+      this(System.currentTimeMillis(), value);
+    }
+
+    DataPoint(long collectionTimeMs, long value) {
+      this.collectionTimeMs = collectionTimeMs;
       this.value = value;
     }
   }
@@ -61,9 +77,17 @@ public class ThruputMetrics {
     final long thirdQuartile;
     final long min;
     final long max;
+    final long p90;
+    final long p99;
+    final long p999;
 
     public Aggregates(int count, double mean, long firstQuartile, double median,
         long thirdQuartile, long min, long max) {
+      this(count, mean, firstQuartile, median, thirdQuartile, min, max, max, max, max);
+    }
+
+    public Aggregates(int count, double mean, long firstQuartile, double median,
+        long thirdQuartile, long min, long max, long p90, long p99, long p999) {
       this.count = count;
       this.mean = mean;
       this.median = median;
@@ -71,15 +95,216 @@ public class ThruputMetrics {
       this.thirdQuartile = thirdQuartile;
       this.min = min;
       this.max = max;
+      this.p90 = p90;
+      this.p99 = p99;
+      this.p999 = p999;
+    }
+
+    static Aggregates of(DataPoint[] dataPoints) {
+      if (dataPoints.length == 0)
+        return new Aggregates(0, 0.0, 0, 0.0, 0, 0, 0, 0, 0, 0);
+      long val[] = new long[dataPoints.length];
+      long sum = 0;
+      for (int i = 0; i < dataPoints.length; i++) {
+        val[i] = dataPoints[i].value;
+        sum += val[i];
+      }
+      Arrays.sort(val);
+      double median = ((val.length & 1) == 1) ? val[val.length/2]/1.0d : (val[(val.length-1)/2] + val[(val.length+1)/2])/2.0d;
+      // percentiles are calculated using Nearest Rank method
+      long firstQuartile = val.length > 1 ? val[(int)Math.round(25*val.length/100.0) - 1] : val[0];
+      long thirdQuartile = val.length > 1 ? val[(int)Math.round(75*val.length/100.0) - 1] : val[0];
+      double mean = sum/1.0d/val.length;
+      if (sum < 0) {
+        // assuming sum did not exceeded 1.5 * Long.MAX_VALUE
+        LOG.error("Max long value is exceeded while calculating aggregates for metrics.");
+        mean = Double.NaN;
+      }
+      return new Aggregates(val.length, mean, firstQuartile, median, thirdQuartile, val[0], val[val.length-1],
+          rank(val, 90), rank(val, 99), rank(val, 99.9));
+    }
+
+    private static long rank(long[] sorted, double percentile) {
+      return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length / 100.0) - 1)];
+    }
+
+    static Aggregates of(LatencyHistogram.Snapshot snapshot) {
+      long count = snapshot.getCount();
+      if (count == 0)
+        return new Aggregates(0, 0.0, 0, 0.0, 0, 0, 0, 0, 0, 0);
+      // quartiles are calculated using Nearest Rank method
+      return new Aggregates((int) Math.min(Integer.MAX_VALUE, count), snapshot.getMean(),
+          snapshot.getValueAtRank(Math.round(25*count/100.0)), snapshot.getMedian(),
+          snapshot.getValueAtRank(Math.round(75*count/100.0)), snapshot.getMin(), snapshot.getMax(),
+          snapshot.getValueAtPercentile(90), snapshot.getValueAtPercentile(99),
+          snapshot.getValueAtPercentile(99.9));
+    }
+  }
+
+  /**
+   * Fixed size window of the most recent data points for an action.
+   *
+   * Each slot holds the sequence number of its data point so that readers skip
+   * slots that are not yet written or that have already been reused.
+   */
+  private static final class DataPointWindow {
+    private final int size;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicReferenceArray<Slot> slots;
+
+    DataPointWindow(int size) {
+      this.size = size;
+      this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    void add(long time, long value) {
+      long sequence = cursor.getAndIncrement();
+      slots.set((int) (sequence % size), new Slot(sequence, new DataPoint(time, value)));
+    }
+
+    DataPoint[] toArray() {
+      long end = cursor.get();
+      long start = Math.max(0, end - size);
+      List<DataPoint> ret = new ArrayList<>((int) (end - start));
+      for (long i = start; i < end; i++) {
+        Slot slot = slots.get((int) (i % size));
+        if (slot != null && slot.sequence == i)
+          ret.add(slot.dataPoint);
+      }
+      return ret.toArray(new DataPoint[ret.size()]);
+    }
+
+    DataPointWindow resize(int newSize) {
+      DataPointWindow resized = new DataPointWindow(newSize);
+      DataPoint[] points = toArray();
+      for(int i = points.length > newSize ? points.length - newSize : 0; i < points.length; i++)
+        resized.add(points[i].collectionTimeMs, points[i].value);
+      return resized;
+    }
+
+    private static final class Slot {
+      private final long sequence;
+      private final DataPoint dataPoint;
+
+      Slot(long sequence, DataPoint dataPoint) {
+        this.sequence = sequence;
+        this.dataPoint = dataPoint;
+      }
+    }
+  }
+
+  /**
+   * Storage for an action, the histogram is created on first use.
+   */
+  private static final class ActionMetrics implements ThruputMetricsMXBean {
+    private final MonitoredAction action;
+    private final AtomicReference<LatencyHistogram> histogram = new AtomicReference<>();
+    private final AtomicReference<DataPointWindow> window;
+    private LatencyHistogram intervalHistogram;
+    private LatencyHistogram.Snapshot intervalStart;
+
+    ActionMetrics(MonitoredAction action, int size) {
+      this.action = action;
+      this.window = new AtomicReference<>(new DataPointWindow(size));
+    }
+
+    void add(long value) {
+      LatencyHistogram current = histogram.get();
+      if (current == null) {
+        histogram.compareAndSet(null, new LatencyHistogram());
+        current = histogram.get();
+      }
+      current.record(value);
+      window.get().add(System.currentTimeMillis(), value);
+    }
+
+    LatencyHistogram.Snapshot snapshot() {
+      LatencyHistogram current = histogram.get();
+      return current == null ? EMPTY.snapshot() : current.snapshot();
+    }
+
+    synchronized LatencyHistogram.Snapshot interval() {
+      LatencyHistogram current = histogram.get();
+      if (current == null)
+        return EMPTY.snapshot();
+      LatencyHistogram.Snapshot end = current.snapshot();
+      LatencyHistogram.Snapshot start = current == intervalHistogram ? intervalStart : EMPTY.snapshot();
+      intervalHistogram = current;
+      intervalStart = end;
+      return end.since(start);
+    }
+
+    void clear() {
+      histogram.set(null);
+      window.set(new DataPointWindow(window.get().size));
+    }
+
+    @Override
+    public String getAction() {
+      return action.name;
+    }
+
+    @Override
+    public long getCount() {
+      return snapshot().getCount();
+    }
+
+    @Override
+    public double getMean() {
+      return snapshot().getMean();
+    }
+
+    @Override
+    public long getMin() {
+      return snapshot().getMin();
+    }
+
+    @Override
+    public long getMax() {
+      return snapshot().getMax();
+    }
+
+    @Override
+    public double getMedian() {
+      return snapshot().getMedian();
+    }
+
+    @Override
+    public long getP90() {
+      return snapshot().getValueAtPercentile(90);
+    }
+
+    @Override
+    public long getP99() {
+      return snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getP999() {
+      return snapshot().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public void reset() {
+      clear();
     }
   }
 
   private static final Logger LOG = Logger.getLogger(ThruputMetrics.class);
-  private static final Map<MonitoredAction, EvictingQueue<DataPoint>> data = new HashMap<MonitoredAction,EvictingQueue<DataPoint>>();
-  private static final ReentrantReadWriteLock storageLock = new ReentrantReadWriteLock();
+  private static final LatencyHistogram EMPTY = new LatencyHistogram(1);
+  private static final Map<MonitoredAction, ActionMetrics> data = new EnumMap<>(MonitoredAction.class);
   private static SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd G 'at' HH:mm:ss z");
   private static final LRUMap paritalOperations = new LRUMap(10000);
 
+  static {
+    for(MonitoredAction action : MonitoredAction.values()) {
+      ActionMetrics metrics = new ActionMetrics(action, MetricsConfiguration.METRICS_COLLECTION_SIZE);
+      data.put(action, metrics);
+      Mbeans.register("com.eucalyptus.util.metrics",
+          ImmutableMap.of("type", "ThruputMetrics", "action", action.name()), metrics);
+    }
+  }
+
   private static String operationKey(MonitoredAction action, String id, boolean start) {
     StringBuilder sb = new StringBuilder(start ? "S":"E");
     // to make shorter keys
@@ -137,16 +362,8 @@ public class ThruputMetrics {
   }
 
   private static void addDataPointNoThread(MonitoredAction action, long newDataPoint) {
-    try ( final LockResource lock = LockResource.lock(storageLock.writeLock()) ) {
-      if (data.containsKey(action)) {
-        data.get(action).add(new DataPoint(newDataPoint));
-      } else {
-        EvictingQueue<DataPoint> newQ = EvictingQueue.create(MetricsConfiguration.METRICS_COLLECTION_SIZE);
-        newQ.add(new DataPoint(newDataPoint));
-        data.put(action, newQ);
-      }
-    }
-    
+    data.get(action).add(newDataPoint);
+
     if (LOG.isTraceEnabled()) {
       StringBuilder sb = new StringBuilder(action.name);
       sb.append("=");
@@ -187,88 +404,54 @@ public class ThruputMetrics {
 
   /**
    * Adds new data point (non-negative long) for storing and logging.
-   * Function ignores negative input values
+   * Function ignores negative input values.
+   * The data point is recorded on the calling thread, the returned future is always done.
    */
   public static Future<Boolean> addDataPoint(final MonitoredAction action, final long newDataPoint) {
-    if (newDataPoint < 0)
-      return emptyCallable;
-    return Threads.enqueue(Eucalyptus.class, ThruputMetrics.class,
-        new Callable<Boolean>() {
-          @Override
-          public Boolean call() throws Exception {
-            if (newDataPoint < 0)
-              throw new IllegalArgumentException();
-            addDataPointNoThread(action, newDataPoint);
-            return true;
-          }
-    });
+    if (newDataPoint >= 0)
+      addDataPointNoThread(action, newDataPoint);
+    return emptyCallable;
   }
 
   /**
-   * Returns all known data point for an action.
+   * Returns the most recent data points for an action.
    */
   public static DataPoint[] getDataPoints(MonitoredAction action) {
-    try ( final LockResource lock = LockResource.lock(storageLock.readLock()) ) {
-      DataPoint[] ret;
-      if (data.containsKey(action)) {
-        ret = data.get(action).toArray(new DataPoint[0]);
-      } else {
-        ret = new DataPoint[0];
-      }
-      return ret;
-    }
+    return data.get(action).window.get().toArray();
   }
   
   /**
    * Clean data points for a giving action
    */
   public static void clearDatapoints(MonitoredAction action) {
-    try ( final LockResource lock = LockResource.lock(storageLock.writeLock()) ) {
-      if (data.containsKey(action))
-        data.get(action).clear();
-    }
+    data.get(action).clear();
   }
 
   /**
    * Clean all data points
    */
   public static void clearAllDatapoints() {
-    try ( final LockResource lock = LockResource.lock(storageLock.writeLock()) ) {
-      for(MonitoredAction action : MonitoredAction.values()) {
-        if (data.containsKey(action))
-          data.get(action).clear();
-      }
+    for(MonitoredAction action : MonitoredAction.values()) {
+      data.get(action).clear();
     }
   }
 
   /**
-   * Returns mean, first quartile, median, third quartile, min, max, and count
-   * for all known data point for an action.
-   * Warning: function does not provide valid results if sum of all values exceeds Long.MAX_VALUE.
+   * Returns mean, first quartile, median, third quartile, min, max, count and
+   * 90th/99th/99.9th percentiles for the most recent data points for an action,
+   * as returned by getDataPoints (see METRICS_COLLECTION_SIZE).
+   * Warning: function does not provide a valid mean if sum of all values exceeds Long.MAX_VALUE.
    */
   public static Aggregates getAggregates(MonitoredAction action) {
-    DataPoint[] l = getDataPoints(action);
-    if (l.length == 0)
-      return new Aggregates(0, 0.0, 0, 0.0, 0, 0, 0);
-    long val[] = new long[l.length];
-    int i=0;
-    long sum = 0;
-    for(DataPoint p:l){
-      val[i] = p.value;
-      sum += p.value;
-      i++;
-    }
-    Arrays.sort(val);
-    double median = ((val.length & 1) == 1) ? val[val.length/2]/1.0d : (val[(val.length-1)/2] + val[(val.length+1)/2])/2.0d;
-    // percentiles are calculated using Nearest Rank method
-    long firstQuartile = val.length > 1 ? val[(int)Math.round(25*val.length/100.0) - 1] : val[0];
-    long thirdQuartile = val.length > 1 ? val[(int)Math.round(75*val.length/100.0) - 1] : val[0];
-    if (sum < 0) {
-      // assuming sum did not exceeded 1.5 * Long.MAX_VALUE
-      LOG.error("Max long value is exceeded while calculating aggregates for metrics.");
-      return new Aggregates(val.length, Double.NaN, firstQuartile, median, thirdQuartile, val[0], val[val.length-1]);
-    }
-    return new Aggregates(val.length, sum/1.0d/val.length, firstQuartile, median, thirdQuartile, val[0], val[val.length-1]);
+    return Aggregates.of(getDataPoints(action));
+  }
+
+  /**
+   * Returns aggregates for all data points recorded for an action since the
+   * previous call to this function, regardless of the window size.
+   */
+  public static Aggregates getIntervalAggregates(MonitoredAction action) {
+    return Aggregates.of(data.get(action).interval());
   }
 
   /*
@@ -278,31 +461,26 @@ public class ThruputMetrics {
    */
   public static String getDataPoints(int count) {
     StringBuilder sb = new StringBuilder();
-    try ( final LockResource lock = LockResource.lock(storageLock.readLock()) ) {
-      for(MonitoredAction action : MonitoredAction.values()){
-        DataPoint[] dataPoints = getDataPoints(action);
-        if (dataPoints.length == 0)
-          continue;
-        sb.append(action.name).append("\n");
-        for(int i = dataPoints.length > count ? dataPoints.length - count : 0; i < dataPoints.length; i++)
-          sb.append(dateFormat.format( new Date(dataPoints[i].collectionTimeMs) )).append("\t")
-          .append(dataPoints[i].value).append("\n");
-      }
+    for(MonitoredAction action : MonitoredAction.values()){
+      DataPoint[] dataPoints = getDataPoints(action);
+      if (dataPoints.length == 0)
+        continue;
+      sb.append(action.name).append("\n");
+      for(int i = dataPoints.length > count ? dataPoints.length - count : 0; i < dataPoints.length; i++)
+        sb.append(dateFormat.format( new Date(dataPoints[i].collectionTimeMs) )).append("\t")
+        .append(dataPoints[i].value).append("\n");
     }
     return sb.toString();
   }
 
+  /**
+   * Change the number of recent data points retained per action, data points
+   * added concurrently with a size change may be dropped.
+   */
   public static void changeSize(int newSize) {
-    try ( final LockResource lock = LockResource.lock(storageLock.writeLock()) ) {
-      for(MonitoredAction action : MonitoredAction.values()){
-        if (data.containsKey(action)) {
-          EvictingQueue<DataPoint> newQ = EvictingQueue.create(newSize);
-          DataPoint[] values = data.get(action).toArray(new DataPoint[0]);
-          for(int i = values.length > newSize ? values.length - newSize : 0; i < values.length; i++)
-            newQ.add(values[i]);
-          data.put(action, newQ);
-        }
-      }
+    for(MonitoredAction action : MonitoredAction.values()){
+      AtomicReference<DataPointWindow> window = data.get(action).window;
+      window.set(window.get().resize(newSize));
     }
   }
 }
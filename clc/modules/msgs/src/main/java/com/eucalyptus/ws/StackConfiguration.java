@@ -99,6 +99,10 @@ public class StackConfiguration extends AbstractPersistent {
                       changeListener = TimeChangeListener.class,
                       initial = "20" )
   public static Integer       CLOCK_SKEW_SEC                    = 20;
+  @ConfigurableField( description = "Maximum number of signatures remembered for replay detection, the oldest signatures are discarded when the limit is reached.",
+                      changeListener = WebServices.CheckNonNegativeIntegerPropertyChangeListener.class,
+                      initial = "2000000" )
+  public static Integer       REPLAY_CACHE_MAX_ENTRIES          = 2000000;
   @ConfigurableField( description = "Server socket reuse address.",
                       changeListener = WebServices.CheckBooleanPropertyChangeListener.class,
                       initial = "true" )
@@ -63,7 +63,11 @@
 package com.eucalyptus.ws.protocol;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
@@ -73,7 +77,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -89,17 +96,18 @@ import com.eucalyptus.binding.HttpParameterMappings;
 import com.eucalyptus.binding.HttpValue;
 import com.eucalyptus.crypto.util.Timestamps;
 import com.eucalyptus.http.MappingHttpRequest;
+import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.ws.StackConfiguration;
 import com.eucalyptus.ws.handlers.RestfulMarshallingHandler;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
-import com.google.common.collect.Sets;
 import edu.ucsb.eucalyptus.msgs.BaseData;
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
 import edu.ucsb.eucalyptus.msgs.EucalyptusData;
@@ -108,6 +116,12 @@ import groovy.lang.GroovyObject;
 
 public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandler {
   private static Logger LOG = Logger.getLogger( BaseQueryBinding.class );
+  private static final ClassValue<BindingPlan> bindingPlans = new ClassValue<BindingPlan>( ) {
+    @Override
+    protected BindingPlan computeValue( final Class<?> type ) {
+      return new BindingPlan( type );
+    }
+  };
   private final UnknownParameterStrategy unknownParameterStrategy;
   private final T       operationParam;
   private final List<T> altOperationParams;
@@ -190,7 +204,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     final String operationNameType = operationName + "Type";
     for ( final T op : this.possibleParams )
       httpRequest.getParameters( ).remove( op.name( ) );
-    final Map<String, String> params = httpRequest.getParameters( );
+    final NavigableMap<String, String> params = new TreeMap<>( httpRequest.getParameters( ) );
     
     BaseMessage eucaMsg;
     Map<String, String> fieldMap;
@@ -207,7 +221,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
         targetType = this.getBinding( ).getElementClass( operationName );
       }
       fieldMap = this.buildFieldMap( targetType );
-      eucaMsg = ( BaseMessage ) targetType.newInstance( );
+      eucaMsg = ( BaseMessage ) plan( targetType ).newInstance( );
     } catch ( final BindingException e ) {
       LOG.debug(
           "Failed to construct message of type: " + operationName,
@@ -218,6 +232,8 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     }
     
     final List<String> failedMappings = this.populateObject( ( GroovyObject ) eucaMsg, fieldMap, params );
+    httpRequest.getParameters( ).clear( );
+    httpRequest.getParameters( ).putAll( params );
     
     if ( isStrictBinding( ) && ( !failedMappings.isEmpty( ) || !params.isEmpty( ) ) ) {
       final StringBuilder errMsg = new StringBuilder( "Failed to bind the following fields:\n" );
@@ -270,7 +286,15 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
             unknownParameterStrategy == UnknownParameterStrategy.ERROR );
   }
 
-  private static Field getRecursiveField( Class<?> clazz, final String fieldName ) throws Exception {
+  private static BindingPlan plan( final Class<?> type ) {
+    return bindingPlans.get( type );
+  }
+
+  private static FieldPlan getRecursiveField( final Class<?> clazz, final String fieldName ) throws Exception {
+    return plan( clazz ).field( fieldName );
+  }
+
+  private static Field findRecursiveField( Class<?> clazz, final String fieldName ) throws Exception {
     Exception e = null;
     while ( !BaseMessage.class.equals( clazz ) && !Object.class.equals( clazz ) ) {
       try {
@@ -284,6 +308,27 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     throw e;
   }
   
+  /**
+   * Names of the parameters with the given prefix.
+   *
+   * <p>Parameters are indexed by name in a sorted map so only the matching
+   * range of names is visited.</p>
+   */
+  private static List<String> keysWithPrefix( final Map<String, String> params, final String prefix ) {
+    final List<String> keys = Lists.newArrayList( );
+    final Iterable<String> candidates = params instanceof NavigableMap ?
+        ( (NavigableMap<String, String>) params ).tailMap( prefix, true ).keySet( ) :
+        params.keySet( );
+    for ( final String key : candidates ) {
+      if ( key.startsWith( prefix ) ) {
+        keys.add( key );
+      } else if ( params instanceof NavigableMap ) {
+        break;
+      }
+    }
+    return keys;
+  }
+
   private List<String> populateObject( final GroovyObject obj, final Map<String, String> paramFieldMap, final Map<String, String> params ) {
     final List<String> failedMappings = new ArrayList<String>( );
     for ( final Map.Entry<String, String> e : paramFieldMap.entrySet( ) ) {
@@ -298,7 +343,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     }
     
     for ( final Map.Entry<String, String> e : paramFieldMap.entrySet( ) ) {
-      Field field = null;
+      FieldPlan field = null;
       Class<?> declaredType = null;
       try {
         field = getRecursiveField( obj.getClass( ), e.getValue( ) );
@@ -315,29 +360,29 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
                   && EucalyptusData.class.isAssignableFrom( declaredType ) ) {
         try {
           final Map<String, String> fieldMap = this.buildFieldMap( declaredType );
-          final Object newInstance = declaredType.newInstance( );
-          Map<String, String> subParams = Maps.newHashMap( );
+          final Object newInstance = plan( declaredType ).newInstance( );
+          Map<String, String> subParams = Maps.newTreeMap( );
 
           HttpEmbedded httpEmbedded = null;
-          if ( field != null && (
-              field.isAnnotationPresent( HttpEmbedded.class ) ||
-              field.isAnnotationPresent( HttpEmbeddeds.class ) ) ) {
-            httpEmbedded = getHttpEmbeddedAnnotation( field );
+          if ( field != null && field.isEmbedded( ) ) {
+            httpEmbedded = getHttpEmbeddedAnnotation( field.getField( ) );
           }
           if ( httpEmbedded != null && !httpEmbedded.multiple( ) ) {
             subParams = params;
           } else {
-            for ( final String item : Sets.newHashSet( params.keySet( ) ) ) {
-              if ( item.startsWith( e.getKey( ) + "." ) || (item.equals( e.getKey( ) ) && isValueObject( declaredType ) )) {
-                subParams.put( replaceStringPrefixIfExists(item, e.getKey( ) + ".", "" ), params.remove( item ) );
-              }
+            final String prefix = e.getKey( ) + ".";
+            if ( isValueObject( declaredType ) && params.containsKey( e.getKey( ) ) ) {
+              subParams.put( e.getKey( ), params.remove( e.getKey( ) ) );
+            }
+            for ( final String item : keysWithPrefix( params, prefix ) ) {
+              subParams.put( replaceStringPrefixIfExists( item, prefix, "" ), params.remove( item ) );
             }
           }
           if ( !subParams.isEmpty( ) ) {
             if ( httpEmbedded == null && subParams.size( ) == 1 && subParams.keySet( ).contains( e.getKey( ) ) ) {
               try {
                 if ( populateValue( declaredType, (GroovyObject) newInstance, Iterables.getOnlyElement( subParams.values( ) ) ).isEmpty( ) ) {
-                  obj.setProperty( e.getValue( ), newInstance );
+                  field.set( obj, newInstance );
                   subParams.clear( );
                 }
               } catch ( final IllegalArgumentException e2 ) { /*param not bound error occurs for this failure*/ }
@@ -346,13 +391,13 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
               }
             } else {
               this.populateObject( (GroovyObject) newInstance, fieldMap, subParams );
-              obj.setProperty( e.getValue( ), newInstance );
+              field.set( obj, newInstance );
               if ( subParams != params ) for ( Map.Entry<String, String> entry : subParams.entrySet( ) ) {
                 params.put( e.getKey( ) + "." + entry.getKey( ), entry.getValue( ) );
               }
             }
           } else if ( params.containsKey( e.getKey( ) ) ) {
-            obj.setProperty( e.getValue(), newInstance );
+            field.set( obj, newInstance );
           }
         } catch ( final Exception e1 ) {
           LOG.debug( "Error binding object", e1 );
@@ -368,16 +413,16 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   @SuppressWarnings( "unchecked" )
   private boolean populateObjectField( final GroovyObject obj, final Map.Entry<String, String> paramFieldPair, final Map<String, String> params ) {
     try {
-      final Class<?> declaredType = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) ).getType( );
+      final FieldPlan field = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) );
       final Object value = convertToType( new Supplier<String>(){
         @Override
         public String get() {
           return params.remove( paramFieldPair.getKey() );
         }
-      }, declaredType );
+      }, field.getType( ) );
 
       if ( value != null )
-        obj.setProperty( paramFieldPair.getValue( ), value );
+        field.set( obj, value );
       
       return !params.containsKey( paramFieldPair.getKey() );
     } catch ( final Exception e1 ) {
@@ -414,9 +459,9 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   private List<String> populateObjectList( final GroovyObject obj, final Map.Entry<String, String> paramFieldPair, final Map<String, String> params, final int paramSize ) {
     final List<String> failedMappings = new ArrayList<String>( );
     try {
-      final Field declaredField = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) );
-      final ArrayList theList = ( ArrayList ) obj.getProperty( paramFieldPair.getValue( ) );
-      final Class genericType = ( Class ) ( ( ParameterizedType ) declaredField.getGenericType( ) ).getActualTypeArguments( )[0];
+      final FieldPlan declaredField = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) );
+      final ArrayList theList = ( ArrayList ) declaredField.get( obj );
+      final Class genericType = declaredField.getElementType( );
       // :: simple case: FieldName.# :://
       if ( String.class.equals( genericType ) ||
            Boolean.class.equals( genericType ) ||
@@ -427,8 +472,8 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
         if ( params.containsKey( paramFieldPair.getKey( ) ) ) {
           theList.add( convertToType( Suppliers.ofInstance(params.remove( paramFieldPair.getKey() )), genericType ) );
         } else {
-          final List<String> keys = Lists.newArrayList( params.keySet( ) );
-          final Pattern paramPattern = Pattern.compile( Pattern.quote(paramFieldPair.getKey( )) + "\\.([0-9]{1,7})" );
+          final List<String> keys = keysWithPrefix( params, paramFieldPair.getKey( ) + "." );
+          final Pattern paramPattern = Pattern.compile( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.([0-9]{1,7})" );
           final Map<String,Object> indexToValueMap = new TreeMap<String,Object>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           for ( final String k : keys ) {    
             final Matcher matcher = paramPattern.matcher( k );
@@ -438,31 +483,31 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
           }
           theList.addAll( indexToValueMap.values() );
         }
-      } else if ( declaredField.isAnnotationPresent( HttpEmbedded.class ) ||
-                  declaredField.isAnnotationPresent( HttpEmbeddeds.class )) {
-        final HttpEmbedded annoteEmbedded = getHttpEmbeddedAnnotation( declaredField );
+      } else if ( declaredField.isEmbedded( ) ) {
+        final HttpEmbedded annoteEmbedded = getHttpEmbeddedAnnotation( declaredField.getField( ) );
         // :: build the parameter map and call populate object recursively :://
         if ( annoteEmbedded.multiple( ) ) {
-          final List<String> keys = Lists.newArrayList( params.keySet( ) );
+          final List<String> keys = keysWithPrefix( params, paramFieldPair.getKey( ) + "." );
           final Map<String,Map<String,String>> subParamMaps = new TreeMap<>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           final Map<String,String> valueMap = new TreeMap<>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
+          final Pattern subParamPattern = Pattern.compile( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.([0-9]{1,7})\\.(.*)" );
+          final Pattern valuePattern = Pattern.compile( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.([0-9]{1,7})" );
           for ( final String k : keys ) {
-            if ( k.matches( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.[0-9]{1,7}\\..*" ) ) {
+            final Matcher subParamMatcher = subParamPattern.matcher( k );
+            final Matcher valueMatcher;
+            if ( subParamMatcher.matches( ) ) {
               final String currentValue = params.remove( k );
-              final String setKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.([0-9]{1,7})\\..*", "$1" );
-              if ( setKey.length() > 7 ) continue;
-              final String subKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.[0-9]{1,7}\\." , "" );
+              final String setKey = subParamMatcher.group( 1 );
+              final String subKey = subParamMatcher.group( 2 );
               Map<String,String> subMap = subParamMaps.get( setKey );
               if ( subMap == null ) {
-                subParamMaps.put( setKey, subMap = Maps.newHashMap() );
+                subParamMaps.put( setKey, subMap = Maps.newTreeMap() );
               }
 
               subMap.put( subKey, currentValue );
-            } else if ( k.matches( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.[0-9]{1,7}" ) ) {
+            } else if ( ( valueMatcher = valuePattern.matcher( k ) ).matches( ) ) {
               final String currentValue = params.remove( k );
-              final String orderKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.([0-9]{1,7})", "$1" );
-              if ( orderKey.length() > 7 ) continue;
-              valueMap.put( orderKey, currentValue );
+              valueMap.put( valueMatcher.group( 1 ), currentValue );
             }
           }
 
@@ -486,8 +531,8 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return failedMappings;
   }
 
-  private List<String> populateEmbedded( final Class<?> genericType, final Map<String, String> params, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws InstantiationException, IllegalAccessException {
-    final GroovyObject embedded = ( GroovyObject ) genericType.newInstance( );
+  private List<String> populateEmbedded( final Class<?> genericType, final Map<String, String> params, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws Exception {
+    final GroovyObject embedded = ( GroovyObject ) plan( genericType ).newInstance( );
     final Map<String, String> embeddedFields = this.buildFieldMap( genericType );
     final int startSize = params.size( );
     final List<String> embeddedFailures = this.populateObject( embedded, embeddedFields, params );
@@ -497,8 +542,8 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return embeddedFailures;
   }
 
-  private List<String> populateEmbedded( final Class<?> genericType, final String value, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws InstantiationException, IllegalAccessException {
-    final GroovyObject embedded = ( GroovyObject ) genericType.newInstance( );
+  private List<String> populateEmbedded( final Class<?> genericType, final String value, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws Exception {
+    final GroovyObject embedded = ( GroovyObject ) plan( genericType ).newInstance( );
     final List<String> embeddedFailures = populateValue( genericType, embedded, value );
     if ( embeddedFailures.isEmpty( ) ) {
       theList.add( embedded );
@@ -506,8 +551,8 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return embeddedFailures;
   }
 
-  private List<String> populateValue( final Class<?> genericType, final GroovyObject targetObject, final String value ) throws InstantiationException, IllegalAccessException {
-    final Field valueField = this.findValueField( genericType );
+  private List<String> populateValue( final Class<?> genericType, final GroovyObject targetObject, final String value ) {
+    final Field valueField = plan( genericType ).getValueField( );
     if ( valueField == null ) {
       throw new IllegalArgumentException( "Simple type cannot be mapped for " + genericType.getSimpleName( ) );
     }
@@ -520,7 +565,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   }
 
   @Nullable
-  private Field findValueField( Class<?> targetType ) {
+  private static Field findValueField( Class<?> targetType ) {
     while ( !BaseMessage.class.equals( targetType ) && !EucalyptusMessage.class.equals( targetType ) && !EucalyptusData.class.equals( targetType )
         && !BaseData.class.equals( targetType ) ) {
       final Field[] fields = targetType.getDeclaredFields( );
@@ -537,10 +582,19 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   }
 
   private boolean isValueObject( final Class<?> targetType ) {
-    return findValueField( targetType ) != null;
+    return plan( targetType ).getValueField( ) != null;
   }
 
-  private Map<String, String> buildFieldMap( Class<?> targetType ) {
+  private Map<String, String> buildFieldMap( final Class<?> targetType ) {
+    return plan( targetType ).fieldMap( getClass( ).getName( ) + " " + getNamespace( ), new Supplier<Map<String, String>>( ) {
+      @Override
+      public Map<String, String> get( ) {
+        return ImmutableMap.copyOf( buildFieldMapUncached( targetType ) );
+      }
+    } );
+  }
+
+  private Map<String, String> buildFieldMapUncached( Class<?> targetType ) {
     final Map<String, String> fieldMap = new HashMap<String, String>( );
     while ( !BaseMessage.class.equals( targetType ) && !EucalyptusMessage.class.equals( targetType ) && !EucalyptusData.class.equals( targetType )
             && !BaseData.class.equals( targetType ) ) {
@@ -633,4 +687,197 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return target.startsWith(oldPrefix) ? newPrefix + target.substring(oldPrefix.length()) : target;
   }
 
+  /**
+   * Binding plan for a type.
+   *
+   * <p>Reflective lookups for a type are done once and shared by all requests.
+   * Instances are created and fields accessed via method handles.</p>
+   */
+  private static final class BindingPlan {
+    private final Class<?> type;
+    private final ConcurrentMap<String,Optional<FieldPlan>> fields = Maps.newConcurrentMap( );
+    private final ConcurrentMap<String,Map<String,String>> fieldMaps = Maps.newConcurrentMap( );
+    private final Supplier<Optional<Field>> valueField;
+    private final Supplier<Optional<MethodHandle>> constructor;
+
+    private BindingPlan( final Class<?> type ) {
+      this.type = type;
+      this.valueField = Suppliers.memoize( new Supplier<Optional<Field>>( ) {
+        @Override
+        public Optional<Field> get( ) {
+          return Optional.ofNullable( findValueField( type ) );
+        }
+      } );
+      this.constructor = Suppliers.memoize( new Supplier<Optional<MethodHandle>>( ) {
+        @Override
+        public Optional<MethodHandle> get( ) {
+          try {
+            return Optional.of( MethodHandles.publicLookup( )
+                .findConstructor( type, MethodType.methodType( void.class ) )
+                .asType( MethodType.methodType( Object.class ) ) );
+          } catch ( final NoSuchMethodException | IllegalAccessException e ) {
+            return Optional.empty( );
+          }
+        }
+      } );
+    }
+
+    Object newInstance( ) throws Exception {
+      final Optional<MethodHandle> handle = constructor.get( );
+      if ( !handle.isPresent( ) ) {
+        throw new InstantiationException( "No public no-argument constructor for " + type.getName( ) );
+      }
+      try {
+        return handle.get( ).invokeExact( );
+      } catch ( final Throwable t ) {
+        throw rethrow( t );
+      }
+    }
+
+    FieldPlan field( final String fieldName ) throws Exception {
+      Optional<FieldPlan> field = fields.get( fieldName );
+      if ( field == null ) {
+        try {
+          field = Optional.of( new FieldPlan( findRecursiveField( type, fieldName ) ) );
+        } catch ( final NoSuchFieldException e ) {
+          field = Optional.empty( );
+        }
+        fields.putIfAbsent( fieldName, field );
+      }
+      if ( !field.isPresent( ) ) {
+        throw new NoSuchFieldException( fieldName );
+      }
+      return field.get( );
+    }
+
+    @Nullable
+    Field getValueField( ) {
+      return valueField.get( ).orElse( null );
+    }
+
+    Map<String,String> fieldMap( final String namespaceKey, final Supplier<Map<String,String>> builder ) {
+      Map<String,String> fieldMap = fieldMaps.get( namespaceKey );
+      if ( fieldMap == null ) {
+        fieldMap = builder.get( );
+        fieldMaps.putIfAbsent( namespaceKey, fieldMap );
+      }
+      return fieldMap;
+    }
+  }
+
+  /**
+   * Binding plan for a field.
+   *
+   * <p>Fields are accessed via method handles for the public groovy property
+   * accessors, or for the field itself when there is no accessor. The groovy
+   * property is used only for final fields, so read only properties are
+   * rejected as before, and for fields that access checks do not permit a
+   * handle for.</p>
+   */
+  private static final class FieldPlan {
+    private static final MethodType GETTER_TYPE = MethodType.methodType( Object.class, Object.class );
+    private static final MethodType SETTER_TYPE = MethodType.methodType( void.class, Object.class, Object.class );
+
+    private final Field field;
+    private final boolean embedded;
+    @Nullable private final MethodHandle getter;
+    @Nullable private final MethodHandle setter;
+
+    private FieldPlan( final Field field ) {
+      this.field = field;
+      this.embedded = field.isAnnotationPresent( HttpEmbedded.class ) || field.isAnnotationPresent( HttpEmbeddeds.class );
+      final MethodHandle getter = accessor( field, "get", GETTER_TYPE, 0 );
+      final MethodHandle setter = accessor( field, "set", SETTER_TYPE, 1 );
+      this.getter = getter != null ? getter : fieldAccessor( field, false );
+      this.setter = setter != null || Modifier.isFinal( field.getModifiers( ) ) ? setter : fieldAccessor( field, true );
+    }
+
+    /**
+     * Handle for the public groovy property accessor of the field, if any.
+     */
+    @Nullable
+    private static MethodHandle accessor( final Field field, final String prefix, final MethodType type, final int parameters ) {
+      if ( Modifier.isStatic( field.getModifiers( ) ) ) {
+        return null;
+      }
+      final String name = prefix + field.getName( ).substring( 0, 1 ).toUpperCase( ) + field.getName( ).substring( 1 );
+      for ( final Method method : field.getDeclaringClass( ).getMethods( ) ) {
+        if ( method.getName( ).equals( name ) &&
+            !Modifier.isStatic( method.getModifiers( ) ) &&
+            method.getParameterCount( ) == parameters &&
+            ( parameters == 0 ? method.getReturnType( ).equals( field.getType( ) ) : method.getParameterTypes( )[0].equals( field.getType( ) ) ) ) {
+          try {
+            return MethodHandles.publicLookup( ).unreflect( method ).asType( type );
+          } catch ( final IllegalAccessException e ) {
+            return null;
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Handle for direct access to the field, if permitted.
+     */
+    @Nullable
+    private static MethodHandle fieldAccessor( final Field field, final boolean set ) {
+      if ( Modifier.isStatic( field.getModifiers( ) ) ) {
+        return null;
+      }
+      try {
+        field.setAccessible( true );
+        return set ?
+            MethodHandles.lookup( ).unreflectSetter( field ).asType( SETTER_TYPE ) :
+            MethodHandles.lookup( ).unreflectGetter( field ).asType( GETTER_TYPE );
+      } catch ( final IllegalAccessException | RuntimeException e ) {
+        return null;
+      }
+    }
+
+    Field getField( ) {
+      return field;
+    }
+
+    Class<?> getType( ) {
+      return field.getType( );
+    }
+
+    Class<?> getElementType( ) {
+      return ( Class<?> ) ( ( ParameterizedType ) field.getGenericType( ) ).getActualTypeArguments( )[0];
+    }
+
+    boolean isEmbedded( ) {
+      return embedded;
+    }
+
+    Object get( final GroovyObject target ) throws Exception {
+      if ( getter == null ) {
+        return target.getProperty( field.getName( ) );
+      }
+      try {
+        return (Object) getter.invokeExact( (Object) target );
+      } catch ( final Throwable t ) {
+        throw rethrow( t );
+      }
+    }
+
+    void set( final GroovyObject target, final Object value ) throws Exception {
+      if ( setter == null ) {
+        target.setProperty( field.getName( ), value );
+        return;
+      }
+      try {
+        setter.invokeExact( (Object) target, value );
+      } catch ( final Throwable t ) {
+        throw rethrow( t );
+      }
+    }
+  }
+
+  private static Exception rethrow( final Throwable t ) {
+    if ( t instanceof Error ) {
+      throw (Error) t;
+    }
+    return Exceptions.toException( t );
+  }
 }
@@ -0,0 +1,188 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.login;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import com.eucalyptus.auth.AuthException;
+import com.eucalyptus.auth.principal.AccessKey;
+import com.eucalyptus.auth.principal.UserPrincipal;
+import com.eucalyptus.util.metrics.Benchmarks;
+import com.eucalyptus.ws.util.HmacUtils;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Benchmark for signature version 4 authentication of query requests.
+ *
+ * <p>Authenticates a signed POST request with a body of each size and reports
+ * the cost per request. The secret key is fixed so the derived signing key is
+ * cached after the first request, as for a client making repeated requests.</p>
+ *
+ * <p>Options are {@code --name=value} arguments:</p>
+ * <ul>
+ *   <li>sizes: comma separated request body sizes with optional k/m/g suffix (default 36,64k,1m)</li>
+ *   <li>bytes: request body bytes to authenticate per size, sets the request count (default 256m)</li>
+ * </ul>
+ * <p>One JSON object is printed per size.</p>
+ */
+public class HmacLoginModuleBenchmark {
+
+  private static final String SECRET_KEY = "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY";
+  private static final int MAXIMUM_ITERATIONS = 100_000;
+
+  private final List<Long> sizes = new ArrayList<>( );
+  private long bytes = 256L * 1024 * 1024;
+
+  public HmacLoginModuleBenchmark( final String[] args ) {
+    String sizesOption = "36,64k,1m";
+    for ( final Map.Entry<String,String> option : Benchmarks.options( args ).entrySet( ) ) {
+      final String value = option.getValue( );
+      switch ( option.getKey( ) ) {
+        case "sizes": sizesOption = value; break;
+        case "bytes": bytes = Benchmarks.parseSize( value ); break;
+        default: throw new IllegalArgumentException( "Unknown option: " + option.getKey( ) );
+      }
+    }
+    for ( final String size : sizesOption.split( "," ) ) {
+      sizes.add( Benchmarks.parseSize( size ) );
+    }
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    for ( final Map<String,Object> result : new HmacLoginModuleBenchmark( args ).run( ) ) {
+      System.out.println( Benchmarks.toJson( result ) );
+    }
+    System.exit( 0 );
+  }
+
+  public List<Map<String,Object>> run( ) throws Exception {
+    final List<Map<String,Object>> results = new ArrayList<>( );
+    final Hmacv4LoginModule loginModule = loginModule( SECRET_KEY );
+    for ( final long size : sizes ) {
+      final HmacCredentials credentials = sigV4PostCredentials( SECRET_KEY, body( size ) );
+      final int iterations = (int) Math.max( 1, Math.min( MAXIMUM_ITERATIONS, bytes / Math.max( 1, size ) ) );
+      for ( int i = 0; i < iterations; i++ ) { // warm up
+        authenticate( loginModule, credentials );
+      }
+      final long start = System.nanoTime( );
+      for ( int i = 0; i < iterations; i++ ) {
+        authenticate( loginModule, credentials );
+      }
+      final long nanos = System.nanoTime( ) - start;
+      final Map<String,Object> result = new LinkedHashMap<>( );
+      result.put( "size", size );
+      result.put( "iterations", iterations );
+      result.put( "millis", TimeUnit.NANOSECONDS.toMillis( nanos ) );
+      result.put( "microsPerRequest", ( nanos / 1e3 ) / iterations );
+      result.put( "requestsPerSecond", iterations / ( nanos / 1e9 ) );
+      results.add( result );
+    }
+    return results;
+  }
+
+  private static void authenticate( final Hmacv4LoginModule loginModule,
+                                    final HmacCredentials credentials ) throws Exception {
+    if ( !loginModule.authenticate( credentials ) ) {
+      throw new IllegalStateException( "Authentication failed" );
+    }
+  }
+
+  /**
+   * Query request body of the given size.
+   */
+  static String body( final long size ) {
+    final StringBuilder body = new StringBuilder( "Action=PutMetricData&Version=2010-08-01" );
+    for ( int i = 1; body.length( ) < size; i++ ) {
+      body.append( "&MetricData.member." ).append( i ).append( ".MetricName=Metric" ).append( i );
+    }
+    body.setLength( (int) size );
+    return body.toString( );
+  }
+
+  /**
+   * Credentials for a POST request with the given body signed using the secret key.
+   */
+  static HmacCredentials sigV4PostCredentials( final String secret, final String body ) throws Exception {
+    final String date = "20140507T202657Z";
+    final String scope = "20140507/us-east-1/monitoring/aws4_request";
+    final String canonicalRequest = "POST\n/\n\nhost:monitoring.localhost:8773\nx-amz-date:" + date + "\n\nhost;x-amz-date\n" +
+        Hmacv4LoginModule.digestUTF8( body );
+    final String stringToSign = "AWS4-HMAC-SHA256\n" + date + "\n" + scope + "\n" + Hmacv4LoginModule.digestUTF8( canonicalRequest );
+    final String signature = BaseEncoding.base16( ).lowerCase( ).encode( Hmacv4LoginModule.getHmacSHA256(
+        Hmacv4LoginModule.getSignatureKey( secret, new HmacUtils.SignatureCredential( "AKIDEXAMPLE/" + scope ) ),
+        stringToSign ) );
+    return new HmacCredentials(
+        "1234567890",
+        HmacUtils.SignatureVariant.SignatureV4Standard,
+        Collections.<String,List<String>>emptyMap( ),
+        ImmutableMap.<String,List<String>>builder( )
+            .put( "host", Lists.newArrayList( "monitoring.localhost:8773" ) )
+            .put( "x-amz-date", Lists.newArrayList( date ) )
+            .put( "authorization", Lists.newArrayList( "AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/" + scope + ", SignedHeaders=host;x-amz-date, Signature=" + signature ) )
+            .build( ),
+        "POST",
+        "/",
+        body
+    );
+  }
+
+  private static Hmacv4LoginModule loginModule( final String secret ) {
+    return new Hmacv4LoginModule( ) {
+      @Override
+      protected AccessKey lookupAccessKey( final HmacCredentials credentials ) throws AuthException {
+        return new AccessKey( ) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          public Boolean isActive( ) {
+            return true;
+          }
+
+          @Override
+          public String getAccessKey( ) {
+            throw new IllegalStateException( );
+          }
+
+          @Override
+          public String getSecretKey( ) {
+            return secret;
+          }
+
+          @Override
+          public Date getCreateDate( ) {
+            throw new IllegalStateException( );
+          }
+
+          @Override
+          public UserPrincipal getPrincipal( ) throws AuthException {
+            return null;
+          }
+        };
+      }
+    };
+  }
+}
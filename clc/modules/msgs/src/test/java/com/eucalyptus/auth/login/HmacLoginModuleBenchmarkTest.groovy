@@ -0,0 +1,43 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.login
+
+import groovy.transform.CompileStatic
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ *
+ */
+@CompileStatic
+class HmacLoginModuleBenchmarkTest {
+
+  @Test
+  void testAuthentication( ) {
+    final List<Map<String,Object>> results = new HmacLoginModuleBenchmark( [ '--sizes=36,64k', '--bytes=128k' ] as String[] ).run( )
+    assertEquals( 'result count', 2, results.size( ) )
+    results.each { Map<String,Object> result ->
+      assertTrue( 'requests', ( (Integer) result.iterations ) > 0 )
+      assertTrue( 'throughput', ( (Double) result.requestsPerSecond ) > 0d )
+    }
+  }
+}
@@ -74,6 +74,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -83,6 +85,7 @@ import com.eucalyptus.auth.AuthException;
 import com.eucalyptus.auth.InvalidSignatureAuthException;
 import com.eucalyptus.auth.principal.AccessKey;
 import com.eucalyptus.auth.principal.UserPrincipal;
+import com.eucalyptus.crypto.Digest;
 import com.eucalyptus.crypto.Hmac;
 import com.eucalyptus.crypto.util.B64;
 import com.eucalyptus.crypto.util.SecurityParameter;
@@ -92,12 +95,14 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
+import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 
@@ -666,6 +671,92 @@ public class HmacLoginModuleTest {
     assertTrue("Authentication successful", hmacV4LoginModule("vNhDy9ERZQP5WXCdmPR7ZbbzZwdlQXETeZ6wM64i").authenticate(creds));
   }
 
+  /**
+   * Example from the AWS signature version 4 documentation
+   */
+  @Test
+  public void testSigV4SignatureKey() throws Exception {
+    final HmacUtils.SignatureCredential credential =
+        new HmacUtils.SignatureCredential( "AKIDEXAMPLE/20120215/us-east-1/iam/aws4_request" );
+    final String expected = "f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d";
+    assertEquals( "Signature key", expected,
+        BaseEncoding.base16( ).lowerCase( ).encode( Hmacv4LoginModule.getSignatureKey( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", credential ) ) );
+    assertEquals( "Cached signature key", expected,
+        BaseEncoding.base16( ).lowerCase( ).encode( Hmacv4LoginModule.getSignatureKey( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", credential ) ) );
+    assertFalse( "Signature key for changed secret", expected.equals(
+        BaseEncoding.base16( ).lowerCase( ).encode( Hmacv4LoginModule.getSignatureKey( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEX", credential ) ) ) );
+  }
+
+  @Test
+  public void testDigestUTF8() throws Exception {
+    assertEquals( "Empty digest",
+        "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+        Hmacv4LoginModule.digestUTF8( "" ) );
+    for ( final String text : Lists.newArrayList( "Action=ListGroups&Version=2010-05-08", "\u00e9\u4e2d\ud83d\ude00", "\ud83d", "a\ude00b" ) ) {
+      assertEquals( "Digest for " + text,
+          BaseEncoding.base16( ).lowerCase( ).encode( Digest.SHA256.digestBinary( text.getBytes( Charsets.UTF_8 ) ) ),
+          Hmacv4LoginModule.digestUTF8( text ) );
+    }
+  }
+
+  @Test
+  public void testSigningKeyCacheHit() throws Exception {
+    final Hmacv4LoginModule.SigningKeyCache cache = new Hmacv4LoginModule.SigningKeyCache( Ticker.systemTicker( ) );
+    final HmacUtils.SignatureCredential credential =
+        new HmacUtils.SignatureCredential( "AKIDEXAMPLE/20120215/us-east-1/iam/aws4_request" );
+    final byte[] key = cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", credential );
+    assertEquals( "Signature key", "f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d",
+        BaseEncoding.base16( ).lowerCase( ).encode( key ) );
+    assertEquals( "Misses", 1, cache.stats( ).missCount( ) );
+    key[ 0 ] = 0;
+    assertEquals( "Cached signature key", "f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d",
+        BaseEncoding.base16( ).lowerCase( ).encode( cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY",
+            new HmacUtils.SignatureCredential( "AKIDEXAMPLE/20120215/us-east-1/iam/aws4_request" ) ) ) );
+    assertEquals( "Hits", 1, cache.stats( ).hitCount( ) );
+    cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY",
+        new HmacUtils.SignatureCredential( "AKIDEXAMPLE/20120216/us-east-1/iam/aws4_request" ) );
+    assertEquals( "Misses for new date", 2, cache.stats( ).missCount( ) );
+  }
+
+  @Test
+  public void testSigningKeyCacheSecretChanged() throws Exception {
+    final Hmacv4LoginModule.SigningKeyCache cache = new Hmacv4LoginModule.SigningKeyCache( Ticker.systemTicker( ) );
+    final HmacUtils.SignatureCredential credential =
+        new HmacUtils.SignatureCredential( "AKIDEXAMPLE/20120215/us-east-1/iam/aws4_request" );
+    final String expectedChanged = BaseEncoding.base16( ).lowerCase( ).encode(
+        new Hmacv4LoginModule.SigningKeyCache( Ticker.systemTicker( ) ).get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEX", credential ) );
+    assertEquals( "Signature key", "f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d",
+        BaseEncoding.base16( ).lowerCase( ).encode( cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", credential ) ) );
+    assertEquals( "Signature key for changed secret", expectedChanged,
+        BaseEncoding.base16( ).lowerCase( ).encode( cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEX", credential ) ) );
+    assertEquals( "Cached signature key for changed secret", expectedChanged,
+        BaseEncoding.base16( ).lowerCase( ).encode( cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEX", credential ) ) );
+    assertEquals( "Signature key for original secret", "f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d",
+        BaseEncoding.base16( ).lowerCase( ).encode( cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", credential ) ) );
+  }
+
+  @Test
+  public void testSigningKeyCacheExpiry() throws Exception {
+    final AtomicLong nanos = new AtomicLong( );
+    final Hmacv4LoginModule.SigningKeyCache cache = new Hmacv4LoginModule.SigningKeyCache( new Ticker( ) {
+      @Override
+      public long read( ) {
+        return nanos.get( );
+      }
+    } );
+    final HmacUtils.SignatureCredential credential =
+        new HmacUtils.SignatureCredential( "AKIDEXAMPLE/20120215/us-east-1/iam/aws4_request" );
+    cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", credential );
+    nanos.addAndGet( TimeUnit.HOURS.toNanos( 47 ) );
+    cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", credential );
+    assertEquals( "Hits before expiry", 1, cache.stats( ).hitCount( ) );
+    nanos.addAndGet( TimeUnit.HOURS.toNanos( 1 ) );
+    assertEquals( "Signature key after expiry", "f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d",
+        BaseEncoding.base16( ).lowerCase( ).encode( cache.get( "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY", credential ) ) );
+    assertEquals( "Hits after expiry", 1, cache.stats( ).hitCount( ) );
+    assertEquals( "Misses after expiry", 2, cache.stats( ).missCount( ) );
+  }
+
   /**
    * EUCA-4748 sig v2
    */
@@ -0,0 +1,114 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.login;
+
+import static org.junit.Assert.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import com.eucalyptus.auth.login.ReplayCache.Result;
+import com.google.common.base.Ticker;
+
+/**
+ * Unit tests for replay detection cache
+ */
+public class ReplayCacheTest {
+
+  @Test
+  public void testReplay( ) {
+    final AtomicLong time = new AtomicLong( );
+    final ReplayCache cache = cache( time, 1000 );
+    assertEquals( "First use", Result.Accepted, cache.add( "signature1", 0, TimeUnit.SECONDS ) );
+    assertEquals( "Other signature", Result.Accepted, cache.add( "signature2", 0, TimeUnit.SECONDS ) );
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 60 ) );
+    assertEquals( "Replay", Result.Replayed, cache.add( "signature1", 0, TimeUnit.SECONDS ) );
+    assertEquals( "Size", 2, cache.getSize( ) );
+    assertEquals( "Replays", 1, cache.getReplays( ) );
+  }
+
+  @Test
+  public void testExpiry( ) {
+    final AtomicLong time = new AtomicLong( );
+    final ReplayCache cache = cache( time, 1000 );
+    assertEquals( "First use", Result.Accepted, cache.add( "signature1", 0, TimeUnit.SECONDS ) );
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 899 ) );
+    assertEquals( "Replay within window", Result.Replayed, cache.add( "signature1", 0, TimeUnit.SECONDS ) );
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 1 ) );
+    assertEquals( "Use after window", Result.Accepted, cache.add( "signature1", 0, TimeUnit.SECONDS ) );
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 1800 ) );
+    assertEquals( "Size after expiry", 0, cache.getSize( ) );
+  }
+
+  @Test
+  public void testAllowedRepeat( ) {
+    final AtomicLong time = new AtomicLong( );
+    final ReplayCache cache = cache( time, 1000 );
+    assertEquals( "First use", Result.Accepted, cache.add( "signature1", 5, TimeUnit.SECONDS ) );
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 5 ) );
+    assertEquals( "Repeat within allowed period", Result.Accepted, cache.add( "signature1", 5, TimeUnit.SECONDS ) );
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 1 ) );
+    assertEquals( "Repeat after allowed period", Result.Replayed, cache.add( "signature1", 5, TimeUnit.SECONDS ) );
+    assertEquals( "Detection disabled", Result.Accepted, cache.add( "signature1", 900, TimeUnit.SECONDS ) );
+  }
+
+  @Test
+  public void testLimit( ) {
+    final AtomicLong time = new AtomicLong( );
+    final ReplayCache cache = cache( time, 16 * 16 );
+    for ( int i = 0; i < 10_000; i++ ) {
+      assertEquals( "Accepted " + i, Result.Accepted, cache.add( "signature" + i, 0, TimeUnit.SECONDS ) );
+    }
+    assertEquals( "Current interval grows past limit", 10_000, cache.getSize( ) );
+    assertEquals( "Overflows", 10_000 - ( 16 * 16 ), cache.getOverflows( ) );
+    assertEquals( "Evictions", 0, cache.getEvictions( ) );
+    for ( int i = 0; i < 10_000; i++ ) {
+      assertEquals( "Replay " + i, Result.Replayed, cache.add( "signature" + i, 0, TimeUnit.SECONDS ) );
+    }
+  }
+
+  @Test
+  public void testOldestEvictedWhenFull( ) {
+    final AtomicLong time = new AtomicLong( );
+    final ReplayCache cache = cache( time, 16 * 16 );
+    for ( int i = 0; i < 100; i++ ) {
+      assertEquals( "Accepted " + i, Result.Accepted, cache.add( "old" + i, 0, TimeUnit.SECONDS ) );
+    }
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 60 ) );
+    for ( int i = 0; i < 100; i++ ) {
+      assertEquals( "Replay " + i, Result.Replayed, cache.add( "old" + i, 0, TimeUnit.SECONDS ) );
+    }
+    for ( int i = 0; i < 10_000; i++ ) {
+      assertEquals( "Accepted " + i, Result.Accepted, cache.add( "new" + i, 0, TimeUnit.SECONDS ) );
+    }
+    assertEquals( "Evictions", 100, cache.getEvictions( ) );
+    assertEquals( "Size", 10_000, cache.getSize( ) );
+    assertEquals( "Evicted signature accepted", Result.Accepted, cache.add( "old0", 0, TimeUnit.SECONDS ) );
+    assertEquals( "Recent signature replayed", Result.Replayed, cache.add( "new0", 0, TimeUnit.SECONDS ) );
+  }
+
+  private static ReplayCache cache( final AtomicLong time, final int maximumEntries ) {
+    return new ReplayCache( 900, TimeUnit.SECONDS, ( ) -> maximumEntries, new Ticker( ) {
+      @Override
+      public long read( ) {
+        return time.get( );
+      }
+    } );
+  }
+}
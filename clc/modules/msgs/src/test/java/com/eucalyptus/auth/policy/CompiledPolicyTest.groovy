@@ -0,0 +1,164 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.auth.policy
+
+import static org.junit.Assert.*
+import com.eucalyptus.auth.policy.CompiledPolicy.CompiledAuthorization
+import com.eucalyptus.auth.principal.Authorization
+import com.eucalyptus.auth.principal.Authorization.EffectType
+import org.junit.Test
+import java.util.regex.Pattern
+
+/**
+ * Tests that action indexed evaluation matches the same authorizations as
+ * matching every authorization with the policy regular expressions.
+ */
+class CompiledPolicyTest {
+
+  private static final List<List<Authorization>> POLICIES = [
+      policy( authorization( EffectType.Allow, false, 'ec2:*' ) ),
+      policy( authorization( EffectType.Allow, true, 'iam:*' ) ),
+      policy( authorization( EffectType.Allow, true, 'ec2:describe*' ) ),
+      policy( authorization( EffectType.Allow, false, '*' ) ),
+      policy( authorization( EffectType.Allow, false, '*:describe*' ) ),
+      policy( authorization( EffectType.Allow, false, '?c2:describeimages' ) ),
+      policy( authorization( EffectType.Allow, false, 'iam:*', 'ec2:describeimages' ) ),
+      policy(
+          authorization( EffectType.Allow, false, 'ec2:*' ),
+          authorization( EffectType.Deny, true, 'ec2:runinstances' ) ),
+      policy(
+          authorization( EffectType.Allow, false, 'ec2:runinstances' ),
+          authorization( EffectType.Allow, false, '*:describeimages' ),
+          authorization( EffectType.Deny, false, 'iam:*' ) ),
+      policy(
+          authorization( EffectType.Deny, false, 'ec2:describeimages' ),
+          authorization( EffectType.Allow, false, 'ec2:*' ) ),
+      policy(
+          authorization( EffectType.Allow, false, 'ec2:*' ),
+          authorization( EffectType.Allow, false, 'iam:*' ),
+          authorization( EffectType.Deny, false, 'ec2:describe*' ) ),
+      policy(
+          authorization( EffectType.Allow, false, 's3:*' ),
+          authorization( EffectType.Deny, true, 's3:get*', 'ec2:*' ),
+          authorization( EffectType.Allow, false, '*:*' ),
+          authorization( EffectType.Deny, false, 'ec2:describeimages' ) )
+  ]
+
+  private static final List<String> ACTIONS = [
+      'ec2:describeimages', 'ec2:describeinstances', 'ec2:runinstances', 'iam:listusers',
+      's3:getobject', 's3:putobject', 'sts:assumerole', 'ec2:', ':describeimages', 'describeimages'
+  ]
+
+  @Test
+  void testMatchesAsRegex( ) {
+    POLICIES.each { List<Authorization> policy ->
+      CompiledPolicy compiledPolicy = compile( policy )
+      ACTIONS.each { String action ->
+        List<Authorization> expected = compiledPolicy.getAuthorizations( )
+            .collect{ CompiledAuthorization compiledAuthorization -> compiledAuthorization.getAuthorization( ) }
+            .findAll{ Authorization authorization -> matchesAsRegex( authorization, action ) }
+        List<Authorization> actual = compiledPolicy.forAction( action )
+            .findAll{ CompiledAuthorization compiledAuthorization -> matches( compiledAuthorization, action ) }
+            .collect{ CompiledAuthorization compiledAuthorization -> compiledAuthorization.getAuthorization( ) }
+        assertEquals( "${action} authorizations for ${describe( policy )}", identities( expected ), identities( actual ) )
+        assertEquals( "${action} decision for ${describe( policy )}", decision( expected ), decision( actual ) )
+      }
+    }
+  }
+
+  @Test
+  void testForActionPolicyOrder( ) {
+    CompiledPolicy compiledPolicy = compile( policy(
+        authorization( EffectType.Allow, false, 'ec2:runinstances' ),
+        authorization( EffectType.Allow, false, 'iam:*' ),
+        authorization( EffectType.Deny, true, 's3:*' ),
+        authorization( EffectType.Allow, false, '*:describe*' ),
+        authorization( EffectType.Deny, false, 'ec2:describeimages' ) ) )
+    List<CompiledAuthorization> authorizations = compiledPolicy.getAuthorizations( )
+    assertEquals( 'authorization count', 5, authorizations.size( ) )
+    assertEquals( 'ec2 authorizations',
+        identities( authorizations[0, 2, 3, 4] ), identities( compiledPolicy.forAction( 'ec2:describeimages' ) ) )
+    assertEquals( 'iam authorizations',
+        identities( authorizations[1, 2, 3] ), identities( compiledPolicy.forAction( 'iam:listusers' ) ) )
+    assertEquals( 'other vendor authorizations',
+        identities( authorizations[2, 3] ), identities( compiledPolicy.forAction( 'sts:assumerole' ) ) )
+    assertEquals( 'no vendor authorizations',
+        identities( authorizations ), identities( compiledPolicy.forAction( 'describeimages' ) ) )
+  }
+
+  @Test
+  void testDenyOverrides( ) {
+    [
+        policy( authorization( EffectType.Deny, false, 'ec2:describeimages' ), authorization( EffectType.Allow, false, 'ec2:*' ) ),
+        policy( authorization( EffectType.Allow, false, 'ec2:*' ), authorization( EffectType.Deny, false, 'ec2:describeimages' ) ),
+        policy( authorization( EffectType.Allow, false, 'ec2:*' ), authorization( EffectType.Deny, true, 'iam:*' ) ),
+        policy( authorization( EffectType.Allow, false, 'ec2:*' ), authorization( EffectType.Deny, false, '*:describe*' ) )
+    ].each { List<Authorization> policy ->
+      CompiledPolicy compiledPolicy = compile( policy )
+      List<Authorization> authorizations = compiledPolicy.forAction( 'ec2:describeimages' )
+          .findAll{ CompiledAuthorization compiledAuthorization -> matches( compiledAuthorization, 'ec2:describeimages' ) }
+          .collect{ CompiledAuthorization compiledAuthorization -> compiledAuthorization.getAuthorization( ) }
+      assertEquals( "decision for ${describe( policy )}", 'Deny', decision( authorizations ) )
+    }
+  }
+
+  private static List<Authorization> policy( Authorization... authorizations ) {
+    authorizations as List<Authorization>
+  }
+
+  private static Authorization authorization( EffectType effect, boolean notAction, String... actions ) {
+    new PolicyAuthorization( null, effect, null, null, null, null, [ ], actions as Set<String>, notAction, [ '*' ] as Set<String>, false, [ ] as Set<String> )
+  }
+
+  private static CompiledPolicy compile( List<Authorization> policy ) {
+    new CompiledPolicy( policy )
+  }
+
+  private static String describe( List<Authorization> policy ) {
+    policy.collect{ Authorization authorization ->
+      "${authorization.getEffect( )} ${authorization.isNotAction( ) ? 'NotAction' : 'Action'} ${authorization.getActions( )}"
+    }.join( ', ' )
+  }
+
+  private static boolean matches( CompiledAuthorization compiledAuthorization, String action ) {
+    compiledAuthorization.matchesAction( action ) != compiledAuthorization.getAuthorization( ).isNotAction( )
+  }
+
+  private static boolean matchesAsRegex( Authorization authorization, String action ) {
+    authorization.getActions( ).any{ String pattern ->
+      Pattern.matches( PolicyUtils.toJavaPattern( pattern ), action )
+    } != authorization.isNotAction( )
+  }
+
+  private static String decision( List<Authorization> authorizations ) {
+    if ( authorizations.any{ Authorization authorization -> authorization.getEffect( ) == EffectType.Deny } ) {
+      'Deny'
+    } else if ( authorizations.any{ Authorization authorization -> authorization.getEffect( ) == EffectType.Allow } ) {
+      'Allow'
+    } else {
+      'Default'
+    }
+  }
+
+  private static List<Integer> identities( List<?> items ) {
+    items.collect{ Object item -> System.identityHashCode( item ) }
+  }
+}
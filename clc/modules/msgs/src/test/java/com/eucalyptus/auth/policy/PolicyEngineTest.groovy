@@ -1071,6 +1071,202 @@ class PolicyEngineTest {
     """.stripIndent(), "iam:account", "iam:ListAccounts", "123456789012", "/admin" )
   }
 
+  /**
+   * Verify that NotAction allows actions for other vendors
+   */
+  @Test
+  void testNotActionAuth( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "NotAction": "iam:*",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that NotAction does not allow the excluded actions
+   */
+  @Test( expected = AuthException.class )
+  void testNotActionAuthDenied( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "NotAction": "ec2:*",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that a NotAction deny overrides an allow for the same vendor
+   */
+  @Test( expected = AuthException.class )
+  void testNotActionDenyAuthDenied( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "Action": "ec2:*",
+          "Resource": "*"
+        }, {
+          "Effect": "Deny",
+          "NotAction": "ec2:RunInstances",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that a wildcard vendor allow matches when no statement uses the vendor
+   */
+  @Test
+  void testWildcardVendorAuth( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "Action": "iam:*",
+          "Resource": "*"
+        }, {
+          "Effect": "Allow",
+          "Action": "*",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that a wildcard vendor allow matches when other statements use the vendor
+   */
+  @Test
+  void testWildcardVendorWithVendorAuth( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "Action": "ec2:RunInstances",
+          "Resource": "*"
+        }, {
+          "Effect": "Allow",
+          "Action": "*",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that a wildcard vendor deny overrides an allow for the vendor
+   */
+  @Test( expected = AuthException.class )
+  void testWildcardVendorDenyAuthDenied( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "Action": "ec2:*",
+          "Resource": "*"
+        }, {
+          "Effect": "Deny",
+          "Action": "*",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that a statement with actions for multiple vendors matches each vendor
+   */
+  @Test
+  void testMultipleVendorActionsAuth( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "Action": [ "iam:*", "ec2:DescribeImages" ],
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that actions for other vendors or other actions do not match
+   */
+  @Test( expected = AuthException.class )
+  void testOtherVendorActionsAuthDenied( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "Action": "iam:*",
+          "Resource": "*"
+        }, {
+          "Effect": "Allow",
+          "Action": "ec2:Describe",
+          "Resource": "*"
+        }, {
+          "Effect": "Allow",
+          "Action": "ec2:DescribeImagesX",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that a deny overrides a later allow
+   */
+  @Test( expected = AuthException.class )
+  void testDenyBeforeAllowAuthDenied( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Deny",
+          "Action": "ec2:DescribeImages",
+          "Resource": "*"
+        }, {
+          "Effect": "Allow",
+          "Action": "ec2:*",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
+  /**
+   * Verify that a deny overrides an earlier allow
+   */
+  @Test( expected = AuthException.class )
+  void testDenyAfterAllowAuthDenied( ) {
+    evaluateAuthorization( """\
+      {
+        "Statement":[ {
+          "Effect": "Allow",
+          "Action": "ec2:*",
+          "Resource": "*"
+        }, {
+          "Effect": "Allow",
+          "Action": "iam:*",
+          "Resource": "*"
+        }, {
+          "Effect": "Deny",
+          "Action": "ec2:Describe*",
+          "Resource": "*"
+        } ]
+      }
+    """.stripIndent(), "ec2:image", "ec2:DescribeImages", "123456789012", "emi-00000000" )
+  }
+
   private void evaluateAuthorization( String policy,
                                       String resourceType,
                                       String requestAction,
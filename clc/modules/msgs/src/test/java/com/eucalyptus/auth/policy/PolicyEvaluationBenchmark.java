@@ -0,0 +1,235 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.policy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import com.eucalyptus.auth.AuthException;
+import com.eucalyptus.auth.api.PolicyEngine;
+import com.eucalyptus.auth.policy.CompiledPolicy.CompiledAuthorization;
+import com.eucalyptus.auth.principal.Authorization;
+import com.eucalyptus.auth.principal.PolicyScope;
+import com.eucalyptus.auth.principal.PolicyVersion;
+import com.eucalyptus.auth.principal.TestUser;
+import com.eucalyptus.util.metrics.Benchmarks;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+
+/**
+ * Benchmark for policy evaluation with policies of different sizes.
+ *
+ * <p>Each policy has statements allowing actions for several vendors, with the
+ * statement matching the request last. Modes are:</p>
+ * <ul>
+ *   <li>Regex: matches the actions of every statement using the policy
+ *   regular expressions, as done before policies were compiled</li>
+ *   <li>Compiled: matches the actions of the statements indexed for the
+ *   request action</li>
+ *   <li>Engine: evaluates the request with the policy engine</li>
+ * </ul>
+ *
+ * <p>Options are {@code --name=value} arguments:</p>
+ * <ul>
+ *   <li>modes: comma separated modes (default Regex,Compiled,Engine)</li>
+ *   <li>statements: comma separated statement counts per policy (default 10,100)</li>
+ *   <li>vendors: number of vendors used for statement actions (default 8)</li>
+ *   <li>iterations: requests to evaluate per mode and policy (default 20000)</li>
+ * </ul>
+ * <p>One JSON object is printed per mode and statement count.</p>
+ */
+public class PolicyEvaluationBenchmark {
+
+  private static final List<String> VENDORS = ImmutableList.of(
+      "iam", "s3", "sts", "autoscaling", "cloudformation", "cloudwatch", "elasticloadbalancing", "ec2" );
+  private static final String ACTION = "ec2:DescribeImages";
+
+  enum Mode {
+    Regex,
+    Compiled,
+    Engine
+  }
+
+  private final List<Mode> modes = new ArrayList<>( );
+  private final List<Integer> statements = new ArrayList<>( );
+  private int vendors = VENDORS.size( );
+  private int iterations = 20_000;
+
+  public PolicyEvaluationBenchmark( final String[] args ) {
+    String modesOption = "Regex,Compiled,Engine";
+    String statementsOption = "10,100";
+    for ( final Map.Entry<String,String> option : Benchmarks.options( args ).entrySet( ) ) {
+      final String value = option.getValue( );
+      switch ( option.getKey( ) ) {
+        case "modes": modesOption = value; break;
+        case "statements": statementsOption = value; break;
+        case "vendors": vendors = Math.max( 1, Math.min( VENDORS.size( ), Integer.parseInt( value ) ) ); break;
+        case "iterations": iterations = Integer.parseInt( value ); break;
+        default: throw new IllegalArgumentException( "Unknown option: " + option.getKey( ) );
+      }
+    }
+    for ( final String mode : modesOption.split( "," ) ) {
+      modes.add( Mode.valueOf( mode ) );
+    }
+    for ( final String count : statementsOption.split( "," ) ) {
+      statements.add( Integer.parseInt( count ) );
+    }
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    for ( final Map<String,Object> result : new PolicyEvaluationBenchmark( args ).run( ) ) {
+      System.out.println( Benchmarks.toJson( result ) );
+    }
+    System.exit( 0 );
+  }
+
+  public List<Map<String,Object>> run( ) throws Exception {
+    final List<Map<String,Object>> results = new ArrayList<>( );
+    for ( final int count : statements ) {
+      final String policy = policy( count, vendors );
+      for ( final Mode mode : modes ) {
+        final Evaluator evaluator = evaluator( mode, policy );
+        for ( int i = 0; i < iterations; i++ ) { // warm up
+          evaluate( evaluator );
+        }
+        final long start = System.nanoTime( );
+        for ( int i = 0; i < iterations; i++ ) {
+          evaluate( evaluator );
+        }
+        final long nanos = System.nanoTime( ) - start;
+        final Map<String,Object> result = new LinkedHashMap<>( );
+        result.put( "mode", mode.name( ) );
+        result.put( "statements", count );
+        result.put( "vendors", vendors );
+        result.put( "iterations", iterations );
+        result.put( "millis", TimeUnit.NANOSECONDS.toMillis( nanos ) );
+        result.put( "microsPerRequest", ( nanos / 1e3 ) / iterations );
+        result.put( "requestsPerSecond", iterations / ( nanos / 1e9 ) );
+        results.add( result );
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Policy with the given number of statements, the last allowing the benchmark action.
+   */
+  static String policy( final int statements, final int vendors ) {
+    final StringBuilder policy = new StringBuilder( "{\"Statement\":[" );
+    for ( int i = 1; i < statements; i++ ) {
+      policy.append( "{\"Effect\":\"Allow\",\"Action\":[\"" )
+          .append( VENDORS.get( i % vendors ) ).append( ":Get" ).append( i ).append( "*\",\"" )
+          .append( VENDORS.get( i % vendors ) ).append( ":Put" ).append( i ).append( "\"],\"Resource\":\"*\"}," );
+    }
+    policy.append( "{\"Effect\":\"Allow\",\"Action\":\"" ).append( ACTION ).append( "\",\"Resource\":\"*\"}]}" );
+    return policy.toString( );
+  }
+
+  private static void evaluate( final Evaluator evaluator ) throws Exception {
+    if ( !evaluator.evaluate( ) ) {
+      throw new IllegalStateException( "Evaluation failed" );
+    }
+  }
+
+  private static Evaluator evaluator( final Mode mode, final String policy ) throws Exception {
+    final List<Authorization> authorizations = PolicyParser.getLaxInstance( ).parse( policy ).getAuthorizations( );
+    final String action = ACTION.toLowerCase( );
+    switch ( mode ) {
+      case Regex:
+        return ( ) -> {
+          boolean allow = false;
+          for ( final Authorization authorization : authorizations ) {
+            boolean matched = false;
+            for ( final String pattern : authorization.getActions( ) ) {
+              if ( Pattern.matches( PolicyUtils.toJavaPattern( pattern ), action ) ) {
+                matched = true;
+                break;
+              }
+            }
+            if ( matched != authorization.isNotAction( ) ) {
+              if ( authorization.getEffect( ) == Authorization.EffectType.Deny ) return false;
+              allow = true;
+            }
+          }
+          return allow;
+        };
+      case Compiled:
+        final CompiledPolicy compiledPolicy = new CompiledPolicy( authorizations );
+        return ( ) -> {
+          boolean allow = false;
+          for ( final CompiledAuthorization compiledAuthorization : compiledPolicy.forAction( action ) ) {
+            final Authorization authorization = compiledAuthorization.getAuthorization( );
+            if ( compiledAuthorization.matchesAction( action ) != authorization.isNotAction( ) ) {
+              if ( authorization.getEffect( ) == Authorization.EffectType.Deny ) return false;
+              allow = true;
+            }
+          }
+          return allow;
+        };
+      default:
+        final PolicyEngine engine = new PolicyEngineImpl(
+            Functions.<String>identity( ),
+            Suppliers.ofInstance( Boolean.FALSE ),
+            Suppliers.ofInstance( "region-1" ) );
+        final TestUser user = new TestUser( );
+        user.setName( "test" );
+        user.setPath( "/" );
+        user.setAccountNumber( "111111111111" );
+        user.activate( );
+        final List<PolicyVersion> policies = ImmutableList.of( policyVersion( policy ) );
+        return ( ) -> {
+          try {
+            engine.evaluateAuthorization(
+                engine.createEvaluationContext( "ec2:image", ACTION, user, Collections.emptyMap( ), policies ),
+                PolicyEngine.AuthorizationMatch.All,
+                "111111111111",
+                "emi-00000000",
+                Collections.emptyMap( ) );
+            return true;
+          } catch ( final AuthException e ) {
+            return false;
+          }
+        };
+    }
+  }
+
+  private static PolicyVersion policyVersion( final String policy ) {
+    final String hash = Hashing.sha256( ).hashString( policy, StandardCharsets.UTF_8 ).toString( );
+    return new PolicyVersion( ) {
+      @Override public String getPolicyVersionId( ) { return "1234567890"; }
+      @Override public String getPolicyName( ) { return "benchmark"; }
+      @Override public PolicyScope getPolicyScope( ) { return PolicyScope.User; }
+      @Override public String getPolicy( ) { return policy; }
+      @Override public String getPolicyHash( ) { return hash; }
+    };
+  }
+
+  private interface Evaluator {
+    boolean evaluate( ) throws Exception;
+  }
+}
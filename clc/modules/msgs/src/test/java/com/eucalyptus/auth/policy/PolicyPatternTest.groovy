@@ -0,0 +1,61 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.auth.policy
+
+import static org.junit.Assert.*
+import org.junit.Test
+import java.util.regex.Pattern
+
+class PolicyPatternTest {
+
+  private static final List<String> PATTERNS = [
+      '', '*', '**', '?', 'a', 'abc', 'a*', '*a', '*a*', 'a?c', 'a*c', 'a*b*c', '?*', '*?', 'a.c', 'a\\c',
+      'ec2:describe*', 'ec2:*instances', 'ec2:describe??stances', 'arn:aws:s3:::bucket/*', 'arn:aws:s3:::*/key',
+      'a\u00e9*', '*\u2028'
+  ]
+
+  private static final List<String> VALUES = [
+      '', 'a', 'b', 'ab', 'abc', 'abbc', 'aXbYc', 'a.c', 'abc\n', 'a\nc', 'a\u2028c', 'a\\c', 'ac',
+      'ec2:describeinstances', 'ec2:runinstances', 'ec2:describeimages', 'arn:aws:s3:::bucket/key',
+      'arn:aws:s3:::bucket/a/b', 'arn:aws:s3:::other/key', 'a\ud83d\ude00c', 'a\u00e9', '\u2028'
+  ]
+
+  @Test
+  void testMatchesAsRegex( ) {
+    PATTERNS.each { String pattern ->
+      PolicyPattern compiled = PolicyPattern.compile( pattern )
+      VALUES.each { String value ->
+        assertEquals(
+            "${pattern} ~= ${value}",
+            Pattern.matches( PolicyUtils.toJavaPattern( pattern ), value ),
+            compiled.matches( value ) )
+      }
+    }
+  }
+
+  @Test
+  void testLiteralPrefix( ) {
+    assertEquals( 'ec2:describe', PolicyPattern.compile( 'ec2:describe*' ).getLiteralPrefix( ) )
+    assertEquals( 'ec2:', PolicyPattern.compile( 'ec2:?escribe*' ).getLiteralPrefix( ) )
+    assertEquals( 'ec2:describeinstances', PolicyPattern.compile( 'ec2:describeinstances' ).getLiteralPrefix( ) )
+    assertEquals( '', PolicyPattern.compile( '*:describeinstances' ).getLiteralPrefix( ) )
+  }
+}
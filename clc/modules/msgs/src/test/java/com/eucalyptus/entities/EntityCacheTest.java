@@ -0,0 +1,222 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.entities;
+
+import static org.junit.Assert.*;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.junit.Test;
+import com.eucalyptus.util.Pair;
+import com.google.common.base.Function;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Unit tests for entity cache change notification
+ */
+public class EntityCacheTest {
+
+  @Test
+  public void testChangedIdsReloaded( ) {
+    final TestLoader loader = new TestLoader( );
+    loader.put( "1", 0, "a" );
+    loader.put( "2", 0, "b" );
+    loader.put( "3", 0, "c" );
+    final EntityCache<ChangedEntity,String> cache = cache( ChangedEntity.class, loader, new AtomicLong( ) );
+    assertEquals( "Initial", ImmutableList.of( "1:0:a", "2:0:b", "3:0:c" ), ImmutableList.copyOf( cache.get( ) ) );
+    assertEquals( "Initial version map loads", 1, loader.versionMapLoads );
+
+    loader.put( "2", 1, "b2" );
+    loader.loads.clear( );
+    EntityChanges.committed( ImmutableMultimap.<Class<?>,String>of( ChangedEntity.class, "2" ) );
+    assertEquals( "Changed", ImmutableList.of( "1:0:a", "2:1:b2", "3:0:c" ), ImmutableList.copyOf( cache.get( ) ) );
+    assertEquals( "Loads", ImmutableList.of( ImmutableList.of( "2" ) ), loader.loads );
+    assertEquals( "Version map loads", 1, loader.versionMapLoads );
+  }
+
+  @Test
+  public void testNoLongerMatchingDropped( ) {
+    final TestLoader loader = new TestLoader( );
+    loader.put( "1", 0, "a" );
+    loader.put( "2", 0, "b" );
+    final EntityCache<DroppedEntity,String> cache = cache( DroppedEntity.class, loader, new AtomicLong( ) );
+    assertEquals( "Initial", ImmutableList.of( "1:0:a", "2:0:b" ), ImmutableList.copyOf( cache.get( ) ) );
+
+    loader.entities.remove( "2" );
+    EntityChanges.committed( ImmutableMultimap.<Class<?>,String>of( DroppedEntity.class, "2" ) );
+    assertEquals( "Dropped", ImmutableList.of( "1:0:a" ), ImmutableList.copyOf( cache.get( ) ) );
+  }
+
+  @Test
+  public void testRollbackNotNotified( ) {
+    final List<String> notified = Lists.newArrayList( );
+    EntityChanges.register( InterceptedEntity.class, new EntityChanges.Listener( ) {
+      @Override
+      public void changed( final Collection<String> ids ) {
+        notified.addAll( ids );
+      }
+    } );
+    final DelegatingInterceptor interceptor = new DelegatingInterceptor( new EmptyInterceptor( ) { } );
+    final InterceptedEntity entity = new InterceptedEntity( );
+
+    interceptor.afterTransactionBegin( transaction( false ) );
+    interceptor.onSave( entity, "1", null, null, null );
+    interceptor.afterTransactionCompletion( transaction( false ) );
+    assertEquals( "Rolled back", ImmutableList.of( ), notified );
+
+    interceptor.afterTransactionBegin( transaction( true ) );
+    interceptor.onFlushDirty( entity, "2", null, null, null, null );
+    interceptor.afterTransactionCompletion( transaction( true ) );
+    assertEquals( "Committed", ImmutableList.of( "2" ), notified );
+
+    interceptor.afterTransactionBegin( transaction( true ) );
+    interceptor.afterTransactionCompletion( transaction( true ) );
+    assertEquals( "No changes", ImmutableList.of( "2" ), notified );
+  }
+
+  @Test
+  public void testPeriodicFullRefresh( ) {
+    final AtomicLong time = new AtomicLong( );
+    final TestLoader loader = new TestLoader( );
+    loader.put( "1", 0, "a" );
+    loader.put( "2", 0, "b" );
+    final EntityCache<RefreshedEntity,String> cache = cache( RefreshedEntity.class, loader, time );
+    assertEquals( "Initial", ImmutableList.of( "1:0:a", "2:0:b" ), ImmutableList.copyOf( cache.get( ) ) );
+
+    // changes not notified, e.g. from another host
+    loader.put( "1", 1, "a2" );
+    loader.entities.remove( "2" );
+    loader.put( "3", 0, "c" );
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 30 ) );
+    assertEquals( "Before refresh", ImmutableList.of( "1:0:a", "2:0:b" ), ImmutableList.copyOf( cache.get( ) ) );
+    assertEquals( "Version map loads", 1, loader.versionMapLoads );
+
+    time.addAndGet( TimeUnit.SECONDS.toNanos( 30 ) );
+    assertEquals( "After refresh", ImmutableList.of( "1:1:a2", "3:0:c" ), ImmutableList.copyOf( cache.get( ) ) );
+    assertEquals( "Version map loads", 2, loader.versionMapLoads );
+  }
+
+  @Test
+  public void testSnapshotReused( ) {
+    final AtomicLong time = new AtomicLong( );
+    final TestLoader loader = new TestLoader( );
+    loader.put( "1", 0, "a" );
+    final EntityCache<SnapshotEntity,String> cache = cache( SnapshotEntity.class, loader, time );
+    final Iterable<String> snapshot = cache.get( );
+    assertSame( "Snapshot without changes", snapshot, cache.get( ) );
+    time.addAndGet( TimeUnit.MINUTES.toNanos( 2 ) );
+    assertSame( "Snapshot after unmodified full refresh", snapshot, cache.get( ) );
+    assertEquals( "Version map loads", 2, loader.versionMapLoads );
+
+    loader.put( "1", 1, "a2" );
+    EntityChanges.committed( ImmutableMultimap.<Class<?>,String>of( SnapshotEntity.class, "1" ) );
+    final Iterable<String> changed = cache.get( );
+    assertNotSame( "Snapshot after change", snapshot, changed );
+    assertEquals( "Changed", ImmutableList.of( "1:1:a2" ), ImmutableList.copyOf( changed ) );
+  }
+
+  private static <E extends TestEntity> EntityCache<E,String> cache( final Class<E> type,
+                                                                     final TestLoader loader,
+                                                                     final AtomicLong time ) {
+    return new EntityCache<E,String>( type, loader.as( type ), new Function<E,String>( ) {
+      @Override
+      public String apply( final E entity ) {
+        return entity.id + ":" + entity.getVersion( ) + ":" + entity.value;
+      }
+    }, new Ticker( ) {
+      @Override
+      public long read( ) {
+        return time.get( );
+      }
+    } ).withChangeNotification( );
+  }
+
+  private static Transaction transaction( final boolean committed ) {
+    return (Transaction) Proxy.newProxyInstance(
+        EntityCacheTest.class.getClassLoader( ),
+        new Class<?>[]{ Transaction.class },
+        ( proxy, method, args ) -> "wasCommitted".equals( method.getName( ) ) ? committed : null );
+  }
+
+  /**
+   * In-memory entities, each load creates new instances of the requested type.
+   */
+  private static final class TestLoader {
+    private final Map<String,Pair<Integer,String>> entities = Maps.newTreeMap( );
+    private final List<List<String>> loads = Lists.newArrayList( );
+    private int versionMapLoads;
+
+    void put( final String id, final int version, final String value ) {
+      entities.put( id, Pair.pair( version, value ) );
+    }
+
+    <E extends TestEntity> EntityCache.Loader<E> as( final Class<E> type ) {
+      return new EntityCache.Loader<E>( ) {
+        @Override
+        public Collection<Pair<String,Integer>> loadVersionMap( ) {
+          versionMapLoads++;
+          final List<Pair<String,Integer>> versions = Lists.newArrayList( );
+          for ( final Map.Entry<String,Pair<Integer,String>> entry : entities.entrySet( ) ) {
+            versions.add( Pair.pair( entry.getKey( ), entry.getValue( ).getLeft( ) ) );
+          }
+          return versions;
+        }
+
+        @Override
+        public Map<Pair<String,Integer>,E> load( final List<String> ids ) {
+          loads.add( ImmutableList.copyOf( ids ) );
+          final Map<Pair<String,Integer>,E> loaded = Maps.newLinkedHashMap( );
+          for ( final String id : ids ) {
+            final Pair<Integer,String> versionAndValue = entities.get( id );
+            if ( versionAndValue != null ) try {
+              final E entity = type.getConstructor( ).newInstance( );
+              entity.id = id;
+              entity.setVersion( versionAndValue.getLeft( ) );
+              entity.value = versionAndValue.getRight( );
+              loaded.put( Pair.pair( id, versionAndValue.getLeft( ) ), entity );
+            } catch ( final ReflectiveOperationException e ) {
+              throw new RuntimeException( e );
+            }
+          }
+          return loaded;
+        }
+      };
+    }
+  }
+
+  // entity types are distinct per test as change listeners are registered globally
+  public static class TestEntity extends AbstractPersistent {
+    String value;
+  }
+  public static class ChangedEntity extends TestEntity { }
+  public static class DroppedEntity extends TestEntity { }
+  public static class InterceptedEntity extends TestEntity { }
+  public static class RefreshedEntity extends TestEntity { }
+  public static class SnapshotEntity extends TestEntity { }
+}
@@ -0,0 +1,96 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.nio.charset.StandardCharsets;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class ChannelBufferStreamingInputStreamTest {
+
+  @Test
+  public void testSingleByteRead() throws Exception {
+    final ChannelBufferStreamingInputStream in =
+        new ChannelBufferStreamingInputStream(ChannelBuffers.wrappedBuffer(new byte[]{1, 127, (byte) 0x80, (byte) 0xff}));
+    assertEquals("first byte", 1, in.read());
+    assertEquals("second byte", 127, in.read());
+    assertEquals("unsigned byte", 128, in.read());
+    assertEquals("unsigned byte", 255, in.read());
+    assertEquals("bytes read", 4, in.readBytes());
+  }
+
+  @Test
+  public void testReadAcrossBuffers() throws Exception {
+    final ChannelBufferStreamingInputStream in = new ChannelBufferStreamingInputStream(buffer("abc"));
+    in.putChunk(buffer(""));
+    in.putChunk(buffer("defg"));
+    in.putChunk(buffer("hij"));
+    final byte[] bytes = new byte[6];
+    assertEquals("bytes read into array", 6, in.read(bytes, 0, bytes.length));
+    assertArrayEquals("content across buffers", "abcdef".getBytes(StandardCharsets.UTF_8), bytes);
+    assertEquals("single byte within buffer", 'g', in.read());
+    assertEquals("single byte across buffer", 'h', in.read());
+    assertEquals("bytes read into array at offset", 2, in.read(bytes, 1, 2));
+    assertEquals("content at offset", 'i', bytes[1]);
+    assertEquals("content at offset", 'j', bytes[2]);
+    assertEquals("bytes read", 10, in.readBytes());
+  }
+
+  @Test
+  public void testEndOfStream() throws Exception {
+    final ChannelBufferStreamingInputStream in = new ChannelBufferStreamingInputStream(buffer("a"));
+    in.putChunk(buffer("bc"));
+    final int timeout = ChannelBufferStreamingInputStream.QUEUE_TIMEOUT;
+    ChannelBufferStreamingInputStream.QUEUE_TIMEOUT = 0;
+    try {
+      assertEquals("single byte", 'a', in.read());
+      final byte[] bytes = new byte[4];
+      assertEquals("partial read at end of stream", 2, in.read(bytes, 0, bytes.length));
+      assertEquals("single byte at end of stream", -1, in.read());
+      assertEquals("array read at end of stream", -1, in.read(bytes, 0, bytes.length));
+      assertEquals("bytes read", 3, in.readBytes());
+    } finally {
+      ChannelBufferStreamingInputStream.QUEUE_TIMEOUT = timeout;
+    }
+  }
+
+  @Test
+  public void testWrappedBufferNotCopied() throws Exception {
+    final byte[] initial = "abc".getBytes(StandardCharsets.UTF_8);
+    final byte[] chunk = "def".getBytes(StandardCharsets.UTF_8);
+    final ChannelBufferStreamingInputStream in = new ChannelBufferStreamingInputStream(ChannelBuffers.wrappedBuffer(initial));
+    in.putChunk(ChannelBuffers.wrappedBuffer(chunk));
+    initial[1] = 'B';
+    chunk[0] = 'D';
+    final byte[] bytes = new byte[6];
+    assertEquals("bytes read", 6, in.read(bytes, 0, bytes.length));
+    assertArrayEquals("content read from the wrapped arrays", "aBcDef".getBytes(StandardCharsets.UTF_8), bytes);
+  }
+
+  private static ChannelBuffer buffer(final String content) {
+    return ChannelBuffers.wrappedBuffer(content.getBytes(StandardCharsets.UTF_8));
+  }
+}
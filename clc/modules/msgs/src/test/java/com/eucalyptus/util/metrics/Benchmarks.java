@@ -0,0 +1,84 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import com.eucalyptus.util.Json;
+
+/**
+ * Argument parsing and result output shared by benchmark harnesses.
+ */
+public class Benchmarks {
+
+  /**
+   * Options from {@code --name=value} arguments.
+   */
+  public static Map<String,String> options( final String[] args ) {
+    return options( null, args );
+  }
+
+  /**
+   * Options from system properties with the given prefix and {@code --name=value}
+   * arguments, arguments take precedence.
+   */
+  public static Map<String,String> options( final String propertyPrefix, final String[] args ) {
+    final Map<String,String> options = new LinkedHashMap<>( );
+    if ( propertyPrefix != null ) {
+      for ( final String name : System.getProperties( ).stringPropertyNames( ) ) {
+        if ( name.startsWith( propertyPrefix ) ) {
+          options.put( name.substring( propertyPrefix.length( ) ), System.getProperty( name ) );
+        }
+      }
+    }
+    for ( final String arg : args ) {
+      final int index = arg.indexOf( '=' );
+      if ( !arg.startsWith( "--" ) || index < 0 ) {
+        throw new IllegalArgumentException( "Invalid argument, expected --name=value: " + arg );
+      }
+      options.put( arg.substring( 2, index ), arg.substring( index + 1 ) );
+    }
+    return options;
+  }
+
+  /**
+   * Parse a size in bytes with an optional k/m/g suffix.
+   */
+  public static long parseSize( final String size ) {
+    final String lower = size.trim( ).toLowerCase( Locale.ROOT );
+    final char unit = lower.charAt( lower.length( ) - 1 );
+    final long multiplier = unit == 'k' ? 1024L : unit == 'm' ? 1024L * 1024 : unit == 'g' ? 1024L * 1024 * 1024 : 1L;
+    return Long.parseLong( multiplier == 1L ? lower : lower.substring( 0, lower.length( ) - 1 ) ) * multiplier;
+  }
+
+  /**
+   * Result as a single line of JSON.
+   */
+  public static String toJson( final Object result ) {
+    try {
+      return Json.writeObjectAsString( result );
+    } catch ( final IOException e ) {
+      throw new UncheckedIOException( e );
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util.metrics
+
+import groovy.transform.CompileStatic
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+
+/**
+ *
+ */
+@CompileStatic
+class BenchmarksTest {
+
+  @Test
+  void testOptions( ) {
+    System.setProperty( 'benchmarks.test.a', '1' )
+    System.setProperty( 'benchmarks.test.b', '2' )
+    try {
+      assertEquals( 'options', [ a: '1', b: '3', c: 'x=y' ],
+          Benchmarks.options( 'benchmarks.test.', [ '--b=3', '--c=x=y' ] as String[] ) )
+      assertEquals( 'options without prefix', [ b: '3' ], Benchmarks.options( [ '--b=3' ] as String[] ) )
+    } finally {
+      System.clearProperty( 'benchmarks.test.a' )
+      System.clearProperty( 'benchmarks.test.b' )
+    }
+  }
+
+  @Test( expected = IllegalArgumentException )
+  void testInvalidOption( ) {
+    Benchmarks.options( [ 'b=3' ] as String[] )
+  }
+
+  @Test
+  void testParseSize( ) {
+    assertEquals( 'bytes', 100L, Benchmarks.parseSize( '100' ) )
+    assertEquals( 'kilobytes', 2048L, Benchmarks.parseSize( '2k' ) )
+    assertEquals( 'megabytes', 1048576L, Benchmarks.parseSize( '1M' ) )
+    assertEquals( 'gigabytes', 5368709120L, Benchmarks.parseSize( '5g' ) )
+  }
+
+  @Test
+  void testJson( ) {
+    assertEquals( 'json', '{"a":1,"b":"x\\"y","c":{"d":null,"e":true}}',
+        Benchmarks.toJson( [ a: 1, b: 'x"y', c: [ d: null, e: true ] ] ) )
+  }
+}
@@ -44,6 +44,20 @@ class QueueThruputTest {
       );
   }
 
+  @Test
+  public void testAggWindow() {
+    int size = MetricsConfiguration.METRICS_COLLECTION_SIZE
+    ThruputMetrics.changeSize(size)
+    for (int i=0; i < size * 3;i++)
+      ThruputMetrics.addDataPoint(MonitoredAction.CLUSTER_DEAL_WITH_ABSOLUTE_METRICS, i);
+    // aggregates cover the most recent data points only
+    Aggregates res = ThruputMetrics.getAggregates(MonitoredAction.CLUSTER_DEAL_WITH_ABSOLUTE_METRICS)
+    assertEquals(size, res.count)
+    assertEquals(size * 2, res.min)
+    assertEquals(size * 3 - 1, res.max)
+    assertEquals(size * 3, ThruputMetrics.getIntervalAggregates(MonitoredAction.CLUSTER_DEAL_WITH_ABSOLUTE_METRICS).count)
+  }
+
   @Test
   public void testAgg() {
     ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_SIZE, 18).get(3, TimeUnit.SECONDS);
@@ -94,6 +108,33 @@ class QueueThruputTest {
     assertEquals(6, res.thirdQuartile, 0.01);
   }
   
+  @Test
+  public void testPercentiles() {
+    for(int i=1; i<=1000; i++)
+      ThruputMetrics.addDataPoint(MonitoredAction.CLUSTER_FOLD_METRICS, i * 1000)
+    Aggregates res = ThruputMetrics.getAggregates(MonitoredAction.CLUSTER_FOLD_METRICS)
+    assertEquals(1000, res.count)
+    assertEquals(1000, res.min)
+    assertEquals(1000000, res.max)
+    assertEquals(500500, res.median, 0.01)
+    assertEquals(900000, res.p90)
+    assertEquals(990000, res.p99)
+    assertEquals(999000, res.p999)
+  }
+
+  @Test
+  public void testInterval() {
+    for(int i=0; i<10; i++)
+      ThruputMetrics.addDataPoint(MonitoredAction.CLUSTER_CONVERT_TO_PUT_METRIC_DATA_LIST, 10)
+    assertEquals(10, ThruputMetrics.getIntervalAggregates(MonitoredAction.CLUSTER_CONVERT_TO_PUT_METRIC_DATA_LIST).count)
+    ThruputMetrics.addDataPoint(MonitoredAction.CLUSTER_CONVERT_TO_PUT_METRIC_DATA_LIST, 20)
+    Aggregates res = ThruputMetrics.getIntervalAggregates(MonitoredAction.CLUSTER_CONVERT_TO_PUT_METRIC_DATA_LIST)
+    assertEquals(1, res.count)
+    assertEquals(20, res.min)
+    assertEquals(20, res.max)
+    assertEquals(11, ThruputMetrics.getAggregates(MonitoredAction.CLUSTER_CONVERT_TO_PUT_METRIC_DATA_LIST).count)
+  }
+
   @Test
   public void testNegative() {
     for(int i=-1; i>-50; i--)
@@ -119,6 +160,28 @@ class QueueThruputTest {
     assertEquals(50, res.length);
     // last one should be 100 + 49
     assertEquals(149, res[49].value);
+    ThruputMetrics.changeSize(MetricsConfiguration.METRICS_COLLECTION_SIZE);
+  }
+
+  @Test
+  public void testConcurrentDataPoints() {
+    List<Thread> writers = (1..4).collect { int writer ->
+      Thread.start {
+        for(int i=1; i<=20000; i++)
+          ThruputMetrics.addDataPoint(MonitoredAction.CREATE_VOLUME_FROM_SNAPSHOT, i);
+      }
+    }
+    while(writers.any { Thread writer -> writer.isAlive() }) {
+      // data points being written are skipped rather than read as empty
+      for(DataPoint dataPoint : ThruputMetrics.getDataPoints(MonitoredAction.CREATE_VOLUME_FROM_SNAPSHOT)) {
+        assertTrue(dataPoint.collectionTimeMs > 0);
+        assertTrue(dataPoint.value > 0);
+      }
+    }
+    writers*.join();
+    assertEquals(MetricsConfiguration.METRICS_COLLECTION_SIZE,
+      ThruputMetrics.getAggregates(MonitoredAction.CREATE_VOLUME_FROM_SNAPSHOT).count);
+    assertEquals(80000, ThruputMetrics.getIntervalAggregates(MonitoredAction.CREATE_VOLUME_FROM_SNAPSHOT).count);
   }
 }
 
@@ -119,6 +119,16 @@ class BaseQueryBindingTest {
     assertEquals( "Data value", [ new NestedDataChild( child: new NestedDataGrandChild( member: [ new NestedDataGrandChildValue(value: "a"),new NestedDataGrandChildValue(value: "b"),new NestedDataGrandChildValue(value: "c")], ints: [3,2,1] ) ), new NestedDataChild( child: new NestedDataGrandChild( member: [new NestedDataGrandChildValue(value: "z"),new NestedDataGrandChildValue(value: "y"),new NestedDataGrandChildValue(value: "x")], ints: [1,2,3] ) ) ], nestedData.data )
   }
 
+  @Test
+  void testRepeatedBinding() {
+    BaseQueryBinding binding = new TestQueryBinding( new TestBinding() );
+
+    NestedData first = (NestedData) bind( binding, "/service?Operation=NestedData&Data.1.child.member.1=a&Data.1.child.ints.1=3" )
+    NestedData second = (NestedData) bind( binding, "/service?Operation=NestedData&Data.1.child.member.1=z&Data.1.child.member.2=y&Data.1.child.ints.1=1" )
+    assertEquals( "First data value", [ new NestedDataChild( child: new NestedDataGrandChild( member: [ new NestedDataGrandChildValue(value: "a") ], ints: [3] ) ) ], first.data )
+    assertEquals( "Second data value", [ new NestedDataChild( child: new NestedDataGrandChild( member: [ new NestedDataGrandChildValue(value: "z"), new NestedDataGrandChildValue(value: "y") ], ints: [1] ) ) ], second.data )
+  }
+
   @Test
   void testHttpEmbeddedAnnotation() {
     BaseQueryBinding binding = new TestQueryBinding( new TestBinding() );
@@ -209,6 +219,72 @@ class BaseQueryBindingTest {
     assertNull( "Data value", httpValueTypes.dataValue  )
   }
 
+  @Test
+  void testNestedFieldBinding( ) {
+    Object boundObject = QueryBindingBenchmark.bind( QueryBindingBenchmark.binding( ), QueryBindingBenchmark.query( 'RunInstances', 2 ) )
+    assertTrue( "Bound type", boundObject instanceof QueryBindingBenchmark.RunInstancesType )
+    QueryBindingBenchmark.RunInstancesType runInstances = (QueryBindingBenchmark.RunInstancesType) boundObject
+    assertEquals( "Image", "emi-00000001", runInstances.imageId )
+    assertEquals( "Min count", 1, runInstances.minCount )
+    assertEquals( "Max count", 2, runInstances.maxCount )
+    assertEquals( "Instance type", "m1.small", runInstances.instanceType )
+    assertEquals( "Availability zone", "zone-1", runInstances.placement?.availabilityZone )
+    assertEquals( "Placement group", "group", runInstances.placement?.groupName )
+    assertEquals( "Monitoring", true, runInstances.monitoring?.enabled )
+    assertEquals( "Device names", [ "/dev/sd1", "/dev/sd2" ], runInstances.blockDeviceMapping*.deviceName )
+    assertEquals( "Volume sizes", [ 1, 2 ], runInstances.blockDeviceMapping*.ebs*.volumeSize )
+    assertEquals( "Delete on termination", [ false, true ], runInstances.blockDeviceMapping*.ebs*.deleteOnTermination )
+  }
+
+  @Test
+  void testListFieldBinding( ) {
+    Object boundObject = QueryBindingBenchmark.bind( QueryBindingBenchmark.binding( ), QueryBindingBenchmark.query( 'DescribeInstances', 11 ) )
+    assertTrue( "Bound type", boundObject instanceof QueryBindingBenchmark.DescribeInstancesType )
+    QueryBindingBenchmark.DescribeInstancesType describeInstances = (QueryBindingBenchmark.DescribeInstancesType) boundObject
+    assertEquals( "Instance ids", ( 1..11 ).collect{ "i-${String.format( '%08x', it )}".toString( ) }, describeInstances.instancesSet )
+    assertEquals( "Filter names", [ "instance-state-name", "tag:Name" ], describeInstances.filterSet*.name )
+    assertEquals( "Filter values", ( 1..11 ).collect{ "state${it}".toString( ) }, describeInstances.filterSet[0].valueSet )
+    assertEquals( "Filter values", [ "web" ], describeInstances.filterSet[1].valueSet )
+
+    MultipleSimpleTypes multipleSimpleTypes = (MultipleSimpleTypes) bind( new TestQueryBinding( new TestBinding() ),
+        "/service?Action=MultipleSimpleTypes&StringValue.10=j&StringValue.9=i&StringValue.02=b&StringValue.1=a&StringValues.3=x" )
+    assertEquals( "String value", [ "a", "b", "i", "j" ], multipleSimpleTypes.stringValue )
+  }
+
+  @Test
+  void testMapFieldBinding( ) {
+    Object boundObject = QueryBindingBenchmark.bind( QueryBindingBenchmark.binding( ), QueryBindingBenchmark.query( 'PutMetricData', 2 ) )
+    assertTrue( "Bound type", boundObject instanceof QueryBindingBenchmark.PutMetricDataType )
+    QueryBindingBenchmark.PutMetricDataType putMetricData = (QueryBindingBenchmark.PutMetricDataType) boundObject
+    assertEquals( "Namespace", "Benchmark", putMetricData.namespace )
+    assertEquals( "Metric names", [ "Metric1", "Metric2" ], putMetricData.metricData*.metricName )
+    assertEquals( "Units", [ "Count", "Count" ], putMetricData.metricData*.unit )
+    assertEquals( "Values", [ 1.5d, 2.5d ], putMetricData.metricData*.value )
+    assertEquals( "Timestamps", [ new Date( 1451606400000L ), new Date( 1451606400000L ) ], putMetricData.metricData*.timestamp )
+    assertEquals( "Dimensions", [ InstanceId: "i-00000001", ImageId: "emi-00000001" ],
+        putMetricData.metricData[0].dimensions.collectEntries{ [ (it.name): it.value ] } )
+    assertEquals( "Dimensions", [ InstanceId: "i-00000002", ImageId: "emi-00000001" ],
+        putMetricData.metricData[1].dimensions.collectEntries{ [ (it.name): it.value ] } )
+  }
+
+  @Test
+  void testUnboundParametersRetained( ) {
+    MappingHttpRequest request = new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.GET,
+        "/service?Action=SingleSimpleTypes&StringValue=text&Unknown=value&Unknown.1=value1" )
+    SingleSimpleTypes singleSimpleTypes = (SingleSimpleTypes) new TestQueryBinding( new TestBinding() ).bind( request )
+    assertEquals( "String value", "text", singleSimpleTypes.stringValue )
+    assertEquals( "Unbound parameters", [ "Unknown": "value", "Unknown.1": "value1" ], request.getParameters( ) )
+  }
+
+  @Test
+  void testFieldWithoutAccessors( ) {
+    Object fieldTypesObject = bind( new TestQueryBinding( new TestBinding() ), "/service?Action=FieldTypes&FieldValue=text&FieldValues.1=a&FieldValues.2=b" )
+    assertTrue( "Bound type", fieldTypesObject instanceof FieldTypes )
+    FieldTypes fieldTypes = (FieldTypes) fieldTypesObject
+    assertEquals( "Field value", "text", fieldTypes.fieldValue( ) )
+    assertEquals( "Field values", [ "a", "b" ], fieldTypes.fieldValues( ) )
+  }
+
   Object bind( BaseQueryBinding binding, String url ) {
     binding.bind( new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.GET, url ) )
   }
@@ -225,7 +301,8 @@ class BaseQueryBindingTest {
         NestedData,
         HttpValueTypes,
         DataValue,
-        DataValueWrapper
+        DataValueWrapper,
+        FieldTypes
     ]
 
     TestBinding() {
@@ -468,3 +545,16 @@ class NestedDataGrandChildValue extends EucalyptusData {
     return value.hashCode()
   }
 }
+
+class FieldTypes extends EucalyptusMessage {
+  private String fieldValue
+  private ArrayList<String> fieldValues = Lists.newArrayList()
+
+  String fieldValue() {
+    fieldValue
+  }
+
+  List<String> fieldValues() {
+    fieldValues
+  }
+}
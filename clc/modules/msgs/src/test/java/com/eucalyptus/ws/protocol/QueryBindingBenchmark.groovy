@@ -0,0 +1,251 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.protocol
+
+import com.eucalyptus.binding.Binding
+import com.eucalyptus.binding.HttpEmbedded
+import com.eucalyptus.binding.HttpParameterMapping
+import com.eucalyptus.http.MappingHttpRequest
+import com.eucalyptus.util.metrics.Benchmarks
+import com.google.common.collect.Lists
+import edu.ucsb.eucalyptus.msgs.EucalyptusData
+import edu.ucsb.eucalyptus.msgs.EucalyptusMessage
+import groovy.transform.CompileStatic
+import org.jboss.netty.handler.codec.http.HttpMethod
+import org.jboss.netty.handler.codec.http.HttpVersion
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmark for query request binding.
+ *
+ * <p>Binds DescribeInstances, RunInstances and PutMetricData shaped requests
+ * with the given number of members in each list and reports the cost per
+ * request, including decoding of the query string.</p>
+ *
+ * <p>Options are {@code --name=value} arguments:</p>
+ * <ul>
+ *   <li>operations: comma separated operations (default DescribeInstances,RunInstances,PutMetricData)</li>
+ *   <li>members: comma separated list member counts (default 1,10,100)</li>
+ *   <li>iterations: measured requests per operation and member count (default 2000)</li>
+ * </ul>
+ * <p>One JSON object is printed per operation and member count.</p>
+ */
+@CompileStatic
+class QueryBindingBenchmark {
+
+  private final List<String> operations = [ 'DescribeInstances', 'RunInstances', 'PutMetricData' ]
+  private final List<Integer> members = [ 1, 10, 100 ]
+  private int iterations = 2000
+
+  QueryBindingBenchmark( final String[] args ) {
+    Benchmarks.options( args ).each { String name, String value ->
+      switch ( name ) {
+        case 'operations':
+          operations.clear( )
+          operations.addAll( value.split( ',' ) )
+          break
+        case 'members':
+          members.clear( )
+          members.addAll( value.split( ',' ).collect{ String count -> Integer.valueOf( count ) } )
+          break
+        case 'iterations':
+          iterations = Integer.parseInt( value )
+          break
+        default:
+          throw new IllegalArgumentException( "Unknown option: ${name}" )
+      }
+    }
+  }
+
+  static void main( final String[] args ) {
+    for ( final Map<String,Object> result : new QueryBindingBenchmark( args ).run( ) ) {
+      System.out.println( Benchmarks.toJson( result ) )
+    }
+    System.exit( 0 )
+  }
+
+  List<Map<String,Object>> run( ) {
+    final List<Map<String,Object>> results = [ ]
+    final BaseQueryBinding binding = binding( )
+    for ( final String operation : operations ) {
+      for ( final int count : members ) {
+        final String query = query( operation, count )
+        for ( int i = 0; i < iterations; i++ ) { // warm up
+          bind( binding, query )
+        }
+        final long start = System.nanoTime( )
+        for ( int i = 0; i < iterations; i++ ) {
+          bind( binding, query )
+        }
+        final long nanos = System.nanoTime( ) - start
+        final Map<String,Object> result = new LinkedHashMap<>( )
+        result.put( 'operation', operation )
+        result.put( 'members', count )
+        result.put( 'parameters', query.split( '&' ).length )
+        result.put( 'iterations', iterations )
+        result.put( 'millis', TimeUnit.NANOSECONDS.toMillis( nanos ) )
+        result.put( 'microsPerRequest', ( nanos / 1e3d ) / iterations )
+        result.put( 'requestsPerSecond', iterations / ( nanos / 1e9d ) )
+        results.add( result )
+      }
+    }
+    results
+  }
+
+  static BaseQueryBinding binding( ) {
+    new TestQueryBinding( new BenchmarkBinding( ) )
+  }
+
+  static Object bind( final BaseQueryBinding binding, final String query ) {
+    binding.bind( new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.POST, "/service?${query}" ) )
+  }
+
+  /**
+   * Query string for the operation with the given number of members in each list.
+   */
+  static String query( final String operation, final int members ) {
+    final List<String> parameters = [ "Action=${operation}".toString( ) ]
+    switch ( operation ) {
+      case 'DescribeInstances':
+        ( 1..members ).each { int i ->
+          parameters << "InstanceId.${i}=i-${String.format( '%08x', i )}".toString( )
+        }
+        parameters << 'Filter.1.Name=instance-state-name'
+        ( 1..members ).each { int i ->
+          parameters << "Filter.1.Value.${i}=state${i}".toString( )
+        }
+        parameters << 'Filter.2.Name=tag:Name' << 'Filter.2.Value.1=web'
+        break
+      case 'RunInstances':
+        parameters << 'ImageId=emi-00000001' << 'MinCount=1' << 'MaxCount=2' << 'InstanceType=m1.small'
+        parameters << 'Placement.AvailabilityZone=zone-1' << 'Placement.GroupName=group' << 'Monitoring.Enabled=true'
+        ( 1..members ).each { int i ->
+          parameters << "SecurityGroupId.${i}=sg-${String.format( '%08x', i )}".toString( )
+          parameters << "BlockDeviceMapping.${i}.DeviceName=/dev/sd${i}".toString( )
+          parameters << "BlockDeviceMapping.${i}.Ebs.VolumeSize=${i}".toString( )
+          parameters << "BlockDeviceMapping.${i}.Ebs.DeleteOnTermination=${i % 2 == 0}".toString( )
+        }
+        break
+      case 'PutMetricData':
+        parameters << 'Namespace=Benchmark'
+        ( 1..members ).each { int i ->
+          parameters << "MetricData.member.${i}.MetricName=Metric${i}".toString( )
+          parameters << "MetricData.member.${i}.Unit=Count".toString( )
+          parameters << "MetricData.member.${i}.Value=${i}.5".toString( )
+          parameters << "MetricData.member.${i}.Timestamp=2016-01-01T00:00:00.000Z".toString( )
+          parameters << "MetricData.member.${i}.Dimensions.member.1.Name=InstanceId".toString( )
+          parameters << "MetricData.member.${i}.Dimensions.member.1.Value=i-${String.format( '%08x', i )}".toString( )
+          parameters << "MetricData.member.${i}.Dimensions.member.2.Name=ImageId".toString( )
+          parameters << "MetricData.member.${i}.Dimensions.member.2.Value=emi-00000001".toString( )
+        }
+        break
+      default:
+        throw new IllegalArgumentException( "Unknown operation: ${operation}" )
+    }
+    parameters.join( '&' )
+  }
+
+  static class BenchmarkBinding extends Binding {
+    private static final List<Class> requestMessageClasses = [
+        DescribeInstancesType,
+        RunInstancesType,
+        PutMetricDataType,
+    ] as List<Class>
+
+    BenchmarkBinding( ) {
+      super( 'benchmark_binding' )
+    }
+
+    @Override
+    Class getElementClass( final String elementName ) {
+      requestMessageClasses.find{ Class clazz -> clazz.getSimpleName( ).equals( elementName ) }
+    }
+  }
+
+  static class DescribeInstancesType extends EucalyptusMessage {
+    @HttpParameterMapping( parameter = "InstanceId" )
+    ArrayList<String> instancesSet = Lists.newArrayList( )
+    @HttpParameterMapping( parameter = "Filter" )
+    @HttpEmbedded( multiple = true )
+    ArrayList<Filter> filterSet = Lists.newArrayList( )
+  }
+
+  static class Filter extends EucalyptusData {
+    String name
+    @HttpParameterMapping( parameter = "Value" )
+    ArrayList<String> valueSet = Lists.newArrayList( )
+  }
+
+  static class RunInstancesType extends EucalyptusMessage {
+    String imageId
+    int minCount
+    int maxCount
+    String instanceType
+    @HttpParameterMapping( parameter = "SecurityGroupId" )
+    ArrayList<String> groupIdSet = Lists.newArrayList( )
+    @HttpParameterMapping( parameter = "BlockDeviceMapping" )
+    @HttpEmbedded( multiple = true )
+    ArrayList<BlockDeviceMapping> blockDeviceMapping = Lists.newArrayList( )
+    Placement placement
+    Monitoring monitoring
+  }
+
+  static class Placement extends EucalyptusData {
+    String availabilityZone
+    String groupName
+  }
+
+  static class Monitoring extends EucalyptusData {
+    Boolean enabled
+  }
+
+  static class BlockDeviceMapping extends EucalyptusData {
+    String deviceName
+    EbsDevice ebs
+  }
+
+  static class EbsDevice extends EucalyptusData {
+    Integer volumeSize
+    Boolean deleteOnTermination
+  }
+
+  static class PutMetricDataType extends EucalyptusMessage {
+    String namespace
+    @HttpParameterMapping( parameter = "MetricData.member" )
+    @HttpEmbedded( multiple = true )
+    ArrayList<MetricDatum> metricData = Lists.newArrayList( )
+  }
+
+  static class MetricDatum extends EucalyptusData {
+    String metricName
+    String unit
+    Double value
+    Date timestamp
+    @HttpParameterMapping( parameter = "Dimensions.member" )
+    @HttpEmbedded( multiple = true )
+    ArrayList<Dimension> dimensions = Lists.newArrayList( )
+  }
+
+  static class Dimension extends EucalyptusData {
+    String name
+    String value
+  }
+}
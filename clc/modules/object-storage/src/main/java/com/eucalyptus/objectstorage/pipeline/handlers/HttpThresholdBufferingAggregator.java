@@ -111,12 +111,13 @@ public class HttpThresholdBufferingAggregator {
     }
 
     /**
-     * May be invoked repeatedly, but will result in distinct copies of the aggregated buffer for each call. Use carefully to avoid memory issues
+     * May be invoked repeatedly, each call returns a distinct view of the aggregated content. The view shares the underlying content buffers
+     * (no copy is made) so those buffers must not be modified while the view is in use.
      * 
      * @return
      */
     public ChannelBuffer getAggregatedContentBuffer() {
-      return ChannelBuffers.copiedBuffer(this.contentBuffers.toArray(new ChannelBuffer[this.contentBuffers.size()]));
+      return ChannelBuffers.wrappedBuffer(this.contentBuffers.toArray(new ChannelBuffer[this.contentBuffers.size()]));
     }
 
     public void addContentBuffer(ChannelBuffer nextContentBuffer, boolean isLast) {
@@ -163,7 +164,10 @@ public class HttpThresholdBufferingAggregator {
    */
   public AggregatedMessageEvent poll() {
     if (this.currentEvent != null && (this.currentEvent.isLastReceived() || this.currentEvent.getCurrentAggregatedSize() >= this.maxBufferingSize)) {
-      LOG.trace("Poll returning event: " + this.currentEvent.toString() + " data: " + this.currentEvent.getAggregatedContentBuffer().toString());
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("Poll returning event: " + this.currentEvent.toString() + " buffers: " + this.currentEvent.getAggregationCount() + " size: "
+            + this.currentEvent.getCurrentAggregatedSize());
+      }
       return this.currentEvent;
     } else {
       LOG.trace("Poll returning null");
@@ -79,7 +79,9 @@ public class ObjectStoragePUTAggregator extends SimpleChannelUpstreamHandler {
 
     try {
       // Write the content into the buffer
-      Logs.extreme().debug("Writing content data to stream for channel: " + channel.getId() + " Content length: " + input.readableBytes());
+      if (Logs.isExtrrreeeme()) {
+        Logs.extreme().debug("Writing content data to stream for channel: " + channel.getId() + " Content length: " + input.readableBytes());
+      }
       inputStream.putChunk(input);
     } catch (Exception ex) {
       throw new IllegalStateException(ex);
@@ -37,6 +37,8 @@ import org.jboss.netty.handler.codec.http.HttpMethod
 import org.jboss.netty.handler.codec.http.HttpVersion
 import org.junit.Test
 
+import java.nio.charset.Charset
+
 /**
  * Created by zhill on 4/4/14.
  */
@@ -274,4 +276,27 @@ class HttpThresholdBufferingAggregatorTest {
 
 
   }
+
+  @Test
+  void testAggregatedContentNotCopied() {
+    int size = 10
+    HttpThresholdBufferingAggregator aggregator = new HttpThresholdBufferingAggregator(size)
+    byte[] content = "abc".getBytes("UTF-8")
+    byte[] chunkContent = "0123456789".getBytes("UTF-8")
+    MappingHttpRequest request = getInitialRequest(content, content.length + chunkContent.length, true)
+    UpstreamMessageEvent initialEvent = new UpstreamMessageEvent(channel, request , new InetSocketAddress(8773))
+    assert(aggregator.offer(initialEvent))
+    UpstreamMessageEvent chunkEvent = new UpstreamMessageEvent(channel, getDataChunk(chunkContent), new InetSocketAddress(8773))
+    assert(aggregator.offer(chunkEvent))
+    HttpThresholdBufferingAggregator.AggregatedMessageEvent output = aggregator.poll()
+    assert(output != null)
+    ChannelBuffer aggregated = output.getAggregatedContentBuffer()
+
+    // The aggregated buffer is a view over the received content so changes to that content are visible
+    content[0] = "A".getBytes("UTF-8")[0]
+    chunkContent[9] = "X".getBytes("UTF-8")[0]
+    assert(aggregated.readableBytes() == content.length + chunkContent.length)
+    assert(aggregated.toString(Charset.forName("UTF-8")) == "Abc012345678X")
+    assert(output.getAggregatedContentBuffer().toString(Charset.forName("UTF-8")) == "Abc012345678X")
+  }
 }
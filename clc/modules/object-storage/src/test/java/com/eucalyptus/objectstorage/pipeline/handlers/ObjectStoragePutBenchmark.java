@@ -0,0 +1,241 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.pipeline.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import com.eucalyptus.http.MappingHttpRequest;
+import com.eucalyptus.util.ChannelBufferStreamingInputStream;
+import com.eucalyptus.util.metrics.Benchmarks;
+
+/**
+ * Throughput and CPU benchmark for object storage PUT data handling.
+ *
+ * <p>Each upload is offered to a {@link HttpThresholdBufferingAggregator} as
+ * HTTP chunks until the threshold is reached, the aggregated content then
+ * starts a {@link ChannelBufferStreamingInputStream} and the remaining chunks
+ * are put to the stream while a reader thread consumes it (as the provider
+ * client does). The aggregated content is either copied (Copied) or used as
+ * a view over the received chunks (Wrapped).</p>
+ *
+ * <p>Options are {@code --name=value} arguments:</p>
+ * <ul>
+ *   <li>sizes: comma separated object sizes with optional k/m/g suffix (default 1m,16m,256m)</li>
+ *   <li>iterations: measured uploads per size and mode (default 5)</li>
+ *   <li>chunk: HTTP chunk size with optional k/m/g suffix (default 8k)</li>
+ *   <li>threshold: aggregation threshold with optional k/m/g suffix (default 128k)</li>
+ *   <li>read: reader buffer size with optional k/m/g suffix (default 8k)</li>
+ * </ul>
+ * <p>One JSON object is printed per size and mode.</p>
+ */
+public class ObjectStoragePutBenchmark {
+
+  public enum Mode {
+    Copied,
+    Wrapped,
+  }
+
+  private final List<Long> sizes = new ArrayList<>( );
+  private int iterations = 5;
+  private int chunk = 8 * 1024;
+  private int threshold = 128 * 1024;
+  private int read = 8 * 1024;
+
+  public ObjectStoragePutBenchmark( final String[] args ) {
+    String sizesOption = "1m,16m,256m";
+    for ( final Map.Entry<String,String> option : Benchmarks.options( args ).entrySet( ) ) {
+      final String value = option.getValue( );
+      switch ( option.getKey( ) ) {
+        case "sizes": sizesOption = value; break;
+        case "iterations": iterations = Integer.parseInt( value ); break;
+        case "chunk": chunk = (int) Benchmarks.parseSize( value ); break;
+        case "threshold": threshold = (int) Benchmarks.parseSize( value ); break;
+        case "read": read = (int) Benchmarks.parseSize( value ); break;
+        default: throw new IllegalArgumentException( "Unknown option: " + option.getKey( ) );
+      }
+    }
+    for ( final String size : sizesOption.split( "," ) ) {
+      sizes.add( Benchmarks.parseSize( size ) );
+    }
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    for ( final Map<String,Object> result : new ObjectStoragePutBenchmark( args ).run( ) ) {
+      System.out.println( Benchmarks.toJson( result ) );
+    }
+    System.exit( 0 );
+  }
+
+  public List<Map<String,Object>> run( ) throws Exception {
+    final List<Map<String,Object>> results = new ArrayList<>( );
+    final byte[] data = new byte[ chunk ];
+    new Random( chunk ).nextBytes( data );
+    final ExecutorService readers = Executors.newSingleThreadExecutor( );
+    try {
+      for ( final long size : sizes ) {
+        for ( final Mode mode : Mode.values( ) ) {
+          upload( readers, data, mode, size ); // warm up
+          final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean( );
+          final long cpuStart = processCpuNanos( os );
+          final long start = System.nanoTime( );
+          for ( int i = 0; i < iterations; i++ ) {
+            upload( readers, data, mode, size );
+          }
+          final long nanos = System.nanoTime( ) - start;
+          final long cpuNanos = cpuStart < 0 ? -1 : processCpuNanos( os ) - cpuStart;
+          final Map<String,Object> result = new LinkedHashMap<>( );
+          result.put( "mode", mode.name( ) );
+          result.put( "size", size );
+          result.put( "iterations", iterations );
+          result.put( "millis", TimeUnit.NANOSECONDS.toMillis( nanos ) );
+          result.put( "megabytesPerSecond", ( (double) size * iterations / ( 1024 * 1024 ) ) / ( nanos / 1e9 ) );
+          result.put( "cpuMillis", cpuNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis( cpuNanos ) );
+          result.put( "cpuMillisPerGigabyte",
+              cpuNanos < 0 ? -1 : ( cpuNanos / 1e6 ) / ( (double) size * iterations / ( 1024 * 1024 * 1024 ) ) );
+          results.add( result );
+        }
+      }
+    } finally {
+      readers.shutdownNow( );
+    }
+    return results;
+  }
+
+  /**
+   * Upload an object of the given size and return the number of bytes read from the stream.
+   */
+  long upload( final ExecutorService readers, final byte[] data, final Mode mode, final long size ) throws Exception {
+    final MappingHttpRequest request = new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.PUT, "/bucket/object" );
+    request.setHeader( HttpHeaders.Names.CONTENT_LENGTH, String.valueOf( size ) );
+    request.setContent( ChannelBuffers.EMPTY_BUFFER );
+    request.setChunked( true );
+
+    final HttpThresholdBufferingAggregator aggregator = new HttpThresholdBufferingAggregator( threshold );
+    if ( !aggregator.offer( new BenchmarkMessageEvent( request ) ) ) {
+      throw new IOException( "Request not accepted for aggregation" );
+    }
+    long sent = 0;
+    HttpThresholdBufferingAggregator.AggregatedMessageEvent aggregated = null;
+    while ( aggregated == null && sent < size ) {
+      final HttpChunk httpChunk = chunk( data, size - sent );
+      sent += httpChunk.getContent( ).readableBytes( );
+      aggregator.offer( new BenchmarkMessageEvent( httpChunk ) );
+      aggregated = aggregator.poll( );
+    }
+    if ( aggregated == null ) {
+      aggregator.offer( new BenchmarkMessageEvent( new DefaultHttpChunk( ChannelBuffers.EMPTY_BUFFER ) ) );
+      aggregated = aggregator.poll( );
+    }
+    final ChannelBuffer content = mode == Mode.Copied ?
+        ChannelBuffers.copiedBuffer( aggregated.getAggregatedContentBuffer( ) ) :
+        aggregated.getAggregatedContentBuffer( );
+
+    final ChannelBufferStreamingInputStream in = new ChannelBufferStreamingInputStream( content );
+    final Future<Long> received = readers.submit( new Callable<Long>( ) {
+      @Override
+      public Long call( ) throws IOException {
+        return consume( in, size );
+      }
+    } );
+    while ( sent < size ) {
+      final HttpChunk httpChunk = chunk( data, size - sent );
+      sent += httpChunk.getContent( ).readableBytes( );
+      in.putChunk( httpChunk.getContent( ) );
+    }
+    return received.get( );
+  }
+
+  private long consume( final InputStream in, final long size ) throws IOException {
+    final byte[] buffer = new byte[ read ];
+    long received = 0;
+    while ( received < size ) {
+      final int count = in.read( buffer, 0, (int) Math.min( buffer.length, size - received ) );
+      if ( count < 0 ) {
+        throw new IOException( "Received " + received + " bytes, expected " + size );
+      }
+      received += count;
+    }
+    return received;
+  }
+
+  private static HttpChunk chunk( final byte[] data, final long remaining ) {
+    return new DefaultHttpChunk( ChannelBuffers.wrappedBuffer( data, 0, (int) Math.min( data.length, remaining ) ) );
+  }
+
+  private static long processCpuNanos( final OperatingSystemMXBean os ) {
+    return os instanceof com.sun.management.OperatingSystemMXBean ?
+        ( (com.sun.management.OperatingSystemMXBean) os ).getProcessCpuTime( ) :
+        -1;
+  }
+
+  /**
+   * Message event for offering messages to the aggregator, the aggregator only uses the message.
+   */
+  private static final class BenchmarkMessageEvent implements MessageEvent {
+    private final Object message;
+
+    BenchmarkMessageEvent( final Object message ) {
+      this.message = message;
+    }
+
+    @Override
+    public Object getMessage( ) {
+      return message;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress( ) {
+      return null;
+    }
+
+    @Override
+    public Channel getChannel( ) {
+      return null;
+    }
+
+    @Override
+    public ChannelFuture getFuture( ) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.pipeline.handlers
+
+import groovy.transform.CompileStatic
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ *
+ */
+@CompileStatic
+class ObjectStoragePutBenchmarkTest {
+
+  @Test
+  void testUploadModes( ) {
+    final List<Map<String,Object>> results = new ObjectStoragePutBenchmark( [ '--sizes=1m,100k,1', '--iterations=1' ] as String[] ).run( )
+    assertEquals( 'result count', 6, results.size( ) )
+    results.each { Map<String,Object> result ->
+      assertTrue( 'mode', result.mode in [ 'Copied', 'Wrapped' ] )
+      assertTrue( 'throughput', ( (Double) result.megabytesPerSecond ) > 0d )
+    }
+  }
+}
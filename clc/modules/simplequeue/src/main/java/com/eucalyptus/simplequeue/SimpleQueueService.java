@@ -49,7 +49,7 @@ import com.eucalyptus.component.annotation.ComponentNamed;
 import com.eucalyptus.context.Context;
 import com.eucalyptus.context.Contexts;
 import com.eucalyptus.simplequeue.async.CloudWatchClient;
-import com.eucalyptus.simplequeue.async.NotifyClient;
+import com.eucalyptus.simplequeue.async.ReceiveMessageWaiters;
 import com.eucalyptus.simplequeue.common.policy.SimpleQueuePolicySpec;
 import com.eucalyptus.simplequeue.config.SimpleQueueProperties;
 import com.eucalyptus.simplequeue.exceptions.AccessDeniedException;
@@ -69,7 +69,7 @@ import com.eucalyptus.simplequeue.exceptions.TooManyEntriesInBatchRequestExcepti
 import com.eucalyptus.simplequeue.exceptions.UnsupportedOperationException;
 import com.eucalyptus.simplequeue.persistence.PersistenceFactory;
 import com.eucalyptus.simplequeue.persistence.Queue;
-import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Either;
 import com.eucalyptus.util.EucalyptusCloudException;
 import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.util.RestrictedTypes;
@@ -89,6 +89,8 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeSet;
 import com.google.common.collect.Sets;
+import javaslang.Tuple;
+import javaslang.Tuple2;
 import net.sf.json.JSONException;
 import org.apache.log4j.Logger;
 import org.apache.xml.security.exceptions.Base64DecodingException;
@@ -115,18 +117,12 @@ import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @ComponentNamed
 public class SimpleQueueService {
 
-  private static final ScheduledExecutorService sendMessageNotificationsScheduledExecutorService = Executors
-    .newScheduledThreadPool(4, Threads.threadFactory( "simplequeue-send-message-notification-%d" ) );
-
   static final Logger LOG = Logger.getLogger(SimpleQueueService.class);
 
   private static int checkAttributeIntMinMax(Attribute attribute, int min, int max) throws InvalidParameterValueException {
@@ -697,6 +693,14 @@ public class SimpleQueueService {
   }
 
   private static void handleChangeMessageVisibility(Integer visibilityTimeout, String receiptHandle, Queue queue) throws SimpleQueueException {
+    validateChangeMessageVisibility(visibilityTimeout, receiptHandle);
+    PersistenceFactory.getMessagePersistence().changeMessageVisibility(queue.getKey(), receiptHandle, visibilityTimeout);
+    if (SimpleQueueProperties.ENABLE_LONG_POLLING) {
+      ReceiveMessageWaiters.messagesAvailable(queue, 1, visibilityTimeout);
+    }
+  }
+
+  private static void validateChangeMessageVisibility(Integer visibilityTimeout, String receiptHandle) throws SimpleQueueException {
     if (visibilityTimeout == null) {
       throw new MissingParameterException("VisibilityTimeout is a required field");
     }
@@ -706,8 +710,6 @@ public class SimpleQueueService {
     if (receiptHandle == null) {
       throw new MissingParameterException("ReceiptHandle is a required field");
     }
-
-    PersistenceFactory.getMessagePersistence().changeMessageVisibility(queue.getKey(), receiptHandle, visibilityTimeout);
   }
 
   public DeleteMessageResponseType deleteMessage(DeleteMessageType request) throws EucalyptusCloudException {
@@ -949,20 +951,27 @@ public class SimpleQueueService {
         receiveAttributes.put(Constants.MAX_RECEIVE_COUNT, ""+maxReceiveCount);
       }
       int waitTimeSeconds = request.getWaitTimeSeconds() != null ? request.getWaitTimeSeconds() : queue.getReceiveMessageWaitTimeSeconds();
+      final int visibilityTimeout = request.getVisibilityTimeout() != null ? request.getVisibilityTimeout() : queue.getVisibilityTimeout();
+      final int maxMessages = maxNumberOfMessages;
+      final boolean longPolling = SimpleQueueProperties.ENABLE_LONG_POLLING && waitTimeSeconds > 0;
 
+      final ReceiveMessageWaiters.Checkpoint checkpoint = longPolling ? ReceiveMessageWaiters.checkpoint(queue) : null;
       Collection<Message> messages = PersistenceFactory.getMessagePersistence().receiveMessages(queue, receiveAttributes);
       if (messages != null && !messages.isEmpty()) {
+        handleMessagesReceived(queue, messages.size(), maxMessages, visibilityTimeout);
         sendReceivedMessagesCW(queue, messages, request.getAttributeName(), request.getMessageAttributeName());
         reply.getReceiveMessageResult().getMessage().addAll(messages);
       } else {
-        if (SimpleQueueProperties.ENABLE_LONG_POLLING && waitTimeSeconds > 0) {
+        if (longPolling) {
           handleQueuePollingForReceive(queue,
+            checkpoint,
             reply,
             new Callable<ReceiveMessageResult>() {
               @Override
               public ReceiveMessageResult call() throws Exception {
                 Collection<Message> messages = PersistenceFactory.getMessagePersistence().receiveMessages(queue, receiveAttributes);
                 if (messages != null && !messages.isEmpty()) {
+                  handleMessagesReceived(queue, messages.size(), maxMessages, visibilityTimeout);
                   sendReceivedMessagesCW(queue, messages, request.getAttributeName(), request.getMessageAttributeName());
                   ReceiveMessageResult receiveMessageResult = new ReceiveMessageResult();
                   receiveMessageResult.getMessage().addAll(messages);
@@ -1306,7 +1315,7 @@ public class SimpleQueueService {
 
       int delaySeconds = request.getDelaySeconds() == null ? queue.getDelaySeconds() : request.getDelaySeconds().intValue();
       if (SimpleQueueProperties.ENABLE_LONG_POLLING) {
-        sendMessageNotificationsScheduledExecutorService.schedule(() -> NotifyClient.notifyQueue(queue), delaySeconds, TimeUnit.SECONDS);
+        ReceiveMessageWaiters.messagesAvailable(queue, 1, delaySeconds);
       }
       if (SimpleQueueProperties.ENABLE_METRICS_COLLECTION) {
         Date now = new Date();
@@ -1368,23 +1377,32 @@ public class SimpleQueueService {
         }
         previousIds.add(batchRequestEntry.getId());
       }
+      List<ChangeMessageVisibilityBatchRequestEntry> validBatchRequestEntries = Lists.newArrayList();
+      List<Tuple2<String, Integer>> receiptHandlesAndVisibilityTimeouts = Lists.newArrayList();
       for (ChangeMessageVisibilityBatchRequestEntry batchRequestEntry: request.getChangeMessageVisibilityBatchRequestEntry()) {
         try {
-          handleChangeMessageVisibility(batchRequestEntry.getVisibilityTimeout(), batchRequestEntry.getReceiptHandle(), queue);
+          validateChangeMessageVisibility(batchRequestEntry.getVisibilityTimeout(), batchRequestEntry.getReceiptHandle());
+          validBatchRequestEntries.add(batchRequestEntry);
+          receiptHandlesAndVisibilityTimeouts.add(Tuple.of(batchRequestEntry.getReceiptHandle(), batchRequestEntry.getVisibilityTimeout()));
+        } catch (Exception ex) {
+          reply.getChangeMessageVisibilityBatchResult().getBatchResultErrorEntry().add(batchResultErrorEntry(batchRequestEntry.getId(), ex));
+        }
+      }
+      List<Either<SimpleQueueException, Boolean>> results = validBatchRequestEntries.isEmpty() ?
+        Collections.emptyList() :
+        batchResults(validBatchRequestEntries.size(),
+          () -> PersistenceFactory.getMessagePersistence().changeMessageVisibilities(queue.getKey(), receiptHandlesAndVisibilityTimeouts));
+      for (int i = 0; i < results.size(); i++) {
+        ChangeMessageVisibilityBatchRequestEntry batchRequestEntry = validBatchRequestEntries.get(i);
+        if (results.get(i).isRight()) {
           ChangeMessageVisibilityBatchResultEntry success = new ChangeMessageVisibilityBatchResultEntry();
           success.setId(batchRequestEntry.getId());
           reply.getChangeMessageVisibilityBatchResult().getChangeMessageVisibilityBatchResultEntry().add(success);
-        } catch (Exception ex) {
-          try {
-            handleException(ex);
-          } catch (SimpleQueueException ex1) {
-            BatchResultErrorEntry failure = new BatchResultErrorEntry();
-            failure.setId(batchRequestEntry.getId());
-            failure.setCode(ex1.getCode());
-            failure.setMessage(ex1.getMessage());
-            failure.setSenderFault(ex1.getRole() != null && ex1.getRole().equals(Role.Sender));
-            reply.getChangeMessageVisibilityBatchResult().getBatchResultErrorEntry().add(failure);
+          if (SimpleQueueProperties.ENABLE_LONG_POLLING) {
+            ReceiveMessageWaiters.messagesAvailable(queue, 1, batchRequestEntry.getVisibilityTimeout());
           }
+        } else {
+          reply.getChangeMessageVisibilityBatchResult().getBatchResultErrorEntry().add(batchResultErrorEntry(batchRequestEntry.getId(), results.get(i).getLeft()));
         }
       }
     } catch (Exception ex) {
@@ -1425,9 +1443,16 @@ public class SimpleQueueService {
       }
       Date now = new Date();
       int numSuccessfulRealDeletes = 0;
+      List<String> receiptHandles = Lists.newArrayList();
       for (DeleteMessageBatchRequestEntry batchRequestEntry: request.getDeleteMessageBatchRequestEntry()) {
-        try {
-          if (PersistenceFactory.getMessagePersistence().deleteMessage(queue.getKey(), batchRequestEntry.getReceiptHandle())) {
+        receiptHandles.add(batchRequestEntry.getReceiptHandle());
+      }
+      List<Either<SimpleQueueException, Boolean>> results = batchResults(receiptHandles.size(),
+        () -> PersistenceFactory.getMessagePersistence().deleteMessages(queue.getKey(), receiptHandles));
+      for (int i = 0; i < results.size(); i++) {
+        DeleteMessageBatchRequestEntry batchRequestEntry = request.getDeleteMessageBatchRequestEntry().get(i);
+        if (results.get(i).isRight()) {
+          if (results.get(i).getRight()) {
             // note: only send a CW metric if we actually delete a message.  We can still 'succeed' on a stale
             // receipt handle.
             numSuccessfulRealDeletes++;
@@ -1435,17 +1460,8 @@ public class SimpleQueueService {
           DeleteMessageBatchResultEntry success = new DeleteMessageBatchResultEntry();
           success.setId(batchRequestEntry.getId());
           reply.getDeleteMessageBatchResult().getDeleteMessageBatchResultEntry().add(success);
-        } catch (Exception ex) {
-          try {
-            handleException(ex);
-          } catch (SimpleQueueException ex1) {
-            BatchResultErrorEntry failure = new BatchResultErrorEntry();
-            failure.setId(batchRequestEntry.getId());
-            failure.setCode(ex1.getCode());
-            failure.setMessage(ex1.getMessage());
-            failure.setSenderFault(ex1.getRole() != null && ex1.getRole().equals(Role.Sender));
-            reply.getDeleteMessageBatchResult().getBatchResultErrorEntry().add(failure);
-          }
+        } else {
+          reply.getDeleteMessageBatchResult().getBatchResultErrorEntry().add(batchResultErrorEntry(batchRequestEntry.getId(), results.get(i).getLeft()));
         }
       }
       if (SimpleQueueProperties.ENABLE_METRICS_COLLECTION && numSuccessfulRealDeletes > 0) {
@@ -1506,10 +1522,17 @@ public class SimpleQueueService {
       int totalSuccessfulMessagesLength = 0;
       Integer smallestSuccessfulMessageLength = null;
       Integer largestSuccessfulMessageLength = null;
+      List<Tuple2<Message, Map<String, String>>> messages = Lists.newArrayList();
       for (SendMessageBatchRequestEntry batchRequestEntry: request.getSendMessageBatchRequestEntry()) {
-        try {
+        MessageInfo messageInfo = messageInfoMap.get(batchRequestEntry.getId());
+        messages.add(Tuple.of(messageInfo.getMessage(), messageInfo.getSendAttributes()));
+      }
+      List<Either<SimpleQueueException, Boolean>> results = batchResults(messages.size(),
+        () -> PersistenceFactory.getMessagePersistence().sendMessages(queue, messages));
+      for (int i = 0; i < results.size(); i++) {
+        SendMessageBatchRequestEntry batchRequestEntry = request.getSendMessageBatchRequestEntry().get(i);
+        if (results.get(i).isRight()) {
           MessageInfo messageInfo = messageInfoMap.get(batchRequestEntry.getId());
-          PersistenceFactory.getMessagePersistence().sendMessage(queue, messageInfo.getMessage(), messageInfo.getSendAttributes());
           SendMessageBatchResultEntry success = new SendMessageBatchResultEntry();
           success.setmD5OfMessageAttributes(messageInfo.getMessage().getmD5OfMessageAttributes());
           success.setMessageId(messageInfo.getMessage().getMessageId());
@@ -1518,7 +1541,7 @@ public class SimpleQueueService {
           reply.getSendMessageBatchResult().getSendMessageBatchResultEntry().add(success);
           int delaySeconds = batchRequestEntry.getDelaySeconds() == null ? queue.getDelaySeconds() : batchRequestEntry.getDelaySeconds().intValue();
           if (SimpleQueueProperties.ENABLE_LONG_POLLING) {
-            sendMessageNotificationsScheduledExecutorService.schedule(() -> NotifyClient.notifyQueue(queue), delaySeconds, TimeUnit.SECONDS);
+            ReceiveMessageWaiters.messagesAvailable(queue, 1, delaySeconds);
           }
           numSuccessfulMessages += 1;
           if (smallestSuccessfulMessageLength == null || smallestSuccessfulMessageLength < messageInfo.getMessageLength()) {
@@ -1528,17 +1551,8 @@ public class SimpleQueueService {
             largestSuccessfulMessageLength = messageInfo.getMessageLength();
           }
           totalSuccessfulMessagesLength += messageInfo.getMessageLength();
-        } catch (Exception ex) {
-          try {
-            handleException(ex);
-          } catch (SimpleQueueException ex1) {
-            BatchResultErrorEntry failure = new BatchResultErrorEntry();
-            failure.setId(batchRequestEntry.getId());
-            failure.setCode(ex1.getCode());
-            failure.setMessage(ex1.getMessage());
-            failure.setSenderFault(ex1.getRole() != null && ex1.getRole().equals(Role.Sender));
-            reply.getSendMessageBatchResult().getBatchResultErrorEntry().add(failure);
-          }
+        } else {
+          reply.getSendMessageBatchResult().getBatchResultErrorEntry().add(batchResultErrorEntry(batchRequestEntry.getId(), results.get(i).getLeft()));
         }
       }
       if (SimpleQueueProperties.ENABLE_METRICS_COLLECTION && numSuccessfulMessages > 0) {
@@ -1577,6 +1591,38 @@ public class SimpleQueueService {
     return messageAttributes == null ? null : messageAttributes.stream().collect(Collectors.toMap(MessageAttribute::getName, MessageAttribute::getValue));
   }
 
+  /**
+   * Perform a batch persistence operation, failing all entries if the batch fails.
+   */
+  private static List<Either<SimpleQueueException, Boolean>> batchResults(
+    final int size,
+    final Supplier<List<Either<SimpleQueueException, Boolean>>> batchOperation
+  ) {
+    try {
+      return batchOperation.get();
+    } catch (Exception ex) {
+      try {
+        handleException(ex);
+      } catch (SimpleQueueException ex1) {
+        return Collections.nCopies(size, Either.left(ex1));
+      }
+      throw Exceptions.toUndeclared(ex);
+    }
+  }
+
+  private static BatchResultErrorEntry batchResultErrorEntry(final String id, final Exception ex) {
+    BatchResultErrorEntry failure = new BatchResultErrorEntry();
+    failure.setId(id);
+    try {
+      handleException(ex);
+    } catch (SimpleQueueException ex1) {
+      failure.setCode(ex1.getCode());
+      failure.setMessage(ex1.getMessage());
+      failure.setSenderFault(ex1.getRole() != null && ex1.getRole().equals(Role.Sender));
+    }
+    return failure;
+  }
+
   private static void handleException(final Exception e) throws SimpleQueueException {
     final SimpleQueueException cause = Exceptions.findCause(e, SimpleQueueException.class);
     if (cause != null) {
@@ -1612,22 +1658,42 @@ public class SimpleQueueService {
     .add(Range.closed((int) 'a', (int) 'z'))
     .build();
 
+  /**
+   * Schedule wakeup for long polling receivers when received messages become
+   * visible again, and pass on the wakeup if there may be more messages.
+   */
+  private static void handleMessagesReceived(final Queue queue,
+                                             final int numberOfMessages,
+                                             final int maxNumberOfMessages,
+                                             final int visibilityTimeout) {
+    if (SimpleQueueProperties.ENABLE_LONG_POLLING) {
+      ReceiveMessageWaiters.messagesReceived(queue, numberOfMessages, visibilityTimeout);
+      if (numberOfMessages >= maxNumberOfMessages) {
+        ReceiveMessageWaiters.messagesAvailable(queue, 1, 0);
+      }
+    }
+  }
+
   private static void handleQueuePollingForReceive( final Queue queue,
+                                                    final ReceiveMessageWaiters.Checkpoint checkpoint,
                                                     final ReceiveMessageResponseType response,
                                                     final Callable<? extends ReceiveMessageResult> resultCallable,
                                                     final long pollTimeout) throws AuthException {
     try {
-      NotifyClient.pollQueue(queue, pollTimeout, Contexts.consumerWithCurrentContext(
-        (notified) -> {
+      ReceiveMessageWaiters.park(queue, checkpoint, pollTimeout, Contexts.consumerWithCurrentContext(
+        (woken) -> {
           try {
-            if (notified) {
+            if (woken) {
+              final ReceiveMessageWaiters.Checkpoint nextCheckpoint = ReceiveMessageWaiters.checkpoint(queue);
               final ReceiveMessageResult receiveMessageResult = resultCallable.call();
               if (receiveMessageResult != null) {
                 response.setReceiveMessageResult(receiveMessageResult);
                 Contexts.response(response);
                 return;
-              } else if (System.currentTimeMillis() < pollTimeout) {
-                handleQueuePollingForReceive(queue, response, resultCallable, pollTimeout);
+              }
+              ReceiveMessageWaiters.emptyRead();
+              if (System.currentTimeMillis() < pollTimeout) {
+                handleQueuePollingForReceive(queue, nextCheckpoint, response, resultCallable, pollTimeout);
                 return;
               }
             }
@@ -0,0 +1,388 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.async;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.component.ServiceConfiguration;
+import com.eucalyptus.component.Topology;
+import com.eucalyptus.simplequeue.SimpleQueue;
+import com.eucalyptus.simplequeue.persistence.Queue;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Consumer;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+/**
+ * In-process registry of long polling receive message requests.
+ *
+ * <p>Waiters are parked per queue and are woken when messages are sent, when
+ * a message delay expires or when a message visibility timeout expires. Each
+ * event wakes as many waiters as there may be messages, so idle waiters do not
+ * read from persistence.</p>
+ *
+ * <p>When simple queue services are enabled on other hosts a single remote
+ * notification poll is used per queue for all waiters on this host.</p>
+ *
+ * <p>Each wakeup advances a per queue sequence. Receivers take a checkpoint
+ * before the read that finds the queue empty and park against it, so a wakeup
+ * that arrives between the read and parking wakes the waiter immediately
+ * instead of being lost.</p>
+ */
+public class ReceiveMessageWaiters implements ReceiveMessageWaitersMXBean {
+
+  private static final Logger logger = Logger.getLogger( ReceiveMessageWaiters.class );
+  private static final long REMOTE_POLL_MILLIS = TimeUnit.SECONDS.toMillis( 20 );
+
+  private static final ReceiveMessageWaiters instance = new ReceiveMessageWaiters( );
+  private static final ConcurrentMap<Queue.Key, QueueWaiters> waitersByQueue = new ConcurrentHashMap<>( );
+  private static final ScheduledExecutorService timer =
+      Executors.newSingleThreadScheduledExecutor( Threads.threadFactory( "simplequeue-receive-waiters-timer-%d" ) );
+  private static final ExecutorService wakeupExecutor =
+      Executors.newFixedThreadPool( 16, Threads.threadFactory( "simplequeue-receive-waiters-wakeup-%d" ) );
+
+  private final AtomicInteger parkedWaiters = new AtomicInteger( );
+  private final AtomicLong parked = new AtomicLong( );
+  private final AtomicLong wakeups = new AtomicLong( );
+  private final AtomicLong timeouts = new AtomicLong( );
+  private final AtomicLong emptyReads = new AtomicLong( );
+  private final AtomicLong remoteNotifications = new AtomicLong( );
+
+  static {
+    timer.scheduleWithFixedDelay( ReceiveMessageWaiters::tick, 1, 1, TimeUnit.SECONDS );
+    Mbeans.register( "com.eucalyptus.simplequeue", ImmutableMap.of( "type", "ReceiveMessageWaiters" ), instance );
+  }
+
+  /**
+   * Checkpoint the wakeup sequence for the queue.
+   *
+   * <p>The checkpoint must be taken before reading from the queue and passed
+   * to park if the read finds no messages.</p>
+   *
+   * @param queue The queue to checkpoint
+   * @return The checkpoint
+   */
+  public static Checkpoint checkpoint( final Queue queue ) {
+    return getQueueWaiters( queue ).checkpoint( );
+  }
+
+  /**
+   * Park a waiter for the queue.
+   *
+   * <p>The consumer is called once, with true if the waiter was woken and
+   * should read messages or false if the deadline passed. The waiter is woken
+   * immediately if there was a wakeup for the queue after the checkpoint.</p>
+   *
+   * @param queue The queue to wait on
+   * @param checkpoint The checkpoint taken before the queue was found empty
+   * @param deadline The time in millis after which the waiter times out
+   * @param consumer The consumer for the outcome
+   */
+  public static void park( final Queue queue,
+                           final Checkpoint checkpoint,
+                           final long deadline,
+                           final Consumer<Boolean> consumer ) {
+    final Waiter waiter = new Waiter( deadline, consumer );
+    instance.parkedWaiters.incrementAndGet( );
+    instance.parked.incrementAndGet( );
+    if ( checkpoint.queueWaiters.park( waiter, checkpoint ) && !allServicesLocal( ) ) {
+      checkpoint.queueWaiters.watchRemote( queue );
+    }
+  }
+
+  /**
+   * Messages are available for receipt on the queue, after the given delay.
+   *
+   * <p>Waiters on other hosts are notified when the messages become available,
+   * for a delay this is when the wakeup is due.</p>
+   *
+   * @param queue The queue
+   * @param count The number of messages, the number of waiters to wake
+   * @param delaySeconds The delay before the messages are available
+   */
+  public static void messagesAvailable( final Queue queue, final int count, final int delaySeconds ) {
+    if ( delaySeconds <= 0 ) {
+      wake( queue.getKey( ), count );
+      notifyRemote( queue );
+    } else {
+      final long time = System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( delaySeconds );
+      QueueWaiters queueWaiters;
+      do {
+        queueWaiters = getQueueWaiters( queue );
+      } while ( !queueWaiters.addWakeup( queue, time, count ) );
+    }
+  }
+
+  /**
+   * Messages were received from the queue and will be visible again after the
+   * visibility timeout unless deleted.
+   */
+  public static void messagesReceived( final Queue queue, final int count, final int visibilityTimeoutSeconds ) {
+    messagesAvailable( queue, count, visibilityTimeoutSeconds );
+  }
+
+  /**
+   * A woken waiter found no messages.
+   */
+  public static void emptyRead( ) {
+    instance.emptyReads.incrementAndGet( );
+  }
+
+  private static void wake( final Queue.Key key, final int count ) {
+    final QueueWaiters queueWaiters = waitersByQueue.get( key );
+    if ( queueWaiters != null ) {
+      queueWaiters.wake( count );
+    }
+  }
+
+  private static QueueWaiters getQueueWaiters( final Queue queue ) {
+    QueueWaiters queueWaiters = waitersByQueue.get( queue.getKey( ) );
+    if ( queueWaiters == null ) {
+      final QueueWaiters newQueueWaiters = new QueueWaiters( );
+      queueWaiters = waitersByQueue.putIfAbsent( queue.getKey( ), newQueueWaiters );
+      if ( queueWaiters == null ) {
+        queueWaiters = newQueueWaiters;
+      }
+    }
+    return queueWaiters;
+  }
+
+  private static boolean allServicesLocal( ) {
+    return Iterables.all( Topology.enabledServices( SimpleQueue.class ), ServiceConfiguration::isVmLocal );
+  }
+
+  private static void notifyRemote( final Queue queue ) {
+    if ( !allServicesLocal( ) ) {
+      NotifyClient.notifyQueue( queue );
+    }
+  }
+
+  private static void tick( ) {
+    try {
+      final long now = System.currentTimeMillis( );
+      for ( final Map.Entry<Queue.Key, QueueWaiters> entry : waitersByQueue.entrySet( ) ) {
+        final QueueWaiters queueWaiters = entry.getValue( );
+        queueWaiters.timeout( now );
+        final int dueWakeups = queueWaiters.dueWakeups( now );
+        if ( dueWakeups > 0 ) {
+          queueWaiters.wake( dueWakeups );
+          notifyRemote( queueWaiters.wakeupQueue );
+        }
+        queueWaiters.removeIfIdle( entry.getKey( ) );
+      }
+    } catch ( final Exception e ) {
+      logger.error( "Error processing receive message waiters", e );
+    }
+  }
+
+  @Override
+  public int getQueues( ) {
+    return waitersByQueue.size( );
+  }
+
+  @Override
+  public int getParkedWaiters( ) {
+    return parkedWaiters.get( );
+  }
+
+  @Override
+  public long getParked( ) {
+    return parked.get( );
+  }
+
+  @Override
+  public long getWakeups( ) {
+    return wakeups.get( );
+  }
+
+  @Override
+  public long getTimeouts( ) {
+    return timeouts.get( );
+  }
+
+  @Override
+  public long getEmptyReads( ) {
+    return emptyReads.get( );
+  }
+
+  @Override
+  public long getRemoteNotifications( ) {
+    return remoteNotifications.get( );
+  }
+
+  /**
+   * Wakeup sequence for a queue at the time of a read.
+   */
+  public static final class Checkpoint {
+    private final QueueWaiters queueWaiters;
+    private final long sequence;
+
+    private Checkpoint( final QueueWaiters queueWaiters, final long sequence ) {
+      this.queueWaiters = queueWaiters;
+      this.sequence = sequence;
+    }
+  }
+
+  static final class Waiter {
+    private final long deadline;
+    private final Consumer<Boolean> consumer;
+    private final AtomicBoolean done = new AtomicBoolean( );
+
+    Waiter( final long deadline, final Consumer<Boolean> consumer ) {
+      this.deadline = deadline;
+      this.consumer = consumer;
+    }
+
+    private boolean complete( final boolean woken ) {
+      if ( done.compareAndSet( false, true ) ) {
+        instance.parkedWaiters.decrementAndGet( );
+        ( woken ? instance.wakeups : instance.timeouts ).incrementAndGet( );
+        wakeupExecutor.execute( ( ) -> {
+          try {
+            consumer.accept( woken );
+          } catch ( final Exception e ) {
+            logger.error( "Error completing receive message waiter", e );
+          }
+        } );
+        return true;
+      }
+      return false;
+    }
+  }
+
+  static final class QueueWaiters {
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>( );
+    private final AtomicLong sequence = new AtomicLong( );
+    private final TreeMap<Long, Integer> wakeups = new TreeMap<>( ); // guarded by this
+    private final AtomicBoolean watchingRemote = new AtomicBoolean( );
+    private volatile Queue wakeupQueue; // queue for remote notification of due wakeups
+    private boolean removed; // guarded by this
+
+    /**
+     * Add a waiter, fails if these waiters were removed from the registry.
+     */
+    private synchronized boolean add( final Waiter waiter ) {
+      if ( !removed ) {
+        waiters.add( waiter );
+      }
+      return !removed;
+    }
+
+    Checkpoint checkpoint( ) {
+      return new Checkpoint( this, sequence.get( ) );
+    }
+
+    /**
+     * Park a waiter, returns false if the waiter was woken immediately.
+     *
+     * <p>The sequence is read after the waiter is added and advanced before
+     * waiters are polled, so either the wakeup finds the waiter or the waiter
+     * sees the wakeup.</p>
+     */
+    boolean park( final Waiter waiter, final Checkpoint checkpoint ) {
+      if ( checkpoint.queueWaiters == this && add( waiter ) && sequence.get( ) == checkpoint.sequence ) {
+        return true;
+      }
+      waiters.remove( waiter );
+      waiter.complete( true );
+      return false;
+    }
+
+    void wake( int count ) {
+      if ( count > 0 ) {
+        sequence.incrementAndGet( );
+      }
+      Waiter waiter;
+      while ( count > 0 && ( waiter = waiters.poll( ) ) != null ) {
+        if ( waiter.complete( true ) ) {
+          count--;
+        }
+      }
+    }
+
+    void timeout( final long now ) {
+      for ( final Iterator<Waiter> iterator = waiters.iterator( ); iterator.hasNext( ); ) {
+        final Waiter waiter = iterator.next( );
+        if ( waiter.deadline <= now ) {
+          iterator.remove( );
+          waiter.complete( false );
+        }
+      }
+    }
+
+    synchronized boolean addWakeup( final Queue queue, final long time, final int count ) {
+      if ( !removed ) {
+        wakeupQueue = queue;
+        // wakeups are tracked per second, rounded up
+        wakeups.merge( time - ( time % 1000L ) + 1000L, count, Integer::sum );
+      }
+      return !removed;
+    }
+
+    synchronized int dueWakeups( final long now ) {
+      int count = 0;
+      final Iterator<Map.Entry<Long, Integer>> iterator = wakeups.headMap( now, true ).entrySet( ).iterator( );
+      while ( iterator.hasNext( ) ) {
+        count += iterator.next( ).getValue( );
+        iterator.remove( );
+      }
+      return count;
+    }
+
+    private synchronized void removeIfIdle( final Queue.Key key ) {
+      if ( waiters.isEmpty( ) && wakeups.isEmpty( ) && !watchingRemote.get( ) ) {
+        removed = true;
+        waitersByQueue.remove( key, this );
+      }
+    }
+
+    private void watchRemote( final Queue queue ) {
+      if ( watchingRemote.compareAndSet( false, true ) ) {
+        try {
+          NotifyClient.pollQueue( queue, System.currentTimeMillis( ) + REMOTE_POLL_MILLIS, notified -> {
+            watchingRemote.set( false );
+            if ( notified ) {
+              instance.remoteNotifications.incrementAndGet( );
+              wake( 1 );
+            }
+            if ( !waiters.isEmpty( ) && !allServicesLocal( ) ) {
+              watchRemote( queue );
+            }
+          } );
+        } catch ( final Exception e ) {
+          watchingRemote.set( false );
+          logger.error( "Error polling for notifications for queue " + queue.getArn( ), e );
+        }
+      }
+    }
+  }
+}
@@ -140,6 +140,10 @@ public class SimpleQueueProperties {
     description = "Set 'true' to allow Long Polling for SQS",
     changeListener = PropertyChangeListeners.IsBoolean.class )
   public static volatile Boolean ENABLE_LONG_POLLING = true;
+  @ConfigurableField( description = "Time in milliseconds to wait for concurrent batch requests on a queue to share a single database write (0 to disable)",
+    initial = "2", changeListener = MinValuePropertyChangeListener.class )
+  @MinValue(min = 0)
+  public volatile static int MESSAGE_BATCH_WINDOW_MILLIS = 2;
 
   @Target(ElementType.FIELD)
   @Retention(RetentionPolicy.RUNTIME)
@@ -0,0 +1,246 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.persistence;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.apache.log4j.Logger;
+import com.eucalyptus.simplequeue.Message;
+import com.eucalyptus.simplequeue.config.SimpleQueueProperties;
+import com.eucalyptus.simplequeue.exceptions.SimpleQueueException;
+import com.eucalyptus.util.Either;
+import com.eucalyptus.util.Exceptions;
+import com.google.common.collect.Lists;
+import javaslang.Tuple2;
+
+/**
+ * Message persistence that coalesces concurrent batch operations on a queue.
+ *
+ * <p>Batch operations for a queue that arrive while an earlier batch for the
+ * same queue is being written are collected for up to
+ * MESSAGE_BATCH_WINDOW_MILLIS and then written by the delegate as a single
+ * batch (group commit). When no write is in progress for a queue a batch is
+ * written immediately so there is no added latency for idle queues.</p>
+ *
+ * <p>If a coalesced write fails each request's own batch is written again
+ * separately, so a failure is only reported to the request that caused
+ * it.</p>
+ */
+public class BatchingMessagePersistence implements MessagePersistence {
+
+  private static final Logger logger = Logger.getLogger( BatchingMessagePersistence.class );
+
+  private static final int MAX_GROUP_SIZE = 100;
+
+  private final MessagePersistence delegate;
+  private final GroupCommit<Queue.Key, Tuple2<Message, Map<String, String>>> sends = new GroupCommit<>( );
+  private final GroupCommit<Queue.Key, String> deletes = new GroupCommit<>( );
+  private final GroupCommit<Queue.Key, Tuple2<String, Integer>> visibilityChanges = new GroupCommit<>( );
+
+  public BatchingMessagePersistence( final MessagePersistence delegate ) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public UUID getNewMessageUUID( ) {
+    return delegate.getNewMessageUUID( );
+  }
+
+  @Override
+  public Collection<Message> receiveMessages( final Queue queue, final Map<String, String> receiveAttributes ) throws SimpleQueueException {
+    return delegate.receiveMessages( queue, receiveAttributes );
+  }
+
+  @Override
+  public void sendMessage( final Queue queue, final Message message, final Map<String, String> sendAttributes ) throws SimpleQueueException {
+    delegate.sendMessage( queue, message, sendAttributes );
+  }
+
+  @Override
+  public boolean deleteMessage( final Queue.Key queueKey, final String receiptHandle ) throws SimpleQueueException {
+    return delegate.deleteMessage( queueKey, receiptHandle );
+  }
+
+  @Override
+  public void deleteAllMessages( final Queue.Key queueKey ) {
+    delegate.deleteAllMessages( queueKey );
+  }
+
+  @Override
+  public Map<String, String> getApproximateMessageCounts( final Queue.Key queueKey ) {
+    return delegate.getApproximateMessageCounts( queueKey );
+  }
+
+  @Override
+  public void changeMessageVisibility( final Queue.Key queueKey, final String receiptHandle, final Integer visibilityTimeout ) throws SimpleQueueException {
+    delegate.changeMessageVisibility( queueKey, receiptHandle, visibilityTimeout );
+  }
+
+  @Override
+  public Long getApproximateAgeOfOldestMessage( final Queue.Key queueKey ) {
+    return delegate.getApproximateAgeOfOldestMessage( queueKey );
+  }
+
+  @Override
+  public List<Either<SimpleQueueException, Boolean>> sendMessages(
+      final Queue queue,
+      final List<Tuple2<Message, Map<String, String>>> messages
+  ) {
+    return sends.submit( queue.getKey( ), messages, batch -> delegate.sendMessages( queue, batch ) );
+  }
+
+  @Override
+  public List<Either<SimpleQueueException, Boolean>> deleteMessages(
+      final Queue.Key queueKey,
+      final List<String> receiptHandles
+  ) {
+    return deletes.submit( queueKey, receiptHandles, batch -> delegate.deleteMessages( queueKey, batch ) );
+  }
+
+  @Override
+  public List<Either<SimpleQueueException, Boolean>> changeMessageVisibilities(
+      final Queue.Key queueKey,
+      final List<Tuple2<String, Integer>> receiptHandlesAndVisibilityTimeouts
+  ) {
+    return visibilityChanges.submit( queueKey, receiptHandlesAndVisibilityTimeouts, batch -> delegate.changeMessageVisibilities( queueKey, batch ) );
+  }
+
+  private static final class GroupCommit<K, T> {
+    private final ConcurrentMap<K, Group<T>> openGroups = new ConcurrentHashMap<>( );
+    private final ConcurrentMap<K, Integer> writing = new ConcurrentHashMap<>( );
+
+    /**
+     * Add the items to the open group for the key, the first caller for a group
+     * performs the operation for all the groups items.
+     */
+    List<Either<SimpleQueueException, Boolean>> submit(
+        final K key,
+        final List<T> items,
+        final Function<List<T>, List<Either<SimpleQueueException, Boolean>>> operation
+    ) {
+      final int windowMillis = SimpleQueueProperties.MESSAGE_BATCH_WINDOW_MILLIS;
+      if ( windowMillis <= 0 || items.isEmpty( ) ) {
+        return operation.apply( items );
+      }
+
+      Group<T> group;
+      int offset;
+      while ( true ) {
+        group = openGroups.computeIfAbsent( key, k -> new Group<>( ) );
+        synchronized ( group ) {
+          if ( !group.closed ) {
+            offset = group.items.size( );
+            group.items.addAll( items );
+            group.submissions++;
+            if ( group.items.size( ) >= MAX_GROUP_SIZE ) {
+              close( key, group );
+            }
+            break;
+          }
+        }
+        openGroups.remove( key, group );
+      }
+
+      final List<Either<SimpleQueueException, Boolean>> results;
+      if ( offset == 0 ) {
+        results = write( key, group, windowMillis, operation );
+      } else {
+        try {
+          results = group.results.join( );
+        } catch ( CompletionException e ) {
+          throw Exceptions.toUndeclared( e.getCause( ) );
+        }
+      }
+      if ( results == null ) {
+        // group write failed, write these items alone so we get our own result
+        return operation.apply( items );
+      }
+      return results.subList( offset, offset + items.size( ) );
+    }
+
+    private List<Either<SimpleQueueException, Boolean>> write(
+        final K key,
+        final Group<T> group,
+        final int windowMillis,
+        final Function<List<T>, List<Either<SimpleQueueException, Boolean>>> operation
+    ) {
+      final List<T> items;
+      final int submissions;
+      synchronized ( group ) {
+        if ( writing.containsKey( key ) ) {
+          final long deadline = System.nanoTime( ) + TimeUnit.MILLISECONDS.toNanos( windowMillis );
+          long remaining;
+          while ( !group.closed && ( remaining = deadline - System.nanoTime( ) ) > 0 ) {
+            try {
+              TimeUnit.NANOSECONDS.timedWait( group, remaining );
+            } catch ( InterruptedException e ) {
+              Thread.currentThread( ).interrupt( );
+              break;
+            }
+          }
+        }
+        close( key, group );
+        items = Lists.newArrayList( group.items ); // entries may be null
+        submissions = group.submissions;
+      }
+
+      writing.merge( key, 1, Integer::sum );
+      try {
+        final List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayList( operation.apply( items ) );
+        group.results.complete( results );
+        return results;
+      } catch ( final RuntimeException e ) {
+        if ( submissions == 1 ) {
+          group.results.completeExceptionally( e );
+          throw e;
+        }
+        logger.debug( "Write of " + items.size( ) + " coalesced entries failed, writing " +
+            submissions + " batches separately", e );
+        group.results.complete( null );
+        return null;
+      } catch ( final Error e ) {
+        group.results.completeExceptionally( e );
+        throw e;
+      } finally {
+        writing.computeIfPresent( key, ( k, count ) -> count > 1 ? count - 1 : null );
+      }
+    }
+
+    /**
+     * Caller must hold the groups monitor
+     */
+    private void close( final K key, final Group<T> group ) {
+      group.closed = true;
+      openGroups.remove( key, group );
+      group.notifyAll( );
+    }
+  }
+
+  private static final class Group<T> {
+    private final List<T> items = Lists.newArrayList( );
+    private final CompletableFuture<List<Either<SimpleQueueException, Boolean>>> results = new CompletableFuture<>( );
+    private int submissions;
+    private boolean closed;
+  }
+}
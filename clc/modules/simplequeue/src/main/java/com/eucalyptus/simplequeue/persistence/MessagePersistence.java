@@ -17,8 +17,12 @@ package com.eucalyptus.simplequeue.persistence;
 
 import com.eucalyptus.simplequeue.Message;
 import com.eucalyptus.simplequeue.exceptions.SimpleQueueException;
+import com.eucalyptus.util.Either;
+import com.google.common.collect.Lists;
+import javaslang.Tuple2;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -43,4 +47,57 @@ public interface MessagePersistence {
 
   Long getApproximateAgeOfOldestMessage(Queue.Key queueKey);
 
+  /**
+   * Send messages with their send attributes.
+   *
+   * @return The result for each message, in order.
+   */
+  default List<Either<SimpleQueueException, Boolean>> sendMessages(Queue queue, List<Tuple2<Message, Map<String, String>>> messages) {
+    List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayListWithCapacity(messages.size());
+    for (Tuple2<Message, Map<String, String>> message : messages) {
+      try {
+        sendMessage(queue, message._1(), message._2());
+        results.add(Either.right(true));
+      } catch (SimpleQueueException e) {
+        results.add(Either.left(e));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Delete messages by receipt handle.
+   *
+   * @return The result for each receipt handle, in order, true if a message was deleted.
+   */
+  default List<Either<SimpleQueueException, Boolean>> deleteMessages(Queue.Key queueKey, List<String> receiptHandles) {
+    List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayListWithCapacity(receiptHandles.size());
+    for (String receiptHandle : receiptHandles) {
+      try {
+        results.add(Either.right(deleteMessage(queueKey, receiptHandle)));
+      } catch (SimpleQueueException e) {
+        results.add(Either.left(e));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Change the visibility timeout for messages by receipt handle.
+   *
+   * @return The result for each receipt handle, in order.
+   */
+  default List<Either<SimpleQueueException, Boolean>> changeMessageVisibilities(Queue.Key queueKey, List<Tuple2<String, Integer>> receiptHandlesAndVisibilityTimeouts) {
+    List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayListWithCapacity(receiptHandlesAndVisibilityTimeouts.size());
+    for (Tuple2<String, Integer> receiptHandleAndVisibilityTimeout : receiptHandlesAndVisibilityTimeouts) {
+      try {
+        changeMessageVisibility(queueKey, receiptHandleAndVisibilityTimeout._1(), receiptHandleAndVisibilityTimeout._2());
+        results.add(Either.right(true));
+      } catch (SimpleQueueException e) {
+        results.add(Either.left(e));
+      }
+    }
+    return results;
+  }
+
 }
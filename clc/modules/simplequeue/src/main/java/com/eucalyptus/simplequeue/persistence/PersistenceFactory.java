@@ -39,9 +39,9 @@ public class PersistenceFactory {
   private static final String defaultPersistence = "postgres";
   private static final Map<String, Tuple2<QueuePersistence,MessagePersistence>> persistenceMap =
       ImmutableMap.<String,Tuple2<QueuePersistence,MessagePersistence>>builder( )
-      .put( "cassandra", Tuple.of( CassandraQueuePersistence.external( ), CassandraMessagePersistence.external( ) ) )
-      .put( "euca-cassandra", Tuple.of( CassandraQueuePersistence.internal( ), CassandraMessagePersistence.internal( ) ) )
-      .put( defaultPersistence, Tuple.of( new PostgresqlQueuePersistence( ), new PostgresqlMessagePersistence( ) ) )
+      .put( "cassandra", Tuple.of( CassandraQueuePersistence.external( ), new BatchingMessagePersistence( CassandraMessagePersistence.external( ) ) ) )
+      .put( "euca-cassandra", Tuple.of( CassandraQueuePersistence.internal( ), new BatchingMessagePersistence( CassandraMessagePersistence.internal( ) ) ) )
+      .put( defaultPersistence, Tuple.of( new PostgresqlQueuePersistence( ), new BatchingMessagePersistence( new PostgresqlMessagePersistence( ) ) ) )
       .build( );
 
   public static QueuePersistence getQueuePersistence( ) {
@@ -31,6 +31,7 @@
 package com.eucalyptus.simplequeue.persistence.cassandra;
 
 import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.SimpleStatement;
@@ -47,9 +48,12 @@ import com.eucalyptus.simplequeue.exceptions.SimpleQueueException;
 import com.eucalyptus.simplequeue.persistence.MessageJsonHelper;
 import com.eucalyptus.simplequeue.persistence.MessagePersistence;
 import com.eucalyptus.simplequeue.persistence.Queue;
+import com.eucalyptus.util.Either;
 import com.eucalyptus.util.ThrowingFunction;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import javaslang.Tuple;
+import javaslang.Tuple2;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -73,6 +77,8 @@ public class CassandraMessagePersistence implements MessagePersistence {
 
   private static final int NUM_PARTITIONS = 25;
 
+  private static final int MAX_BATCH_MESSAGE_BYTES = 32 * 1024;
+
   private static final List<String> partitionTokens = IntStream.range(0, NUM_PARTITIONS).boxed().map(String::valueOf).collect(Collectors.toList());
 
   private final CassandraSessionManager.SessionProvider sessionProvider;
@@ -256,109 +262,166 @@ public class CassandraMessagePersistence implements MessagePersistence {
   public void sendMessage(Queue queue, Message message, Map<String, String> sendAttributes) throws SimpleQueueException {
     doThrowsWithSession( session -> {
       BatchStatement batchStatement = new BatchStatement( );
+      batchStatement.addAll( sendMessageStatements( queue, message, sendAttributes ) );
+      session.execute( batchStatement );
+      return null;
+    } );
+  }
 
-      int delaySeconds = queue.getDelaySeconds( );
-      if ( sendAttributes.containsKey( Constants.DELAY_SECONDS ) ) {
-        delaySeconds = Integer.parseInt( sendAttributes.get( Constants.DELAY_SECONDS ) );
+  @Override
+  public List<Either<SimpleQueueException, Boolean>> sendMessages(
+      Queue queue,
+      List<Tuple2<Message, Map<String, String>>> messages
+  ) {
+    return doWithSession( session -> {
+      // statements for each message share a partition so are still applied atomically, batches are
+      // split by size to stay clear of the batch size failure threshold
+      List<ResultSetFuture> futures = Lists.newArrayList( );
+      BatchStatement batchStatement = new BatchStatement( BatchStatement.Type.UNLOGGED );
+      int batchBytes = 0;
+      for ( Tuple2<Message, Map<String, String>> message : messages ) {
+        int messageBytes = message._1( ).getBody( ) == null ? 0 : message._1( ).getBody( ).length( );
+        if ( batchStatement.size( ) > 0 && batchBytes + messageBytes > MAX_BATCH_MESSAGE_BYTES ) {
+          futures.add( session.executeAsync( batchStatement ) );
+          batchStatement = new BatchStatement( BatchStatement.Type.UNLOGGED );
+          batchBytes = 0;
+        }
+        batchStatement.addAll( sendMessageStatements( queue, message._1( ), message._2( ) ) );
+        batchBytes += messageBytes;
       }
-      String messageJson = MessageJsonHelper.messageToJson( message );
+      futures.add( session.executeAsync( batchStatement ) );
+      futures.forEach( ResultSetFuture::getUninterruptibly );
+      return messages.stream( ).map( message -> Either.<SimpleQueueException,Boolean>right( true ) ).collect( Collectors.toList( ) );
+    } );
+  }
+
+  private static List<Statement> sendMessageStatements(Queue queue, Message message, Map<String, String> sendAttributes) {
+    List<Statement> statements = Lists.newArrayList( );
+
+    int delaySeconds = queue.getDelaySeconds( );
+    if ( sendAttributes.containsKey( Constants.DELAY_SECONDS ) ) {
+      delaySeconds = Integer.parseInt( sendAttributes.get( Constants.DELAY_SECONDS ) );
+    }
+    String messageJson = MessageJsonHelper.messageToJson( message );
 
-      String partitionToken = partitionTokens.get( random.nextInt( partitionTokens.size( ) ) );
+    String partitionToken = partitionTokens.get( random.nextInt( partitionTokens.size( ) ) );
 
-      UUID messageId = UUID.fromString( message.getMessageId( ) );
+    UUID messageId = UUID.fromString( message.getMessageId( ) );
 
-      long nowSecs = SimpleQueueService.currentTimeSeconds( );
+    long nowSecs = SimpleQueueService.currentTimeSeconds( );
 
-      Date expirationTimestamp = new Date( ( nowSecs + queue.getMessageRetentionPeriod( ) ) * 1000L );
+    Date expirationTimestamp = new Date( ( nowSecs + queue.getMessageRetentionPeriod( ) ) * 1000L );
 
-      Statement statement1 = new SimpleStatement(
-          "INSERT INTO eucalyptus_simplequeue.messages (account_id, queue_name, partition_token, message_id, message_json, send_time_secs," +
-              "receive_count, total_receive_count, expiration_timestamp) " +
-              "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) USING TTL ?",
+    Statement statement1 = new SimpleStatement(
+        "INSERT INTO eucalyptus_simplequeue.messages (account_id, queue_name, partition_token, message_id, message_json, send_time_secs," +
+            "receive_count, total_receive_count, expiration_timestamp) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) USING TTL ?",
+        queue.getAccountId( ),
+        queue.getQueueName( ),
+        partitionToken,
+        messageId,
+        messageJson,
+        nowSecs,
+        0,
+        0,
+        expirationTimestamp,
+        queue.getMessageRetentionPeriod( ) );
+
+    statements.add( statement1 );
+
+    if ( delaySeconds > 0 ) {
+      Statement statement2 = new SimpleStatement(
+          "UPDATE eucalyptus_simplequeue.messages USING TTL ? SET is_delayed = ? " +
+              "WHERE account_id = ? AND queue_name = ? AND partition_token = ? AND message_id = ?",
+          delaySeconds,
+          true,
           queue.getAccountId( ),
           queue.getQueueName( ),
           partitionToken,
-          messageId,
-          messageJson,
-          nowSecs,
-          0,
-          0,
-          expirationTimestamp,
-          queue.getMessageRetentionPeriod( ) );
-
-      batchStatement.add( statement1 );
-
-      if ( delaySeconds > 0 ) {
-        Statement statement2 = new SimpleStatement(
-            "UPDATE eucalyptus_simplequeue.messages USING TTL ? SET is_delayed = ? " +
-                "WHERE account_id = ? AND queue_name = ? AND partition_token = ? AND message_id = ?",
-            delaySeconds,
-            true,
-            queue.getAccountId( ),
-            queue.getQueueName( ),
-            partitionToken,
-            messageId
-        );
-        batchStatement.add( statement2 );
-      }
-      session.execute( batchStatement );
-      return null;
-    } );
+          messageId
+      );
+      statements.add( statement2 );
+    }
+    return statements;
   }
 
   @Override
   public boolean deleteMessage(Queue.Key queueKey, String receiptHandle) throws SimpleQueueException {
-    // receipt handle (currently) looks like accountId:queueName:message-id:partition-token:receive-count
-    StringTokenizer stok = new StringTokenizer(receiptHandle,":");
-    if (stok.countTokens() != 5) {
-      throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid receipt handle.");
-    }
-    String receiptHandleAccountId = stok.nextToken();
-    String receiptHandleQueueName = stok.nextToken();
-    UUID messageId = UUID.fromString(stok.nextToken());
-    String partitionToken = stok.nextToken();
-    if (!partitionTokens.contains(partitionToken)) {
-      throw new ReceiptHandleIsInvalidException("The input receipt handle \"" + receiptHandle + "\" is not a valid for this queue.");
-    }
+    final ReceiptHandle handle = ReceiptHandle.parse( queueKey, receiptHandle );
     return doThrowsWithSession( session -> {
       boolean found = false;
-      int receiveCount = 0;
-      try {
-        receiveCount = Integer.parseInt(stok.nextToken());
-      } catch (NumberFormatException e) {
-        throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid receipt handle.");
-      }
-      if (!receiptHandleAccountId.equals(queueKey.getAccountId()) || !receiptHandleQueueName.equals(queueKey.getQueueName())) {
-        throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid for this queue.");
-      }
-      Statement statement1 = new SimpleStatement(
-          "SELECT receive_count FROM eucalyptus_simplequeue.messages WHERE account_id = ? AND queue_name = ? AND " +
-              "partition_token = ? AND message_id = ?",
-          queueKey.getAccountId( ),
-          queueKey.getQueueName( ),
-          partitionToken,
-          messageId
-      );
-      for ( Row row : session.execute( statement1 ) ) {
-        if ( row.getInt( "receive_count" ) == receiveCount ) {
+      for ( Row row : session.execute( selectMessageStatement( queueKey, handle, "receive_count" ) ) ) {
+        if ( row.getInt( "receive_count" ) == handle.receiveCount ) {
           found = true;
           break;
         }
       }
       if ( found ) {
-        Statement statement2 = new SimpleStatement(
-            "DELETE FROM eucalyptus_simplequeue.messages WHERE account_id = ? AND queue_name = ? AND partition_token = ? AND message_id = ?",
-            queueKey.getAccountId( ),
-            queueKey.getQueueName( ),
-            partitionToken,
-            messageId
-        );
-        session.execute( statement2 );
+        session.execute( deleteMessageStatement( queueKey, handle ) );
       }
       return found;
     } );
   }
 
+  @Override
+  public List<Either<SimpleQueueException, Boolean>> deleteMessages(Queue.Key queueKey, List<String> receiptHandles) {
+    return doWithSession( session -> {
+      List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayListWithCapacity( receiptHandles.size( ) );
+      List<Tuple2<ReceiptHandle,ResultSetFuture>> lookups = Lists.newArrayList( );
+      for ( String receiptHandle : receiptHandles ) {
+        try {
+          ReceiptHandle handle = ReceiptHandle.parse( queueKey, receiptHandle );
+          lookups.add( Tuple.of( handle, session.executeAsync( selectMessageStatement( queueKey, handle, "receive_count" ) ) ) );
+          results.add( null );
+        } catch ( ReceiptHandleIsInvalidException e ) {
+          lookups.add( null );
+          results.add( Either.left( e ) );
+        }
+      }
+      BatchStatement batchStatement = new BatchStatement( BatchStatement.Type.UNLOGGED );
+      for ( int i = 0; i < lookups.size( ); i++ ) {
+        Tuple2<ReceiptHandle,ResultSetFuture> lookup = lookups.get( i );
+        if ( lookup == null ) continue;
+        boolean found = false;
+        for ( Row row : lookup._2( ).getUninterruptibly( ) ) {
+          if ( row.getInt( "receive_count" ) == lookup._1( ).receiveCount ) {
+            found = true;
+            break;
+          }
+        }
+        if ( found ) {
+          batchStatement.add( deleteMessageStatement( queueKey, lookup._1( ) ) );
+        }
+        results.set( i, Either.right( found ) );
+      }
+      if ( batchStatement.size( ) > 0 ) {
+        session.execute( batchStatement );
+      }
+      return results;
+    } );
+  }
+
+  private static Statement selectMessageStatement( Queue.Key queueKey, ReceiptHandle handle, String columns ) {
+    return new SimpleStatement(
+        "SELECT " + columns + " FROM eucalyptus_simplequeue.messages WHERE account_id = ? AND queue_name = ? AND " +
+            "partition_token = ? AND message_id = ?",
+        queueKey.getAccountId( ),
+        queueKey.getQueueName( ),
+        handle.partitionToken,
+        handle.messageId
+    );
+  }
+
+  private static Statement deleteMessageStatement( Queue.Key queueKey, ReceiptHandle handle ) {
+    return new SimpleStatement(
+        "DELETE FROM eucalyptus_simplequeue.messages WHERE account_id = ? AND queue_name = ? AND partition_token = ? AND message_id = ?",
+        queueKey.getAccountId( ),
+        queueKey.getQueueName( ),
+        handle.partitionToken,
+        handle.messageId
+    );
+  }
+
   @Override
   public void deleteAllMessages(Queue.Key queueKey) {
     doWithSession( session -> {
@@ -408,70 +471,96 @@ public class CassandraMessagePersistence implements MessagePersistence {
 
   @Override
   public void changeMessageVisibility(Queue.Key queueKey, String receiptHandle, Integer inVisibilityTimeout) throws SimpleQueueException {
+    final ReceiptHandle handle = ReceiptHandle.parse( queueKey, receiptHandle );
     doThrowsWithSession( session -> {
-      boolean found = false;
-      // receipt handle (currently) looks like accountId:queueName:message-id:partition-token:receive-count
-      StringTokenizer stok = new StringTokenizer( receiptHandle, ":" );
-      if ( stok.countTokens( ) != 5 ) {
-        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid receipt handle." );
-      }
-      String receiptHandleAccountId = stok.nextToken( );
-      String receiptHandleQueueName = stok.nextToken( );
-      UUID messageId = UUID.fromString( stok.nextToken( ) );
-      String partitionToken = stok.nextToken( );
-      if ( !partitionTokens.contains( partitionToken ) ) {
-        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid for this queue." );
-      }
-      int receiveCount = 0;
-      try {
-        receiveCount = Integer.parseInt( stok.nextToken( ) );
-      } catch ( NumberFormatException e ) {
-        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid receipt handle." );
-      }
-      if ( !receiptHandleAccountId.equals( queueKey.getAccountId( ) ) || !receiptHandleQueueName.equals( queueKey.getQueueName( ) ) ) {
-        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid for this queue." );
-      }
-      Statement statement1 = new SimpleStatement(
-          "SELECT receive_count, expiration_timestamp FROM eucalyptus_simplequeue.messages WHERE account_id = ? " +
-              "AND queue_name = ? AND partition_token = ? AND message_id = ?",
-          queueKey.getAccountId( ),
-          queueKey.getQueueName( ),
-          partitionToken,
-          messageId
-      );
-      Date expirationTimestamp = null;
-      for ( Row row : session.execute( statement1 ) ) {
-        if ( row.getInt( "receive_count" ) == receiveCount ) {
-          expirationTimestamp = row.getTimestamp( "expiration_timestamp" );
-          found = true;
-          break;
+      session.execute( changeMessageVisibilityStatement(
+          queueKey,
+          handle,
+          inVisibilityTimeout,
+          session.execute( selectMessageStatement( queueKey, handle, "receive_count, expiration_timestamp" ) ) ) );
+      return null;
+    } );
+  }
+
+  @Override
+  public List<Either<SimpleQueueException, Boolean>> changeMessageVisibilities(
+      Queue.Key queueKey,
+      List<Tuple2<String, Integer>> receiptHandlesAndVisibilityTimeouts
+  ) {
+    return doWithSession( session -> {
+      List<Either<SimpleQueueException, Boolean>> results =
+          Lists.newArrayListWithCapacity( receiptHandlesAndVisibilityTimeouts.size( ) );
+      List<Tuple2<ReceiptHandle,ResultSetFuture>> lookups = Lists.newArrayList( );
+      for ( Tuple2<String, Integer> receiptHandleAndVisibilityTimeout : receiptHandlesAndVisibilityTimeouts ) {
+        try {
+          ReceiptHandle handle = ReceiptHandle.parse( queueKey, receiptHandleAndVisibilityTimeout._1( ) );
+          lookups.add( Tuple.of( handle, session.executeAsync(
+              selectMessageStatement( queueKey, handle, "receive_count, expiration_timestamp" ) ) ) );
+          results.add( null );
+        } catch ( ReceiptHandleIsInvalidException e ) {
+          lookups.add( null );
+          results.add( Either.left( e ) );
         }
       }
-      if ( !found ) {
-        throw new InvalidParameterValueException( "Value " + receiptHandle + " for parameter ReceiptHandle is invalid. Reason: Message does not exist or is not available for visibility timeout change." );
+      BatchStatement batchStatement = new BatchStatement( BatchStatement.Type.UNLOGGED );
+      for ( int i = 0; i < lookups.size( ); i++ ) {
+        Tuple2<ReceiptHandle,ResultSetFuture> lookup = lookups.get( i );
+        if ( lookup == null ) continue;
+        try {
+          batchStatement.add( changeMessageVisibilityStatement(
+              queueKey,
+              lookup._1( ),
+              receiptHandlesAndVisibilityTimeouts.get( i )._2( ),
+              lookup._2( ).getUninterruptibly( ) ) );
+          results.set( i, Either.right( true ) );
+        } catch ( InvalidParameterValueException e ) {
+          results.set( i, Either.left( e ) );
+        }
       }
-      int visibilityTimeout = inVisibilityTimeout;
-      int maxVisibilityTimeout = (int) ( ( expirationTimestamp.getTime( ) - System.currentTimeMillis( ) ) / 1000 );
-      if ( maxVisibilityTimeout < visibilityTimeout ) {
-        visibilityTimeout = maxVisibilityTimeout;
+      if ( batchStatement.size( ) > 0 ) {
+        session.execute( batchStatement );
       }
-      int ttl = visibilityTimeout > 0 ? visibilityTimeout : 1;
-      Boolean isInvisible = ( visibilityTimeout > 0 ) ? true : null;
-      Statement statement2 = new SimpleStatement(
-          "UPDATE eucalyptus_simplequeue.messages USING TTL ? SET is_invisible = ? " +
-              "WHERE account_id = ? AND queue_name = ? AND partition_token = ? AND message_id = ?",
-          ttl,
-          isInvisible,
-          queueKey.getAccountId( ),
-          queueKey.getQueueName( ),
-          partitionToken,
-          messageId
-      );
-      session.execute( statement2 );
-      return null;
+      return results;
     } );
   }
 
+  private static Statement changeMessageVisibilityStatement(
+      Queue.Key queueKey,
+      ReceiptHandle handle,
+      Integer inVisibilityTimeout,
+      Iterable<Row> rows
+  ) throws InvalidParameterValueException {
+    boolean found = false;
+    Date expirationTimestamp = null;
+    for ( Row row : rows ) {
+      if ( row.getInt( "receive_count" ) == handle.receiveCount ) {
+        expirationTimestamp = row.getTimestamp( "expiration_timestamp" );
+        found = true;
+        break;
+      }
+    }
+    if ( !found ) {
+      throw new InvalidParameterValueException( "Value " + handle.receiptHandle + " for parameter ReceiptHandle is invalid. Reason: Message does not exist or is not available for visibility timeout change." );
+    }
+    int visibilityTimeout = inVisibilityTimeout;
+    int maxVisibilityTimeout = (int) ( ( expirationTimestamp.getTime( ) - System.currentTimeMillis( ) ) / 1000 );
+    if ( maxVisibilityTimeout < visibilityTimeout ) {
+      visibilityTimeout = maxVisibilityTimeout;
+    }
+    int ttl = visibilityTimeout > 0 ? visibilityTimeout : 1;
+    Boolean isInvisible = ( visibilityTimeout > 0 ) ? true : null;
+    return new SimpleStatement(
+        "UPDATE eucalyptus_simplequeue.messages USING TTL ? SET is_invisible = ? " +
+            "WHERE account_id = ? AND queue_name = ? AND partition_token = ? AND message_id = ?",
+        ttl,
+        isInvisible,
+        queueKey.getAccountId( ),
+        queueKey.getQueueName( ),
+        handle.partitionToken,
+        handle.messageId
+    );
+  }
+
   @Override
   public Long getApproximateAgeOfOldestMessage(Queue.Key queueKey) {
     return doWithSession( session -> {
@@ -511,4 +600,51 @@ public class CassandraMessagePersistence implements MessagePersistence {
   private <R> R doWithSession( final Function<Session,R> callbackFunction ) {
     return sessionProvider.doWithSession( callbackFunction );
   }
+
+  private static final class ReceiptHandle {
+    private final String receiptHandle;
+    private final UUID messageId;
+    private final String partitionToken;
+    private final int receiveCount;
+
+    private ReceiptHandle( String receiptHandle, UUID messageId, String partitionToken, int receiveCount ) {
+      this.receiptHandle = receiptHandle;
+      this.messageId = messageId;
+      this.partitionToken = partitionToken;
+      this.receiveCount = receiveCount;
+    }
+
+    // receipt handle (currently) looks like accountId:queueName:message-id:partition-token:receive-count
+    private static ReceiptHandle parse( Queue.Key queueKey, String receiptHandle ) throws ReceiptHandleIsInvalidException {
+      if ( receiptHandle == null ) {
+        throw new ReceiptHandleIsInvalidException( "The input receipt handle is not a valid receipt handle." );
+      }
+      StringTokenizer stok = new StringTokenizer( receiptHandle, ":" );
+      if ( stok.countTokens( ) != 5 ) {
+        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid receipt handle." );
+      }
+      String receiptHandleAccountId = stok.nextToken( );
+      String receiptHandleQueueName = stok.nextToken( );
+      UUID messageId;
+      try {
+        messageId = UUID.fromString( stok.nextToken( ) );
+      } catch ( IllegalArgumentException e ) {
+        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid receipt handle." );
+      }
+      String partitionToken = stok.nextToken( );
+      if ( !partitionTokens.contains( partitionToken ) ) {
+        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid for this queue." );
+      }
+      int receiveCount = 0;
+      try {
+        receiveCount = Integer.parseInt( stok.nextToken( ) );
+      } catch ( NumberFormatException e ) {
+        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid receipt handle." );
+      }
+      if ( !receiptHandleAccountId.equals( queueKey.getAccountId( ) ) || !receiptHandleQueueName.equals( queueKey.getQueueName( ) ) ) {
+        throw new ReceiptHandleIsInvalidException( "The input receipt handle \"" + receiptHandle + "\" is not a valid for this queue." );
+      }
+      return new ReceiptHandle( receiptHandle, messageId, partitionToken, receiveCount );
+    }
+  }
 }
@@ -48,6 +48,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import javaslang.Tuple2;
 
 import javax.annotation.Nullable;
 import java.util.Collection;
@@ -176,117 +177,175 @@ public class PostgresqlMessagePersistence implements MessagePersistence {
       @Nullable
       @Override
       public Void apply(@Nullable Void aVoid) {
-        MessageEntity messageEntity = new MessageEntity();
-        messageEntity.setMessageId(message.getMessageId());
-        messageEntity.setAccountId(queue.getAccountId());
-        messageEntity.setQueueName(queue.getQueueName());
-        Map<String, String> attributeMap = Maps.newHashMap();
-        if (message.getAttribute() != null) {
-          for (Attribute attribute : message.getAttribute()) {
-            attributeMap.put(attribute.getName(), attribute.getValue());
-          }
-        }
-        messageEntity.setReceiveCount(0);
-        messageEntity.setLocalReceiveCount(0);
-        messageEntity.setSentTimestampSecs(SimpleQueueService.currentTimeSeconds());
-        messageEntity.setExpiredTimestampSecs(messageEntity.getSentTimestampSecs() + queue.getMessageRetentionPeriod());
-        int delaySeconds = queue.getDelaySeconds();
-        if (sendAttributes.containsKey(Constants.DELAY_SECONDS)) {
-          delaySeconds = Integer.parseInt(sendAttributes.get(Constants.DELAY_SECONDS));
-        }
-        messageEntity.setVisibleTimestampSecs(messageEntity.getSentTimestampSecs() + delaySeconds);
-        messageEntity.setMessageJson(MessageJsonHelper.messageToJson(message));
-        Entities.persist(messageEntity);
+        Entities.persist(newMessageEntity(queue, message, sendAttributes));
         return null;
       }
     }).apply(null);
   }
 
   @Override
-  public boolean deleteMessage(Queue.Key queueKey, String receiptHandle) throws SimpleQueueException {
-    boolean found = false;
-    // receipt handle (currently) looks like accountId:queueName:message-id:receive-count
-    StringTokenizer stok = new StringTokenizer(receiptHandle,":");
-    if (stok.countTokens() != 4) {
-      throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid receipt handle.");
+  public List<Either<SimpleQueueException, Boolean>> sendMessages(Queue queue, List<Tuple2<Message, Map<String, String>>> messages) {
+    // build entities first so an invalid message fails only its own entry
+    List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayListWithCapacity(messages.size());
+    List<MessageEntity> messageEntities = Lists.newArrayListWithCapacity(messages.size());
+    for (Tuple2<Message, Map<String, String>> message : messages) {
+      try {
+        messageEntities.add(newMessageEntity(queue, message._1(), message._2()));
+        results.add(Either.right(true));
+      } catch (RuntimeException e) {
+        results.add(Either.left(new InvalidParameterValueException("Invalid message: " + e.getMessage())));
+      }
     }
-    String receiptHandleAccountId = stok.nextToken();
-    String receiptHandleQueueName = stok.nextToken();
-    String messageId = stok.nextToken();
-    int receiveCount = 0;
-    try {
-      receiveCount = Integer.parseInt(stok.nextToken());
-    } catch (NumberFormatException e) {
-      throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid receipt handle.");
+    if (!messageEntities.isEmpty()) {
+      Entities.asDistinctTransaction(MessageEntity.class, new Function<Void, Void>() {
+        @Nullable
+        @Override
+        public Void apply(@Nullable Void aVoid) {
+          for (MessageEntity messageEntity : messageEntities) {
+            Entities.persist(messageEntity);
+          }
+          return null;
+        }
+      }).apply(null);
     }
-    if (!receiptHandleAccountId.equals(queueKey.getAccountId()) || !receiptHandleQueueName.equals(queueKey.getQueueName())) {
-      throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid for this queue.");
+    return results;
+  }
+
+  private static MessageEntity newMessageEntity(Queue queue, Message message, Map<String, String> sendAttributes) {
+    MessageEntity messageEntity = new MessageEntity();
+    messageEntity.setMessageId(message.getMessageId());
+    messageEntity.setAccountId(queue.getAccountId());
+    messageEntity.setQueueName(queue.getQueueName());
+    Map<String, String> attributeMap = Maps.newHashMap();
+    if (message.getAttribute() != null) {
+      for (Attribute attribute : message.getAttribute()) {
+        attributeMap.put(attribute.getName(), attribute.getValue());
+      }
+    }
+    messageEntity.setReceiveCount(0);
+    messageEntity.setLocalReceiveCount(0);
+    messageEntity.setSentTimestampSecs(SimpleQueueService.currentTimeSeconds());
+    messageEntity.setExpiredTimestampSecs(messageEntity.getSentTimestampSecs() + queue.getMessageRetentionPeriod());
+    int delaySeconds = queue.getDelaySeconds();
+    if (sendAttributes.containsKey(Constants.DELAY_SECONDS)) {
+      delaySeconds = Integer.parseInt(sendAttributes.get(Constants.DELAY_SECONDS));
     }
+    messageEntity.setVisibleTimestampSecs(messageEntity.getSentTimestampSecs() + delaySeconds);
+    messageEntity.setMessageJson(MessageJsonHelper.messageToJson(message));
+    return messageEntity;
+  }
 
+  @Override
+  public boolean deleteMessage(Queue.Key queueKey, String receiptHandle) throws SimpleQueueException {
+    ReceiptHandle handle = ReceiptHandle.parse(queueKey, receiptHandle);
     try ( TransactionResource db =
             Entities.transactionFor(MessageEntity.class) ) {
+      boolean found = deleteMessage(queueKey, handle);
+      db.commit();
+      return found;
+    }
+  }
 
-      // No errors if no results
-      List<MessageEntity> messageEntityList = Entities.criteriaQuery(MessageEntity.class)
-        .whereEqual(MessageEntity_.accountId, queueKey.getAccountId())
-        .whereEqual(MessageEntity_.queueName, queueKey.getQueueName())
-        .whereEqual(MessageEntity_.messageId, messageId)
-        .whereEqual(MessageEntity_.receiveCount, receiveCount)
-        .list();
-      if (messageEntityList != null) {
-        found = true;
-        for (MessageEntity messageEntity:messageEntityList) {
-          Entities.delete(messageEntity);
+  @Override
+  public List<Either<SimpleQueueException, Boolean>> deleteMessages(Queue.Key queueKey, List<String> receiptHandles) {
+    // parse handles first so an invalid handle fails only its own entry
+    List<Either<SimpleQueueException, ReceiptHandle>> handles = Lists.newArrayListWithCapacity(receiptHandles.size());
+    for (String receiptHandle : receiptHandles) {
+      try {
+        handles.add(Either.right(ReceiptHandle.parse(queueKey, receiptHandle)));
+      } catch (SimpleQueueException e) {
+        handles.add(Either.left(e));
+      }
+    }
+    List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayListWithCapacity(receiptHandles.size());
+    try ( TransactionResource db =
+            Entities.transactionFor(MessageEntity.class) ) {
+      for (Either<SimpleQueueException, ReceiptHandle> handle : handles) {
+        if (handle.isLeft()) {
+          results.add(Either.left(handle.getLeft()));
+        } else {
+          results.add(Either.right(deleteMessage(queueKey, handle.getRight())));
         }
       }
       db.commit();
     }
-    return found;
+    return results;
+  }
+
+  private static boolean deleteMessage(Queue.Key queueKey, ReceiptHandle handle) {
+    // No errors if no results
+    List<MessageEntity> messageEntityList = Entities.criteriaQuery(MessageEntity.class)
+      .whereEqual(MessageEntity_.accountId, queueKey.getAccountId())
+      .whereEqual(MessageEntity_.queueName, queueKey.getQueueName())
+      .whereEqual(MessageEntity_.messageId, handle.messageId)
+      .whereEqual(MessageEntity_.receiveCount, handle.receiveCount)
+      .list();
+    for (MessageEntity messageEntity:messageEntityList) {
+      Entities.delete(messageEntity);
+    }
+    return !messageEntityList.isEmpty();
   }
 
   @Override
   public void changeMessageVisibility(Queue.Key queueKey, String receiptHandle, Integer visibilityTimeout) throws SimpleQueueException {
-    // receipt handle (currently) looks like accountId:queueName:message-id:receive-count
-    StringTokenizer stok = new StringTokenizer(receiptHandle,":");
-    if (stok.countTokens() != 4) {
-      throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid receipt handle.");
-    }
-    String receiptHandleAccountId = stok.nextToken();
-    String receiptHandleQueueName = stok.nextToken();
-    String messageId = stok.nextToken();
-    int receiveCount = 0;
-    try {
-      receiveCount = Integer.parseInt(stok.nextToken());
-    } catch (NumberFormatException e) {
-      throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid receipt handle.");
-    }
-    if (!receiptHandleAccountId.equals(queueKey.getAccountId()) || !receiptHandleQueueName.equals(queueKey.getQueueName())) {
-      throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid for this queue.");
+    ReceiptHandle handle = ReceiptHandle.parse(queueKey, receiptHandle);
+    try ( TransactionResource db =
+            Entities.transactionFor(MessageEntity.class) ) {
+      changeMessageVisibility(queueKey, handle, visibilityTimeout);
+      db.commit();
     }
+  }
 
+  @Override
+  public List<Either<SimpleQueueException, Boolean>> changeMessageVisibilities(Queue.Key queueKey, List<Tuple2<String, Integer>> receiptHandlesAndVisibilityTimeouts) {
+    // parse handles first so an invalid entry fails only itself
+    List<Either<SimpleQueueException, ReceiptHandle>> handles = Lists.newArrayListWithCapacity(receiptHandlesAndVisibilityTimeouts.size());
+    for (Tuple2<String, Integer> receiptHandleAndVisibilityTimeout : receiptHandlesAndVisibilityTimeouts) {
+      try {
+        if (receiptHandleAndVisibilityTimeout._2() == null) {
+          throw new InvalidParameterValueException("VisibilityTimeout is required");
+        }
+        handles.add(Either.right(ReceiptHandle.parse(queueKey, receiptHandleAndVisibilityTimeout._1())));
+      } catch (SimpleQueueException e) {
+        handles.add(Either.left(e));
+      }
+    }
+    List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayListWithCapacity(receiptHandlesAndVisibilityTimeouts.size());
     try ( TransactionResource db =
             Entities.transactionFor(MessageEntity.class) ) {
-      long now = SimpleQueueService.currentTimeSeconds();
-      // No errors if no results
-      List<MessageEntity> messageEntityList = Entities.criteriaQuery(MessageEntity.class)
-        .whereEqual(MessageEntity_.accountId, queueKey.getAccountId())
-        .whereEqual(MessageEntity_.queueName, queueKey.getQueueName())
-        .whereEqual(MessageEntity_.messageId, messageId)
-        .whereEqual(MessageEntity_.receiveCount, receiveCount)
-        .list();
-      int countedResults = 0;
-      if (messageEntityList != null) {
-        for (MessageEntity messageEntity:messageEntityList) {
-          countedResults++;
-          messageEntity.setVisibleTimestampSecs(now + visibilityTimeout);
+      for (int i = 0; i < handles.size(); i++) {
+        Either<SimpleQueueException, ReceiptHandle> handle = handles.get(i);
+        if (handle.isLeft()) {
+          results.add(Either.left(handle.getLeft()));
+          continue;
+        }
+        try {
+          changeMessageVisibility(queueKey, handle.getRight(), receiptHandlesAndVisibilityTimeouts.get(i)._2());
+          results.add(Either.right(true));
+        } catch (SimpleQueueException e) {
+          results.add(Either.left(e));
         }
-      }
-      if (countedResults == 0) {
-        throw new InvalidParameterValueException("Value " + receiptHandle + " for parameter ReceiptHandle is invalid. Reason: Message does not exist or is not available for visibility timeout change.");
       }
       db.commit();
     }
+    return results;
+  }
 
+  private static void changeMessageVisibility(Queue.Key queueKey, ReceiptHandle handle, Integer visibilityTimeout) throws SimpleQueueException {
+    long now = SimpleQueueService.currentTimeSeconds();
+    // No errors if no results
+    List<MessageEntity> messageEntityList = Entities.criteriaQuery(MessageEntity.class)
+      .whereEqual(MessageEntity_.accountId, queueKey.getAccountId())
+      .whereEqual(MessageEntity_.queueName, queueKey.getQueueName())
+      .whereEqual(MessageEntity_.messageId, handle.messageId)
+      .whereEqual(MessageEntity_.receiveCount, handle.receiveCount)
+      .list();
+    if (messageEntityList.isEmpty()) {
+      throw new InvalidParameterValueException("Value " + handle.receiptHandle + " for parameter ReceiptHandle is invalid. Reason: Message does not exist or is not available for visibility timeout change.");
+    }
+    for (MessageEntity messageEntity:messageEntityList) {
+      messageEntity.setVisibleTimestampSecs(now + visibilityTimeout);
+    }
   }
 
   @Override
@@ -382,4 +441,39 @@ public class PostgresqlMessagePersistence implements MessagePersistence {
     return result;
   }
 
+  private static final class ReceiptHandle {
+    private final String receiptHandle;
+    private final String messageId;
+    private final int receiveCount;
+
+    private ReceiptHandle(String receiptHandle, String messageId, int receiveCount) {
+      this.receiptHandle = receiptHandle;
+      this.messageId = messageId;
+      this.receiveCount = receiveCount;
+    }
+
+    // receipt handle (currently) looks like accountId:queueName:message-id:receive-count
+    private static ReceiptHandle parse(Queue.Key queueKey, String receiptHandle) throws ReceiptHandleIsInvalidException {
+      if (receiptHandle == null) {
+        throw new ReceiptHandleIsInvalidException("The input receipt handle is not a valid receipt handle.");
+      }
+      StringTokenizer stok = new StringTokenizer(receiptHandle,":");
+      if (stok.countTokens() != 4) {
+        throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid receipt handle.");
+      }
+      String receiptHandleAccountId = stok.nextToken();
+      String receiptHandleQueueName = stok.nextToken();
+      String messageId = stok.nextToken();
+      int receiveCount = 0;
+      try {
+        receiveCount = Integer.parseInt(stok.nextToken());
+      } catch (NumberFormatException e) {
+        throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid receipt handle.");
+      }
+      if (!receiptHandleAccountId.equals(queueKey.getAccountId()) || !receiptHandleQueueName.equals(queueKey.getQueueName())) {
+        throw new ReceiptHandleIsInvalidException("The input receipt handle \""+receiptHandle+"\" is not a valid for this queue.");
+      }
+      return new ReceiptHandle(receiptHandle, messageId, receiveCount);
+    }
+  }
 }
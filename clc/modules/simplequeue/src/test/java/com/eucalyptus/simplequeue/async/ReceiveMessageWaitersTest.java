@@ -0,0 +1,137 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.async;
+
+import static org.junit.Assert.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import com.eucalyptus.simplequeue.async.ReceiveMessageWaiters.Checkpoint;
+import com.eucalyptus.simplequeue.async.ReceiveMessageWaiters.QueueWaiters;
+import com.eucalyptus.simplequeue.async.ReceiveMessageWaiters.Waiter;
+
+/**
+ * Unit tests for receive message waiters
+ */
+public class ReceiveMessageWaitersTest {
+
+  @Test
+  public void testWake( ) throws Exception {
+    final QueueWaiters queueWaiters = new QueueWaiters( );
+    final Outcome outcome = new Outcome( Long.MAX_VALUE );
+    assertTrue( "Parked", queueWaiters.park( outcome.waiter( ), queueWaiters.checkpoint( ) ) );
+    assertNull( "Outcome before wakeup", outcome.get( 100 ) );
+    queueWaiters.wake( 1 );
+    assertEquals( "Woken", Boolean.TRUE, outcome.get( 5000 ) );
+  }
+
+  @Test
+  public void testWakeBetweenCheckpointAndPark( ) throws Exception {
+    final QueueWaiters queueWaiters = new QueueWaiters( );
+    final Checkpoint checkpoint = queueWaiters.checkpoint( );
+    // messages sent after the receiver found the queue empty but before it parked
+    queueWaiters.wake( 1 );
+    final Outcome outcome = new Outcome( Long.MAX_VALUE );
+    assertFalse( "Parked", queueWaiters.park( outcome.waiter( ), checkpoint ) );
+    assertEquals( "Woken", Boolean.TRUE, outcome.get( 5000 ) );
+  }
+
+  @Test
+  public void testEmptyWakeDoesNotAdvance( ) throws Exception {
+    final QueueWaiters queueWaiters = new QueueWaiters( );
+    final Checkpoint checkpoint = queueWaiters.checkpoint( );
+    queueWaiters.wake( 0 );
+    final Outcome outcome = new Outcome( Long.MAX_VALUE );
+    assertTrue( "Parked", queueWaiters.park( outcome.waiter( ), checkpoint ) );
+    assertNull( "Outcome without wakeup", outcome.get( 100 ) );
+  }
+
+  @Test
+  public void testTimeout( ) throws Exception {
+    final QueueWaiters queueWaiters = new QueueWaiters( );
+    final Outcome outcome = new Outcome( 1000 );
+    assertTrue( "Parked", queueWaiters.park( outcome.waiter( ), queueWaiters.checkpoint( ) ) );
+    queueWaiters.timeout( 1000 );
+    assertEquals( "Timed out", Boolean.FALSE, outcome.get( 5000 ) );
+    queueWaiters.wake( 1 );
+    assertEquals( "Outcome after wakeup", Boolean.FALSE, outcome.get( 100 ) );
+  }
+
+  @Test
+  public void testDelayedWakeup( ) throws Exception {
+    final QueueWaiters queueWaiters = new QueueWaiters( );
+    assertTrue( "Wakeup added", queueWaiters.addWakeup( null, 1500, 2 ) );
+    assertTrue( "Wakeup added", queueWaiters.addWakeup( null, 1700, 1 ) );
+    // wakeups are due at the end of the second, messages are not yet visible before then
+    assertEquals( "Due wakeups before delay", 0, queueWaiters.dueWakeups( 1500 ) );
+    assertEquals( "Due wakeups after delay", 3, queueWaiters.dueWakeups( 2000 ) );
+    assertEquals( "Due wakeups after processing", 0, queueWaiters.dueWakeups( 3000 ) );
+  }
+
+  @Test
+  public void testConcurrentWakeIsNotLost( ) throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor( );
+    try {
+      for ( int i = 0; i < 1000; i++ ) {
+        final QueueWaiters queueWaiters = new QueueWaiters( );
+        final Checkpoint checkpoint = queueWaiters.checkpoint( );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final Future<?> waker = executor.submit( ( ) -> {
+          start.await( );
+          queueWaiters.wake( 1 );
+          return null;
+        } );
+        final Outcome outcome = new Outcome( Long.MAX_VALUE );
+        start.countDown( );
+        queueWaiters.park( outcome.waiter( ), checkpoint );
+        waker.get( );
+        assertEquals( "Woken " + i, Boolean.TRUE, outcome.get( 5000 ) );
+      }
+    } finally {
+      executor.shutdownNow( );
+    }
+  }
+
+  private static final class Outcome {
+    private final long deadline;
+    private final CountDownLatch latch = new CountDownLatch( 1 );
+    private final AtomicReference<Boolean> woken = new AtomicReference<>( );
+
+    Outcome( final long deadline ) {
+      this.deadline = deadline;
+    }
+
+    Waiter waiter( ) {
+      return new Waiter( deadline, value -> {
+        woken.set( value );
+        latch.countDown( );
+      } );
+    }
+
+    Boolean get( final long millis ) throws InterruptedException {
+      latch.await( millis, TimeUnit.MILLISECONDS );
+      return woken.get( );
+    }
+  }
+}
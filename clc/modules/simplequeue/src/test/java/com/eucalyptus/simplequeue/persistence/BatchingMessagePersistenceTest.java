@@ -0,0 +1,226 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.persistence;
+
+import static org.junit.Assert.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.eucalyptus.simplequeue.Message;
+import com.eucalyptus.simplequeue.config.SimpleQueueProperties;
+import com.eucalyptus.simplequeue.exceptions.SimpleQueueException;
+import com.eucalyptus.util.Either;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for batching message persistence
+ */
+public class BatchingMessagePersistenceTest {
+
+  private static final Queue.Key KEY = new Queue.Key( "000000000000", "queue" );
+
+  private int windowMillis;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp( ) {
+    windowMillis = SimpleQueueProperties.MESSAGE_BATCH_WINDOW_MILLIS;
+    SimpleQueueProperties.MESSAGE_BATCH_WINDOW_MILLIS = 1000;
+    executor = Executors.newCachedThreadPool( );
+  }
+
+  @After
+  public void tearDown( ) {
+    SimpleQueueProperties.MESSAGE_BATCH_WINDOW_MILLIS = windowMillis;
+    executor.shutdownNow( );
+  }
+
+  @Test
+  public void testIdleQueueWrittenImmediately( ) {
+    final DeletePersistence delegate = new DeletePersistence( null );
+    final BatchingMessagePersistence persistence = new BatchingMessagePersistence( delegate );
+    final long before = System.nanoTime( );
+    final List<Either<SimpleQueueException, Boolean>> results =
+        persistence.deleteMessages( KEY, ImmutableList.of( "a-found", "a-missing" ) );
+    assertTrue( "Written without waiting for window",
+        System.nanoTime( ) - before < TimeUnit.MILLISECONDS.toNanos( 500 ) );
+    assertEquals( "Results", ImmutableList.of( true, false ), values( results ) );
+    assertEquals( "Batches", ImmutableList.of( ImmutableList.of( "a-found", "a-missing" ) ), delegate.batches );
+  }
+
+  @Test
+  public void testConcurrentBatchesCoalesced( ) throws Exception {
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final DeletePersistence delegate = new DeletePersistence( release );
+    final BatchingMessagePersistence persistence = new BatchingMessagePersistence( delegate );
+    final Future<List<Either<SimpleQueueException, Boolean>>> first =
+        delete( persistence, ImmutableList.of( "a-found" ) );
+    delegate.writing.await( 5, TimeUnit.SECONDS );
+    final Future<List<Either<SimpleQueueException, Boolean>>> second =
+        delete( persistence, ImmutableList.of( "b-found", "b-missing" ) );
+    final Future<List<Either<SimpleQueueException, Boolean>>> third =
+        delete( persistence, ImmutableList.of( "c-missing" ) );
+    final Future<List<Either<SimpleQueueException, Boolean>>> fourth =
+        delete( persistence, ImmutableList.of( "d-found" ) );
+    release.countDown( );
+
+    assertEquals( "First results", ImmutableList.of( true ), values( first.get( 5, TimeUnit.SECONDS ) ) );
+    assertEquals( "Second results", ImmutableList.of( true, false ), values( second.get( 5, TimeUnit.SECONDS ) ) );
+    assertEquals( "Third results", ImmutableList.of( false ), values( third.get( 5, TimeUnit.SECONDS ) ) );
+    assertEquals( "Fourth results", ImmutableList.of( true ), values( fourth.get( 5, TimeUnit.SECONDS ) ) );
+    assertEquals( "Batch count", 2, delegate.batches.size( ) );
+    assertEquals( "Coalesced batch size", 4, delegate.batches.get( 1 ).size( ) );
+  }
+
+  @Test
+  public void testFailureIsolated( ) throws Exception {
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final DeletePersistence delegate = new DeletePersistence( release );
+    final BatchingMessagePersistence persistence = new BatchingMessagePersistence( delegate );
+    final Future<List<Either<SimpleQueueException, Boolean>>> first =
+        delete( persistence, ImmutableList.of( "a-found" ) );
+    delegate.writing.await( 5, TimeUnit.SECONDS );
+    final Future<List<Either<SimpleQueueException, Boolean>>> good =
+        delete( persistence, ImmutableList.of( "b-found", "b-missing" ) );
+    final Future<List<Either<SimpleQueueException, Boolean>>> bad =
+        delete( persistence, Lists.newArrayList( "c-found", null ) );
+    release.countDown( );
+
+    assertEquals( "First results", ImmutableList.of( true ), values( first.get( 5, TimeUnit.SECONDS ) ) );
+    assertEquals( "Good results", ImmutableList.of( true, false ), values( good.get( 5, TimeUnit.SECONDS ) ) );
+    try {
+      bad.get( 5, TimeUnit.SECONDS );
+      fail( "Expected failure for bad batch" );
+    } catch ( java.util.concurrent.ExecutionException e ) {
+      assertTrue( "Failure cause", e.getCause( ) instanceof NullPointerException );
+    }
+  }
+
+  @Test
+  public void testFailureWithoutCoalescing( ) {
+    final DeletePersistence delegate = new DeletePersistence( null );
+    final BatchingMessagePersistence persistence = new BatchingMessagePersistence( delegate );
+    try {
+      persistence.deleteMessages( KEY, Lists.newArrayList( "a-found", null ) );
+      fail( "Expected failure" );
+    } catch ( NullPointerException e ) {
+      // expected
+    }
+    assertEquals( "Batches", 1, delegate.batches.size( ) );
+  }
+
+  private Future<List<Either<SimpleQueueException, Boolean>>> delete(
+      final BatchingMessagePersistence persistence,
+      final List<String> receiptHandles
+  ) {
+    return executor.submit( ( ) -> persistence.deleteMessages( KEY, receiptHandles ) );
+  }
+
+  private static List<Boolean> values( final List<Either<SimpleQueueException, Boolean>> results ) {
+    final List<Boolean> values = Lists.newArrayList( );
+    for ( final Either<SimpleQueueException, Boolean> result : results ) {
+      values.add( result.getRight( ) );
+    }
+    return values;
+  }
+
+  /**
+   * Delete only persistence, the first batch blocks until released and a null
+   * receipt handle fails the whole batch.
+   */
+  private static final class DeletePersistence implements MessagePersistence {
+    private final CountDownLatch release;
+    private final CountDownLatch writing = new CountDownLatch( 1 );
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>( );
+
+    private DeletePersistence( final CountDownLatch release ) {
+      this.release = release;
+    }
+
+    @Override
+    public List<Either<SimpleQueueException, Boolean>> deleteMessages( final Queue.Key queueKey, final List<String> receiptHandles ) {
+      batches.add( Lists.newArrayList( receiptHandles ) );
+      if ( release != null && batches.size( ) == 1 ) {
+        writing.countDown( );
+        try {
+          release.await( 5, TimeUnit.SECONDS );
+        } catch ( InterruptedException e ) {
+          Thread.currentThread( ).interrupt( );
+        }
+      }
+      final List<Either<SimpleQueueException, Boolean>> results = Lists.newArrayList( );
+      for ( final String receiptHandle : receiptHandles ) {
+        results.add( Either.right( receiptHandle.endsWith( "-found" ) ) );
+      }
+      return results;
+    }
+
+    @Override
+    public UUID getNewMessageUUID( ) {
+      throw new UnsupportedOperationException( );
+    }
+
+    @Override
+    public Collection<Message> receiveMessages( final Queue queue, final Map<String, String> receiveAttributes ) {
+      throw new UnsupportedOperationException( );
+    }
+
+    @Override
+    public void sendMessage( final Queue queue, final Message message, final Map<String, String> sendAttributes ) {
+      throw new UnsupportedOperationException( );
+    }
+
+    @Override
+    public boolean deleteMessage( final Queue.Key queueKey, final String receiptHandle ) {
+      throw new UnsupportedOperationException( );
+    }
+
+    @Override
+    public void deleteAllMessages( final Queue.Key queueKey ) {
+      throw new UnsupportedOperationException( );
+    }
+
+    @Override
+    public Map<String, String> getApproximateMessageCounts( final Queue.Key queueKey ) {
+      throw new UnsupportedOperationException( );
+    }
+
+    @Override
+    public void changeMessageVisibility( final Queue.Key queueKey, final String receiptHandle, final Integer visibilityTimeout ) {
+      throw new UnsupportedOperationException( );
+    }
+
+    @Override
+    public Long getApproximateAgeOfOldestMessage( final Queue.Key queueKey ) {
+      throw new UnsupportedOperationException( );
+    }
+  }
+}
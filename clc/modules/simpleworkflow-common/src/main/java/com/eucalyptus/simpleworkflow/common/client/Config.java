@@ -118,6 +118,15 @@ public class Config {
     }
   }
 
+  /**
+   * Set the supplier for the local dispatch setting, the setting is checked for each request.
+   *
+   * @param enabled Supplier that is true when clients may dispatch to a local service
+   */
+  public static void setLocalDispatchEnabled( final Supplier<Boolean> enabled ) {
+    LocalSimpleWorkflowClient.setEnabled( enabled );
+  }
+
   public static AmazonSimpleWorkflow buildClient( final Supplier<User> user ) throws AuthException {
     final AWSCredentialsProvider credentialsProvider = new SecurityTokenAWSCredentialsProvider( user );
     final AmazonSimpleWorkflowClient client = new EucaSimpleWorkflowClient(
@@ -197,7 +206,7 @@ public class Config {
         }
       }
     } );
-    return client;
+    return LocalSimpleWorkflowClient.wrap( client, user );
   }
 
   public static WorkflowWorker buildWorkflowWorker(
@@ -355,6 +364,16 @@ public class Config {
     }
   }
 
+  public static final class LocalDispatchValidatingChangeListener implements PropertyChangeListener {
+    @Override
+    public void fireChange( final ConfigurableProperty t, final Object newValue ) throws ConfigurablePropertyException {
+      final String value = Objects.toString( newValue, "" ).trim( );
+      if ( !"true".equalsIgnoreCase( value ) && !"false".equalsIgnoreCase( value ) ) {
+        throw new ConfigurablePropertyException( "Invalid value " + newValue );
+      }
+    }
+  }
+
   public static final class ActivityWorkerConfigurationValidatingChangeListener implements PropertyChangeListener {
     @Override
     public void fireChange( final ConfigurableProperty t, final Object newValue ) throws ConfigurablePropertyException {
@@ -0,0 +1,346 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.common.client;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.log4j.Logger;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflow;
+import com.eucalyptus.auth.Accounts;
+import com.eucalyptus.auth.AuthException;
+import com.eucalyptus.auth.principal.User;
+import com.eucalyptus.auth.principal.UserPrincipal;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.component.ServiceOperations;
+import com.eucalyptus.component.Topology;
+import com.eucalyptus.context.Context;
+import com.eucalyptus.context.Contexts;
+import com.eucalyptus.http.MappingHttpRequest;
+import com.eucalyptus.simpleworkflow.common.SimpleWorkflow;
+import com.eucalyptus.simpleworkflow.common.model.SimpleWorkflowMessage;
+import com.eucalyptus.ws.WebServiceError;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.VisibilityChecker;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.reflect.AbstractInvocationHandler;
+import edu.ucsb.eucalyptus.msgs.BaseMessage;
+import edu.ucsb.eucalyptus.msgs.BaseMessageSupplier;
+import edu.ucsb.eucalyptus.msgs.ExceptionResponseType;
+
+/**
+ * Simple workflow client that dispatches to the service in this JVM when it is enabled locally.
+ *
+ * <p>Local requests are converted between the SDK and service models in memory and
+ * dispatched on the message pipeline so there is no HTTP, request signing or JSON
+ * text involved. Responses (including long polls) are delivered asynchronously to
+ * a local channel. Requests use the HTTP client when the service is not enabled
+ * locally or when a request has no local equivalent.</p>
+ */
+@SuppressWarnings( "Guava" )
+class LocalSimpleWorkflowClient {
+
+  private static final Logger logger = Logger.getLogger( LocalSimpleWorkflowClient.class );
+  private static final String MODEL_PACKAGE = SimpleWorkflowMessage.class.getPackage( ).getName( );
+  private static final String SDK_MODEL_PACKAGE = "com.amazonaws.services.simpleworkflow.model";
+  private static final String SERVICE_NAME = "AmazonSimpleWorkflow";
+  private static final long RESPONSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis( 70 );
+  private static final ConcurrentMap<Class<?>,Optional<Class<? extends SimpleWorkflowMessage>>> messageTypes =
+      new ConcurrentHashMap<>( );
+  private static final ConcurrentMap<String,Optional<Constructor<? extends AmazonServiceException>>> exceptionTypes =
+      new ConcurrentHashMap<>( );
+  private static final Supplier<Boolean> enabledLocally = Suppliers.memoizeWithExpiration(
+      () -> Topology.isEnabledLocally( SimpleWorkflow.class ), 5, TimeUnit.SECONDS );
+  private static final ObjectMapper mapper = buildObjectMapper( );
+  private static volatile Supplier<Boolean> enabled = Suppliers.ofInstance( true );
+
+  /**
+   * Set the supplier for the local dispatch setting, it is checked for each request.
+   */
+  static void setEnabled( final Supplier<Boolean> enabled ) {
+    LocalSimpleWorkflowClient.enabled = enabled;
+  }
+
+  static AmazonSimpleWorkflow wrap( final AmazonSimpleWorkflow httpClient, final Supplier<User> user ) {
+    return wrap(
+        httpClient,
+        user,
+        () -> enabled.get( ) && !Bootstrap.isShuttingDown( ) && enabledLocally.get( ),
+        LocalSimpleWorkflowClient::dispatch );
+  }
+
+  /**
+   * Wrap the given client, requests are dispatched locally when the local supplier is true.
+   */
+  static AmazonSimpleWorkflow wrap( final AmazonSimpleWorkflow httpClient,
+                                    final Supplier<User> user,
+                                    final Supplier<Boolean> local,
+                                    final Dispatcher dispatcher ) {
+    return (AmazonSimpleWorkflow) Proxy.newProxyInstance(
+        AmazonSimpleWorkflow.class.getClassLoader( ),
+        new Class<?>[]{ AmazonSimpleWorkflow.class },
+        new AbstractInvocationHandler( ) {
+          @Override
+          protected Object handleInvocation( final Object proxy, final Method method, final Object[] args ) throws Throwable {
+            final Optional<Class<? extends SimpleWorkflowMessage>> messageType;
+            final UserPrincipal principal;
+            if ( args.length == 1 &&
+                args[0] instanceof AmazonWebServiceRequest &&
+                ( messageType = messageType( args[0].getClass( ) ) ).isPresent( ) &&
+                local.get( ) &&
+                ( principal = principal( user ) ) != null ) {
+              return toResult(
+                  method,
+                  dispatcher.dispatch( toMessage( (AmazonWebServiceRequest) args[0], messageType.get( ) ), principal ) );
+            }
+            try {
+              return method.invoke( httpClient, args );
+            } catch ( final InvocationTargetException e ) {
+              throw e.getCause( );
+            }
+          }
+
+          @Override
+          public String toString( ) {
+            return "LocalSimpleWorkflowClient:" + httpClient;
+          }
+        } );
+  }
+
+  static <T extends SimpleWorkflowMessage> T toMessage( final AmazonWebServiceRequest request,
+                                                        final Class<T> messageType ) {
+    return mapper.convertValue( request, messageType );
+  }
+
+  static <T> T fromMessage( final BaseMessage message, final Class<T> resultType ) {
+    return mapper.convertValue( message, resultType );
+  }
+
+  static AmazonServiceException toException( final String code,
+                                             final String message,
+                                             final int status,
+                                             final String requestId ) {
+    AmazonServiceException exception = null;
+    final Optional<Constructor<? extends AmazonServiceException>> constructor = exceptionConstructor( code );
+    if ( constructor.isPresent( ) ) try {
+      exception = constructor.get( ).newInstance( message );
+    } catch ( ReflectiveOperationException e ) {
+      logger.debug( "Error creating exception for code " + code, e );
+    }
+    if ( exception == null ) {
+      exception = new AmazonServiceException( message );
+    }
+    exception.setErrorCode( code );
+    exception.setStatusCode( status );
+    exception.setRequestId( requestId );
+    exception.setServiceName( SERVICE_NAME );
+    exception.setErrorType( status >= 500 ?
+        AmazonServiceException.ErrorType.Service :
+        AmazonServiceException.ErrorType.Client );
+    return exception;
+  }
+
+  private static Object dispatch( final SimpleWorkflowMessage message, final UserPrincipal principal ) {
+    final CompletableFuture<Object> responseFuture = new CompletableFuture<>( );
+    final Channel channel = new DefaultLocalClientChannelFactory( ).newChannel(
+        Channels.pipeline( new ResponseHandler( responseFuture ) ) );
+    final MappingHttpRequest httpRequest =
+        new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.POST, "/services/SimpleWorkflow" );
+    httpRequest.setMessage( message );
+    final Context context = Contexts.create( httpRequest, channel );
+    try {
+      context.setUser( principal );
+      message.setCorrelationId( context.getCorrelationId( ) );
+      ServiceOperations.dispatch( message );
+      return responseFuture.get( RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      throw new AbortedException( );
+    } catch ( final ExecutionException e ) {
+      throw new AmazonClientException( "Error dispatching " + message.getClass( ).getSimpleName( ), e.getCause( ) );
+    } catch ( final TimeoutException e ) {
+      throw new AmazonClientException( "Timeout waiting for response to " + message.getClass( ).getSimpleName( ) );
+    } finally {
+      Contexts.clear( context );
+      channel.close( );
+    }
+  }
+
+  private static Object toResult( final Method method, final Object response ) {
+    int status = 200;
+    Object message = response;
+    if ( message instanceof BaseMessageSupplier ) {
+      status = ( (BaseMessageSupplier) message ).getStatus( ).getCode( );
+      message = ( (BaseMessageSupplier) message ).getBaseMessage( );
+    }
+    if ( message instanceof WebServiceError ) {
+      final WebServiceError error = (WebServiceError) message;
+      throw toException(
+          error.getWebServiceErrorCode( ),
+          error.getWebServiceErrorMessage( ),
+          status == 200 ? 400 : status,
+          ( (BaseMessage) message ).getCorrelationId( ) );
+    } else if ( message instanceof ExceptionResponseType ) {
+      final ExceptionResponseType error = (ExceptionResponseType) message;
+      throw toException(
+          "InternalFailure",
+          error.getMessage( ),
+          error.getHttpStatusCode( ),
+          error.getCorrelationId( ) );
+    } else if ( !( message instanceof BaseMessage ) ) {
+      throw new AmazonClientException( "Unexpected response type " +
+          ( message == null ? null : message.getClass( ).getName( ) ) );
+    }
+    return Void.TYPE.equals( method.getReturnType( ) ) ?
+        null :
+        fromMessage( (BaseMessage) message, method.getReturnType( ) );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static Optional<Class<? extends SimpleWorkflowMessage>> messageType( final Class<?> requestType ) {
+    return messageTypes.computeIfAbsent( requestType, type -> {
+      try {
+        final Class<?> messageType = Class.forName( MODEL_PACKAGE + "." + type.getSimpleName( ) );
+        return SimpleWorkflowMessage.class.isAssignableFrom( messageType ) ?
+            Optional.of( (Class<? extends SimpleWorkflowMessage>) messageType ) :
+            Optional.empty( );
+      } catch ( ClassNotFoundException e ) {
+        return Optional.empty( );
+      }
+    } );
+  }
+
+  /**
+   * Map a fault code to the SDK exception type, e.g. UnknownResourceFault to UnknownResourceException
+   */
+  @SuppressWarnings( "unchecked" )
+  private static Optional<Constructor<? extends AmazonServiceException>> exceptionConstructor( final String code ) {
+    if ( code == null || !code.endsWith( "Fault" ) ) {
+      return Optional.empty( );
+    }
+    return exceptionTypes.computeIfAbsent( code, faultCode -> {
+      try {
+        final Class<?> exceptionType = Class.forName(
+            SDK_MODEL_PACKAGE + "." + faultCode.substring( 0, faultCode.length( ) - 5 ) + "Exception" );
+        return AmazonServiceException.class.isAssignableFrom( exceptionType ) ?
+            Optional.of( ( (Class<? extends AmazonServiceException>) exceptionType ).getConstructor( String.class ) ) :
+            Optional.empty( );
+      } catch ( ClassNotFoundException | NoSuchMethodException e ) {
+        return Optional.empty( );
+      }
+    } );
+  }
+
+  private static UserPrincipal principal( final Supplier<User> user ) {
+    try {
+      final User requestUser = user.get( );
+      return requestUser instanceof UserPrincipal ?
+          (UserPrincipal) requestUser :
+          Accounts.lookupCachedPrincipalByUserId( requestUser.getUserId( ), null );
+    } catch ( final AuthException | RuntimeException e ) {
+      logger.debug( "Principal not available for local dispatch, using http", e );
+      return null;
+    }
+  }
+
+  private static ObjectMapper buildObjectMapper( ) {
+    final ObjectMapper mapper = new ObjectMapper( );
+    mapper.addMixIn( SimpleWorkflowMessage.class, BaseMessageMixIn.class );
+    mapper.addMixIn( AmazonWebServiceRequest.class, AmazonWebServiceRequestMixIn.class );
+    mapper.disable( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES );
+    mapper.disable( SerializationFeature.FAIL_ON_EMPTY_BEANS );
+    mapper.disable( MapperFeature.AUTO_DETECT_IS_GETTERS );
+    mapper.setVisibilityChecker( new VisibilityChecker.Std( VisibilityChecker.Std.class.getAnnotation( JsonAutoDetect.class ) ){
+      private static final long serialVersionUID = 1L;
+      @Override
+      public boolean isSetterVisible( final Method m ) {
+        return !( m.getParameterCount( ) == 1 && m.getParameterTypes( )[ 0 ].isEnum( ) ) && super.isSetterVisible( m );
+      }
+    } );
+    mapper.setSerializationInclusion( JsonInclude.Include.NON_NULL );
+    return mapper;
+  }
+
+  /**
+   * Dispatches a message to the service, returning the response written by the service.
+   */
+  interface Dispatcher {
+    Object dispatch( SimpleWorkflowMessage message, UserPrincipal principal );
+  }
+
+  // ignore properties of BaseMessage
+  @JsonIgnoreProperties( { "correlationId", "effectiveUserId", "reply", "statusMessage", "userId",
+      "_disabledServices", "_notreadyServices", "_stoppedServices", "_epoch", "_services", "_return",
+      "callerContext" } )
+  private interface BaseMessageMixIn {
+  }
+
+  // ignore client side properties of AmazonWebServiceRequest
+  @JsonIgnoreProperties( { "cloneRoot", "cloneSource", "customQueryParameters", "customRequestHeaders",
+      "generalProgressListener", "readLimit", "requestClientOptions", "requestCredentials",
+      "requestCredentialsProvider", "requestMetricCollector", "sdkClientExecutionTimeout",
+      "sdkRequestTimeout" } )
+  private interface AmazonWebServiceRequestMixIn {
+  }
+
+  /**
+   * Captures the response written to the local channel by the service.
+   */
+  private static final class ResponseHandler extends SimpleChannelDownstreamHandler {
+    private final CompletableFuture<Object> responseFuture;
+
+    ResponseHandler( final CompletableFuture<Object> responseFuture ) {
+      this.responseFuture = responseFuture;
+    }
+
+    @Override
+    public void writeRequested( final ChannelHandlerContext ctx, final MessageEvent e ) {
+      responseFuture.complete( e.getMessage( ) );
+      e.getFuture( ).setSuccess( );
+    }
+  }
+}
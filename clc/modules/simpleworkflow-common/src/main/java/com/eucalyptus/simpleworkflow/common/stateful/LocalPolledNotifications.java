@@ -0,0 +1,72 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.common.stateful;
+
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+import com.eucalyptus.simpleworkflow.stateful.PollForNotificationResponseType;
+import com.eucalyptus.util.Consumer;
+import com.google.common.base.Optional;
+
+/**
+ * In-process access to the polled notification service.
+ *
+ * <p>When the polled notification service is enabled in this JVM clients
+ * notify and poll through the registered service rather than dispatching
+ * messages, so no thread waits for the duration of a poll.</p>
+ */
+public class LocalPolledNotifications {
+
+  private static final AtomicReference<Service> service = new AtomicReference<>( );
+
+  public interface Service {
+    /**
+     * Notify pollers on the given channel.
+     *
+     * @param channel The channel to notify
+     * @param details Optional details, when present a single poller is notified
+     */
+    void notify( String channel, @Nullable String details );
+
+    /**
+     * Poll for a notification on the given channel.
+     *
+     * <p>The callback is invoked once, asynchronously, with the notification
+     * or with a response that is not notified when the poll times out.</p>
+     *
+     * <p>A poll completed by the caller must be cancelled so the poller is
+     * removed and no notification is delivered to it.</p>
+     *
+     * @param channel The channel to poll
+     * @param timeout The poll expiry timestamp
+     * @param callback The callback for the poll response
+     * @return Callback to cancel the poll
+     */
+    Runnable poll( String channel, long timeout, Consumer<PollForNotificationResponseType> callback );
+  }
+
+  public static void register( final Service localService ) {
+    service.set( localService );
+  }
+
+  static Optional<Service> lookup( ) {
+    return Optional.fromNullable( service.get( ) );
+  }
+}
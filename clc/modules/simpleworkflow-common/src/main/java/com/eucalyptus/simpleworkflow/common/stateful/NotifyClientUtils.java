@@ -35,6 +35,7 @@ import com.eucalyptus.util.async.ConnectionException;
 import com.eucalyptus.util.concurrent.ListenableFuture;
 import com.eucalyptus.ws.WebServicesException;
 import com.google.common.base.Objects;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import org.apache.log4j.Logger;
 
@@ -42,6 +43,8 @@ import java.net.ConnectException;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
 
+import javax.annotation.Nullable;
+
 /**
  * Created by ethomas on 10/31/16.
  */
@@ -50,11 +53,27 @@ public class NotifyClientUtils {
   private static final Logger logger = Logger.getLogger( NotifyClientUtils.class );
 
   public static void notifyChannel(final ChannelWrapper channelWrapper) {
+    notifyChannel( channelWrapper, null );
+  }
+
+  /**
+   * Notify the channel, details identify the notification (e.g. a task)
+   * and are delivered to a single poller.
+   */
+  public static void notifyChannel(final ChannelWrapper channelWrapper,
+                                   @Nullable final String details) {
     final NotifyType notify = new NotifyType( );
     notify.setChannel(channelWrapper.getChannelName());
+    notify.setDetails( details );
     try {
+      final ServiceConfiguration polledNotificationsConfiguration = Topology.lookup(PolledNotifications.class);
+      final Optional<LocalPolledNotifications.Service> localService = LocalPolledNotifications.lookup( );
+      if ( polledNotificationsConfiguration.isVmLocal( ) && localService.isPresent( ) ) {
+        localService.get( ).notify( notify.getChannel( ), details );
+        return;
+      }
       final ListenableFuture<NotifyResponseType> dispatchFuture =
-          AsyncRequests.dispatch(Topology.lookup(PolledNotifications.class), notify);
+          AsyncRequests.dispatch(polledNotificationsConfiguration, notify);
       dispatchFuture.addListener( new Runnable( ) {
         @Override
         public void run() {
@@ -77,6 +96,28 @@ public class NotifyClientUtils {
                                               final long timeout,
                                               final Consumer<Boolean> resultConsumer) throws Exception {
     final Consumer<Boolean> consumer = Consumers.once(resultConsumer);
+    final Consumer<PollForNotificationResponseType> pollConsumer = pollChannelForNotification( channelWrapper, timeout, response ->
+        consumer.accept( response != null && Objects.firstNonNull( response.getNotified( ), false ) ) );
+    return notified -> {
+      consumer.accept( notified );
+      pollConsumer.accept( null ); // complete the poll so the poller is removed
+    };
+  }
+
+  /**
+   * Poll the channel, the consumer is passed the notification response or
+   * null if the poll failed.
+   *
+   * <p>When the polled notification service is local no message is sent and
+   * the consumer is called back when notified or when the poll expires.</p>
+   *
+   * @return A consumer that can be used to complete the poll early
+   */
+  public static Consumer<PollForNotificationResponseType> pollChannelForNotification(
+      final ChannelWrapper channelWrapper,
+      final long timeout,
+      final Consumer<PollForNotificationResponseType> resultConsumer ) throws Exception {
+    final Consumer<PollForNotificationResponseType> consumer = Consumers.once(resultConsumer);
     final PollForNotificationType poll = new PollForNotificationType( );
     poll.setChannel(channelWrapper.getChannelName());
     poll.setTimeout( timeout );
@@ -94,14 +135,22 @@ public class NotifyClientUtils {
       return consumer;
     }
 
+    final Optional<LocalPolledNotifications.Service> localService = LocalPolledNotifications.lookup( );
+    if ( polledNotificationsConfiguration.isVmLocal( ) && localService.isPresent( ) ) {
+      final Runnable cancel = localService.get( ).poll( poll.getChannel( ), timeout, consumer );
+      return response -> {
+        cancel.run( ); // completed early, stop waiting for notifications
+        consumer.accept( response );
+      };
+    }
+
     final ListenableFuture<PollForNotificationResponseType> dispatchFuture =
         AsyncRequests.dispatch( polledNotificationsConfiguration, poll );
     dispatchFuture.addListener( new Runnable( ) {
       @Override
       public void run( ) {
         try {
-          final PollForNotificationResponseType response = dispatchFuture.get( );
-          consumer.accept(Objects.firstNonNull(response.getNotified(), false));
+          consumer.accept( dispatchFuture.get( ) );
         } catch ( final InterruptedException e ) {
           logger.info( "Interrupted while polling for task " + poll.getChannel( ), e );
         } catch ( final ExecutionException e ) {
@@ -113,7 +162,7 @@ public class NotifyClientUtils {
         } catch ( final Exception e ) {
           logger.error( "Error polling for task " + poll.getChannel( ), e );
         } finally {
-          consumer.accept( false );
+          consumer.accept( null );
         }
       }
     } );
@@ -121,13 +170,13 @@ public class NotifyClientUtils {
   }
 
   private static void delayedPollFailure( final long delay,
-                                          final Consumer<Boolean> consumer) {
+                                          final Consumer<PollForNotificationResponseType> consumer) {
     try {
       Thread.sleep( delay );
     } catch (InterruptedException e1) {
       Thread.currentThread( ).interrupt( );
     } finally {
-      consumer.accept( false );
+      consumer.accept( null );
     }
   }
 
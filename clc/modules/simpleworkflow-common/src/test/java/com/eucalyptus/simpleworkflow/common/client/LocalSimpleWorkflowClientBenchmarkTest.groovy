@@ -0,0 +1,40 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.common.client
+
+import groovy.transform.CompileStatic
+import org.junit.Test
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+
+/**
+ *
+ */
+@CompileStatic
+class LocalSimpleWorkflowClientBenchmarkTest {
+
+  @Test
+  void testDispatchModes( ) {
+    final List<Map<String,Object>> results = new LocalSimpleWorkflowClientBenchmark( [ '--events=1,10', '--iterations=10' ] as String[] ).run( )
+    assertEquals( 'result count', 4, results.size( ) )
+    results.each { Map<String,Object> result ->
+      assertTrue( 'mode', result.mode in [ 'Local', 'Remote' ] )
+      assertTrue( 'iterations', ( (Integer) result.iterations ) > 0 )
+      assertTrue( 'throughput', ( (Double) result.requestsPerSecond ) > 0d )
+    }
+  }
+}
@@ -0,0 +1,319 @@
+/*************************************************************************
+ * (c) Copyright 2016 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.common.client
+
+import com.amazonaws.AmazonServiceException
+import com.amazonaws.AmazonClientException
+import com.amazonaws.services.simpleworkflow.AmazonSimpleWorkflow
+import com.amazonaws.services.simpleworkflow.model.CountPendingDecisionTasksRequest
+import com.amazonaws.services.simpleworkflow.model.DecisionTask
+import com.amazonaws.services.simpleworkflow.model.DomainAlreadyExistsException
+import com.amazonaws.services.simpleworkflow.model.LimitExceededException
+import com.amazonaws.services.simpleworkflow.model.OperationNotPermittedException
+import com.amazonaws.services.simpleworkflow.model.PendingTaskCount
+import com.amazonaws.services.simpleworkflow.model.PollForDecisionTaskRequest
+import com.amazonaws.services.simpleworkflow.model.RegisterDomainRequest
+import com.amazonaws.services.simpleworkflow.model.TaskList
+import com.amazonaws.services.simpleworkflow.model.TypeAlreadyExistsException
+import com.amazonaws.services.simpleworkflow.model.UnknownResourceException
+import com.eucalyptus.auth.principal.User
+import com.eucalyptus.auth.principal.UserPrincipal
+import com.eucalyptus.simpleworkflow.common.model.SimpleWorkflowErrorResponse
+import com.eucalyptus.simpleworkflow.common.model.SimpleWorkflowMessage
+import com.eucalyptus.simpleworkflow.common.model.HistoryEvent
+import com.eucalyptus.simpleworkflow.common.model.WorkflowExecution
+import com.eucalyptus.simpleworkflow.common.model.WorkflowExecutionStartedEventAttributes
+import com.eucalyptus.simpleworkflow.common.model.WorkflowType
+import com.google.common.base.Supplier
+import com.google.common.base.Suppliers
+import edu.ucsb.eucalyptus.msgs.BaseMessageSupplier
+import edu.ucsb.eucalyptus.msgs.ExceptionResponseType
+import org.jboss.netty.handler.codec.http.HttpResponseStatus
+import static org.junit.Assert.*
+import org.junit.Test
+
+/**
+ *
+ */
+class LocalSimpleWorkflowClientTest {
+
+  @Test
+  void testRequestConversion() {
+    final PollForDecisionTaskRequest request = new PollForDecisionTaskRequest(
+        domain: 'domain',
+        taskList: new TaskList( name: 'task-list' ),
+        identity: 'identity',
+        maximumPageSize: 100,
+        reverseOrder: true
+    )
+    request.putCustomRequestHeader( 'X-Test', 'test' )
+
+    final com.eucalyptus.simpleworkflow.common.model.PollForDecisionTaskRequest message =
+        LocalSimpleWorkflowClient.toMessage( request, com.eucalyptus.simpleworkflow.common.model.PollForDecisionTaskRequest )
+    assertEquals( 'Domain', 'domain', message.domain )
+    assertEquals( 'Task list', 'task-list', message.taskList?.name )
+    assertEquals( 'Identity', 'identity', message.identity )
+    assertEquals( 'Maximum page size', 100, message.maximumPageSize )
+    assertEquals( 'Reverse order', true, message.reverseOrder )
+    assertNull( 'Correlation identifier', message.correlationId )
+  }
+
+  @Test
+  void testResultConversion() {
+    final Date timestamp = new Date( )
+    final com.eucalyptus.simpleworkflow.common.model.DecisionTask message = new com.eucalyptus.simpleworkflow.common.model.DecisionTask(
+        taskToken: 'token',
+        startedEventId: 3,
+        previousStartedEventId: 0,
+        workflowExecution: new WorkflowExecution( workflowId: 'workflow-id', runId: 'run-id' ),
+        workflowType: new WorkflowType( name: 'workflow', version: '1.0' ),
+        events: [
+            new HistoryEvent(
+                eventId: 1,
+                eventTimestamp: timestamp,
+                eventType: 'WorkflowExecutionStarted',
+                workflowExecutionStartedEventAttributes: new WorkflowExecutionStartedEventAttributes(
+                    input: 'input',
+                    childPolicy: 'TERMINATE',
+                    taskList: new com.eucalyptus.simpleworkflow.common.model.TaskList( name: 'task-list' )
+                )
+            )
+        ]
+    )
+    message.correlationId = 'correlation-id'
+
+    final DecisionTask task = LocalSimpleWorkflowClient.fromMessage( message, DecisionTask )
+    assertEquals( 'Task token', 'token', task.taskToken )
+    assertEquals( 'Started event id', 3L, task.startedEventId )
+    assertEquals( 'Run id', 'run-id', task.workflowExecution?.runId )
+    assertEquals( 'Workflow version', '1.0', task.workflowType?.version )
+    assertEquals( 'Event count', 1, task.events?.size( ) )
+    assertEquals( 'Event timestamp', timestamp, task.events[0].eventTimestamp )
+    assertEquals( 'Event type', 'WorkflowExecutionStarted', task.events[0].eventType )
+    assertEquals( 'Child policy', 'TERMINATE', task.events[0].workflowExecutionStartedEventAttributes?.childPolicy )
+    assertEquals( 'Task list', 'task-list', task.events[0].workflowExecutionStartedEventAttributes?.taskList?.name )
+  }
+
+  @Test
+  void testErrorConversion() {
+    final AmazonServiceException unknown =
+        LocalSimpleWorkflowClient.toException( 'UnknownResourceFault', 'Domain not found', 400, 'request-id' )
+    assertTrue( 'Exception type', unknown instanceof UnknownResourceException )
+    assertEquals( 'Error code', 'UnknownResourceFault', unknown.errorCode )
+    assertEquals( 'Status', 400, unknown.statusCode )
+    assertEquals( 'Request id', 'request-id', unknown.requestId )
+    assertEquals( 'Error type', AmazonServiceException.ErrorType.Client, unknown.errorType )
+
+    final AmazonServiceException internal =
+        LocalSimpleWorkflowClient.toException( 'InternalFailure', 'Error', 500, 'request-id' )
+    assertEquals( 'Exception type', AmazonServiceException, internal.getClass( ) )
+    assertEquals( 'Error type', AmazonServiceException.ErrorType.Service, internal.errorType )
+  }
+
+  @Test
+  void testErrorConversionTypes() {
+    [
+        DomainAlreadyExistsFault: DomainAlreadyExistsException,
+        LimitExceededFault: LimitExceededException,
+        OperationNotPermittedFault: OperationNotPermittedException,
+        TypeAlreadyExistsFault: TypeAlreadyExistsException,
+        UnknownResourceFault: UnknownResourceException,
+    ].each { String code, Class<?> type ->
+      final AmazonServiceException exception = LocalSimpleWorkflowClient.toException( code, 'Error message', 400, 'request-id' )
+      assertEquals( "Exception type for ${code}", type, exception.getClass( ) )
+      assertEquals( "Error code for ${code}", code, exception.errorCode )
+      assertEquals( "Error message for ${code}", 'Error message', exception.errorMessage )
+      assertEquals( "Service name for ${code}", 'AmazonSimpleWorkflow', exception.serviceName )
+    }
+
+    // codes without an sdk exception type
+    [ 'NoSuchThingFault', 'Fault', 'ValidationError', 'UnknownResource', null ].each { String code ->
+      final AmazonServiceException exception = LocalSimpleWorkflowClient.toException( code, 'Error message', 400, 'request-id' )
+      assertEquals( "Exception type for ${code}", AmazonServiceException, exception.getClass( ) )
+      assertEquals( "Error code for ${code}", code, exception.errorCode )
+      assertEquals( "Error type for ${code}", AmazonServiceException.ErrorType.Client, exception.errorType )
+    }
+  }
+
+  @Test
+  void testLocalDispatch() {
+    final List<SimpleWorkflowMessage> messages = [ ]
+    final UserPrincipal principal = [ : ] as UserPrincipal
+    final AmazonSimpleWorkflow client = LocalSimpleWorkflowClient.wrap(
+        [ : ] as AmazonSimpleWorkflow,
+        Suppliers.ofInstance( principal ) as Supplier<User>,
+        Suppliers.ofInstance( true ),
+        { SimpleWorkflowMessage message, UserPrincipal userPrincipal ->
+          assertSame( 'Principal', principal, userPrincipal )
+          messages << message
+          new com.eucalyptus.simpleworkflow.common.model.PendingTaskCount( count: 3, truncated: false )
+        } as LocalSimpleWorkflowClient.Dispatcher )
+
+    final PendingTaskCount count = client.countPendingDecisionTasks( new CountPendingDecisionTasksRequest(
+        domain: 'domain',
+        taskList: new TaskList( name: 'task-list' )
+    ) )
+    assertEquals( 'Count', 3, count.count )
+    assertEquals( 'Truncated', false, count.truncated )
+    assertEquals( 'Message count', 1, messages.size( ) )
+    assertTrue( 'Message type', messages[0] instanceof com.eucalyptus.simpleworkflow.common.model.CountPendingDecisionTasksRequest )
+    assertEquals( 'Domain', 'domain', messages[0].domain )
+    assertEquals( 'Task list', 'task-list', messages[0].taskList?.name )
+  }
+
+  @Test
+  void testLocalDispatchVoidResult() {
+    final List<SimpleWorkflowMessage> messages = [ ]
+    final AmazonSimpleWorkflow client = LocalSimpleWorkflowClient.wrap(
+        [ : ] as AmazonSimpleWorkflow,
+        Suppliers.ofInstance( [ : ] as UserPrincipal ) as Supplier<User>,
+        Suppliers.ofInstance( true ),
+        { SimpleWorkflowMessage message, UserPrincipal userPrincipal ->
+          messages << message
+          new SimpleWorkflowMessage( )
+        } as LocalSimpleWorkflowClient.Dispatcher )
+
+    client.registerDomain( new RegisterDomainRequest( name: 'domain', workflowExecutionRetentionPeriodInDays: '1' ) )
+    assertEquals( 'Message count', 1, messages.size( ) )
+    assertTrue( 'Message type', messages[0] instanceof com.eucalyptus.simpleworkflow.common.model.RegisterDomainRequest )
+    assertEquals( 'Name', 'domain', messages[0].name )
+    assertEquals( 'Retention', '1', messages[0].workflowExecutionRetentionPeriodInDays )
+  }
+
+  @Test
+  void testHttpDispatchWhenNotLocal() {
+    final List<String> dispatched = [ ]
+    final AmazonSimpleWorkflow client = LocalSimpleWorkflowClient.wrap(
+        httpClient( dispatched ),
+        Suppliers.ofInstance( [ : ] as UserPrincipal ) as Supplier<User>,
+        Suppliers.ofInstance( false ),
+        dispatcher( dispatched, new SimpleWorkflowMessage( ) ) )
+
+    assertEquals( 'Count', 1, client.countPendingDecisionTasks( new CountPendingDecisionTasksRequest( domain: 'domain' ) ).count )
+    assertEquals( 'Dispatched', [ 'http' ], dispatched )
+  }
+
+  @Test
+  void testHttpDispatchWithoutPrincipal() {
+    final List<String> dispatched = [ ]
+    final AmazonSimpleWorkflow client = LocalSimpleWorkflowClient.wrap(
+        httpClient( dispatched ),
+        { throw new IllegalStateException( 'No user' ) } as Supplier<User>,
+        Suppliers.ofInstance( true ),
+        dispatcher( dispatched, new SimpleWorkflowMessage( ) ) )
+
+    assertEquals( 'Count', 1, client.countPendingDecisionTasks( new CountPendingDecisionTasksRequest( domain: 'domain' ) ).count )
+    assertEquals( 'Dispatched', [ 'http' ], dispatched )
+  }
+
+  @Test
+  void testHttpDispatchException() {
+    final AmazonSimpleWorkflow client = LocalSimpleWorkflowClient.wrap(
+        [ countPendingDecisionTasks: { CountPendingDecisionTasksRequest request ->
+          throw new UnknownResourceException( 'Domain not found' )
+        } ] as AmazonSimpleWorkflow,
+        Suppliers.ofInstance( [ : ] as UserPrincipal ) as Supplier<User>,
+        Suppliers.ofInstance( false ),
+        dispatcher( [ ], new SimpleWorkflowMessage( ) ) )
+
+    try {
+      client.countPendingDecisionTasks( new CountPendingDecisionTasksRequest( domain: 'domain' ) )
+      fail( 'Expected exception' )
+    } catch ( final UnknownResourceException e ) {
+      assertEquals( 'Error message', 'Domain not found', e.errorMessage )
+    }
+  }
+
+  @Test
+  void testLocalDispatchErrorResponse() {
+    final SimpleWorkflowErrorResponse error = new SimpleWorkflowErrorResponse( 'Domain not found', 'UnknownResourceFault' )
+    error.correlationId = 'correlation-id'
+    final AmazonSimpleWorkflow client = localClient( error )
+
+    try {
+      client.countPendingDecisionTasks( new CountPendingDecisionTasksRequest( domain: 'domain' ) )
+      fail( 'Expected exception' )
+    } catch ( final UnknownResourceException e ) {
+      assertEquals( 'Error code', 'UnknownResourceFault', e.errorCode )
+      assertEquals( 'Error message', 'Domain not found', e.errorMessage )
+      assertEquals( 'Status', 400, e.statusCode )
+      assertEquals( 'Request id', 'correlation-id', e.requestId )
+    }
+  }
+
+  @Test
+  void testLocalDispatchErrorResponseStatus() {
+    final AmazonSimpleWorkflow client = localClient( new BaseMessageSupplier(
+        new SimpleWorkflowErrorResponse( 'Rate exceeded', 'ThrottlingException' ),
+        HttpResponseStatus.SERVICE_UNAVAILABLE ) )
+
+    try {
+      client.countPendingDecisionTasks( new CountPendingDecisionTasksRequest( domain: 'domain' ) )
+      fail( 'Expected exception' )
+    } catch ( final AmazonServiceException e ) {
+      assertEquals( 'Exception type', AmazonServiceException, e.getClass( ) )
+      assertEquals( 'Error code', 'ThrottlingException', e.errorCode )
+      assertEquals( 'Status', 503, e.statusCode )
+      assertEquals( 'Error type', AmazonServiceException.ErrorType.Service, e.errorType )
+    }
+  }
+
+  @Test
+  void testLocalDispatchExceptionResponse() {
+    final SimpleWorkflowMessage request = new SimpleWorkflowMessage( )
+    request.correlationId = 'correlation-id'
+    final AmazonSimpleWorkflow client = localClient( new ExceptionResponseType(
+        request, 'Internal error', HttpResponseStatus.INTERNAL_SERVER_ERROR, new RuntimeException( ) ) )
+
+    try {
+      client.countPendingDecisionTasks( new CountPendingDecisionTasksRequest( domain: 'domain' ) )
+      fail( 'Expected exception' )
+    } catch ( final AmazonServiceException e ) {
+      assertEquals( 'Error code', 'InternalFailure', e.errorCode )
+      assertEquals( 'Error message', 'Internal error', e.errorMessage )
+      assertEquals( 'Status', 500, e.statusCode )
+      assertEquals( 'Request id', 'correlation-id', e.requestId )
+      assertEquals( 'Error type', AmazonServiceException.ErrorType.Service, e.errorType )
+    }
+  }
+
+  @Test( expected = AmazonClientException )
+  void testLocalDispatchUnexpectedResponse() {
+    localClient( 'response' ).countPendingDecisionTasks( new CountPendingDecisionTasksRequest( domain: 'domain' ) )
+  }
+
+  private static AmazonSimpleWorkflow localClient( final Object response ) {
+    return LocalSimpleWorkflowClient.wrap(
+        [ : ] as AmazonSimpleWorkflow,
+        Suppliers.ofInstance( [ : ] as UserPrincipal ) as Supplier<User>,
+        Suppliers.ofInstance( true ),
+        dispatcher( [ ], response ) )
+  }
+
+  private static AmazonSimpleWorkflow httpClient( final List<String> dispatched ) {
+    return [ countPendingDecisionTasks: { CountPendingDecisionTasksRequest request ->
+      dispatched << 'http'
+      new PendingTaskCount( count: 1 )
+    } ] as AmazonSimpleWorkflow
+  }
+
+  private static LocalSimpleWorkflowClient.Dispatcher dispatcher( final List<String> dispatched, final Object response ) {
+    return { SimpleWorkflowMessage message, UserPrincipal principal ->
+      dispatched << 'local'
+      response
+    } as LocalSimpleWorkflowClient.Dispatcher
+  }
+}
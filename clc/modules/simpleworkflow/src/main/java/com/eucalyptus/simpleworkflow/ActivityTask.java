@@ -30,6 +30,9 @@ import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
@@ -40,6 +43,7 @@ import com.eucalyptus.entities.AbstractOwnedPersistent;
 import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.auth.principal.OwnerFullName;
 import com.eucalyptus.util.Pair;
+import com.eucalyptus.simpleworkflow.stateful.TimeoutManager;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
@@ -412,4 +416,15 @@ public class ActivityTask extends AbstractOwnedPersistent implements ActivityTas
     updateTimeStamps( );
     setTimeoutTimestamp( Optional.fromNullable( calculateNextTimeout( ) ).transform( Pair.<String,Date>right( ) ).orNull( ) );
   }
+
+  @PostUpdate
+  @PostPersist
+  protected void scheduleTimeout( ) {
+    TimeoutManager.schedule( this );
+  }
+
+  @PostRemove
+  protected void cancelTimeout( ) {
+    TimeoutManager.cancel( this );
+  }
 }
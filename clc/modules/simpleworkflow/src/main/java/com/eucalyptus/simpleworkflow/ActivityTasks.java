@@ -35,7 +35,9 @@ public interface ActivityTasks {
                              Predicate<? super ActivityTask> filter,
                              Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listTimedOut( Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
+  <T> List<T> listTimedOut( long fromTimestamp,
+                            long toTimestamp,
+                            Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
 
   <T> T updateByExample( ActivityTask example,
                          OwnerFullName ownerFullName,
@@ -19,7 +19,9 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import javax.annotation.Nullable;
 import com.eucalyptus.simpleworkflow.common.stateful.NotifyClientUtils;
+import com.eucalyptus.simpleworkflow.stateful.PollForNotificationResponseType;
 import org.apache.log4j.Logger;
 import com.eucalyptus.auth.principal.AccountFullName;
 import com.eucalyptus.util.Consumer;
@@ -106,10 +108,25 @@ public class NotifyClient {
     notifyTaskList(new NotifyTaskList(accountFullName, domain, type, taskList));
   }
 
+  public static void notifyTaskList( final AccountFullName accountFullName,
+                                     final String domain,
+                                     final String type,
+                                     final String taskList,
+                                     @Nullable final String taskId ) {
+    notifyTaskList(new NotifyTaskList(accountFullName, domain, type, taskList), taskId);
+  }
+
   public static void notifyTaskList(final NotifyTaskList taskList) {
     NotifyClientUtils.notifyChannel(taskList);
   }
 
+  /**
+   * Notify a single poller of the task list that the identified task is available.
+   */
+  public static void notifyTaskList(final NotifyTaskList taskList, @Nullable final String taskId) {
+    NotifyClientUtils.notifyChannel(taskList, taskId);
+  }
+
   public static Consumer<Boolean> pollTaskList(
       final AccountFullName accountFullName,
       final String domain,
@@ -129,4 +146,15 @@ public class NotifyClient {
     return NotifyClientUtils.pollChannel(taskList, timeout, resultConsumer);
   }
 
+  /**
+   * Poll the task list, the response details are the identifier of any notified task.
+   */
+  public static Consumer<PollForNotificationResponseType> pollTaskListForNotification(
+      final NotifyTaskList taskList,
+      final long timeout,
+      final Consumer<PollForNotificationResponseType> resultConsumer
+  ) throws Exception {
+    return NotifyClientUtils.pollChannelForNotification(taskList, timeout, resultConsumer);
+  }
+
 }
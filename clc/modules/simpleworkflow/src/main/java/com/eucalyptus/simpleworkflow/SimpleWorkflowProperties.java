@@ -91,12 +91,30 @@ public class SimpleWorkflowProperties {
       changeListener = SimpleWorkflowIntervalPropertyChangeListener.class )
   public static volatile String deprecatedDomainRetentionDuration = "1d";
 
+  @ConfigurableField(
+      initial = "1m",
+      description = "Interval for loading upcoming timeouts from the database, for timeouts scheduled on other hosts.",
+      changeListener = SimpleWorkflowIntervalPropertyChangeListener.class )
+  public static volatile String timeoutReloadInterval = "1m";
+
+  @ConfigurableField(
+      initial = "10s",
+      description = "Interval for loading timeouts that became due since the last check, for timeouts scheduled on other hosts.",
+      changeListener = SimpleWorkflowIntervalPropertyChangeListener.class )
+  public static volatile String timeoutCheckInterval = "10s";
+
   @ConfigurableField(
       initial = "",
       description = "Configuration for simple workflow clients",
       changeListener = Config.ClientConfigurationValidatingChangeListener.class )
   public static volatile String CLIENT_CONFIG = "";
 
+  @ConfigurableField(
+      initial = "true",
+      description = "Dispatch requests from simple workflow clients to the local service when enabled on this host",
+      changeListener = Config.LocalDispatchValidatingChangeListener.class )
+  public static volatile Boolean CLIENT_LOCAL_DISPATCH = true;
+
   private static AtomicLong workflowExecutionDurationMillis =
       new AtomicLong( Intervals.parse( workflowExecutionDuration, TimeUnit.DAYS.toMillis( 365 ) ) );
 
@@ -112,6 +130,12 @@ public class SimpleWorkflowProperties {
   private static AtomicLong deprecatedDomainRetentionDurationMillis =
       new AtomicLong( Intervals.parse( deprecatedDomainRetentionDuration, TimeUnit.DAYS.toMillis( 1 ) ) );
 
+  private static AtomicLong timeoutReloadIntervalMillis =
+      new AtomicLong( Intervals.parse( timeoutReloadInterval, TimeUnit.MINUTES.toMillis( 1 ) ) );
+
+  private static AtomicLong timeoutCheckIntervalMillis =
+      new AtomicLong( Intervals.parse( timeoutCheckInterval, TimeUnit.SECONDS.toMillis( 10 ) ) );
+
   public static boolean isSystemOnly() {
     return systemOnly;
   }
@@ -160,6 +184,14 @@ public class SimpleWorkflowProperties {
     return deprecatedDomainRetentionDurationMillis.get();
   }
 
+  public static long getTimeoutReloadIntervalMillis() {
+    return timeoutReloadIntervalMillis.get();
+  }
+
+  public static long getTimeoutCheckIntervalMillis() {
+    return timeoutCheckIntervalMillis.get();
+  }
+
   public static final class SimpleWorkflowIntervalPropertyChangeListener implements PropertyChangeListener {
     @Override
     public void fireChange( final ConfigurableProperty configurableProperty,
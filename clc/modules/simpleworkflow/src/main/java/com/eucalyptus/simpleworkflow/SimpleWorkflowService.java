@@ -62,6 +62,7 @@ import com.eucalyptus.event.Listeners;
 import com.eucalyptus.simpleworkflow.NotifyClient.NotifyTaskList;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadatas;
 import com.eucalyptus.simpleworkflow.common.model.*;
+import com.eucalyptus.simpleworkflow.stateful.PollForNotificationResponseType;
 import com.eucalyptus.simpleworkflow.tokens.TaskToken;
 import com.eucalyptus.simpleworkflow.tokens.TaskTokenException;
 import com.eucalyptus.simpleworkflow.tokens.TaskTokenManager;
@@ -97,7 +98,7 @@ public class SimpleWorkflowService {
 
   private static final Logger logger = Logger.getLogger( SimpleWorkflowService.class );
   private static final ConcurrentMap<NotifyTaskList, Long> taskListActivity = Maps.newConcurrentMap( );
-  private static final Deque<Pair<Long,Consumer<Boolean>>> timestampedPollers = new ConcurrentLinkedDeque<>( );
+  private static final Deque<Pair<Long,Consumer<PollForNotificationResponseType>>> timestampedPollers = new ConcurrentLinkedDeque<>( );
 
   static {
     OrderedShutdown.registerPreShutdownHook( new PollerShutdown( ) );
@@ -823,7 +824,7 @@ public class SimpleWorkflowService {
       }
     }, WorkflowExecution.class, request.getWorkflowId( ) );
 
-    notifyTaskList( accountFullName, workflowExecution.getDomainName( ), "decision", workflowExecution.getTaskList( ) );
+    notifyTaskList( accountFullName, workflowExecution.getDomainName( ), "decision", workflowExecution.getTaskList( ), workflowExecution.getDisplayName( ) );
 
     final Run run = new Run( );
     run.setRunId( workflowExecution.getDisplayName() );
@@ -841,6 +842,71 @@ public class SimpleWorkflowService {
 
     final String domain = request.getDomain( );
     final String taskList = request.getTaskList( ).getName( );
+    final java.util.function.Function<ActivityTask,com.eucalyptus.simpleworkflow.common.model.ActivityTask> claimTask =
+        pendingTask -> {
+          com.eucalyptus.simpleworkflow.common.model.ActivityTask activityTask = null;
+          try ( final WorkflowLock lock = WorkflowLock.tryLock(
+              accountFullName,
+              pendingTask.getDomainUuid( ),
+              pendingTask.getWorkflowRunId() ) ) {
+            if ( !lock.isHeldByCurrentThread( ) ) {
+              return null;
+            }
+            activityTask = activityTasks.updateByExample(
+                pendingTask,
+                accountFullName,
+                pendingTask.getDisplayName(),
+                new Function<ActivityTask,com.eucalyptus.simpleworkflow.common.model.ActivityTask>(){
+                  @Nullable
+                  @Override
+                  public com.eucalyptus.simpleworkflow.common.model.ActivityTask apply( final ActivityTask activityTask ) {
+                    if ( activityTask.getState( ) == ActivityTask.State.Pending ) {
+                      final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution( );
+                      final Long startedId = workflowExecution.addHistoryEvent(
+                          WorkflowHistoryEvent.create( workflowExecution, new ActivityTaskStartedEventAttributes( )
+                              .withIdentity( request.getIdentity( ) )
+                              .withScheduledEventId( activityTask.getScheduledEventId( ) )
+                          )
+                      );
+                      activityTask.setState( ActivityTask.State.Active );
+                      activityTask.setStartedEventId( startedId );
+
+                      return new com.eucalyptus.simpleworkflow.common.model.ActivityTask( )
+                          .withStartedEventId( startedId )
+                          .withInput( activityTask.getInput() )
+                          .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
+                              accountFullName.getAccountNumber(),
+                              workflowExecution.getDomain().getNaturalId(),
+                              workflowExecution.getDisplayName(),
+                              activityTask.getScheduledEventId(),
+                              startedId,
+                              System.currentTimeMillis(),
+                              System.currentTimeMillis() ) ) )
+                          .withActivityId( activityTask.getDisplayName() )
+                          .withActivityType( new com.eucalyptus.simpleworkflow.common.model.ActivityType()
+                              .withName( activityTask.getActivityType() )
+                              .withVersion( activityTask.getActivityVersion() ) )
+                          .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution()
+                              .withRunId( workflowExecution.getDisplayName() )
+                              .withWorkflowId( workflowExecution.getWorkflowId() ) );
+                    }
+                    return null;
+                  }
+                });
+
+          } catch ( SwfMetadataException e ) {
+            logger.info( "Activity task for domain " + domain + ", list " + taskList + " not found" );
+          } catch ( Exception e ) {
+            if ( PersistenceExceptions.isStaleUpdate( e ) ) {
+              logger.info( "Activity task for domain " + domain + ", list " + taskList + " already taken"  );
+            } else if (  PersistenceExceptions.isLockError( e ) ) {
+              logger.info( "Activity task for domain " + domain + ", list " + taskList + " locking error" );
+            } else {
+              logger.error( "Error taking activity task for domain " + domain + ", list " + taskList, e );
+            }
+          }
+          return activityTask;
+        };
     final Callable<com.eucalyptus.simpleworkflow.common.model.ActivityTask> taskCallable =
         () -> {
           com.eucalyptus.simpleworkflow.common.model.ActivityTask activityTask = null;
@@ -852,73 +918,36 @@ public class SimpleWorkflowService {
           for ( final List<ActivityTask> pendingSegment : shufflePartitions( pending ) ) {
             for ( final ActivityTask pendingTask : pendingSegment ) {
               if ( activityTask != null ) break;
-              try ( final WorkflowLock lock = WorkflowLock.tryLock(
-                  accountFullName,
-                  pendingTask.getDomainUuid( ),
-                  pendingTask.getWorkflowRunId() ) ) {
-                if ( !lock.isHeldByCurrentThread( ) ) {
-                  continue;
-                }
-                activityTask = activityTasks.updateByExample(
-                    pendingTask,
-                    accountFullName,
-                    pendingTask.getDisplayName(),
-                    new Function<ActivityTask,com.eucalyptus.simpleworkflow.common.model.ActivityTask>(){
-                      @Nullable
-                      @Override
-                      public com.eucalyptus.simpleworkflow.common.model.ActivityTask apply( final ActivityTask activityTask ) {
-                        if ( activityTask.getState( ) == ActivityTask.State.Pending ) {
-                          final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution( );
-                          final Long startedId = workflowExecution.addHistoryEvent(
-                              WorkflowHistoryEvent.create( workflowExecution, new ActivityTaskStartedEventAttributes( )
-                                  .withIdentity( request.getIdentity( ) )
-                                  .withScheduledEventId( activityTask.getScheduledEventId( ) )
-                              )
-                          );
-                          activityTask.setState( ActivityTask.State.Active );
-                          activityTask.setStartedEventId( startedId );
-
-                          return new com.eucalyptus.simpleworkflow.common.model.ActivityTask( )
-                              .withStartedEventId( startedId )
-                              .withInput( activityTask.getInput() )
-                              .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
-                                  accountFullName.getAccountNumber(),
-                                  workflowExecution.getDomain().getNaturalId(),
-                                  workflowExecution.getDisplayName(),
-                                  activityTask.getScheduledEventId(),
-                                  startedId,
-                                  System.currentTimeMillis(),
-                                  System.currentTimeMillis() ) ) )
-                              .withActivityId( activityTask.getDisplayName() )
-                              .withActivityType( new com.eucalyptus.simpleworkflow.common.model.ActivityType()
-                                  .withName( activityTask.getActivityType() )
-                                  .withVersion( activityTask.getActivityVersion() ) )
-                              .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution()
-                                  .withRunId( workflowExecution.getDisplayName() )
-                                  .withWorkflowId( workflowExecution.getWorkflowId() ) );
-                        }
-                        return null;
-                      }
-                    });
-
-              } catch ( SwfMetadataException e ) {
-                logger.info( "Activity task for domain " + domain + ", list " + taskList + " not found" );
-              } catch ( Exception e ) {
-                if ( PersistenceExceptions.isStaleUpdate( e ) ) {
-                  logger.info( "Activity task for domain " + domain + ", list " + taskList + " already taken"  );
-                } else if (  PersistenceExceptions.isLockError( e ) ) {
-                  logger.info( "Activity task for domain " + domain + ", list " + taskList + " locking error" );
-                } else {
-                  logger.error( "Error taking activity task for domain " + domain + ", list " + taskList, e );
-                }
-              }
+              activityTask = claimTask.apply( pendingTask );
             }
           }
           return activityTask;
         };
+    final java.util.function.Function<String,com.eucalyptus.simpleworkflow.common.model.ActivityTask> notifiedTaskClaimer =
+        taskId -> {
+          final int separator = taskId.lastIndexOf( '/' );
+          if ( separator < 1 ) return null;
+          final List<ActivityTask> notified;
+          try {
+            notified = activityTasks.listByExample(
+                ActivityTask.exampleWithUniqueName(
+                    accountFullName,
+                    taskId.substring( 0, separator ),
+                    Long.valueOf( taskId.substring( separator + 1 ) ) ),
+                Predicates.<ActivityTask>and( accessible, activityTask ->
+                    activityTask.getState( ) == ActivityTask.State.Pending &&
+                    domain.equals( activityTask.getDomain( ) ) &&
+                    taskList.equals( activityTask.getTaskList( ) ) ),
+                Functions.identity( ) );
+          } catch ( final Exception e ) {
+            logger.debug( "Error finding notified activity task " + taskId, e );
+            return null;
+          }
+          return notified.isEmpty( ) ? null : claimTask.apply( notified.get( 0 ) );
+        };
 
     try {
-      return handleTaskPolling( accountFullName, domain, "activity", taskList, request.getCorrelationId( ), new com.eucalyptus.simpleworkflow.common.model.ActivityTask( ), taskCallable );
+      return handleTaskPolling( accountFullName, domain, "activity", taskList, request.getCorrelationId( ), new com.eucalyptus.simpleworkflow.common.model.ActivityTask( ), taskCallable, notifiedTaskClaimer );
     } catch ( Exception e ) {
       throw handleException( e );
     }
@@ -1012,7 +1041,7 @@ public class SimpleWorkflowService {
       }
 
       if ( domainTaskListPair != null ) {
-        notifyTaskList( accountFullName, domainTaskListPair.getLeft(), "decision", domainTaskListPair.getRight() );
+        notifyTaskList( accountFullName, domainTaskListPair.getLeft(), "decision", domainTaskListPair.getRight(), token.getRunId() );
       }
     } catch ( SwfMetadataNotFoundException e ) {
       throw new SimpleWorkflowClientException(
@@ -1089,7 +1118,7 @@ public class SimpleWorkflowService {
       }
 
       if ( workflowExecution.getDecisionStatus() == Pending ) {
-        notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList() );
+        notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList(), workflowExecution.getDisplayName() );
       }
     } catch( Exception e ) {
       throw handleException( e );
@@ -1163,7 +1192,7 @@ public class SimpleWorkflowService {
       }
 
       if ( workflowExecution.getDecisionStatus( ) == Pending ) {
-        notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList() );
+        notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList(), workflowExecution.getDisplayName() );
       }
     } catch( Exception e ) {
       throw handleException( e );
@@ -1179,8 +1208,99 @@ public class SimpleWorkflowService {
     final Predicate<? super WorkflowExecution> accessible =
         SimpleWorkflowMetadatas.filteringFor( WorkflowExecution.class ).byPrivileges( ).buildPredicate( );
 
+    if ( request.getNextPageToken( ) != null ) {
+      return pollForDecisionTaskPage( request, accountFullName, accessible );
+    }
+
     final String domain = request.getDomain( );
     final String taskList = request.getTaskList( ).getName( );
+    final java.util.function.Function<WorkflowExecution,DecisionTask> claimTask = execution -> {
+      DecisionTask decisionTask = null;
+      try ( final WorkflowLock lock = WorkflowLock.tryLock(
+          accountFullName,
+          execution.getDomainUuid( ),
+          execution.getDisplayName( ) ) ) {
+        if ( !lock.isHeldByCurrentThread( ) ) {
+          return null;
+        }
+        decisionTask = workflowExecutions.updateByExample(
+            WorkflowExecution.exampleWithUniqueName( accountFullName, execution.getDomainName( ), execution.getDisplayName( ) ),
+            accountFullName,
+            execution.getDisplayName(),
+            new Function<WorkflowExecution,DecisionTask>( ) {
+              @Nullable
+              @Override
+              public DecisionTask apply( final WorkflowExecution workflowExecution ) {
+                if ( workflowExecution.getDecisionStatus( ) == Pending ) {
+                  final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
+                  final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
+                  final WorkflowHistoryEvent scheduled = Iterables.find(
+                      reverseEvents,
+                      CollectionUtils.propertyPredicate( "DecisionTaskScheduled", EVENT_TYPE ) );
+                  final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
+                      reverseEvents,
+                      CollectionUtils.propertyPredicate( "DecisionTaskStarted", EVENT_TYPE ) );
+                  workflowExecution.setDecisionStatus( Active );
+                  workflowExecution.setDecisionTimestamp( new Date( ) );
+                  final WorkflowHistoryEvent started = WorkflowHistoryEvent.create(
+                      workflowExecution,
+                      new DecisionTaskStartedEventAttributes()
+                          .withIdentity( request.getIdentity() )
+                          .withScheduledEventId( scheduled.getEventId() ) );
+                  workflowExecution.addHistoryEvent( started );
+                  final WorkflowHistoryPaging.Page page;
+                  try {
+                    page = WorkflowHistoryPaging.page(
+                        workflowExecution.getDisplayName( ),
+                        events,
+                        started.getEventId( ),
+                        MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ),
+                        request.getMaximumPageSize( ),
+                        null );
+                  } catch ( SimpleWorkflowClientException e ) {
+                    throw up( e );
+                  }
+                  return new DecisionTask( )
+                      .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
+                          .withWorkflowId( workflowExecution.getWorkflowId( ) )
+                          .withRunId( workflowExecution.getDisplayName( ) ) )
+                      .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
+                          .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
+                          .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
+                      .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
+                          accountFullName.getAccountNumber( ),
+                          workflowExecution.getDomain( ).getNaturalId( ),
+                          workflowExecution.getDisplayName( ),
+                          scheduled.getEventId( ),
+                          started.getEventId( ),
+                          System.currentTimeMillis( ),
+                          System.currentTimeMillis( ) ) ) )  //TODO:STEVE: token expiry date
+                      .withStartedEventId( started.getEventId() )
+                      .withPreviousStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).or( 0L ) )
+                      .withEvents( Collections2.transform(
+                          page.getEvents( ),
+                          TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
+                      ) )
+                      .withNextPageToken( page.getNextPageToken( ) );
+                }
+                return null;
+              }
+            } );
+      } catch ( Exception e ) {
+        final StaleObjectStateException stale = Exceptions.findCause( e, StaleObjectStateException.class );
+        if ( stale != null ) try {
+          Entities.evictCache( Class.forName( stale.getEntityName( ) ) );
+        } catch ( ClassNotFoundException ce ) { /* eviction failure */ }
+        if ( PersistenceExceptions.isStaleUpdate( e ) ) {
+          logger.info( "Decision task for workflow " + execution.getDisplayName() + " already taken" );
+        } else if (  PersistenceExceptions.isLockError( e ) ) {
+          logger.info( "Decision task for workflow " + execution.getDisplayName() + " locking error" );
+        } else {
+          logger.error( "Error taking decision task for workflow " + execution.getDisplayName( ), e );
+        }
+      }
+      return decisionTask;
+    };
     final Callable<DecisionTask> taskCallable = () -> {
       final List<WorkflowExecution> pending = workflowExecutions.listByExample(
           WorkflowExecution.exampleWithPendingDecision( accountFullName, domain, taskList ),
@@ -1191,83 +1311,80 @@ public class SimpleWorkflowService {
       for ( final List<WorkflowExecution> pendingSegment : shufflePartitions( pending ) ) {
         for ( final WorkflowExecution execution : pendingSegment ) {
           if ( decisionTask != null ) break;
-          try ( final WorkflowLock lock = WorkflowLock.tryLock(
-              accountFullName,
-              execution.getDomainUuid( ),
-              execution.getDisplayName( ) ) ) {
-            if ( !lock.isHeldByCurrentThread( ) ) {
-              continue;
-            }
-            decisionTask = workflowExecutions.updateByExample(
-                WorkflowExecution.exampleWithUniqueName( accountFullName, execution.getDomainName( ), execution.getDisplayName( ) ),
-                accountFullName,
-                execution.getDisplayName(),
-                new Function<WorkflowExecution,DecisionTask>( ) {
-                  @Nullable
-                  @Override
-                  public DecisionTask apply( final WorkflowExecution workflowExecution ) {
-                    if ( workflowExecution.getDecisionStatus( ) == Pending ) {
-                      final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-                      final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
-                      final WorkflowHistoryEvent scheduled = Iterables.find(
-                          reverseEvents,
-                          CollectionUtils.propertyPredicate( "DecisionTaskScheduled", EVENT_TYPE ) );
-                      final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
-                          reverseEvents,
-                          CollectionUtils.propertyPredicate( "DecisionTaskStarted", EVENT_TYPE ) );
-                      workflowExecution.setDecisionStatus( Active );
-                      workflowExecution.setDecisionTimestamp( new Date( ) );
-                      final WorkflowHistoryEvent started = WorkflowHistoryEvent.create(
-                          workflowExecution,
-                          new DecisionTaskStartedEventAttributes()
-                              .withIdentity( request.getIdentity() )
-                              .withScheduledEventId( scheduled.getEventId() ) );
-                      workflowExecution.addHistoryEvent( started );
-                      return new DecisionTask( )
-                          .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
-                              .withWorkflowId( workflowExecution.getWorkflowId( ) )
-                              .withRunId( workflowExecution.getDisplayName( ) ) )
-                          .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
-                              .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
-                              .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
-                          .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
-                              accountFullName.getAccountNumber( ),
-                              workflowExecution.getDomain( ).getNaturalId( ),
-                              workflowExecution.getDisplayName( ),
-                              scheduled.getEventId( ),
-                              started.getEventId( ),
-                              System.currentTimeMillis( ),
-                              System.currentTimeMillis( ) ) ) )  //TODO:STEVE: token expiry date
-                          .withStartedEventId( started.getEventId() )
-                          .withPreviousStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).or( 0L ) )
-                          .withEvents( Collections2.transform(
-                              MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ) ? reverseEvents : events,
-                              TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
-                          ) );
-                    }
-                    return null;
-                  }
-                } );
-          } catch ( Exception e ) {
-            final StaleObjectStateException stale = Exceptions.findCause( e, StaleObjectStateException.class );
-            if ( stale != null ) try {
-              Entities.evictCache( Class.forName( stale.getEntityName( ) ) );
-            } catch ( ClassNotFoundException ce ) { /* eviction failure */ }
-            if ( PersistenceExceptions.isStaleUpdate( e ) ) {
-              logger.info( "Decision task for workflow " + execution.getDisplayName() + " already taken" );
-            } else if (  PersistenceExceptions.isLockError( e ) ) {
-              logger.info( "Decision task for workflow " + execution.getDisplayName() + " locking error" );
-            } else {
-              logger.error( "Error taking decision task for workflow " + execution.getDisplayName( ), e );
-            }
-          }
+          decisionTask = claimTask.apply( execution );
         }
       }
       return decisionTask;
     };
+    final java.util.function.Function<String,DecisionTask> notifiedTaskClaimer = runId -> {
+      final List<WorkflowExecution> notified;
+      try {
+        notified = workflowExecutions.listByExample(
+            WorkflowExecution.exampleWithUniqueName( accountFullName, domain, runId ),
+            Predicates.<WorkflowExecution>and( accessible, workflowExecution ->
+                workflowExecution.getDecisionStatus( ) == Pending &&
+                taskList.equals( workflowExecution.getTaskList( ) ) ),
+            Functions.identity( ) );
+      } catch ( final Exception e ) {
+        logger.debug( "Error finding notified workflow execution " + runId, e );
+        return null;
+      }
+      return notified.isEmpty( ) ? null : claimTask.apply( notified.get( 0 ) );
+    };
 
     try {
-      return handleTaskPolling( accountFullName, domain, "decision", taskList, request.getCorrelationId(), new DecisionTask(), taskCallable );
+      return handleTaskPolling( accountFullName, domain, "decision", taskList, request.getCorrelationId(), new DecisionTask(), taskCallable, notifiedTaskClaimer );
+    } catch ( Exception e ) {
+      throw handleException( e );
+    }
+  }
+
+  /**
+   * Get a further page of history for a decision task, the task is not claimed.
+   */
+  private DecisionTask pollForDecisionTaskPage( final PollForDecisionTaskRequest request,
+                                                final AccountFullName accountFullName,
+                                                final Predicate<? super WorkflowExecution> accessible ) throws SimpleWorkflowException {
+    final String runId = WorkflowHistoryPaging.runId( request.getNextPageToken( ) );
+    final long startedEventId = WorkflowHistoryPaging.lastEventId( request.getNextPageToken( ) );
+    try {
+      return request.reply( workflowExecutions.lookupByExample(
+          WorkflowExecution.exampleWithName( accountFullName, runId ),
+          accountFullName,
+          runId,
+          Predicates.<WorkflowExecution>and( accessible, workflowExecution ->
+              request.getDomain( ).equals( workflowExecution.getDomainName( ) ) ),
+          workflowExecution -> {
+            final WorkflowHistoryPaging.Page page;
+            try {
+              page = WorkflowHistoryPaging.page(
+                  runId,
+                  workflowExecution.getWorkflowHistory( ),
+                  startedEventId,
+                  MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ),
+                  request.getMaximumPageSize( ),
+                  request.getNextPageToken( ) );
+            } catch ( SimpleWorkflowClientException e ) {
+              throw up( e );
+            }
+            return new DecisionTask( )
+                .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
+                    .withWorkflowId( workflowExecution.getWorkflowId( ) )
+                    .withRunId( workflowExecution.getDisplayName( ) ) )
+                .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
+                    .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
+                    .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
+                .withStartedEventId( startedEventId )
+                .withEvents( Collections2.transform(
+                    page.getEvents( ),
+                    TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
+                ) )
+                .withNextPageToken( page.getNextPageToken( ) );
+          } ) );
+    } catch ( SwfMetadataNotFoundException e ) {
+      throw new SimpleWorkflowClientException(
+          "UnknownResourceFault",
+          "Unknown execution, runId = " + runId );
     } catch ( Exception e ) {
       throw handleException( e );
     }
@@ -1290,7 +1407,7 @@ public class SimpleWorkflowService {
           Predicates.alwaysTrue( ),
           Functions.identity( ) );
 
-      final Set<Pair<String,String>> notificationTypeListPairs = Sets.newHashSet( );
+      final Set<TaskListNotification> taskListNotifications = Sets.newHashSet( );
       try ( final WorkflowLock lock = WorkflowLock.lock( accountFullName, domain, token.getRunId() ) ) {
         workflowExecutions.withRetries( ).updateByExample(
           WorkflowExecution.exampleWithUniqueName( accountFullName, domain.getDisplayName( ), token.getRunId( ) ),
@@ -1302,7 +1419,7 @@ public class SimpleWorkflowService {
             public WorkflowExecution apply( final WorkflowExecution workflowExecution ) {
               if ( accessible.apply( workflowExecution ) ) {
                 // clear pending notifications in case of retries
-                notificationTypeListPairs.clear( );
+                taskListNotifications.clear( );
 
                 // verify token is valid
                 final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
@@ -1322,7 +1439,7 @@ public class SimpleWorkflowService {
                 } else {
                   workflowExecution.setDecisionStatus( Pending );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
-                  notificationTypeListPairs.add( Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
+                  taskListNotifications.add( new TaskListNotification( "decision", workflowExecution.getTaskList( ), workflowExecution.getDisplayName( ) ) );
                 }
 
                 // setup activity count supplier
@@ -1518,7 +1635,7 @@ public class SimpleWorkflowService {
 
                           deleteActivities( activityTasks, accountFullName, workflowExecution );
 
-                          notificationTypeListPairs.add( Pair.pair( "decision", taskList ) );
+                          taskListNotifications.add( new TaskListNotification( "decision", taskList, workflowExecutionContinued.getDisplayName( ) ) );
                         }
                       }
 
@@ -1698,7 +1815,7 @@ public class SimpleWorkflowService {
                         ) );
                         activityTaskScheduledCount++;
 
-                        notificationTypeListPairs.add( Pair.pair( "activity", list ) );
+                        taskListNotifications.add( new TaskListNotification( "activity", list, workflowExecution.getDisplayName( ) + "/" + scheduledId ) );
                       } catch ( final ScheduleActivityTaskException e ) {
                         workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
                             workflowExecution,
@@ -1822,7 +1939,7 @@ public class SimpleWorkflowService {
                   ) );
                   workflowExecution.setDecisionStatus( Pending );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
-                  notificationTypeListPairs.add( Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
+                  taskListNotifications.add( new TaskListNotification( "decision", workflowExecution.getTaskList( ), workflowExecution.getDisplayName( ) ) );
                 } else {
                   workflowExecution.updateTimeStamps( );
                 }
@@ -1833,12 +1950,13 @@ public class SimpleWorkflowService {
           }
 
           //TODO:STEVE: update API to allow batch notification
-          for ( final Pair<String,String> notificationTypeListPair : notificationTypeListPairs ) {
+          for ( final TaskListNotification taskListNotification : taskListNotifications ) {
             notifyTaskList(
                 accountFullName,
                 domain.getDisplayName( ),
-                notificationTypeListPair.getLeft( ),
-                notificationTypeListPair.getRight( ) );
+                taskListNotification.type,
+                taskListNotification.taskList,
+                taskListNotification.taskId );
           }
     } catch( Exception e ) {
       throw handleException( e );
@@ -2062,12 +2180,24 @@ public class SimpleWorkflowService {
           accessible,
           workflowExecution -> {
             final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-            final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
+            final WorkflowHistoryPaging.Page page;
+            try {
+              page = WorkflowHistoryPaging.page(
+                  workflowExecution.getDisplayName( ),
+                  events,
+                  events.size( ),
+                  MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ),
+                  request.getMaximumPageSize( ),
+                  request.getNextPageToken( ) );
+            } catch ( SimpleWorkflowClientException e ) {
+              throw up( e );
+            }
             return new History( )
                 .withEvents( Collections2.transform(
-                    MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ) ? reverseEvents : events,
+                    page.getEvents( ),
                     TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
-                ) );
+                ) )
+                .withNextPageToken( page.getNextPageToken( ) );
           }
       );
     } catch ( SwfMetadataNotFoundException e ) {
@@ -2292,21 +2422,59 @@ public class SimpleWorkflowService {
                                       final String domain,
                                       final String type,
                                       final String taskList ) {
+    notifyTaskList( accountFullName, domain, type, taskList, null );
+  }
+
+  /**
+   * Notify the task list, a single poller is notified when the task identifier
+   * is known (activity {@code runId/scheduledEventId} or decision {@code runId})
+   */
+  private static void notifyTaskList( final AccountFullName accountFullName,
+                                      final String domain,
+                                      final String type,
+                                      final String taskList,
+                                      @Nullable final String taskId ) {
     noteTaskListActivity( accountFullName, domain, type, taskList );
-    NotifyClient.notifyTaskList( accountFullName, domain, type, taskList );
+    NotifyClient.notifyTaskList( accountFullName, domain, type, taskList, taskId );
   }
 
   private static final long EXPIRY_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
 
+  private static final class TaskListNotification {
+    private final String type;
+    private final String taskList;
+    private final String taskId;
+
+    private TaskListNotification( final String type, final String taskList, final String taskId ) {
+      this.type = type;
+      this.taskList = taskList;
+      this.taskId = taskId;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final TaskListNotification that = (TaskListNotification) o;
+      return type.equals( that.type ) && taskList.equals( that.taskList ) && taskId.equals( that.taskId );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return java.util.Objects.hash( type, taskList, taskId );
+    }
+  }
+
   private static <R extends SimpleWorkflowMessage> R handleTaskPolling( final AccountFullName accountFullName,
                                          final String domain,
                                          final String type,
                                          final String taskList,
                                          final String correlationId,
                                          final R emptyResponse,
-                                         final Callable<R> responseCallable) {
+                                         final Callable<R> responseCallable,
+                                         final java.util.function.Function<String,R> notifiedTaskClaimer ) {
     final Long pollTimeout = System.currentTimeMillis() + EXPIRY_MILLIS;
-    return handleTaskPolling(accountFullName, domain, type, taskList, correlationId, emptyResponse, responseCallable, true, pollTimeout);
+    return handleTaskPolling(accountFullName, domain, type, taskList, correlationId, emptyResponse, responseCallable, notifiedTaskClaimer, true, pollTimeout);
   }
 
   private static <R extends SimpleWorkflowMessage> R handleTaskPolling( final AccountFullName accountFullName,
@@ -2316,6 +2484,7 @@ public class SimpleWorkflowService {
                                          final String correlationId,
                                          final R emptyResponse,
                                          final Callable<R> responseCallable,
+                                         final java.util.function.Function<String,R> notifiedTaskClaimer,
                                          final boolean checkImmediately,
                                          final long pollTimeout) {
     final String list = Joiner.on('/').join( type, domain, taskList );
@@ -2328,18 +2497,26 @@ public class SimpleWorkflowService {
             return taskResponse;
           }
         }
-        final Consumer<Boolean> consumer =
-            NotifyClient.pollTaskList(accountFullName, domain, type, taskList, pollTimeout, Contexts.consumerWithCurrentContext(
-                (notified) -> {
+        final Consumer<PollForNotificationResponseType> consumer = NotifyClient.pollTaskListForNotification(
+            NotifyTaskList.of( accountFullName, domain, type, taskList ),
+            pollTimeout,
+            Contexts.consumerWithCurrentContext(
+                (notification) -> {
                   try {
-                    if (notified) {
-                      final SimpleWorkflowMessage taskResponse = responseCallable.call();
+                    if ( notification != null && MoreObjects.firstNonNull( notification.getNotified( ), false ) ) {
+                      // claim the notified task, if gone then any other pending task
+                      SimpleWorkflowMessage taskResponse = notification.getDetails( ) == null ?
+                          null :
+                          notifiedTaskClaimer.apply( notification.getDetails( ) );
+                      if ( taskResponse == null ) {
+                        taskResponse = responseCallable.call( );
+                      }
                       if (taskResponse != null) {
                         taskResponse.setCorrelationId(correlationId);
                         Contexts.response(taskResponse);
                         return;
                       } else if ( System.currentTimeMillis() < pollTimeout ) {
-                        handleTaskPolling( accountFullName, domain, type, taskList, correlationId, emptyResponse, responseCallable, false, pollTimeout );
+                        handleTaskPolling( accountFullName, domain, type, taskList, correlationId, emptyResponse, responseCallable, notifiedTaskClaimer, false, pollTimeout );
                         return;
                       }
                     }
@@ -2363,17 +2540,19 @@ public class SimpleWorkflowService {
   }
 
   private static void pollerCleanup( final long timestamp ) {
-    // drop fast if excessive pollers
+    // drop fast if excessive pollers, completing so they stop waiting
     final int remove = timestampedPollers.size( ) - 1000;
-    for ( int i=0; i<remove; i++ ) {
-      timestampedPollers.pollFirst( );
+    Pair<Long,Consumer<PollForNotificationResponseType>> consumerPair;
+    for ( int i=0; i<remove && ( consumerPair = timestampedPollers.pollFirst( ) ) != null; i++ ) {
+      consumerPair.getRight( ).accept( null );
     }
 
     // remove expired pollers
-    Pair<Long,Consumer<Boolean>> consumerPair;
     while ( ( consumerPair = timestampedPollers.peekFirst( ) ) != null ) {
       if ( consumerPair.getLeft( ) < timestamp ) {
-        timestampedPollers.remove( consumerPair );
+        if ( timestampedPollers.remove( consumerPair ) ) {
+          consumerPair.getRight( ).accept( null );
+        }
       } else {
         break;
       }
@@ -2381,9 +2560,9 @@ public class SimpleWorkflowService {
   }
 
   private static void pollerShutdown( ) {
-    Pair<Long,Consumer<Boolean>> consumerPair;
+    Pair<Long,Consumer<PollForNotificationResponseType>> consumerPair;
     while ( ( consumerPair = timestampedPollers.pollFirst( ) ) != null ) {
-      consumerPair.getRight( ).accept( false );
+      consumerPair.getRight( ).accept( null );
     }
   }
 
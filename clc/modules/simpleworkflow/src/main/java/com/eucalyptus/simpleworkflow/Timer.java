@@ -27,6 +27,9 @@ import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
@@ -36,6 +39,7 @@ import org.hibernate.annotations.Type;
 import com.eucalyptus.entities.AbstractOwnedPersistent;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
 import com.eucalyptus.auth.principal.OwnerFullName;
+import com.eucalyptus.simpleworkflow.stateful.TimeoutManager;
 
 /**
  *
@@ -238,4 +242,15 @@ public class Timer extends AbstractOwnedPersistent implements SimpleWorkflowMeta
     updateTimeStamps( );
     setTimeoutTimestamp( calculateTimeout( ) );
   }
+
+  @PostUpdate
+  @PostPersist
+  protected void scheduleTimeout( ) {
+    TimeoutManager.schedule( this );
+  }
+
+  @PostRemove
+  protected void cancelTimeout( ) {
+    TimeoutManager.cancel( this );
+  }
 }
@@ -35,7 +35,9 @@ public interface Timers {
                              Predicate<? super Timer> filter,
                              Function<? super Timer,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listFired( Function<? super Timer,T> transform ) throws SwfMetadataException;
+  <T> List<T> listFired( long fromTimestamp,
+                         long toTimestamp,
+                         Function<? super Timer,T> transform ) throws SwfMetadataException;
 
   <T> T updateByExample( Timer example,
                          OwnerFullName ownerFullName,
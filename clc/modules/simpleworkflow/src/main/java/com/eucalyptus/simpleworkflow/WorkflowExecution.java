@@ -40,6 +40,9 @@ import javax.persistence.OneToMany;
 import javax.persistence.OrderBy;
 import javax.persistence.OrderColumn;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
@@ -56,6 +59,7 @@ import com.eucalyptus.simpleworkflow.common.model.WorkflowEventAttributes;
 import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.auth.principal.FullName;
 import com.eucalyptus.auth.principal.OwnerFullName;
+import com.eucalyptus.simpleworkflow.stateful.TimeoutManager;
 import com.google.common.base.Functions;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
@@ -545,6 +549,17 @@ public class WorkflowExecution extends UserMetadata<WorkflowExecution.ExecutionS
     setTimeoutTimestamp( calculateNextTimeout( ) );
   }
 
+  @PostUpdate
+  @PostPersist
+  protected void scheduleTimeout( ) {
+    TimeoutManager.schedule( this );
+  }
+
+  @PostRemove
+  protected void cancelTimeout( ) {
+    TimeoutManager.cancel( this );
+  }
+
   public static final class WorkflowHistorySizeLimitException extends RuntimeException {
     private static final long serialVersionUID = 1L;
 
@@ -58,7 +58,8 @@ public interface WorkflowExecutions {
                              Map<String,String> aliases,
                              Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listTimedOut( long timestamp,
+  <T> List<T> listTimedOut( long fromTimestamp,
+                            long toTimestamp,
                             Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
 
   <T> List<T> listRetentionExpired( long timestamp,
@@ -19,6 +19,9 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Index;
@@ -27,12 +30,20 @@ import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Table;
+import javax.persistence.Transient;
+import org.apache.log4j.Logger;
 import org.hibernate.annotations.Type;
+import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.entities.AbstractPersistent;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.simpleworkflow.common.SimpleWorkflow;
 import com.eucalyptus.simpleworkflow.common.model.WorkflowEventAttributes;
+import com.eucalyptus.upgrade.Upgrades;
 import com.eucalyptus.util.Exceptions;
-import com.eucalyptus.util.Strings;
 import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import groovy.sql.Sql;
 
 /**
  *
@@ -55,11 +66,20 @@ public class WorkflowHistoryEvent extends AbstractPersistent {
   @Column( name = "event_type", nullable = false, updatable = false )
   private String eventType;
 
-  @Column( name = "event_attributes", nullable = false, updatable = false )
+  /**
+   * JSON attributes for events created before attributes were encoded, see eventAttributesData
+   */
+  @Column( name = "event_attributes" )
   @Lob
   @Type(type="org.hibernate.type.StringClobType")
   private String eventAttributes;
 
+  @Column( name = "event_attributes_data" )
+  private byte[] eventAttributesData;
+
+  @Transient
+  private transient WorkflowEventAttributes attributes;
+
   protected WorkflowHistoryEvent( ) {
   }
 
@@ -67,23 +87,29 @@ public class WorkflowHistoryEvent extends AbstractPersistent {
                                              final WorkflowEventAttributes attributes ) {
     final WorkflowHistoryEvent workflowHistoryEvent = new WorkflowHistoryEvent( );
     workflowHistoryEvent.setWorkflowExecution( execution );
-    workflowHistoryEvent.setEventType( Strings.trimSuffix( "EventAttributes", attributes.getClass( ).getSimpleName( ) ) ); //TODO:STEVE: add unit test to enforce this convention
-    workflowHistoryEvent.setEventAttributes( SwfJsonUtils.writeObjectAsString( attributes ) );
+    workflowHistoryEvent.setEventType( WorkflowHistoryEventEncoding.eventType( attributes ) ); //TODO:STEVE: add unit test to enforce this convention
+    workflowHistoryEvent.setEventAttributesData( WorkflowHistoryEventEncoding.encode( attributes ) );
+    workflowHistoryEvent.attributes = attributes;
     workflowHistoryEvent.updateTimeStamps( );
     return workflowHistoryEvent;
   }
 
-  @SuppressWarnings( "unchecked" )
+  /**
+   * Get the attributes for the event, attributes are decoded on first use.
+   */
   public WorkflowEventAttributes toAttributes( ) {
-    try {
-      return SwfJsonUtils.readObject(
-          getEventAttributes(),
-          (Class<? extends WorkflowEventAttributes>)
-              Class.forName( WorkflowEventAttributes.class.getPackage( ).getName( ) +
-                  "." + getEventType( ) + "EventAttributes" ) );
-    } catch ( Exception e ) {
-      throw Exceptions.toUndeclared( e );
+    WorkflowEventAttributes attributes = this.attributes;
+    if ( attributes == null ) {
+      try {
+        attributes = getEventAttributesData( ) != null ?
+            WorkflowHistoryEventEncoding.decode( getEventType( ), getEventAttributesData( ) ) :
+            WorkflowHistoryEventEncoding.decodeJson( getEventType( ), getEventAttributes( ) );
+      } catch ( Exception e ) {
+        throw Exceptions.toUndeclared( e );
+      }
+      this.attributes = attributes;
     }
+    return attributes;
   }
 
   public Long getEventId( ) {
@@ -114,6 +140,7 @@ public class WorkflowHistoryEvent extends AbstractPersistent {
     this.eventType = eventType;
   }
 
+  @Nullable
   public String getEventAttributes( ) {
     return eventAttributes;
   }
@@ -121,4 +148,73 @@ public class WorkflowHistoryEvent extends AbstractPersistent {
   public void setEventAttributes( final String eventAttributes ) {
     this.eventAttributes = eventAttributes;
   }
+
+  @Nullable
+  public byte[] getEventAttributesData( ) {
+    return eventAttributesData;
+  }
+
+  public void setEventAttributesData( final byte[] eventAttributesData ) {
+    this.eventAttributesData = eventAttributesData;
+  }
+
+  @Upgrades.PreUpgrade( value = SimpleWorkflow.class, since = Upgrades.Version.v5_0_0 )
+  public static class WorkflowHistoryEventPreUpgrade500 implements Callable<Boolean> {
+    private static final Logger logger = Logger.getLogger( WorkflowHistoryEventPreUpgrade500.class );
+
+    @Override
+    public Boolean call( ) throws Exception {
+      Sql sql = null;
+      try {
+        sql = Upgrades.DatabaseFilters.NEWVERSION.getConnection( "eucalyptus_simpleworkflow" );
+        sql.execute( "alter table swf_workflow_history_event alter column event_attributes drop not null" );
+        return true;
+      } catch ( Exception ex ) {
+        logger.error( "Error removing not null constraint for event_attributes of swf_workflow_history_event", ex );
+        return false;
+      } finally {
+        if ( sql != null ) {
+          sql.close( );
+        }
+      }
+    }
+  }
+
+  /**
+   * Encode JSON attributes for existing events, in batches to limit transaction size.
+   */
+  @Upgrades.EntityUpgrade( entities = WorkflowHistoryEvent.class, since = Upgrades.Version.v5_0_0, value = SimpleWorkflow.class )
+  public enum WorkflowHistoryEventUpgrade500 implements Predicate<Class> {
+    INSTANCE;
+    private static final Logger logger = Logger.getLogger( WorkflowHistoryEventUpgrade500.class );
+    private static final int BATCH_SIZE = 1000;
+
+    @SuppressWarnings( "unchecked" )
+    @Override
+    public boolean apply( @Nullable final Class entityClass ) {
+      long count = 0;
+      try {
+        List<WorkflowHistoryEvent> events;
+        do {
+          try ( final TransactionResource tx = Entities.transactionFor( WorkflowHistoryEvent.class ) ) {
+            events = (List<WorkflowHistoryEvent>) Entities.createCriteria( WorkflowHistoryEvent.class )
+                .add( Restrictions.isNull( "eventAttributesData" ) )
+                .setMaxResults( BATCH_SIZE )
+                .list( );
+            for ( final WorkflowHistoryEvent event : events ) {
+              event.setEventAttributesData( WorkflowHistoryEventEncoding.encodeJson( event.getEventAttributes( ) ) );
+              event.setEventAttributes( null );
+            }
+            tx.commit( );
+          }
+          count += events.size( );
+        } while ( events.size( ) == BATCH_SIZE );
+        logger.info( "Encoded attributes for " + count + " workflow history events" );
+      } catch ( Exception ex ) {
+        logger.error( "Error encoding attributes for workflow history events", ex );
+        throw Exceptions.toUndeclared( ex );
+      }
+      return true;
+    }
+  }
 }
@@ -0,0 +1,151 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import com.eucalyptus.simpleworkflow.common.model.WorkflowEventAttributes;
+import com.eucalyptus.util.Exceptions;
+import com.eucalyptus.util.Strings;
+import com.google.common.base.Charsets;
+
+/**
+ * Storage encoding for workflow history event attributes.
+ *
+ * <p>Encoded attributes are a format byte followed by the JSON for the
+ * attributes, larger attributes are deflated. Attributes classes are resolved
+ * from the event type once and then cached.</p>
+ */
+public final class WorkflowHistoryEventEncoding {
+
+  static final byte FORMAT_JSON = 1;
+  static final byte FORMAT_DEFLATED_JSON = 2;
+
+  private static final int DEFLATE_THRESHOLD = 256;
+  private static final ConcurrentMap<String,Class<? extends WorkflowEventAttributes>> attributesTypes =
+      new ConcurrentHashMap<>( );
+
+  private WorkflowHistoryEventEncoding( ) {
+  }
+
+  public static String eventType( final WorkflowEventAttributes attributes ) {
+    return Strings.trimSuffix( "EventAttributes", attributes.getClass( ).getSimpleName( ) );
+  }
+
+  public static byte[] encode( final WorkflowEventAttributes attributes ) {
+    return encodeJson( SwfJsonUtils.writeObjectAsString( attributes ) );
+  }
+
+  /**
+   * Encode attributes JSON, for use when migrating attributes stored as JSON text.
+   */
+  public static byte[] encodeJson( final String attributesJson ) {
+    final byte[] json = attributesJson.getBytes( Charsets.UTF_8 );
+    if ( json.length < DEFLATE_THRESHOLD ) {
+      final byte[] encoded = new byte[ json.length + 1 ];
+      encoded[ 0 ] = FORMAT_JSON;
+      System.arraycopy( json, 0, encoded, 1, json.length );
+      return encoded;
+    }
+    final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+    try {
+      deflater.setInput( json );
+      deflater.finish( );
+      final ByteArrayOutputStream out = new ByteArrayOutputStream( json.length / 2 );
+      out.write( FORMAT_DEFLATED_JSON );
+      final byte[] buffer = new byte[ 1024 ];
+      while ( !deflater.finished( ) ) {
+        out.write( buffer, 0, deflater.deflate( buffer ) );
+      }
+      return out.toByteArray( );
+    } finally {
+      deflater.end( );
+    }
+  }
+
+  public static WorkflowEventAttributes decode( final String eventType, final byte[] encoded ) {
+    if ( encoded == null || encoded.length == 0 ) {
+      throw new IllegalArgumentException( "Missing attributes for event type " + eventType );
+    }
+    final String json;
+    switch ( encoded[ 0 ] ) {
+      case FORMAT_JSON:
+        json = new String( encoded, 1, encoded.length - 1, Charsets.UTF_8 );
+        break;
+      case FORMAT_DEFLATED_JSON:
+        json = new String( inflate( encoded ), Charsets.UTF_8 );
+        break;
+      default:
+        throw new IllegalArgumentException( "Unsupported attributes format " + encoded[ 0 ] + " for event type " + eventType );
+    }
+    return decodeJson( eventType, json );
+  }
+
+  public static WorkflowEventAttributes decodeJson( final String eventType, final String attributesJson ) {
+    try {
+      return SwfJsonUtils.readObject( attributesJson, attributesType( eventType ) );
+    } catch ( IOException e ) {
+      throw Exceptions.toUndeclared( e );
+    }
+  }
+
+  static Class<? extends WorkflowEventAttributes> attributesType( final String eventType ) {
+    return attributesTypes.computeIfAbsent( eventType, WorkflowHistoryEventEncoding::lookupAttributesType );
+  }
+
+  private static Class<? extends WorkflowEventAttributes> lookupAttributesType( final String eventType ) {
+    try {
+      return Class.forName( WorkflowEventAttributes.class.getPackage( ).getName( ) + "." + eventType + "EventAttributes" )
+          .asSubclass( WorkflowEventAttributes.class );
+    } catch ( ClassNotFoundException | ClassCastException e ) {
+      throw new IllegalArgumentException( "Unknown event type " + eventType, e );
+    }
+  }
+
+  private static byte[] inflate( final byte[] encoded ) {
+    final Inflater inflater = new Inflater( );
+    try {
+      inflater.setInput( encoded, 1, encoded.length - 1 );
+      byte[] buffer = new byte[ Math.max( 1024, encoded.length * 4 ) ];
+      int length = 0;
+      while ( !inflater.finished( ) ) {
+        if ( length == buffer.length ) {
+          buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+        }
+        final int inflated = inflater.inflate( buffer, length, buffer.length - length );
+        if ( inflated == 0 && ( inflater.needsInput( ) || inflater.needsDictionary( ) ) ) {
+          throw new IllegalArgumentException( "Truncated attributes" );
+        }
+        length += inflated;
+      }
+      return Arrays.copyOf( buffer, length );
+    } catch ( DataFormatException e ) {
+      throw new IllegalArgumentException( "Invalid attributes", e );
+    } finally {
+      inflater.end( );
+    }
+  }
+}
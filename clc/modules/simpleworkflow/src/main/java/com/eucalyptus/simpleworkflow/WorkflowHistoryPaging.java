@@ -0,0 +1,158 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow;
+
+import java.util.List;
+import javax.annotation.Nullable;
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Paging for workflow execution history.
+ *
+ * <p>A page token identifies the run, the next event and the last event of the
+ * paged history, so later pages are consistent with the first page when events
+ * are added to the history. Only events for the returned page are decoded.</p>
+ */
+public final class WorkflowHistoryPaging {
+
+  public static final int MAXIMUM_PAGE_SIZE = 1000;
+
+  private static final String TOKEN_VERSION = "1";
+
+  private WorkflowHistoryPaging( ) {
+  }
+
+  /**
+   * Get a page of events from the given history.
+   *
+   * @param runId The workflow run identifier for the history
+   * @param history The complete history in event order
+   * @param lastEventId The last event to include, when not paging from a token
+   * @param reverseOrder True to page from the last event to the first
+   * @param maximumPageSize The requested page size, if any
+   * @param nextPageToken The token from the previous page, if any
+   * @return The page
+   * @throws SimpleWorkflowClientException If the token is not valid for the run
+   */
+  public static Page page( final String runId,
+                           final List<WorkflowHistoryEvent> history,
+                           final long lastEventId,
+                           final boolean reverseOrder,
+                           @Nullable final Integer maximumPageSize,
+                           @Nullable final String nextPageToken ) throws SimpleWorkflowClientException {
+    final PageToken token = nextPageToken == null ? null : PageToken.parse( nextPageToken );
+    if ( token != null && !token.runId.equals( runId ) ) {
+      throw new SimpleWorkflowClientException( "ValidationError", "Invalid next page token" );
+    }
+    final int pageSize = maximumPageSize == null || maximumPageSize <= 0 || maximumPageSize > MAXIMUM_PAGE_SIZE ?
+        MAXIMUM_PAGE_SIZE :
+        maximumPageSize;
+    final long last = Math.min( history.size( ), token == null ? lastEventId : token.lastEventId );
+    final List<WorkflowHistoryEvent> events;
+    final String next;
+    if ( reverseOrder ) {
+      final long start = Math.min( last, token == null ? last : token.nextEventId );
+      final long end = Math.max( 1, start - pageSize + 1 );
+      events = Lists.reverse( history.subList( (int) end - 1, (int) Math.max( end - 1, start ) ) );
+      next = end > 1 ? new PageToken( runId, end - 1, last ).toString( ) : null;
+    } else {
+      final long start = Math.max( 1, token == null ? 1 : token.nextEventId );
+      final long end = Math.min( last, start + pageSize - 1 );
+      events = history.subList( (int) Math.min( start - 1, end ), (int) end );
+      next = end < last ? new PageToken( runId, end + 1, last ).toString( ) : null;
+    }
+    return new Page( events, next );
+  }
+
+  /**
+   * Get the run identifier for a page token.
+   *
+   * @throws SimpleWorkflowClientException If the token is not valid
+   */
+  public static String runId( final String nextPageToken ) throws SimpleWorkflowClientException {
+    return PageToken.parse( nextPageToken ).runId;
+  }
+
+  /**
+   * Get the last event identifier for a page token.
+   *
+   * @throws SimpleWorkflowClientException If the token is not valid
+   */
+  public static long lastEventId( final String nextPageToken ) throws SimpleWorkflowClientException {
+    return PageToken.parse( nextPageToken ).lastEventId;
+  }
+
+  public static final class Page {
+    private final List<WorkflowHistoryEvent> events;
+    @Nullable private final String nextPageToken;
+
+    private Page( final List<WorkflowHistoryEvent> events, @Nullable final String nextPageToken ) {
+      this.events = events;
+      this.nextPageToken = nextPageToken;
+    }
+
+    public List<WorkflowHistoryEvent> getEvents( ) {
+      return events;
+    }
+
+    @Nullable
+    public String getNextPageToken( ) {
+      return nextPageToken;
+    }
+  }
+
+  private static final class PageToken {
+    private final String runId;
+    private final long nextEventId;
+    private final long lastEventId;
+
+    private PageToken( final String runId, final long nextEventId, final long lastEventId ) {
+      this.runId = runId;
+      this.nextEventId = nextEventId;
+      this.lastEventId = lastEventId;
+    }
+
+    private static PageToken parse( final String token ) throws SimpleWorkflowClientException {
+      try {
+        final List<String> parts = Splitter.on( '/' ).splitToList(
+            new String( BaseEncoding.base64Url( ).decode( token ), Charsets.UTF_8 ) );
+        if ( parts.size( ) == 4 && TOKEN_VERSION.equals( parts.get( 0 ) ) ) {
+          final long nextEventId = Long.parseLong( parts.get( 2 ) );
+          final long lastEventId = Long.parseLong( parts.get( 3 ) );
+          if ( nextEventId > 0 && nextEventId <= lastEventId ) {
+            return new PageToken( parts.get( 1 ), nextEventId, lastEventId );
+          }
+        }
+      } catch ( IllegalArgumentException e ) {
+        // invalid token
+      }
+      throw new SimpleWorkflowClientException( "ValidationError", "Invalid next page token" );
+    }
+
+    @Override
+    public String toString( ) {
+      return BaseEncoding.base64Url( ).encode(
+          ( TOKEN_VERSION + "/" + runId + "/" + nextEventId + "/" + lastEventId ).getBytes( Charsets.UTF_8 ) );
+    }
+  }
+}
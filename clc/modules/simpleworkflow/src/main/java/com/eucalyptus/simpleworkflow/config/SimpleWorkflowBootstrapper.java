@@ -24,7 +24,9 @@ import com.eucalyptus.bootstrap.Bootstrapper;
 import com.eucalyptus.bootstrap.Provides;
 import com.eucalyptus.bootstrap.RunDuring;
 import com.eucalyptus.component.Topology;
+import com.eucalyptus.simpleworkflow.SimpleWorkflowProperties;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflow;
+import com.eucalyptus.simpleworkflow.common.client.Config;
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 
 /**
@@ -33,6 +35,12 @@ import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 @RunDuring( Bootstrap.Stage.RemoteServicesInit )
 @Provides( SimpleWorkflow.class )
 public class SimpleWorkflowBootstrapper extends Bootstrapper.Simple {
+  @Override
+  public boolean load( ) throws Exception {
+    Config.setLocalDispatchEnabled( ( ) -> !Boolean.FALSE.equals( SimpleWorkflowProperties.CLIENT_LOCAL_DISPATCH ) );
+    return true;
+  }
+
   @Override
   public boolean check() throws Exception {
     return Topology.isEnabled( PolledNotifications.class );
@@ -42,11 +42,15 @@ public class PersistenceActivityTasks extends SwfPersistenceSupport<ActivityTask
     super( "activity-task" );
   }
 
-  public <T> List<T> listTimedOut( final Function<? super ActivityTask,T> transform ) throws SwfMetadataException {
+  public <T> List<T> listTimedOut( final long fromTimestamp,
+                                   final long toTimestamp,
+                                   final Function<? super ActivityTask,T> transform ) throws SwfMetadataException {
     return listByExample(
         ActivityTask.exampleWithOwner( null ),
         Predicates.alwaysTrue(),
-        Restrictions.lt( "timeoutTimestamp", new Date( ) ),
+        Restrictions.and(
+            Restrictions.ge( "timeoutTimestamp", new Date( fromTimestamp ) ),
+            Restrictions.lt( "timeoutTimestamp", new Date( toTimestamp ) ) ),
         Collections.<String,String>emptyMap( ),
         transform );
   }
@@ -42,11 +42,15 @@ public class PersistenceTimers extends SwfPersistenceSupport<SimpleWorkflowMetad
     super( "timer" );
   }
 
-  public <T> List<T> listFired( final Function<? super Timer,T> transform ) throws SwfMetadataException {
+  public <T> List<T> listFired( final long fromTimestamp,
+                                final long toTimestamp,
+                                final Function<? super Timer,T> transform ) throws SwfMetadataException {
     return listByExample(
         Timer.exampleWithOwner( null ),
         Predicates.alwaysTrue(),
-        Restrictions.lt( "timeoutTimestamp", new Date() ),
+        Restrictions.and(
+            Restrictions.ge( "timeoutTimestamp", new Date( fromTimestamp ) ),
+            Restrictions.lt( "timeoutTimestamp", new Date( toTimestamp ) ) ),
         Collections.<String,String>emptyMap(),
         transform );
   }
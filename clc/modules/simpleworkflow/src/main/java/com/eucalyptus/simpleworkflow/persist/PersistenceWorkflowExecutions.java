@@ -44,14 +44,19 @@ public class PersistenceWorkflowExecutions extends SwfPersistenceSupport<Workflo
     super( "workflow-execution" );
   }
 
-  public <T> List<T> listTimedOut( final long time,
+  public <T> List<T> listTimedOut( final long fromTime,
+                                   final long toTime,
                                    final Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException {
     return listByExample(
         WorkflowExecution.exampleForOpenWorkflow(),
         Predicates.alwaysTrue( ),
         Restrictions.disjunction( )
-            .add( Restrictions.lt( "timeoutTimestamp", new Date( time ) ) )
-            .add( Restrictions.lt( "creationTimestamp", new Date( time - getWorkflowExecutionDurationMillis() ) ) ),
+            .add( Restrictions.and(
+                Restrictions.ge( "timeoutTimestamp", new Date( fromTime ) ),
+                Restrictions.lt( "timeoutTimestamp", new Date( toTime ) ) ) )
+            .add( Restrictions.and(
+                Restrictions.ge( "creationTimestamp", new Date( fromTime - getWorkflowExecutionDurationMillis() ) ),
+                Restrictions.lt( "creationTimestamp", new Date( toTime - getWorkflowExecutionDurationMillis() ) ) ) ),
         Collections.<String,String>emptyMap( ),
         transform );
   }
@@ -19,15 +19,21 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow.stateful;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
+import com.eucalyptus.simpleworkflow.common.stateful.LocalPolledNotifications;
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotificationChecker;
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 import org.apache.log4j.Logger;
@@ -41,20 +47,29 @@ import com.eucalyptus.context.NoSuchContextException;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Consumer;
 import com.eucalyptus.util.EucalyptusCloudException;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.util.async.CheckedListenableFuture;
 import com.eucalyptus.util.async.Futures;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
 /**
+ * Service for notification of long polling clients.
  *
+ * <p>Pollers on this host are registered via LocalPolledNotifications and are
+ * called back when notified, pollers on other hosts are responded to when
+ * notified, so no thread is held for the duration of a poll.</p>
  */
 @ComponentNamed
 public class PolledNotificationService {
   private static final Logger logger = Logger.getLogger( PolledNotificationService.class );
+  private static final int CALLBACK_THREADS = 16;
 
   private static final ConcurrentMap<String,Pollers> pollersByChannel = new ConcurrentHashMap<>( );
   private static final ConcurrentMap<String,PendingNotification> pendingNotificationsByChannel =
@@ -66,17 +81,34 @@ public class PolledNotificationService {
     }
   };
 
+  private static final PollerStatistics statistics = new PollerStatistics( );
+  private static final AtomicBoolean statisticsRegistered = new AtomicBoolean( );
+
+  static void registerStatistics( ) {
+    if ( statisticsRegistered.compareAndSet( false, true ) ) {
+      Mbeans.register( "com.eucalyptus.simpleworkflow", ImmutableMap.of( "type", "PolledNotifications" ), statistics );
+    }
+  }
+
+  static PolledNotificationServiceMXBean getStatistics( ) {
+    return statistics;
+  }
+
   public NotifyResponseType submitNotify( final NotifyType notify ) throws EucalyptusCloudException {
     final NotifyResponseType response = notify.getReply( );
     final Context context = Contexts.lookup( );
     if ( context.hasAdministrativePrivileges( ) ) {
-      if ( !notifyPollers( notify.getChannel( ), notify.getDetails( ) ) ) {
-        pendingNotificationsByChannel.put( notify.getChannel( ), new PendingNotification( notify.getChannel( ), notify.getDetails() ) );
-      }
+      notify( notify.getChannel( ), notify.getDetails( ) );
     }
     return response;
   }
 
+  private static void notify( final String channel, @Nullable final String details ) {
+    if ( !notifyPollers( channel, details ) ) {
+      pendingNotificationsByChannel.put( channel, new PendingNotification( channel, details ) );
+    }
+  }
+
   public PollForNotificationResponseType pollForNotification( final PollForNotificationType poll ) throws EucalyptusCloudException {
     final Context context = Contexts.lookup( );
     if ( context.hasAdministrativePrivileges( ) ) {
@@ -102,8 +134,19 @@ public class PolledNotificationService {
     }
   }
 
+  /**
+   * Notify pollers for the channel, notifications with details (e.g. a task
+   * identifier) are for a single poller, others are for all pollers.
+   */
   private static boolean notifyPollers( final String channel, final String details ) {
-    return getPollers( channel ).notifyPollers( details );
+    return details == null ?
+        getPollers( channel ).notifyPollers( null ) :
+        getPollers( channel ).notifyPoller( details );
+  }
+
+  private static Executor callbackExecutor( ) {
+    return Threads.lookup( PolledNotifications.class, PolledNotificationService.class, "callbacks" )
+        .limitTo( CALLBACK_THREADS );
   }
 
   private static Future<PollForNotificationResponseType> addPoller( final String channel, final Poller poller ) {
@@ -111,6 +154,13 @@ public class PolledNotificationService {
     return poller.getFuture();
   }
 
+  private static void removePoller( final String channel, final Poller poller ) {
+    final Pollers pollers = pollersByChannel.get( channel );
+    if ( pollers != null ) {
+      pollers.removePoller( poller );
+    }
+  }
+
   private static Pollers getPollers( final String channel ) {
     Pollers pollers = pollersByChannel.get( channel );
     if ( pollers != null ) {
@@ -179,19 +229,51 @@ public class PolledNotificationService {
       pollersQueue.add( poller );
     }
 
+    public void removePoller( final Poller poller ) {
+      pollersQueue.remove( poller );
+    }
+
+    public int size( ) {
+      return pollersQueue.size( );
+    }
+
     public boolean notifyPollers( final String details ) {
-      return notifyPollers( queuedPollers( ), new Predicate<PollForNotificationResponseType>() {
+      final boolean notified = notifyPollers( queuedPollers( ), notifiedResponse( details ) );
+      if ( notified ) statistics.notifications.incrementAndGet( );
+      return notified;
+    }
+
+    /**
+     * Notify the first poller that is still waiting
+     */
+    public boolean notifyPoller( final String details ) {
+      Poller poller;
+      while ( ( poller = pollersQueue.poll( ) ) != null ) {
+        if ( poller.isWaiting( ) &&
+            notifyPollers( Collections.singleton( poller ), notifiedResponse( details ) ) ) {
+          statistics.notifications.incrementAndGet( );
+          return true;
+        }
+      }
+      touch( );
+      return false;
+    }
+
+    private Predicate<PollForNotificationResponseType> notifiedResponse( final String details ) {
+      return new Predicate<PollForNotificationResponseType>() {
         @Override
         public boolean apply( final PollForNotificationResponseType response ) {
           response.setNotified( true );
           response.setDetails( details );
           return true;
         }
-      } );
+      };
     }
 
     public void notifyExpiredPollers( long time ) {
-      notifyPollers( expiredPollers( time ), new Predicate<PollForNotificationResponseType>() {
+      final List<Poller> expired = expiredPollers( time );
+      statistics.timeouts.addAndGet( expired.size( ) );
+      notifyPollers( expired, new Predicate<PollForNotificationResponseType>() {
         @Override
         public boolean apply( final PollForNotificationResponseType response ) {
           response.setNotified( false );
@@ -215,8 +297,7 @@ public class PolledNotificationService {
       for ( final Poller poller : pollers ) try {
         final PollForNotificationResponseType response = new PollForNotificationResponseType( );
         response.setCorrelationId( poller.getCorrelationId( ) );
-        if ( responsePredicate.apply( response ) ) {
-          poller.response( response );
+        if ( responsePredicate.apply( response ) && poller.response( response ) ) {
           notified = true;
         }
       } catch ( final Exception e ){
@@ -231,7 +312,7 @@ public class PolledNotificationService {
       return pollers;
     }
 
-    private Iterable<Poller> expiredPollers( final long time ) {
+    private List<Poller> expiredPollers( final long time ) {
       final List<Poller> pollers = Lists.newArrayList();
       for ( final Poller poller : pollersQueue ) {
         if ( poller.isExpired( time ) && pollersQueue.remove( poller ) ) {
@@ -299,6 +380,22 @@ public class PolledNotificationService {
     private final String channel;
     private final String correlationId;
     private final CheckedListenableFuture<PollForNotificationResponseType> future;
+    @Nullable
+    private final Consumer<PollForNotificationResponseType> callback;
+    private final AtomicBoolean completed = new AtomicBoolean( );
+
+    /**
+     * Poller on this host, the callback is invoked asynchronously.
+     */
+    private Poller( final String channel,
+                    final Long timeout,
+                    final Consumer<PollForNotificationResponseType> callback ) {
+      this.timeout = timeout;
+      this.channel = channel;
+      this.correlationId = null;
+      this.future = Futures.newGenericeFuture( );
+      this.callback = callback;
+    }
 
     private Poller( final String channel,
                     final String correlationId,
@@ -310,7 +407,8 @@ public class PolledNotificationService {
       this.channel = channel;
       this.correlationId = correlationId;
       this.future = Futures.newGenericeFuture( );
-      try { //TODO:STEVE: clean up async for local transport
+      this.callback = null;
+      try { // message dispatched via local transport waits for the response
         if ( !(Contexts.lookup( correlationId ).getChannel( ) instanceof LocalChannel) ) {
           future.set( null );
         }
@@ -331,12 +429,43 @@ public class PolledNotificationService {
       return future;
     }
 
-    public void response( final PollForNotificationResponseType response ) {
-      if ( !future.isDone( ) ) {
+    /**
+     * Is the poller waiting for a response (or gone without our knowledge)
+     */
+    public boolean isWaiting( ) {
+      return callback != null ?
+          !completed.get( ) :
+          !future.isDone( ) || Contexts.exists( correlationId );
+    }
+
+    /**
+     * Complete a poller on this host without a response.
+     *
+     * @return true if the poller was waiting
+     */
+    public boolean cancel( ) {
+      return completed.compareAndSet( false, true );
+    }
+
+    /**
+     * Respond to the poller.
+     *
+     * @return true if the response was delivered
+     */
+    public boolean response( final PollForNotificationResponseType response ) {
+      if ( callback != null ) {
+        if ( completed.compareAndSet( false, true ) ) {
+          future.set( response );
+          callbackExecutor( ).execute( ( ) -> callback.accept( response ) );
+          return true;
+        }
+        return false;
+      } else if ( !future.isDone( ) ) {
         future.set( response );
       } else {
         Contexts.response( response );
       }
+      return true;
     }
 
     public boolean isExpired( final long time ) {
@@ -357,6 +486,9 @@ public class PolledNotificationService {
       if (!(other instanceof Poller))
         return false;
       final Poller otherPoller = (Poller) other;
+      if (this.callback != null || otherPoller.callback != null) {
+        return this == otherPoller;
+      }
       if (this.getChannel()!= null) {
         if (! this.getChannel().equals(otherPoller.getChannel())) {
           return false;
@@ -380,6 +512,80 @@ public class PolledNotificationService {
     }
   }
 
+  /**
+   * Service for clients on this host.
+   */
+  static final class LocalService implements LocalPolledNotifications.Service {
+    @Override
+    public void notify( final String channel, @Nullable final String details ) {
+      PolledNotificationService.notify( channel, details );
+    }
+
+    @Override
+    public Runnable poll( final String channel,
+                          final long timeout,
+                          final Consumer<PollForNotificationResponseType> callback ) {
+      final Poller poller = new Poller( channel, timeout, callback );
+      // the pending notification check can query persistence so is not run by the caller
+      callbackExecutor( ).execute( ( ) -> {
+        if ( poller.isWaiting( ) ) {
+          addPoller( channel, poller );
+          if ( poller.isWaiting( ) ) {
+            checkNotify( channel );
+          } else { // cancelled while adding
+            removePoller( channel, poller );
+          }
+        }
+      } );
+      return ( ) -> {
+        if ( poller.cancel( ) ) {
+          removePoller( channel, poller );
+        }
+      };
+    }
+  }
+
+  private static final class PollerStatistics implements PolledNotificationServiceMXBean {
+    private final AtomicLong notifications = new AtomicLong( );
+    private final AtomicLong timeouts = new AtomicLong( );
+
+    @Override
+    public Map<String, Integer> getParkedPollers( ) {
+      final ImmutableMap.Builder<String,Integer> parkedPollers = ImmutableMap.builder( );
+      for ( final Pollers pollers : pollersByChannel.values( ) ) {
+        final int size = pollers.size( );
+        if ( size > 0 ) {
+          parkedPollers.put( pollers.getChannel( ), size );
+        }
+      }
+      return parkedPollers.build( );
+    }
+
+    @Override
+    public int getParkedPollerCount( ) {
+      int count = 0;
+      for ( final Pollers pollers : pollersByChannel.values( ) ) {
+        count += pollers.size( );
+      }
+      return count;
+    }
+
+    @Override
+    public int getPendingNotificationCount( ) {
+      return pendingNotificationsByChannel.size( );
+    }
+
+    @Override
+    public long getNotifications( ) {
+      return notifications.get( );
+    }
+
+    @Override
+    public long getTimeouts( ) {
+      return timeouts.get( );
+    }
+  }
+
   public static class PollerClockTickEventListener implements EventListener<ClockTick> {
     public static void register( ) {
       Listeners.register( ClockTick.class, new PollerClockTickEventListener() );
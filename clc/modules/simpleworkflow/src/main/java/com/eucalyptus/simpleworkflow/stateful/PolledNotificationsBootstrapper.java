@@ -23,6 +23,7 @@ import static com.eucalyptus.bootstrap.Bootstrapper.Simple;
 import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.bootstrap.Provides;
 import com.eucalyptus.bootstrap.RunDuring;
+import com.eucalyptus.simpleworkflow.common.stateful.LocalPolledNotifications;
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 
 /**
@@ -32,6 +33,18 @@ import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 @Provides( PolledNotifications.class )
 public class PolledNotificationsBootstrapper extends Simple {
 
+  @Override
+  public boolean load( ) throws Exception {
+    LocalPolledNotifications.register( new PolledNotificationService.LocalService( ) );
+    return super.load( );
+  }
+
+  @Override
+  public boolean start( ) throws Exception {
+    PolledNotificationService.registerStatistics( );
+    return super.start( );
+  }
+
   @Override
   public boolean disable( ) throws Exception {
     PolledNotificationService.evacuate( );
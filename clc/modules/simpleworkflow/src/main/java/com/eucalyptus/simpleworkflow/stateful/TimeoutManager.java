@@ -20,22 +20,34 @@
 package com.eucalyptus.simpleworkflow.stateful;
 
 import static com.eucalyptus.simpleworkflow.NotifyClient.NotifyTaskList;
+import static com.eucalyptus.simpleworkflow.SimpleWorkflowProperties.getTimeoutCheckIntervalMillis;
+import static com.eucalyptus.simpleworkflow.SimpleWorkflowProperties.getTimeoutReloadIntervalMillis;
 import static com.eucalyptus.simpleworkflow.SimpleWorkflowProperties.getWorkflowExecutionDurationMillis;
 import static com.eucalyptus.simpleworkflow.WorkflowExecution.DecisionStatus.Idle;
 import static com.eucalyptus.simpleworkflow.WorkflowExecution.DecisionStatus.Pending;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import javax.annotation.Nullable;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 import org.apache.log4j.Logger;
+import com.eucalyptus.auth.principal.AccountFullName;
 import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.component.Topology;
 import com.eucalyptus.entities.Entities;
-import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
 import com.eucalyptus.event.Listeners;
 import com.eucalyptus.simpleworkflow.ActivityTask;
 import com.eucalyptus.simpleworkflow.ActivityTasks;
@@ -67,22 +79,44 @@ import com.eucalyptus.simpleworkflow.persist.PersistenceDomains;
 import com.eucalyptus.simpleworkflow.persist.PersistenceTimers;
 import com.eucalyptus.simpleworkflow.persist.PersistenceWorkflowExecutions;
 import com.eucalyptus.simpleworkflow.persist.PersistenceWorkflowTypes;
+import com.eucalyptus.system.Threads;
 import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.util.Exceptions;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.util.Pair;
-import com.google.common.base.Function;
+import com.eucalyptus.util.metrics.LatencyHistogram;
 import com.google.common.base.Functions;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 /**
+ * Timeouts for activity tasks, decision tasks, workflow executions and timers.
  *
+ * <p>Timeouts are held in a timing wheel while the timeout manager is enabled
+ * on this host. Entities written on this host schedule their timeouts when
+ * the transaction that persisted them commits, timeouts written on other hosts
+ * are loaded from the database ahead of time each reload interval. Timeouts
+ * written on other hosts since the last reload are found each check interval
+ * by loading only the timeouts that became due since the previous check, so
+ * they are late by at most the check interval. Only due timeouts are
+ * processed, with a single transaction for the due timeouts of each workflow
+ * execution. Timeouts for a failed transaction are retried on the next tick.</p>
  */
 public class TimeoutManager {
 
   private static final Logger logger = Logger.getLogger( TimeoutManager.class );
+  private static final long TICK_MILLIS = 1000L;
+  private static final int WHEEL_LEVELS = 4;
+  private static final AtomicReference<TimeoutWheel<TimeoutKey>> wheelRef = new AtomicReference<>( );
+  private static final TimeoutStatistics statistics = new TimeoutStatistics( );
+
+  static {
+    Mbeans.register( "com.eucalyptus.simpleworkflow", ImmutableMap.of( "type", "Timeouts" ), statistics );
+  }
 
   private final WorkflowExecutions workflowExecutions = new PersistenceWorkflowExecutions( );
   private final WorkflowTypes workflowTypes = new PersistenceWorkflowTypes( );
@@ -90,75 +124,126 @@ public class TimeoutManager {
   private final ActivityTypes activityTypes = new PersistenceActivityTypes( );
   private final Domains domains = new PersistenceDomains( );
   private final Timers timers = new PersistenceTimers( );
+  private volatile long lastCheck;
 
-  public void doTimeouts( ) {
-    timeoutActivityTasks( );
-    timeoutDecisionTasksAndWorkflows( );
+  /**
+   * Schedule the timeout for the activity task when the current transaction commits.
+   */
+  public static void schedule( final ActivityTask activityTask ) {
+    scheduleOnCommit( ActivityTask.class, TimeoutKey.forActivityTask( activityTask ), activityTask.getTimeoutTimestamp( ) );
   }
 
-  public void doTimers( ) {
-    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+  /**
+   * Schedule the timeout for the timer when the current transaction commits.
+   */
+  public static void schedule( final Timer timer ) {
+    scheduleOnCommit( Timer.class, TimeoutKey.forTimer( timer ), timer.getTimeoutTimestamp( ) );
+  }
+
+  /**
+   * Schedule the timeout for the workflow execution when the current transaction commits.
+   */
+  public static void schedule( final WorkflowExecution workflowExecution ) {
+    scheduleOnCommit( WorkflowExecution.class, TimeoutKey.forWorkflowExecution( workflowExecution ), calculateTimeout( workflowExecution ) );
+  }
+
+  public static void cancel( final ActivityTask activityTask ) {
+    scheduleOnCommit( ActivityTask.class, TimeoutKey.forActivityTask( activityTask ), null );
+  }
+
+  public static void cancel( final Timer timer ) {
+    scheduleOnCommit( Timer.class, TimeoutKey.forTimer( timer ), null );
+  }
+
+  public static void cancel( final WorkflowExecution workflowExecution ) {
+    scheduleOnCommit( WorkflowExecution.class, TimeoutKey.forWorkflowExecution( workflowExecution ), null );
+  }
+
+  /**
+   * Enable timeouts on this host, loading upcoming timeouts from the database.
+   */
+  public void enable( ) {
+    if ( wheelRef.compareAndSet( null, new TimeoutWheel<>( TICK_MILLIS, WHEEL_LEVELS, System.currentTimeMillis( ) ) ) ) {
+      logger.info( "Enabling simple workflow timeouts" );
+      reload( );
+    }
+  }
+
+  public void disable( ) {
+    if ( wheelRef.getAndSet( null ) != null ) {
+      logger.info( "Disabling simple workflow timeouts" );
+    }
+  }
+
+  public boolean isEnabled( ) {
+    return wheelRef.get( ) != null;
+  }
+
+  /**
+   * Load timeouts that are due before the next reload.
+   *
+   * <p>Timeouts already scheduled are replaced with the persisted value.</p>
+   */
+  public void reload( ) {
+    final long now = System.currentTimeMillis( );
+    if ( load( 0L, now + ( 2 * getTimeoutReloadIntervalMillis( ) ) ) ) {
+      lastCheck = now;
+    }
+  }
+
+  /**
+   * Load timeouts that became due since the previous check.
+   *
+   * <p>Timeouts due before the previous check were either loaded by that
+   * check or by an earlier reload, so only the interval since then is
+   * queried.</p>
+   */
+  public void check( ) {
+    final long now = System.currentTimeMillis( );
+    if ( load( lastCheck, now ) ) {
+      lastCheck = now;
+    }
+  }
+
+  private boolean load( final long fromTimestamp, final long toTimestamp ) {
     try {
-      for ( final Timer timer : timers.listFired( Functions.<Timer>identity( ) ) ) try {
-        try ( final WorkflowLock lock = WorkflowLock.lock(
-            timer.getOwnerAccountNumber( ),
-            timer.getDomainUuid( ),
-            timer.getWorkflowRunId( ) ) ) {
-          workflowExecutions.withRetries( ).updateByExample(
-              WorkflowExecution.exampleWithName( timer.getOwner( ), timer.getWorkflowRunId( ) ),
-              timer.getOwner( ),
-              timer.getWorkflowRunId( ),
-              new Function<WorkflowExecution, Void>( ){
-                @Nullable
-                @Override
-                public Void apply( final WorkflowExecution workflowExecution ) {
-                  try {
-                    timers.updateByExample(
-                        timer,
-                        timer.getOwner( ),
-                        timer.getDisplayName( ),
-                        new Function<Timer, Void>( ) {
-                          @Override
-                          public Void apply( final Timer timer ) {
-                            final WorkflowExecution workflowExecution = timer.getWorkflowExecution( );
-                            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                                workflowExecution,
-                                new TimerFiredEventAttributes( )
-                                    .withStartedEventId( timer.getStartedEventId( ) )
-                                    .withTimerId( timer.getDisplayName( ) )
-                            ) );
-                            if ( workflowExecution.getDecisionStatus() != Pending ) {
-                              workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                                  workflowExecution,
-                                  new DecisionTaskScheduledEventAttributes( )
-                                      .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                                      .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                              ) );
-                              if ( workflowExecution.getDecisionStatus() == Idle ) {
-                                workflowExecution.setDecisionStatus( Pending );
-                                workflowExecution.setDecisionTimestamp( new Date( ) );
-                                addToNotifyLists( taskLists, workflowExecution );
-                              }
-                            }
-                            Entities.delete( timer );
-                            return null;
-                          }
-                        } );
-                  } catch ( SwfMetadataException e ) {
-                    throw Exceptions.toUndeclared( e );
-                  }
-                  return null;
-                }
-              }
-          );
-        }
-      } catch ( SwfMetadataException e ) {
-        if ( !handleException( e ) ) {
-          logger.error( "Error processing fired timer: " +  timer.getWorkflowRunId() + "/" + timer.getStartedEventId( ), e );
-        }
-      }
-    } catch ( SwfMetadataException e ) {
-      logger.error( "Error processing fired timers", e );
+      activityTasks.listTimedOut( fromTimestamp, toTimestamp, activityTask -> {
+        scheduleNow( TimeoutKey.forActivityTask( activityTask ), activityTask.getTimeoutTimestamp( ) );
+        return null;
+      } );
+      timers.listFired( fromTimestamp, toTimestamp, timer -> {
+        scheduleNow( TimeoutKey.forTimer( timer ), timer.getTimeoutTimestamp( ) );
+        return null;
+      } );
+      workflowExecutions.listTimedOut( fromTimestamp, toTimestamp, workflowExecution -> {
+        scheduleNow( TimeoutKey.forWorkflowExecution( workflowExecution ), calculateTimeout( workflowExecution ) );
+        return null;
+      } );
+      return true;
+    } catch ( final SwfMetadataException e ) {
+      logger.error( "Error loading timeouts", e );
+      return false;
+    }
+  }
+
+  /**
+   * Process due timeouts.
+   */
+  public void doTimeouts( ) {
+    final TimeoutWheel<TimeoutKey> wheel = wheelRef.get( );
+    if ( wheel == null ) {
+      return;
+    }
+    final long now = System.currentTimeMillis( );
+    final Map<TimeoutKey,List<TimeoutKey>> dueByWorkflowExecution = new LinkedHashMap<>( );
+    for ( final Pair<TimeoutKey,Long> due : wheel.advance( now ) ) {
+      statistics.lateness.record( now - due.getRight( ) );
+      dueByWorkflowExecution.computeIfAbsent( due.getLeft( ).forWorkflowExecution( ), key -> Lists.newArrayList( ) )
+          .add( due.getLeft( ) );
+    }
+    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+    for ( final Map.Entry<TimeoutKey,List<TimeoutKey>> entry : dueByWorkflowExecution.entrySet( ) ) {
+      doTimeouts( entry.getKey( ), entry.getValue( ), now, taskLists );
     }
     notifyLists( taskLists );
   }
@@ -208,132 +293,226 @@ public class TimeoutManager {
     }
   }
 
-  private void timeoutActivityTasks( ) {
-    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
-    try {
-      for ( final ActivityTask task : activityTasks.listTimedOut( Functions.<ActivityTask>identity( ) ) ) {
-        try ( final WorkflowLock lock =
-                  WorkflowLock.lock( task.getOwnerAccountNumber( ), task.getDomainUuid( ), task.getWorkflowRunId( ) ) ) {
-          activityTasks.withRetries( ).updateByExample(
-              task,
-              task.getOwner( ),
-              task.getDisplayName( ),
-              new Function<ActivityTask, Void>() {
-            @Override
-            public Void apply( final ActivityTask activityTask ) {
-              final Pair<String,Date> timeout = activityTask.calculateNextTimeout( );
-              if ( timeout != null ) {
-                final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution();
-                workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                    workflowExecution,
-                    new ActivityTaskTimedOutEventAttributes()
-                        .withDetails( activityTask.getHeartbeatDetails() )
-                        .withScheduledEventId( activityTask.getScheduledEventId() )
-                        .withStartedEventId( activityTask.getStartedEventId() )
-                        .withTimeoutType( timeout.getLeft() )
-                ) );
-                if ( workflowExecution.getDecisionStatus( ) != Pending ) {
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskScheduledEventAttributes( )
-                          .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                          .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                  ) );
-                  if ( workflowExecution.getDecisionStatus() == Idle ) {
-                    workflowExecution.setDecisionStatus( Pending );
-                    workflowExecution.setDecisionTimestamp( new Date( ) );
-                    addToNotifyLists( taskLists, workflowExecution );
+  private void doTimeouts( final TimeoutKey workflowExecutionKey,
+                           final List<TimeoutKey> dueKeys,
+                           final long now,
+                           final Set<NotifyTaskList> taskLists ) {
+    final AccountFullName owner = AccountFullName.getInstance( workflowExecutionKey.getAccountNumber( ) );
+    final String runId = workflowExecutionKey.getRunId( );
+    try ( final WorkflowLock lock =
+              WorkflowLock.lock( owner, workflowExecutionKey.getDomainUuid( ), runId ) ) {
+      workflowExecutions.withRetries( ).updateByExample(
+          WorkflowExecution.exampleWithName( owner, runId ),
+          owner,
+          runId,
+          workflowExecution -> {
+            for ( final TimeoutKey key : dueKeys ) {
+              switch ( key.getType( ) ) {
+                case WorkflowExecution:
+                  timeoutDecisionTaskOrWorkflow( workflowExecution, now, taskLists );
+                  break;
+                case ActivityTask:
+                  try {
+                    activityTasks.updateByExample(
+                        ActivityTask.exampleWithUniqueName( owner, runId, Long.valueOf( key.getId( ) ) ),
+                        owner,
+                        key.getId( ),
+                        activityTask -> {
+                          timeoutActivityTask( activityTask, now, taskLists );
+                          return null;
+                        } );
+                  } catch ( final SwfMetadataNotFoundException e ) {
+                    logger.debug( "Activity task not found for timeout: " + runId + "/" + key.getId( ) );
+                  } catch ( final SwfMetadataException e ) {
+                    throw Exceptions.toUndeclared( e );
                   }
-                }
-                Entities.delete( activityTask );
+                  break;
+                case Timer:
+                  try {
+                    timers.updateByExample(
+                        Timer.exampleWithTimerId( owner, null, runId, key.getId( ) ),
+                        owner,
+                        key.getId( ),
+                        timer -> {
+                          fireTimer( timer, now, taskLists );
+                          return null;
+                        } );
+                  } catch ( final SwfMetadataNotFoundException e ) {
+                    logger.debug( "Timer not found for firing: " + runId + "/" + key.getId( ) );
+                  } catch ( final SwfMetadataException e ) {
+                    throw Exceptions.toUndeclared( e );
+                  }
+                  break;
               }
-              return null;
             }
+            return null;
           } );
-        } catch ( SwfMetadataException e ) {
-          if ( !handleException( e ) ) {
-            if ( Exceptions.isCausedBy( e, SwfMetadataNotFoundException.class ) ) {
-              logger.debug( "Activity task not found for timeout: " + task.getWorkflowRunId( ) + "/" + task.getScheduledEventId( ) );
-            } else {
-              logger.error( "Error processing activity task timeout: " + task.getWorkflowRunId( ) + "/" + task.getScheduledEventId( ), e );
-            }
-          }
+      statistics.timeouts.add( dueKeys.size( ) );
+    } catch ( final SwfMetadataException | RuntimeException e ) {
+      if ( !handleException( e ) ) {
+        logger.error( "Error processing timeouts for workflow execution: " + runId, e );
+        for ( final TimeoutKey key : dueKeys ) {
+          scheduleNow( key, new Date( now ) ); // retry on next tick
         }
       }
-    } catch ( SwfMetadataException e ) {
-      logger.error( "Error processing activity task timeouts", e );
     }
-    notifyLists( taskLists );
   }
 
-  private void timeoutDecisionTasksAndWorkflows( ) {
-    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
-    try {
-      final long now = System.currentTimeMillis();
-      for ( final WorkflowExecution workflowExecution :
-          workflowExecutions.listTimedOut( now, Functions.<WorkflowExecution>identity( ) ) ) {
-        try ( final WorkflowLock lock = WorkflowLock.lock(
-            workflowExecution.getOwnerAccountNumber( ),
-            workflowExecution.getDomainUuid( ),
-            workflowExecution.getDisplayName( ) ) ) {
-          workflowExecutions.withRetries( ).updateByExample(
-              workflowExecution,
-              workflowExecution.getOwner( ),
-              workflowExecution.getDisplayName( ),
-              new Function<WorkflowExecution, Void>() {
-            @Override
-            public Void apply( final WorkflowExecution workflowExecution ) {
-              final Date timeout = workflowExecution.calculateNextTimeout( );
-              if ( timeout != null ) {
-                if ( workflowExecution.isWorkflowTimedOut( now, getWorkflowExecutionDurationMillis( ) ) ) {
-                  workflowExecution.closeWorkflow(
-                      WorkflowExecution.CloseStatus.Timed_Out,
-                      WorkflowHistoryEvent.create(
-                          workflowExecution,
-                          new WorkflowExecutionTimedOutEventAttributes()
-                              .withTimeoutType( "START_TO_CLOSE" )
-                              .withChildPolicy( workflowExecution.getChildPolicy() )
-                      ) );
-                } else { // decision task timed out
-                  final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-                  final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
-                  final WorkflowHistoryEvent scheduled = Iterables.find(
-                      reverseEvents,
-                      CollectionUtils.propertyPredicate( "DecisionTaskScheduled", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
-                  final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
-                      reverseEvents,
-                      CollectionUtils.propertyPredicate( "DecisionTaskStarted", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskTimedOutEventAttributes( )
-                          .withTimeoutType( "START_TO_CLOSE" )
-                          .withScheduledEventId( scheduled.getEventId( ) )
-                          .withStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).orNull( ) )
-                  ) );
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskScheduledEventAttributes( )
-                          .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                          .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                  ) );
-                  workflowExecution.setDecisionStatus( Pending );
-                  workflowExecution.setDecisionTimestamp( new Date( ) );
-                  addToNotifyLists( taskLists, workflowExecution );
-                }
-              }
-              return null;
-            }
-          } );
-        } catch ( final SwfMetadataException e ) {
-          if ( !handleException( e ) ) {
-            logger.error( "Error processing workflow execution/decision task timeout: " + workflowExecution.getDisplayName(), e );
-          }
+  private void timeoutActivityTask( final ActivityTask activityTask,
+                                    final long now,
+                                    final Set<NotifyTaskList> taskLists ) {
+    final Pair<String,Date> timeout = activityTask.calculateNextTimeout( );
+    if ( timeout != null && timeout.getRight( ).getTime( ) < now ) {
+      final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution();
+      workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+          workflowExecution,
+          new ActivityTaskTimedOutEventAttributes()
+              .withDetails( activityTask.getHeartbeatDetails() )
+              .withScheduledEventId( activityTask.getScheduledEventId() )
+              .withStartedEventId( activityTask.getStartedEventId() )
+              .withTimeoutType( timeout.getLeft() )
+      ) );
+      scheduleDecisionTask( workflowExecution, taskLists );
+      Entities.delete( activityTask );
+    } else if ( timeout != null ) {
+      scheduleNow( TimeoutKey.forActivityTask( activityTask ), activityTask.getTimeoutTimestamp( ) );
+    }
+  }
+
+  private void fireTimer( final Timer timer,
+                          final long now,
+                          final Set<NotifyTaskList> taskLists ) {
+    if ( timer.getTimeoutTimestamp( ).getTime( ) < now ) {
+      final WorkflowExecution workflowExecution = timer.getWorkflowExecution( );
+      workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+          workflowExecution,
+          new TimerFiredEventAttributes( )
+              .withStartedEventId( timer.getStartedEventId( ) )
+              .withTimerId( timer.getDisplayName( ) )
+      ) );
+      scheduleDecisionTask( workflowExecution, taskLists );
+      Entities.delete( timer );
+    } else {
+      scheduleNow( TimeoutKey.forTimer( timer ), timer.getTimeoutTimestamp( ) );
+    }
+  }
+
+  private void timeoutDecisionTaskOrWorkflow( final WorkflowExecution workflowExecution,
+                                              final long now,
+                                              final Set<NotifyTaskList> taskLists ) {
+    final Date timeout = calculateTimeout( workflowExecution );
+    if ( timeout != null && timeout.getTime( ) < now ) {
+      if ( workflowExecution.isWorkflowTimedOut( now, getWorkflowExecutionDurationMillis( ) ) ) {
+        workflowExecution.closeWorkflow(
+            WorkflowExecution.CloseStatus.Timed_Out,
+            WorkflowHistoryEvent.create(
+                workflowExecution,
+                new WorkflowExecutionTimedOutEventAttributes()
+                    .withTimeoutType( "START_TO_CLOSE" )
+                    .withChildPolicy( workflowExecution.getChildPolicy() )
+            ) );
+      } else { // decision task timed out
+        final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
+        final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
+        final WorkflowHistoryEvent scheduled = Iterables.find(
+            reverseEvents,
+            CollectionUtils.propertyPredicate( "DecisionTaskScheduled", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
+        final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
+            reverseEvents,
+            CollectionUtils.propertyPredicate( "DecisionTaskStarted", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
+        workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+            workflowExecution,
+            new DecisionTaskTimedOutEventAttributes( )
+                .withTimeoutType( "START_TO_CLOSE" )
+                .withScheduledEventId( scheduled.getEventId( ) )
+                .withStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).orNull( ) )
+        ) );
+        workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+            workflowExecution,
+            new DecisionTaskScheduledEventAttributes( )
+                .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+                .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
+        ) );
+        workflowExecution.setDecisionStatus( Pending );
+        workflowExecution.setDecisionTimestamp( new Date( ) );
+        addToNotifyLists( taskLists, workflowExecution );
+      }
+    } else if ( timeout != null ) {
+      scheduleNow( TimeoutKey.forWorkflowExecution( workflowExecution ), timeout );
+    }
+  }
+
+  private void scheduleDecisionTask( final WorkflowExecution workflowExecution,
+                                     final Set<NotifyTaskList> taskLists ) {
+    if ( workflowExecution.getDecisionStatus( ) != Pending ) {
+      workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+          workflowExecution,
+          new DecisionTaskScheduledEventAttributes( )
+              .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+              .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
+      ) );
+      if ( workflowExecution.getDecisionStatus() == Idle ) {
+        workflowExecution.setDecisionStatus( Pending );
+        workflowExecution.setDecisionTimestamp( new Date( ) );
+        addToNotifyLists( taskLists, workflowExecution );
+      }
+    }
+  }
+
+  /**
+   * The next timeout for an open workflow execution, including the maximum workflow duration.
+   */
+  @Nullable
+  private static Date calculateTimeout( final WorkflowExecution workflowExecution ) {
+    if ( workflowExecution.getState( ) != WorkflowExecution.ExecutionStatus.Open ) {
+      return null;
+    }
+    final Date timeout = workflowExecution.calculateNextTimeout( );
+    final long maximumDurationMillis = getWorkflowExecutionDurationMillis( );
+    if ( maximumDurationMillis > 0 && workflowExecution.getCreationTimestamp( ) != null ) {
+      final long maximumTimeout = workflowExecution.getCreationTimestamp( ).getTime( ) + maximumDurationMillis;
+      if ( timeout == null || maximumTimeout < timeout.getTime( ) ) {
+        return new Date( maximumTimeout );
+      }
+    }
+    return timeout;
+  }
+
+  /**
+   * Schedule or cancel a timeout once the current transaction commits.
+   *
+   * <p>Entity callbacks run at flush, so changes are only applied to the wheel
+   * if the transaction commits.</p>
+   */
+  private static void scheduleOnCommit( final Class<?> entityClass,
+                                        final TimeoutKey key,
+                                        @Nullable final Date timeout ) {
+    if ( wheelRef.get( ) == null ) {
+      return;
+    }
+    Entities.registerSynchronization( entityClass, new Synchronization( ) {
+      @Override
+      public void beforeCompletion( ) {
+      }
+
+      @Override
+      public void afterCompletion( final int status ) {
+        if ( Status.STATUS_COMMITTED == status ) {
+          scheduleNow( key, timeout );
         }
       }
-    } catch ( final SwfMetadataException e ) {
-      logger.error( "Error processing workflow execution/decision task timeouts", e );
+    } );
+  }
+
+  private static void scheduleNow( final TimeoutKey key, @Nullable final Date timeout ) {
+    final TimeoutWheel<TimeoutKey> wheel = wheelRef.get( );
+    if ( wheel != null ) {
+      if ( timeout == null ) {
+        wheel.cancel( key );
+      } else {
+        wheel.schedule( key, timeout.getTime( ) );
+      }
     }
-    notifyLists( taskLists );
   }
 
   private boolean handleException( final Throwable e ) {
@@ -370,23 +549,195 @@ public class TimeoutManager {
     }
   }
 
-  public static class TimeoutManagerEventListener implements EventListener<ClockTick> {
+  public static final class TimeoutKey {
+    public enum Type { WorkflowExecution, ActivityTask, Timer }
+
+    private final Type type;
+    private final String accountNumber;
+    private final String domainUuid;
+    private final String runId;
+    @Nullable private final String id;
+
+    private TimeoutKey( final Type type,
+                        final String accountNumber,
+                        final String domainUuid,
+                        final String runId,
+                        @Nullable final String id ) {
+      this.type = type;
+      this.accountNumber = accountNumber;
+      this.domainUuid = domainUuid;
+      this.runId = runId;
+      this.id = id;
+    }
+
+    static TimeoutKey forWorkflowExecution( final WorkflowExecution workflowExecution ) {
+      return new TimeoutKey(
+          Type.WorkflowExecution,
+          workflowExecution.getOwnerAccountNumber( ),
+          workflowExecution.getDomainUuid( ),
+          workflowExecution.getDisplayName( ),
+          null );
+    }
+
+    static TimeoutKey forActivityTask( final ActivityTask activityTask ) {
+      return new TimeoutKey(
+          Type.ActivityTask,
+          activityTask.getOwnerAccountNumber( ),
+          activityTask.getDomainUuid( ),
+          activityTask.getWorkflowRunId( ),
+          String.valueOf( activityTask.getScheduledEventId( ) ) );
+    }
+
+    static TimeoutKey forTimer( final Timer timer ) {
+      return new TimeoutKey(
+          Type.Timer,
+          timer.getOwnerAccountNumber( ),
+          timer.getDomainUuid( ),
+          timer.getWorkflowRunId( ),
+          timer.getDisplayName( ) );
+    }
+
+    TimeoutKey forWorkflowExecution( ) {
+      return type == Type.WorkflowExecution ?
+          this :
+          new TimeoutKey( Type.WorkflowExecution, accountNumber, domainUuid, runId, null );
+    }
+
+    public Type getType( ) {
+      return type;
+    }
+
+    public String getAccountNumber( ) {
+      return accountNumber;
+    }
+
+    public String getDomainUuid( ) {
+      return domainUuid;
+    }
+
+    public String getRunId( ) {
+      return runId;
+    }
+
+    @Nullable
+    public String getId( ) {
+      return id;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final TimeoutKey that = (TimeoutKey) o;
+      return type == that.type &&
+          Objects.equals( accountNumber, that.accountNumber ) &&
+          Objects.equals( domainUuid, that.domainUuid ) &&
+          Objects.equals( runId, that.runId ) &&
+          Objects.equals( id, that.id );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( type, accountNumber, domainUuid, runId, id );
+    }
+
+    @Override
+    public String toString( ) {
+      return MoreObjects.toStringHelper( this )
+          .add( "type", type )
+          .add( "runId", runId )
+          .add( "id", id )
+          .omitNullValues( )
+          .toString( );
+    }
+  }
+
+  private static final class TimeoutStatistics implements TimeoutManagerMXBean {
+    private final LongAdder timeouts = new LongAdder( );
+    private final LatencyHistogram lateness = new LatencyHistogram( 1 );
+
+    @Override
+    public int getScheduledTimeouts( ) {
+      final TimeoutWheel<TimeoutKey> wheel = wheelRef.get( );
+      return wheel == null ? 0 : wheel.size( );
+    }
+
+    @Override
+    public long getFiredTimeouts( ) {
+      return timeouts.sum( );
+    }
+
+    @Override
+    public double getLatenessMeanMillis( ) {
+      return lateness.snapshot( ).getMean( );
+    }
+
+    @Override
+    public double getLatenessMedianMillis( ) {
+      return lateness.snapshot( ).getMedian( );
+    }
+
+    @Override
+    public long getLateness99Millis( ) {
+      return lateness.snapshot( ).getValueAtPercentile( 99 );
+    }
+
+    @Override
+    public long getLatenessMaxMillis( ) {
+      return lateness.snapshot( ).getMax( );
+    }
+  }
+
+  public static class TimeoutManagerEventListener implements EventListener<Hertz>, Callable<Boolean> {
+    private static final AtomicBoolean ready = new AtomicBoolean( true );
     private final TimeoutManager timeoutManager = new TimeoutManager();
+    private volatile long nextReload = 0;
+    private volatile long nextCheck = 0;
 
     public static void register( ) {
-      Listeners.register( ClockTick.class, new TimeoutManagerEventListener( ) );
+      Listeners.register( Hertz.class, new TimeoutManagerEventListener( ) );
     }
 
     @Override
-    public void fireEvent( final ClockTick event ) {
-      if ( Bootstrap.isOperational( ) &&
-          Topology.isEnabledLocally( PolledNotifications.class ) &&
-          Topology.isEnabled( SimpleWorkflow.class ) ) {
-        timeoutManager.doTimeouts( );
-        timeoutManager.doTimers( );
-        timeoutManager.doExpunge( );
+    public void fireEvent( final Hertz event ) {
+      if ( Bootstrap.isOperational( ) && ready.compareAndSet( true, false ) ) {
+        try {
+          Threads.enqueue( SimpleWorkflow.class, TimeoutManager.class, this );
+        } catch ( final Exception e ) {
+          ready.set( true );
+        }
       }
     }
+
+    @Override
+    public Boolean call( ) {
+      try {
+        if ( Topology.isEnabledLocally( PolledNotifications.class ) &&
+            Topology.isEnabled( SimpleWorkflow.class ) ) {
+          final long now = System.currentTimeMillis( );
+          if ( !timeoutManager.isEnabled( ) ) {
+            timeoutManager.enable( );
+            nextReload = now + getTimeoutReloadIntervalMillis( );
+            nextCheck = now + getTimeoutCheckIntervalMillis( );
+          } else if ( now >= nextReload ) {
+            timeoutManager.reload( );
+            timeoutManager.doExpunge( );
+            nextReload = now + getTimeoutReloadIntervalMillis( );
+          } else if ( now >= nextCheck ) {
+            timeoutManager.check( );
+            nextCheck = now + getTimeoutCheckIntervalMillis( );
+          }
+          timeoutManager.doTimeouts( );
+        } else {
+          timeoutManager.disable( );
+        }
+      } catch ( final Exception e ) {
+        logger.error( "Error processing timeouts", e );
+      } finally {
+        ready.set( true );
+      }
+      return true;
+    }
   }
 
 }
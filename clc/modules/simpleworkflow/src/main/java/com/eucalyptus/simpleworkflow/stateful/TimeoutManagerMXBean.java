@@ -0,0 +1,44 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+/**
+ * Management interface for activity task, decision task, workflow execution and timer timeouts.
+ */
+public interface TimeoutManagerMXBean {
+
+  /**
+   * Timeouts held in memory, zero if timeouts are not enabled on this host
+   */
+  int getScheduledTimeouts( );
+
+  long getFiredTimeouts( );
+
+  /**
+   * Mean delay between the due time and the processing of a timeout
+   */
+  double getLatenessMeanMillis( );
+
+  double getLatenessMedianMillis( );
+
+  long getLateness99Millis( );
+
+  long getLatenessMaxMillis( );
+}
@@ -0,0 +1,224 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.eucalyptus.util.Pair;
+
+/**
+ * Hierarchical timing wheel for keyed timeouts.
+ *
+ * <p>Each level has 64 slots, level zero slots are one tick wide and each slot
+ * of a higher level covers a full rotation of the level below. Scheduling,
+ * rescheduling and cancelling a timeout is constant time. Advancing the wheel
+ * only visits the slots for elapsed ticks, entries in higher levels are moved
+ * down as their slot is reached. Timeouts beyond the range of the wheel are
+ * held in an overflow list until they come into range.</p>
+ *
+ * <p>Timeouts never expire early, a timeout expires on the first advance to a
+ * time at or after the tick containing its due time.</p>
+ */
+class TimeoutWheel<K> {
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+
+  private final long tickMillis;
+  private final int levels;
+  private final Entry<K>[] slots;
+  private final int overflowIndex;
+  private final int dueIndex;
+  private final Map<K,Entry<K>> entries = new HashMap<>( );
+  private long currentTick;
+
+  /**
+   * Create a wheel with the given tick and number of levels.
+   *
+   * @param tickMillis The resolution of the wheel
+   * @param levels The number of levels, the range of the wheel is 64^levels ticks
+   * @param startMillis The initial time for the wheel
+   */
+  @SuppressWarnings( "unchecked" )
+  TimeoutWheel( final long tickMillis, final int levels, final long startMillis ) {
+    if ( tickMillis < 1 ) throw new IllegalArgumentException( "Invalid tick: " + tickMillis );
+    if ( levels < 1 || levels * SLOT_BITS > 60 ) throw new IllegalArgumentException( "Invalid levels: " + levels );
+    this.tickMillis = tickMillis;
+    this.levels = levels;
+    this.slots = (Entry<K>[]) new Entry[ levels * SLOTS + 2 ];
+    this.overflowIndex = levels * SLOTS;
+    this.dueIndex = overflowIndex + 1;
+    this.currentTick = Math.floorDiv( startMillis, tickMillis );
+  }
+
+  /**
+   * Schedule a timeout, replacing any existing timeout for the key.
+   */
+  synchronized void schedule( final K key, final long dueMillis ) {
+    Entry<K> entry = entries.get( key );
+    if ( entry == null ) {
+      entry = new Entry<>( key );
+      entries.put( key, entry );
+    } else {
+      unlink( entry );
+    }
+    entry.dueMillis = dueMillis;
+    place( entry );
+  }
+
+  /**
+   * Cancel any timeout for the key.
+   *
+   * @return true if a timeout was cancelled
+   */
+  synchronized boolean cancel( final K key ) {
+    final Entry<K> entry = entries.remove( key );
+    if ( entry != null ) {
+      unlink( entry );
+    }
+    return entry != null;
+  }
+
+  /**
+   * Advance the wheel to the given time, removing expired timeouts.
+   *
+   * @return The expired keys with their due times
+   */
+  synchronized List<Pair<K,Long>> advance( final long nowMillis ) {
+    final List<Pair<K,Long>> expired = new ArrayList<>( );
+    final long targetTick = Math.floorDiv( nowMillis, tickMillis );
+    if ( entries.isEmpty( ) || ( targetTick - currentTick ) > SLOTS ) {
+      // jump directly, cheaper than visiting each tick
+      final List<Entry<K>> all = new ArrayList<>( entries.values( ) );
+      for ( final Entry<K> entry : all ) {
+        unlink( entry );
+      }
+      currentTick = Math.max( currentTick, targetTick );
+      for ( final Entry<K> entry : all ) {
+        place( entry );
+      }
+    } else while ( currentTick < targetTick ) {
+      currentTick++;
+      if ( ( currentTick & ( ( 1L << ( levels * SLOT_BITS ) ) - 1 ) ) == 0 ) {
+        cascade( overflowIndex );
+      }
+      for ( int level = levels - 1; level > 0; level-- ) {
+        if ( ( currentTick & ( ( 1L << ( level * SLOT_BITS ) ) - 1 ) ) == 0 ) {
+          cascade( level * SLOTS + slot( currentTick, level ) );
+        }
+      }
+      drain( slot( currentTick, 0 ), expired );
+    }
+    drain( dueIndex, expired );
+    return expired;
+  }
+
+  synchronized int size( ) {
+    return entries.size( );
+  }
+
+  synchronized void clear( ) {
+    entries.clear( );
+    for ( int i = 0; i < slots.length; i++ ) {
+      slots[ i ] = null;
+    }
+  }
+
+  private static int slot( final long tick, final int level ) {
+    return (int) ( tick >>> ( level * SLOT_BITS ) ) & SLOT_MASK;
+  }
+
+  private void place( final Entry<K> entry ) {
+    final long dueTick = Math.floorDiv( entry.dueMillis, tickMillis ) +
+        ( Math.floorMod( entry.dueMillis, tickMillis ) == 0 ? 0 : 1 );
+    final int index;
+    if ( dueTick <= currentTick ) {
+      index = dueIndex;
+    } else {
+      final int level = ( 63 - Long.numberOfLeadingZeros( dueTick ^ currentTick ) ) / SLOT_BITS;
+      index = level >= levels ?
+          overflowIndex :
+          level * SLOTS + slot( dueTick, level );
+    }
+    link( entry, index );
+  }
+
+  private void cascade( final int index ) {
+    Entry<K> entry = slots[ index ];
+    slots[ index ] = null;
+    while ( entry != null ) {
+      final Entry<K> next = entry.next;
+      entry.prev = entry.next = null;
+      entry.index = -1;
+      place( entry );
+      entry = next;
+    }
+  }
+
+  private void drain( final int index, final List<Pair<K,Long>> expired ) {
+    Entry<K> entry = slots[ index ];
+    slots[ index ] = null;
+    while ( entry != null ) {
+      final Entry<K> next = entry.next;
+      entries.remove( entry.key );
+      expired.add( Pair.pair( entry.key, entry.dueMillis ) );
+      entry = next;
+    }
+  }
+
+  private void link( final Entry<K> entry, final int index ) {
+    final Entry<K> head = slots[ index ];
+    entry.index = index;
+    entry.prev = null;
+    entry.next = head;
+    if ( head != null ) {
+      head.prev = entry;
+    }
+    slots[ index ] = entry;
+  }
+
+  private void unlink( final Entry<K> entry ) {
+    if ( entry.index < 0 ) return;
+    if ( entry.prev != null ) {
+      entry.prev.next = entry.next;
+    } else {
+      slots[ entry.index ] = entry.next;
+    }
+    if ( entry.next != null ) {
+      entry.next.prev = entry.prev;
+    }
+    entry.prev = entry.next = null;
+    entry.index = -1;
+  }
+
+  private static final class Entry<K> {
+    private final K key;
+    private long dueMillis;
+    private int index = -1;
+    private Entry<K> prev;
+    private Entry<K> next;
+
+    private Entry( final K key ) {
+      this.key = key;
+    }
+  }
+}
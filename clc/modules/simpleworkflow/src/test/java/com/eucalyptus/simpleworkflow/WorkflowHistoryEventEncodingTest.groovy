@@ -0,0 +1,74 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow
+
+import com.eucalyptus.simpleworkflow.common.model.ActivityTaskCompletedEventAttributes
+import com.eucalyptus.simpleworkflow.common.model.TimerFiredEventAttributes
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class WorkflowHistoryEventEncodingTest {
+
+  @Test
+  void testEventType( ) {
+    assertEquals( 'event type', 'TimerFired', WorkflowHistoryEventEncoding.eventType( new TimerFiredEventAttributes( ) ) )
+  }
+
+  @Test
+  void testRoundTrip( ) {
+    byte[] encoded = WorkflowHistoryEventEncoding.encode( new TimerFiredEventAttributes( timerId: 'timer-1', startedEventId: 7L ) )
+    assertEquals( 'format', WorkflowHistoryEventEncoding.FORMAT_JSON, encoded[0] )
+    TimerFiredEventAttributes attributes =
+        (TimerFiredEventAttributes) WorkflowHistoryEventEncoding.decode( 'TimerFired', encoded )
+    assertEquals( 'timer id', 'timer-1', attributes.timerId )
+    assertEquals( 'started event id', 7L, attributes.startedEventId )
+  }
+
+  @Test
+  void testDeflatedRoundTrip( ) {
+    String result = 'result ' * 1000
+    byte[] encoded = WorkflowHistoryEventEncoding.encode( new ActivityTaskCompletedEventAttributes( result: result, scheduledEventId: 3L ) )
+    assertEquals( 'format', WorkflowHistoryEventEncoding.FORMAT_DEFLATED_JSON, encoded[0] )
+    assertTrue( 'compressed', encoded.length < result.length( ) / 10 )
+    ActivityTaskCompletedEventAttributes attributes =
+        (ActivityTaskCompletedEventAttributes) WorkflowHistoryEventEncoding.decode( 'ActivityTaskCompleted', encoded )
+    assertEquals( 'result', result, attributes.result )
+    assertEquals( 'scheduled event id', 3L, attributes.scheduledEventId )
+  }
+
+  @Test
+  void testLegacyJson( ) {
+    String json = SwfJsonUtils.writeObjectAsString( new TimerFiredEventAttributes( timerId: 'timer-1', startedEventId: 7L ) )
+    TimerFiredEventAttributes attributes =
+        (TimerFiredEventAttributes) WorkflowHistoryEventEncoding.decodeJson( 'TimerFired', json )
+    assertEquals( 'timer id', 'timer-1', attributes.timerId )
+    byte[] encoded = WorkflowHistoryEventEncoding.encodeJson( json )
+    assertEquals( 'migrated timer id', 'timer-1',
+        ((TimerFiredEventAttributes) WorkflowHistoryEventEncoding.decode( 'TimerFired', encoded )).timerId )
+  }
+
+  @Test( expected = IllegalArgumentException )
+  void testUnknownFormat( ) {
+    WorkflowHistoryEventEncoding.decode( 'TimerFired', [ 9, 1, 2 ] as byte[] )
+  }
+}
@@ -0,0 +1,86 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow
+
+import org.junit.Test
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class WorkflowHistoryPagingTest {
+
+  @Test
+  void testForwardPaging( ) {
+    List<WorkflowHistoryEvent> history = history( 25 )
+    WorkflowHistoryPaging.Page page = WorkflowHistoryPaging.page( 'run-1', history, 25, false, 10, null )
+    assertEquals( 'first page', (1L..10L).toList( ), page.events*.eventId )
+    assertNotNull( 'next token', page.nextPageToken )
+
+    history.addAll( history( 5, 25 ) ) // events added after first page are not included
+    page = WorkflowHistoryPaging.page( 'run-1', history, 30, false, 10, page.nextPageToken )
+    assertEquals( 'second page', (11L..20L).toList( ), page.events*.eventId )
+    page = WorkflowHistoryPaging.page( 'run-1', history, 30, false, 10, page.nextPageToken )
+    assertEquals( 'last page', (21L..25L).toList( ), page.events*.eventId )
+    assertNull( 'no next token', page.nextPageToken )
+  }
+
+  @Test
+  void testReversePaging( ) {
+    List<WorkflowHistoryEvent> history = history( 15 )
+    WorkflowHistoryPaging.Page page = WorkflowHistoryPaging.page( 'run-1', history, 15, true, 10, null )
+    assertEquals( 'first page', (15L..6L).toList( ), page.events*.eventId )
+    page = WorkflowHistoryPaging.page( 'run-1', history, 15, true, 10, page.nextPageToken )
+    assertEquals( 'last page', (5L..1L).toList( ), page.events*.eventId )
+    assertNull( 'no next token', page.nextPageToken )
+  }
+
+  @Test
+  void testDefaultPageSize( ) {
+    WorkflowHistoryPaging.Page page = WorkflowHistoryPaging.page( 'run-1', history( 1500 ), 1500, false, null, null )
+    assertEquals( 'page size', WorkflowHistoryPaging.MAXIMUM_PAGE_SIZE, page.events.size( ) )
+  }
+
+  @Test
+  void testEmpty( ) {
+    WorkflowHistoryPaging.Page page = WorkflowHistoryPaging.page( 'run-1', [ ], 0, false, 10, null )
+    assertEquals( 'events', [ ], page.events )
+    assertNull( 'no next token', page.nextPageToken )
+  }
+
+  @Test( expected = SimpleWorkflowClientException )
+  void testTokenForOtherRun( ) {
+    WorkflowHistoryPaging.Page page = WorkflowHistoryPaging.page( 'run-1', history( 25 ), 25, false, 10, null )
+    WorkflowHistoryPaging.page( 'run-2', history( 25 ), 25, false, 10, page.nextPageToken )
+  }
+
+  @Test( expected = SimpleWorkflowClientException )
+  void testInvalidToken( ) {
+    WorkflowHistoryPaging.page( 'run-1', history( 25 ), 25, false, 10, 'not-a-token' )
+  }
+
+  private static List<WorkflowHistoryEvent> history( int count, int offset = 0 ) {
+    ( offset..<( offset + count ) ).collect { int order ->
+      WorkflowHistoryEvent event = new WorkflowHistoryEvent( )
+      event.eventOrder = order
+      event
+    }
+  }
+}
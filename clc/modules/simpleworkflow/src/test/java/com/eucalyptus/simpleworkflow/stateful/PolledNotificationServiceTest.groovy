@@ -0,0 +1,137 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful
+
+import com.eucalyptus.util.Consumer
+import static org.junit.Assert.*
+import org.junit.Test
+
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ *
+ */
+class PolledNotificationServiceTest {
+
+  private final PolledNotificationService.LocalService service = new PolledNotificationService.LocalService( )
+
+  @Test
+  void testNotify( ) {
+    final String channel = 'test-notify'
+    final Responses responses = new Responses( )
+    service.poll( channel, future( ), responses )
+    awaitParked( channel, 1 )
+    service.notify( channel, 'task-1' )
+    final PollForNotificationResponseType response = responses.take( )
+    assertTrue( 'Notified', response.getNotified( ) )
+    assertEquals( 'Details', 'task-1', response.getDetails( ) )
+    awaitParked( channel, 0 )
+  }
+
+  @Test
+  void testCancelledPollerRemoved( ) {
+    final String channel = 'test-cancelled'
+    final Responses cancelledResponses = new Responses( )
+    final Responses responses = new Responses( )
+    final Runnable cancel = service.poll( channel, future( ), cancelledResponses )
+    awaitParked( channel, 1 )
+    service.poll( channel, future( ), responses )
+    awaitParked( channel, 2 )
+    cancel.run( )
+    awaitParked( channel, 1 )
+    service.notify( channel, 'task-1' )
+    assertEquals( 'Details', 'task-1', responses.take( ).getDetails( ) )
+    assertNull( 'Cancelled poller response', cancelledResponses.poll( ) )
+  }
+
+  @Test
+  void testCancelledBeforeParked( ) {
+    final String channel = 'test-cancelled-early'
+    final Responses responses = new Responses( )
+    service.poll( channel, future( ), responses ).run( )
+    service.notify( channel, 'task-1' )
+    assertEquals( 'Parked pollers', 0, parked( channel ) )
+    assertNull( 'Cancelled poller response', responses.poll( ) )
+  }
+
+  @Test
+  void testCompletedPollerNotWaiting( ) {
+    final String channel = 'test-completed'
+    final Responses firstResponses = new Responses( )
+    service.poll( channel, future( ), firstResponses )
+    awaitParked( channel, 1 )
+    service.notify( channel, 'task-1' )
+    assertEquals( 'First details', 'task-1', firstResponses.take( ).getDetails( ) )
+
+    // no waiting pollers, so notification is pending for the next poller
+    service.notify( channel, 'task-2' )
+    final Responses secondResponses = new Responses( )
+    service.poll( channel, future( ), secondResponses )
+    assertEquals( 'Second details', 'task-2', secondResponses.take( ).getDetails( ) )
+    assertNull( 'First poller second response', firstResponses.poll( ) )
+  }
+
+  @Test
+  void testTimeout( ) {
+    final String channel = 'test-timeout'
+    final Responses responses = new Responses( )
+    service.poll( channel, System.currentTimeMillis( ) - 1, responses )
+    awaitParked( channel, 1 )
+    PolledNotificationService.evacuate( )
+    assertFalse( 'Notified', responses.take( ).getNotified( ) )
+    awaitParked( channel, 0 )
+  }
+
+  private static long future( ) {
+    System.currentTimeMillis( ) + TimeUnit.MINUTES.toMillis( 1 )
+  }
+
+  private static int parked( final String channel ) {
+    PolledNotificationService.getStatistics( ).getParkedPollers( ).get( channel ) ?: 0
+  }
+
+  private static void awaitParked( final String channel, final int count ) {
+    final long timeout = System.currentTimeMillis( ) + 5000
+    while ( parked( channel ) != count && System.currentTimeMillis( ) < timeout ) {
+      Thread.sleep( 10 )
+    }
+    assertEquals( 'Parked pollers', count, parked( channel ) )
+  }
+
+  private static final class Responses implements Consumer<PollForNotificationResponseType> {
+    private final LinkedBlockingQueue<PollForNotificationResponseType> queue = new LinkedBlockingQueue<>( )
+
+    @Override
+    void accept( final PollForNotificationResponseType response ) {
+      queue.add( response )
+    }
+
+    PollForNotificationResponseType take( ) {
+      final PollForNotificationResponseType response = queue.poll( 5, TimeUnit.SECONDS )
+      assertNotNull( 'Response', response )
+      response
+    }
+
+    PollForNotificationResponseType poll( ) {
+      queue.poll( 200, TimeUnit.MILLISECONDS )
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful
+
+import com.eucalyptus.util.Pair
+import static org.junit.Assert.*
+import org.junit.Test
+
+/**
+ *
+ */
+class TimeoutWheelTest {
+
+  @Test
+  void testExpiry( ) {
+    final TimeoutWheel<String> wheel = new TimeoutWheel<>( 1000, 4, 0 )
+    wheel.schedule( 'a', 1500 )
+    wheel.schedule( 'b', 5000 )
+    wheel.schedule( 'c', 4_000_000 )
+    assertEquals( 'Size', 3, wheel.size( ) )
+    assertEquals( 'Expired before due', [], wheel.advance( 1999 ) )
+    assertEquals( 'Expired at due tick', [ Pair.pair( 'a', 1500L ) ], wheel.advance( 2000 ) )
+    assertEquals( 'Expired', [ Pair.pair( 'b', 5000L ) ], wheel.advance( 5000 ) )
+    assertEquals( 'Expired before due', [], wheel.advance( 3_999_999 ) )
+    assertEquals( 'Expired', [ Pair.pair( 'c', 4_000_000L ) ], wheel.advance( 4_000_000 ) )
+    assertEquals( 'Size', 0, wheel.size( ) )
+  }
+
+  @Test
+  void testRescheduleAndCancel( ) {
+    final TimeoutWheel<String> wheel = new TimeoutWheel<>( 1000, 4, 0 )
+    wheel.schedule( 'a', 10_000 )
+    wheel.schedule( 'b', 10_000 )
+    wheel.schedule( 'a', 20_000 )
+    assertTrue( 'Cancelled', wheel.cancel( 'b' ) )
+    assertFalse( 'Cancelled', wheel.cancel( 'b' ) )
+    assertEquals( 'Expired before reschedule', [], wheel.advance( 19_000 ) )
+    assertEquals( 'Expired', [ Pair.pair( 'a', 20_000L ) ], wheel.advance( 20_000 ) )
+  }
+
+  @Test
+  void testPastDue( ) {
+    final TimeoutWheel<String> wheel = new TimeoutWheel<>( 1000, 4, 10_000 )
+    wheel.schedule( 'a', 5_000 )
+    assertEquals( 'Expired', [ Pair.pair( 'a', 5_000L ) ], wheel.advance( 10_000 ) )
+  }
+
+  @Test
+  void testOverflow( ) {
+    final TimeoutWheel<Integer> wheel = new TimeoutWheel<>( 1, 2, 0 )
+    final Random random = new Random( 7 )
+    final Map<Integer,Long> due = [:]
+    ( 0..<1000 ).each { Integer key ->
+      final long dueMillis = random.nextInt( 100_000 )
+      due.put( key, dueMillis )
+      wheel.schedule( key, dueMillis )
+    }
+    long now = 0
+    while ( now < 100_000 ) {
+      now += 1 + random.nextInt( 100 )
+      wheel.advance( now ).each { Pair<Integer,Long> expired ->
+        assertEquals( 'Due', due.remove( expired.left ), expired.right )
+        assertTrue( 'Expired early', expired.right <= now )
+      }
+      assertTrue( 'Expired late', due.values( ).every{ Long dueMillis -> dueMillis > now } )
+    }
+    assertEquals( 'Remaining', [:], due )
+  }
+}
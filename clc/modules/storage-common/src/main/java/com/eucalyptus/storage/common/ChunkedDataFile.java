@@ -66,6 +66,8 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 
 import org.apache.log4j.Logger;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.handler.stream.ChunkedFile;
 
 import edu.ucsb.eucalyptus.constants.IsData;
@@ -73,7 +75,19 @@ import edu.ucsb.eucalyptus.constants.IsData;
 public class ChunkedDataFile extends ChunkedFile implements IsData {
   private static Logger LOG = Logger.getLogger(ChunkedDataFile.class);
 
+  private final RandomAccessFile file;
+
   public ChunkedDataFile(RandomAccessFile file, long offset, long length, int chunkSize) throws IOException {
     super(file, offset, length, chunkSize);
+    this.file = file;
+  }
+
+  /**
+   * Region for the remaining (unread) data in this file, for zero-copy transfer to a channel.
+   *
+   * The region shares the underlying file so this chunked file must not be closed until the region has been written.
+   */
+  public FileRegion toFileRegion() {
+    return new DefaultFileRegion(file.getChannel(), getCurrentOffset(), getEndOffset() - getCurrentOffset());
   }
 }
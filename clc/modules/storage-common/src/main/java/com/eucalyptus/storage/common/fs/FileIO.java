@@ -77,4 +77,13 @@ public abstract class FileIO {
   public abstract ByteBuffer getBuffer();
 
   public abstract void finish();
+
+  /**
+   * Force any written data to the storage device.
+   */
+  public void sync() throws IOException {
+    if (channel != null && channel.isOpen()) {
+      channel.force(true);
+    }
+  }
 }
@@ -91,6 +91,10 @@ public class WalrusProperties {
   public static boolean shouldEnforceUsageLimits = true;
   public static boolean enableTorrents = false;
   public static boolean enableVirtualHosting = true;
+  public static boolean enableZeroCopyGet = true;
+  public static int WRITE_BEHIND_BUFFER_SIZE = 8 * (int) M;
+  public static String FSYNC_POLICY = "none"; // none, close or batch
+  public static long FSYNC_BATCH_SIZE = 64 * M;
   public static long MAX_INLINE_DATA_SIZE = 10 * M;
   public static final String NAMESPACE_VERSION = "2006-03-01";
   public static final String CONTENT_LEN = "Content-Length";
@@ -161,6 +161,14 @@ public class WalrusControl implements WalrusService {
     if (System.getProperty("euca.virtualhosting.disable") != null) {
       WalrusProperties.enableVirtualHosting = false;
     }
+    if (System.getProperty("euca.walrus.zerocopy.disable") != null) {
+      WalrusProperties.enableZeroCopyGet = false;
+    }
+    if (System.getProperty("euca.walrus.fsync.policy") != null) {
+      WalrusProperties.FSYNC_POLICY = System.getProperty("euca.walrus.fsync.policy");
+    }
+    WalrusProperties.FSYNC_BATCH_SIZE = Long.getLong("euca.walrus.fsync.batchsize", WalrusProperties.FSYNC_BATCH_SIZE);
+    WalrusProperties.WRITE_BEHIND_BUFFER_SIZE = Integer.getInteger("euca.walrus.writebehind.buffersize", WalrusProperties.WRITE_BEHIND_BUFFER_SIZE);
     try {
       if (storageManager != null) {
         storageManager.start();
@@ -155,6 +155,7 @@ import com.eucalyptus.walrus.msgs.WalrusDataMessenger;
 import com.eucalyptus.walrus.msgs.WalrusDataQueue;
 import com.eucalyptus.walrus.msgs.WalrusMonitor;
 import com.eucalyptus.walrus.pipeline.WalrusRESTBinding;
+import com.eucalyptus.walrus.storage.WriteBehindObjectWriter;
 import com.eucalyptus.walrus.util.WalrusProperties;
 
 import org.apache.commons.lang.StringUtils;
@@ -422,7 +423,7 @@ public class WalrusFSManager extends WalrusManager {
     try {
       WalrusDataMessage dataMessage;
       MessageDigest digest = null;
-      FileIO fileIO = null;
+      WriteBehindObjectWriter writer = null;
       while ((dataMessage = putQueue.poll(60L, TimeUnit.SECONDS)) != null) {
         if (putQueue.getInterrupted()) {
           if (WalrusDataMessage.isEOF(dataMessage)) {
@@ -437,8 +438,8 @@ public class WalrusFSManager extends WalrusManager {
             lastModified = monitor.getLastModified();
             md5 = monitor.getMd5();
             // ok we are done here
-            if (fileIO != null) {
-              fileIO.finish();
+            if (writer != null) {
+              writer.abort();
             }
             ObjectDeleter objectDeleter = new ObjectDeleter(bucketName, tempObjectName, null, null);
             Threads.lookup(WalrusBackend.class, WalrusFSManager.ObjectDeleter.class).limitTo(10).submit(objectDeleter);
@@ -451,7 +452,9 @@ public class WalrusFSManager extends WalrusManager {
         if (WalrusDataMessage.isStart(dataMessage)) {
           digest = Digest.MD5.get();
           try {
-            fileIO = storageManager.prepareForWrite(bucketName, tempObjectName);
+            FileIO fileIO = storageManager.prepareForWrite(bucketName, tempObjectName);
+            // write on a pool thread so disk writes overlap with receiving and digesting the next chunk
+            writer = fileIO != null ? WriteBehindObjectWriter.forWalrus(fileIO) : null;
           } catch (Exception ex) {
             messenger.removeQueue(key, randomKey);
             throw new AccessDeniedException(ex);
@@ -473,8 +476,8 @@ public class WalrusFSManager extends WalrusManager {
           if (contentMD5 != null) {
             String contentMD5AsHex = Hashes.bytesToHex(Base64.decode(contentMD5));
             if (!contentMD5AsHex.equals(md5)) {
-              if (fileIO != null) {
-                fileIO.finish();
+              if (writer != null) {
+                writer.abort();
               }
               cleanupTempObject(bucketName, tempObjectName);
               messenger.removeQueue(key, randomKey);
@@ -488,11 +491,19 @@ public class WalrusFSManager extends WalrusManager {
           // existing object, the object is left untouched. So the fix ensures proper clean up of temp files (no orphaned files) and does not
           // overwrite existing data when policy or bucket size checks fail
 
-          // rename temporary object
+          // complete writing the temporary object
           try {
-            if (fileIO != null) {
-              fileIO.finish();
+            if (writer != null) {
+              writer.finish();
             }
+          } catch (IOException ex) {
+            LOG.error("Failed to write file " + tempObjectName + ". object-key=" + objectKey + ", bucket=" + bucketName, ex);
+            messenger.removeQueue(key, randomKey);
+            throw new InternalErrorException("Failed to write object-key=" + objectKey + ", bucket=" + bucketName, ex);
+          }
+
+          // rename temporary object
+          try {
             storageManager.renameObject(bucketName, tempObjectName, objectName);
           } catch (IOException ex) {
             LOG.error("Failed to rename file " + tempObjectName + " to " + objectName + ". object-key=" + objectKey + ", bucket=" + bucketName);
@@ -549,13 +560,9 @@ public class WalrusFSManager extends WalrusManager {
         } else {
           assert (WalrusDataMessage.isData(dataMessage));
           byte[] data = dataMessage.getPayload();
-          // start writing object (but do not commit yet)
-          try {
-            if (fileIO != null)
-              fileIO.write(data);
-          } catch (IOException ex) {
-            LOG.error(ex);
-          }
+          // start writing object (but do not commit yet), write failures are reported when finishing
+          if (writer != null)
+            writer.write(data);
           // calculate md5 on the fly
           size += data.length;
           if (digest != null) {
@@ -1529,7 +1536,7 @@ public class WalrusFSManager extends WalrusManager {
     try {
       WalrusDataMessage dataMessage;
       MessageDigest digest = null;
-      FileIO fileIO = null;
+      WriteBehindObjectWriter writer = null;
       while ((dataMessage = putQueue.take()) != null) {
         if (putQueue.getInterrupted()) {
           if (WalrusDataMessage.isEOF(dataMessage)) {
@@ -1544,8 +1551,8 @@ public class WalrusFSManager extends WalrusManager {
             lastModified = monitor.getLastModified();
             md5 = monitor.getMd5();
             // ok we are done here
-            if (fileIO != null) {
-              fileIO.finish();
+            if (writer != null) {
+              writer.abort();
             }
             ObjectDeleter objectDeleter = new ObjectDeleter(bucketName, tempObjectName, null, null);
             Threads.lookup(WalrusBackend.class, WalrusFSManager.ObjectDeleter.class).limitTo(10).submit(objectDeleter);
@@ -1559,7 +1566,9 @@ public class WalrusFSManager extends WalrusManager {
           tempObjectName = UUID.randomUUID().toString();
           digest = Digest.MD5.get();
           try {
-            fileIO = storageManager.prepareForWrite(bucketName, tempObjectName);
+            FileIO fileIO = storageManager.prepareForWrite(bucketName, tempObjectName);
+            // write on a pool thread so disk writes overlap with receiving and digesting the next chunk
+            writer = fileIO != null ? WriteBehindObjectWriter.forWalrus(fileIO) : null;
           } catch (Exception ex) {
             messenger.removeQueue(key, randomKey);
             throw new InternalErrorException(ex);
@@ -1581,8 +1590,8 @@ public class WalrusFSManager extends WalrusManager {
           if (contentMD5 != null) {
             String contentMD5AsHex = Hashes.bytesToHex(Base64.decode(contentMD5));
             if (!contentMD5AsHex.equals(md5)) {
-              if (fileIO != null) {
-                fileIO.finish();
+              if (writer != null) {
+                writer.abort();
               }
               cleanupTempObject(bucketName, tempObjectName);
               messenger.removeQueue(key, randomKey);
@@ -1591,11 +1600,21 @@ public class WalrusFSManager extends WalrusManager {
             }
           }
 
-          // rename part
+          // complete writing the part
           try {
-            if (fileIO != null) {
-              fileIO.finish();
+            if (writer != null) {
+              writer.finish();
             }
+          } catch (IOException ex) {
+            LOG.error("Failed to write file " + tempObjectName + ". part-number=" + partNumber + ", upload-id=" + uploadId
+                + ", object-key=" + objectKey + ", bucket=" + bucketName, ex);
+            messenger.removeQueue(key, randomKey);
+            throw new InternalErrorException("Failed to write part-number=" + partNumber + ", upload-id=" + uploadId
+                + ", object-key=" + objectKey + ", bucket=" + bucketName, ex);
+          }
+
+          // rename part
+          try {
             storageManager.renameObject(bucketName, tempObjectName, objectName);
           } catch (IOException ex) {
             LOG.error("Failed to rename file " + tempObjectName + " to " + objectName + ". part-number=" + partNumber + ", upload-id=" + uploadId
@@ -1654,13 +1673,9 @@ public class WalrusFSManager extends WalrusManager {
         } else {
           assert (WalrusDataMessage.isData(dataMessage));
           byte[] data = dataMessage.getPayload();
-          // start writing object (but do not commit yet)
-          try {
-            if (fileIO != null)
-              fileIO.write(data);
-          } catch (IOException ex) {
-            LOG.error(ex);
-          }
+          // start writing object (but do not commit yet), write failures are reported when finishing
+          if (writer != null)
+            writer.write(data);
           // calculate md5 on the fly
           size += data.length;
           if (digest != null) {
@@ -74,13 +74,16 @@ import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.socket.nio.NioSocketChannelConfig;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.ssl.SslHandler;
 import org.jboss.netty.handler.stream.ChunkedInput;
 
 import com.eucalyptus.http.MappingHttpResponse;
+import com.eucalyptus.storage.common.ChunkedDataFile;
 import com.eucalyptus.storage.common.DateFormatter;
 import com.eucalyptus.storage.msgs.s3.MetaDataEntry;
 import com.eucalyptus.walrus.exceptions.HeadExceptionInterface;
@@ -232,8 +235,11 @@ public class WalrusOutboundHandler extends MessageStackHandler {
       Channels.write(ctx, writeFuture, httpResponse);
       List<ChunkedInput> dataStreams = response.getDataInputStream();
       if (dataStreams != null) {
+        final boolean zeroCopy = isZeroCopyCapable(ctx);
         for (final ChunkedInput dataStream : dataStreams) {
-          channel.write(dataStream).addListener(new ChannelFutureListener() {
+          // uncompressed file data is transferred from the file to the socket without copying through the heap
+          final Object data = zeroCopy && dataStream instanceof ChunkedDataFile ? ((ChunkedDataFile) dataStream).toFileRegion() : dataStream;
+          channel.write(data).addListener(new ChannelFutureListener() {
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
               dataStream.close();
@@ -246,6 +252,14 @@ public class WalrusOutboundHandler extends MessageStackHandler {
     }
   }
 
+  /**
+   * Zero-copy transfer is only possible for plain (non-SSL) NIO socket channels.
+   */
+  protected boolean isZeroCopyCapable(final ChannelHandlerContext ctx) {
+    return WalrusProperties.enableZeroCopyGet && ctx.getChannel().getConfig() instanceof NioSocketChannelConfig
+        && ctx.getPipeline().get(SslHandler.class) == null;
+  }
+
   // TODO: zhill - this should all be done in bindings, just need 2-way bindings
   protected DefaultHttpResponse createHttpResponse(WalrusDataGetResponseType reply) {
     DefaultHttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
@@ -0,0 +1,206 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.walrus.storage;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.storage.common.fs.FileIO;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.walrus.WalrusBackend;
+import com.eucalyptus.walrus.util.WalrusProperties;
+
+/**
+ * Writes object data to storage on a separate thread so that disk writes overlap with receiving and digesting data.
+ *
+ * Data is buffered up to a fixed size, callers block when the buffer is full. Write failures are logged once and reported when finishing, data
+ * written after a failure is discarded.
+ */
+public class WriteBehindObjectWriter {
+  private static Logger LOG = Logger.getLogger(WriteBehindObjectWriter.class);
+
+  public enum FsyncPolicy {
+    /**
+     * Never sync, data is written back by the operating system.
+     */
+    NONE,
+
+    /**
+     * Sync once when the object is complete.
+     */
+    CLOSE,
+
+    /**
+     * Sync each time the configured batch size has been written and when the object is complete.
+     */
+    BATCH;
+
+    public static FsyncPolicy fromString(final String value) {
+      try {
+        return FsyncPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException | NullPointerException e) {
+        LOG.warn("Invalid fsync policy '" + value + "', using " + NONE);
+        return NONE;
+      }
+    }
+  }
+
+  private final FileIO fileIO;
+  private final Executor executor;
+  private final int bufferSize;
+  private final FsyncPolicy fsyncPolicy;
+  private final long fsyncBatchSize;
+  private final Semaphore bufferCredits;
+  private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean draining = new AtomicBoolean(false);
+  private final Object idle = new Object();
+  private volatile IOException failure;
+  private volatile boolean aborted;
+  private long unsyncedBytes;
+
+  public WriteBehindObjectWriter(final FileIO fileIO, final Executor executor, final int bufferSize, final FsyncPolicy fsyncPolicy,
+      final long fsyncBatchSize) {
+    this.fileIO = fileIO;
+    this.executor = executor;
+    this.bufferSize = Math.max(1, bufferSize);
+    this.fsyncPolicy = fsyncPolicy;
+    this.fsyncBatchSize = fsyncBatchSize;
+    this.bufferCredits = new Semaphore(this.bufferSize);
+  }
+
+  /**
+   * Writer configured using walrus properties.
+   */
+  public static WriteBehindObjectWriter forWalrus(final FileIO fileIO) {
+    return new WriteBehindObjectWriter(fileIO, Threads.lookup(WalrusBackend.class, WriteBehindObjectWriter.class),
+        WalrusProperties.WRITE_BEHIND_BUFFER_SIZE, FsyncPolicy.fromString(WalrusProperties.FSYNC_POLICY), WalrusProperties.FSYNC_BATCH_SIZE);
+  }
+
+  /**
+   * Queue data for writing, blocks while the buffer is full.
+   */
+  public void write(final byte[] data) throws InterruptedException {
+    if (failure != null) {
+      return;
+    }
+    bufferCredits.acquire(credits(data));
+    pending.add(data);
+    scheduleDrain();
+  }
+
+  /**
+   * Wait for all queued data to be written, sync according to the policy and close the file.
+   */
+  public void finish() throws IOException, InterruptedException {
+    try {
+      awaitIdle();
+      checkFailure();
+      if (fsyncPolicy != FsyncPolicy.NONE) {
+        fileIO.sync();
+      }
+    } finally {
+      fileIO.finish();
+    }
+  }
+
+  /**
+   * Discard any queued data and close the file.
+   */
+  public void abort() {
+    aborted = true;
+    try {
+      awaitIdle();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      fileIO.finish();
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    final IOException failure = this.failure;
+    if (failure != null) {
+      throw new IOException("Write failed: " + failure.getMessage(), failure);
+    }
+  }
+
+  private int credits(final byte[] data) {
+    return Math.min(bufferSize, Math.max(1, data.length));
+  }
+
+  private void scheduleDrain() {
+    if (draining.compareAndSet(false, true)) {
+      try {
+        executor.execute(this::drain);
+      } catch (RuntimeException e) {
+        draining.set(false);
+        LOG.error("Unable to schedule object write, writing inline", e);
+        drain();
+      }
+    }
+  }
+
+  private void drain() {
+    draining.set(true);
+    try {
+      byte[] data;
+      while ((data = pending.poll()) != null) {
+        try {
+          if (failure == null && !aborted) {
+            fileIO.write(data);
+            unsyncedBytes += data.length;
+            if (fsyncPolicy == FsyncPolicy.BATCH && unsyncedBytes >= fsyncBatchSize) {
+              fileIO.sync();
+              unsyncedBytes = 0;
+            }
+          }
+        } catch (IOException e) {
+          LOG.error("Error writing object data", e);
+          failure = e;
+        } finally {
+          bufferCredits.release(credits(data));
+        }
+      }
+    } finally {
+      draining.set(false);
+      if (!pending.isEmpty()) {
+        scheduleDrain();
+      }
+      synchronized (idle) {
+        idle.notifyAll();
+      }
+    }
+  }
+
+  private void awaitIdle() throws InterruptedException {
+    synchronized (idle) {
+      while (draining.get() || !pending.isEmpty()) {
+        idle.wait(1000L);
+      }
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.walrus.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import com.eucalyptus.storage.common.ChunkedDataFile;
+import com.eucalyptus.util.metrics.Benchmarks;
+
+/**
+ * Throughput and CPU benchmark for Walrus GET data transfer.
+ *
+ * <p>Serves local files over a loopback Netty server either as chunked copies
+ * (as used for SSL and compressed objects) or as zero-copy file regions (as
+ * used for plain GETs) and reports the throughput and process CPU time for
+ * each object size. The client discards the data it reads, its cost is the
+ * same for both modes.</p>
+ *
+ * <p>Options are {@code --name=value} arguments:</p>
+ * <ul>
+ *   <li>sizes: comma separated object sizes with optional k/m/g suffix (default 1m,16m,256m,1g,5g)</li>
+ *   <li>iterations: measured reads per size and mode (default 5)</li>
+ *   <li>dir: directory for the generated objects (default java.io.tmpdir)</li>
+ * </ul>
+ * <p>One JSON object is printed per size and mode.</p>
+ */
+public class WalrusGetBenchmark {
+
+  public enum Mode {
+    Chunked,
+    ZeroCopy,
+  }
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private final List<Long> sizes = new ArrayList<>( );
+  private int iterations = 5;
+  private File dir = new File( System.getProperty( "java.io.tmpdir" ) );
+
+  public WalrusGetBenchmark( final String[] args ) {
+    String sizesOption = "1m,16m,256m,1g,5g";
+    for ( final Map.Entry<String,String> option : Benchmarks.options( args ).entrySet( ) ) {
+      final String value = option.getValue( );
+      switch ( option.getKey( ) ) {
+        case "sizes": sizesOption = value; break;
+        case "iterations": iterations = Integer.parseInt( value ); break;
+        case "dir": dir = new File( value ); break;
+        default: throw new IllegalArgumentException( "Unknown option: " + option.getKey( ) );
+      }
+    }
+    for ( final String size : sizesOption.split( "," ) ) {
+      sizes.add( Benchmarks.parseSize( size ) );
+    }
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    for ( final Map<String,Object> result : new WalrusGetBenchmark( args ).run( ) ) {
+      System.out.println( Benchmarks.toJson( result ) );
+    }
+    System.exit( 0 );
+  }
+
+  public List<Map<String,Object>> run( ) throws Exception {
+    final List<Map<String,Object>> results = new ArrayList<>( );
+    final Server server = new Server( );
+    try {
+      for ( final long size : sizes ) {
+        final File file = File.createTempFile( "walrus-get-benchmark-", ".dat", dir );
+        try {
+          writeObject( file, size );
+          for ( final Mode mode : Mode.values( ) ) {
+            transfer( server, file, mode, size ); // warm up and populate page cache
+            final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean( );
+            final long cpuStart = processCpuNanos( os );
+            final long start = System.nanoTime( );
+            for ( int i = 0; i < iterations; i++ ) {
+              transfer( server, file, mode, size );
+            }
+            final long nanos = System.nanoTime( ) - start;
+            final long cpuNanos = cpuStart < 0 ? -1 : processCpuNanos( os ) - cpuStart;
+            final Map<String,Object> result = new LinkedHashMap<>( );
+            result.put( "mode", mode.name( ) );
+            result.put( "size", size );
+            result.put( "iterations", iterations );
+            result.put( "millis", TimeUnit.NANOSECONDS.toMillis( nanos ) );
+            result.put( "megabytesPerSecond", ( (double) size * iterations / ( 1024 * 1024 ) ) / ( nanos / 1e9 ) );
+            result.put( "cpuMillis", cpuNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis( cpuNanos ) );
+            result.put( "cpuMillisPerGigabyte",
+                cpuNanos < 0 ? -1 : ( cpuNanos / 1e6 ) / ( (double) size * iterations / ( 1024 * 1024 * 1024 ) ) );
+            results.add( result );
+          }
+        } finally {
+          if ( !file.delete( ) ) {
+            file.deleteOnExit( );
+          }
+        }
+      }
+    } finally {
+      server.close( );
+    }
+    return results;
+  }
+
+  /**
+   * Transfer the file and return the number of bytes received.
+   */
+  long transfer( final Server server, final File file, final Mode mode, final long size ) throws IOException {
+    server.next( file, mode, size );
+    try ( final SocketChannel client = SocketChannel.open( server.address( ) ) ) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect( 256 * 1024 );
+      long received = 0;
+      int read;
+      while ( ( read = client.read( buffer ) ) >= 0 ) {
+        received += read;
+        buffer.clear( );
+      }
+      if ( received != size ) {
+        throw new IOException( "Received " + received + " bytes, expected " + size );
+      }
+      return received;
+    }
+  }
+
+  private static void writeObject( final File file, final long size ) throws IOException {
+    final byte[] block = new byte[ 1024 * 1024 ];
+    new Random( size ).nextBytes( block );
+    try ( final RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+      for ( long written = 0; written < size; written += block.length ) {
+        raf.write( block, 0, (int) Math.min( block.length, size - written ) );
+      }
+    }
+  }
+
+  private static long processCpuNanos( final OperatingSystemMXBean os ) {
+    return os instanceof com.sun.management.OperatingSystemMXBean ?
+        ( (com.sun.management.OperatingSystemMXBean) os ).getProcessCpuTime( ) :
+        -1;
+  }
+
+  /**
+   * Loopback server that writes the next configured file to each connection and then closes it.
+   */
+  static final class Server {
+    private final ServerBootstrap bootstrap;
+    private final Channel channel;
+    private volatile File file;
+    private volatile Mode mode;
+    private volatile long size;
+
+    Server( ) {
+      bootstrap = new ServerBootstrap( new NioServerSocketChannelFactory(
+          Executors.newCachedThreadPool( ), Executors.newCachedThreadPool( ) ) );
+      bootstrap.setPipelineFactory( new ChannelPipelineFactory( ) {
+        @Override
+        public ChannelPipeline getPipeline( ) throws Exception {
+          final ChannelPipeline pipeline = Channels.pipeline( );
+          pipeline.addLast( "chunkedWriter", new ChunkedWriteHandler( ) );
+          pipeline.addLast( "data", new SimpleChannelUpstreamHandler( ) {
+            @Override
+            public void channelConnected( final ChannelHandlerContext ctx, final ChannelStateEvent e ) throws Exception {
+              final ChunkedDataFile dataFile = new ChunkedDataFile( new RandomAccessFile( file, "r" ), 0, size, CHUNK_SIZE );
+              final Object data = mode == Mode.ZeroCopy ? dataFile.toFileRegion( ) : dataFile;
+              ctx.getChannel( ).write( data ).addListener( new ChannelFutureListener( ) {
+                @Override
+                public void operationComplete( final ChannelFuture future ) throws Exception {
+                  dataFile.close( );
+                  future.getChannel( ).close( );
+                }
+              } );
+            }
+          } );
+          return pipeline;
+        }
+      } );
+      channel = bootstrap.bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+    }
+
+    InetSocketAddress address( ) {
+      return (InetSocketAddress) channel.getLocalAddress( );
+    }
+
+    void next( final File file, final Mode mode, final long size ) {
+      this.file = file;
+      this.mode = mode;
+      this.size = size;
+    }
+
+    void close( ) {
+      channel.close( ).awaitUninterruptibly( );
+      bootstrap.releaseExternalResources( );
+    }
+  }
+}
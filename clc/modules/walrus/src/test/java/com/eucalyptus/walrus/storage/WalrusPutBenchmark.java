@@ -0,0 +1,225 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.walrus.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import com.eucalyptus.crypto.Digest;
+import com.eucalyptus.storage.common.fs.FileWriter;
+import com.eucalyptus.util.metrics.Benchmarks;
+
+/**
+ * Throughput benchmark for Walrus PUT data handling.
+ *
+ * <p>Each upload has a receiver thread that hands chunks to the PUT thread
+ * through a bounded queue (as the Walrus data queue does). The PUT thread
+ * either digests and writes each chunk itself (Inline) or digests and hands
+ * the chunk to a {@link WriteBehindObjectWriter} (WriteBehind).</p>
+ *
+ * <p>Options are {@code --name=value} arguments:</p>
+ * <ul>
+ *   <li>dirs: comma separated directories to write to, e.g. a tmpfs and a disk (default /dev/shm,java.io.tmpdir)</li>
+ *   <li>concurrency: comma separated concurrent upload counts (default 1,8,32)</li>
+ *   <li>size: object size with optional k/m/g suffix (default 64m)</li>
+ *   <li>chunk: chunk size with optional k/m/g suffix (default 64k)</li>
+ *   <li>fsync: comma separated fsync policies (default none)</li>
+ *   <li>fsyncBatch: batch size for the batch fsync policy (default 64m)</li>
+ * </ul>
+ * <p>One JSON object is printed per directory, concurrency, fsync policy and mode.</p>
+ */
+public class WalrusPutBenchmark {
+
+  public enum Mode {
+    Inline,
+    WriteBehind,
+  }
+
+  private static final int QUEUE_CAPACITY = 1000;
+  private static final int WRITE_BEHIND_BUFFER_SIZE = 8 * 1024 * 1024;
+
+  private final List<File> dirs = new ArrayList<>( );
+  private final List<Integer> concurrencies = new ArrayList<>( );
+  private final List<WriteBehindObjectWriter.FsyncPolicy> fsyncPolicies = new ArrayList<>( );
+  private long size = 64L * 1024 * 1024;
+  private int chunk = 64 * 1024;
+  private long fsyncBatch = 64L * 1024 * 1024;
+
+  public WalrusPutBenchmark( final String[] args ) {
+    final File shm = new File( "/dev/shm" );
+    String dirsOption = ( shm.isDirectory( ) ? shm.getPath( ) + "," : "" ) + System.getProperty( "java.io.tmpdir" );
+    String concurrencyOption = "1,8,32";
+    String fsyncOption = "none";
+    for ( final Map.Entry<String,String> option : Benchmarks.options( args ).entrySet( ) ) {
+      final String value = option.getValue( );
+      switch ( option.getKey( ) ) {
+        case "dirs": dirsOption = value; break;
+        case "concurrency": concurrencyOption = value; break;
+        case "size": size = Benchmarks.parseSize( value ); break;
+        case "chunk": chunk = (int) Benchmarks.parseSize( value ); break;
+        case "fsync": fsyncOption = value; break;
+        case "fsyncBatch": fsyncBatch = Benchmarks.parseSize( value ); break;
+        default: throw new IllegalArgumentException( "Unknown option: " + option.getKey( ) );
+      }
+    }
+    for ( final String dir : dirsOption.split( "," ) ) {
+      dirs.add( new File( dir.trim( ) ) );
+    }
+    for ( final String concurrency : concurrencyOption.split( "," ) ) {
+      concurrencies.add( Integer.parseInt( concurrency.trim( ) ) );
+    }
+    for ( final String fsync : fsyncOption.split( "," ) ) {
+      fsyncPolicies.add( WriteBehindObjectWriter.FsyncPolicy.valueOf( fsync.trim( ).toUpperCase( Locale.ROOT ) ) );
+    }
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    for ( final Map<String,Object> result : new WalrusPutBenchmark( args ).run( ) ) {
+      System.out.println( Benchmarks.toJson( result ) );
+    }
+    System.exit( 0 );
+  }
+
+  public List<Map<String,Object>> run( ) throws Exception {
+    final List<Map<String,Object>> results = new ArrayList<>( );
+    final byte[] block = new byte[ chunk ];
+    new Random( chunk ).nextBytes( block );
+    final ExecutorService writers = Executors.newCachedThreadPool( );
+    try {
+      for ( final File dir : dirs ) {
+        for ( final int concurrency : concurrencies ) {
+          for ( final WriteBehindObjectWriter.FsyncPolicy fsyncPolicy : fsyncPolicies ) {
+            for ( final Mode mode : Mode.values( ) ) {
+              final ExecutorService uploads = Executors.newFixedThreadPool( concurrency * 2 );
+              try {
+                final long start = System.nanoTime( );
+                final List<Future<Long>> futures = new ArrayList<>( );
+                for ( int i = 0; i < concurrency; i++ ) {
+                  futures.add( uploads.submit( upload( uploads, writers, dir, block, mode, fsyncPolicy ) ) );
+                }
+                long bytes = 0;
+                for ( final Future<Long> future : futures ) {
+                  bytes += future.get( );
+                }
+                final long nanos = System.nanoTime( ) - start;
+                final Map<String,Object> result = new LinkedHashMap<>( );
+                result.put( "dir", dir.getPath( ) );
+                result.put( "concurrency", concurrency );
+                result.put( "fsync", fsyncPolicy.name( ).toLowerCase( Locale.ROOT ) );
+                result.put( "mode", mode.name( ) );
+                result.put( "size", size );
+                result.put( "millis", TimeUnit.NANOSECONDS.toMillis( nanos ) );
+                result.put( "megabytesPerSecond", ( (double) bytes / ( 1024 * 1024 ) ) / ( nanos / 1e9 ) );
+                results.add( result );
+              } finally {
+                uploads.shutdownNow( );
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      writers.shutdownNow( );
+    }
+    return results;
+  }
+
+  /**
+   * Upload that receives, digests and writes a single object, returning the number of bytes written.
+   */
+  private Callable<Long> upload(
+      final ExecutorService receivers,
+      final ExecutorService writers,
+      final File dir,
+      final byte[] block,
+      final Mode mode,
+      final WriteBehindObjectWriter.FsyncPolicy fsyncPolicy
+  ) {
+    return ( ) -> {
+      final File file = File.createTempFile( "walrus-put-benchmark-", ".dat", dir );
+      try {
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>( QUEUE_CAPACITY );
+        final Future<?> receiver = receivers.submit( ( ) -> {
+          for ( long received = 0; received < size; received += block.length ) {
+            // data messages are copies of the received buffer
+            final byte[] data = new byte[ (int) Math.min( block.length, size - received ) ];
+            System.arraycopy( block, 0, data, 0, data.length );
+            queue.put( data );
+          }
+          queue.put( new byte[ 0 ] );
+          return null;
+        } );
+        final MessageDigest digest = Digest.MD5.get( );
+        final FileWriter fileWriter = new FileWriter( file.getPath( ) );
+        final WriteBehindObjectWriter writer = mode == Mode.WriteBehind ?
+            new WriteBehindObjectWriter( fileWriter, writers, WRITE_BEHIND_BUFFER_SIZE, fsyncPolicy, fsyncBatch ) :
+            null;
+        long written = 0;
+        long unsynced = 0;
+        byte[] data;
+        while ( ( data = queue.take( ) ).length > 0 ) {
+          if ( writer != null ) {
+            writer.write( data );
+          } else {
+            fileWriter.write( data );
+            unsynced += data.length;
+            if ( fsyncPolicy == WriteBehindObjectWriter.FsyncPolicy.BATCH && unsynced >= fsyncBatch ) {
+              fileWriter.sync( );
+              unsynced = 0;
+            }
+          }
+          digest.update( data );
+          written += data.length;
+        }
+        if ( writer != null ) {
+          writer.finish( );
+        } else {
+          if ( fsyncPolicy != WriteBehindObjectWriter.FsyncPolicy.NONE ) {
+            fileWriter.sync( );
+          }
+          fileWriter.finish( );
+        }
+        digest.digest( );
+        receiver.get( );
+        if ( file.length( ) != written ) {
+          throw new IOException( "Wrote " + file.length( ) + " bytes, expected " + written );
+        }
+        return written;
+      } finally {
+        if ( !file.delete( ) ) {
+          file.deleteOnExit( );
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,162 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6750 Navigator Way, Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.walrus.storage
+
+import com.eucalyptus.storage.common.fs.FileIO
+import groovy.transform.CompileStatic
+import org.junit.Test
+
+import java.nio.ByteBuffer
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+import static org.junit.Assert.assertArrayEquals
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+/**
+ *
+ */
+@CompileStatic
+class WriteBehindObjectWriterTest {
+
+  @Test
+  void testWriteOrder( ) {
+    final RecordingFileIO fileIO = new RecordingFileIO( )
+    final ExecutorService executor = Executors.newFixedThreadPool( 2 )
+    try {
+      final WriteBehindObjectWriter writer =
+          new WriteBehindObjectWriter( fileIO, executor, 64, WriteBehindObjectWriter.FsyncPolicy.NONE, 0 )
+      final ByteArrayOutputStream expected = new ByteArrayOutputStream( )
+      ( 0..<1000 ).each { Integer i ->
+        final byte[] data = [ (byte) i, (byte) ( i >> 8 ), 1, 2, 3 ] as byte[]
+        expected.write( data )
+        writer.write( data )
+      }
+      writer.finish( )
+      assertArrayEquals( 'written data', expected.toByteArray( ), fileIO.data.toByteArray( ) )
+      assertEquals( 'sync count', 0, fileIO.syncs )
+      assertTrue( 'finished', fileIO.finished )
+    } finally {
+      executor.shutdown( )
+    }
+  }
+
+  @Test
+  void testFsyncBatch( ) {
+    final RecordingFileIO fileIO = new RecordingFileIO( )
+    final WriteBehindObjectWriter writer =
+        new WriteBehindObjectWriter( fileIO, { Runnable task -> task.run( ) } as Executor, 1024, WriteBehindObjectWriter.FsyncPolicy.BATCH, 100 )
+    ( 0..<10 ).each { Integer i ->
+      writer.write( new byte[ 50 ] )
+    }
+    writer.finish( )
+    assertEquals( 'written bytes', 500, fileIO.data.size( ) )
+    assertEquals( 'sync count', 6, fileIO.syncs )
+  }
+
+  @Test
+  void testFsyncClose( ) {
+    final RecordingFileIO fileIO = new RecordingFileIO( )
+    final WriteBehindObjectWriter writer =
+        new WriteBehindObjectWriter( fileIO, { Runnable task -> task.run( ) } as Executor, 1024, WriteBehindObjectWriter.FsyncPolicy.CLOSE, 100 )
+    ( 0..<10 ).each { Integer i ->
+      writer.write( new byte[ 50 ] )
+    }
+    writer.finish( )
+    assertEquals( 'sync count', 1, fileIO.syncs )
+  }
+
+  @Test
+  void testWriteFailure( ) {
+    final RecordingFileIO fileIO = new RecordingFileIO( failAfter: 2 )
+    final WriteBehindObjectWriter writer =
+        new WriteBehindObjectWriter( fileIO, { Runnable task -> task.run( ) } as Executor, 1024, WriteBehindObjectWriter.FsyncPolicy.NONE, 0 )
+    writer.write( new byte[ 10 ] )
+    writer.write( new byte[ 10 ] )
+    writer.write( new byte[ 10 ] )
+    writer.write( new byte[ 10 ] )
+    assertEquals( 'write attempts', 3, fileIO.writes )
+    try {
+      writer.finish( )
+      fail( 'Expected write failure' )
+    } catch ( IOException e ) {
+      assertEquals( 'failure cause', 'Disk full', e.cause.message )
+      assertTrue( 'finished', fileIO.finished )
+    }
+  }
+
+  @Test
+  void testAbort( ) {
+    final RecordingFileIO fileIO = new RecordingFileIO( )
+    final List<Runnable> tasks = [ ]
+    final WriteBehindObjectWriter writer =
+        new WriteBehindObjectWriter( fileIO, { Runnable task -> tasks.add( task ) } as Executor, 1024, WriteBehindObjectWriter.FsyncPolicy.CLOSE, 0 )
+    writer.write( new byte[ 10 ] )
+    final Thread aborter = new Thread( { writer.abort( ) } as Runnable )
+    aborter.start( )
+    while ( aborter.getState( ) != Thread.State.TIMED_WAITING ) {
+      Thread.yield( )
+    }
+    tasks.get( 0 ).run( )
+    aborter.join( )
+    assertEquals( 'written bytes', 0, fileIO.data.size( ) )
+    assertEquals( 'sync count', 0, fileIO.syncs )
+    assertTrue( 'finished', fileIO.finished )
+  }
+
+  static class RecordingFileIO extends FileIO {
+    final ByteArrayOutputStream data = new ByteArrayOutputStream( )
+    int failAfter = Integer.MAX_VALUE
+    int writes
+    int syncs
+    boolean finished
+
+    @Override
+    int read( final long offset ) throws IOException {
+      -1
+    }
+
+    @Override
+    void write( final byte[] bytes ) throws IOException {
+      if ( ++writes > failAfter ) {
+        throw new IOException( 'Disk full' )
+      }
+      data.write( bytes )
+    }
+
+    @Override
+    ByteBuffer getBuffer( ) {
+      null
+    }
+
+    @Override
+    void sync( ) throws IOException {
+      syncs++
+    }
+
+    @Override
+    void finish( ) {
+      finished = true
+    }
+  }
+}